@@ -160,8 +160,12 @@ public interface DockerAdapterCommandExecutor {
     String DOCKER_IMAGE_REPOSITORY_PROP_NAME = "repo";
     String DOCKER_IMAGE_TAG_PROP_NAME = "tag";
     String DOCKER_IMAGE_NAME_PROP_NAME = "imageName";
+    // the image tar to load, a byte[] or a File streamed to the host
     String DOCKER_IMAGE_DATA_PROP_NAME = "imageData";
     String DOCKER_IMAGE_REGISTRY_AUTH = "X-Registry-Auth";
+    // optional DockerAdapterStreamCommandExecutor.TransferProgressListener of image loads and
+    // builds
+    String DOCKER_TRANSFER_PROGRESS_LISTENER_PROP_NAME = "transferProgressListener";
 
     String DOCKER_VOLUME_NAME_PROP_NAME = "Name";
     String DOCKER_VOLUME_DRIVER_PROP_NAME = "Driver";
@@ -176,6 +180,7 @@ public interface DockerAdapterCommandExecutor {
     String DOCKER_BUILD_IMAGE_BUILDARGS_PROP_NAME = "buildargs";
     String DOCKER_BUILD_IMAGE_FORCERM_PROP_NAME = "forcerm";
     String DOCKER_BUILD_IMAGE_NOCACHE_PROP_NAME = "nocache";
+    // the build context tar, a byte[] or a File streamed to the host
     String DOCKER_BUILD_IMAGE_DOCKERFILE_DATA = "dockerImageData";
     String DOCKER_BUILD_IMAGE_TAG_PROP_NAME = "t";
 
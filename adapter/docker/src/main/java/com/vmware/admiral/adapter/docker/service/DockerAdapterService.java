@@ -11,6 +11,7 @@
 
 package com.vmware.admiral.adapter.docker.service;
 
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_BUILD_IMAGE_INSPECT_NAME_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_CONTAINER_COMMAND_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_CONTAINER_CONFIG_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_CONTAINER_CREATE_USE_BUNDLED_IMAGE;
@@ -61,6 +62,7 @@ import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExec
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_EXEC_COMMAND_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_DATA_PROP_NAME;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_FROM_PROP_NAME;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.DOCKER_IMAGE_REGISTRY_AUTH;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.SINCE;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.STD_ERR;
 import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExecutor.STD_OUT;
@@ -70,6 +72,11 @@ import static com.vmware.admiral.adapter.docker.service.DockerAdapterCommandExec
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -77,6 +84,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -99,6 +107,7 @@ import com.vmware.admiral.common.util.DockerImage;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerLogService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.LogConfig;
@@ -119,6 +128,8 @@ import com.vmware.xenon.common.FileUtils;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
@@ -213,6 +224,23 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
 
     public static final String RETRIED_AFTER_FAILURE = "failedAfterRetry";
 
+    public static final String STAT_NAME_IMAGE_PULLS = "imagePulls";
+    public static final String STAT_NAME_IMAGE_PULLS_AVOIDED = "imagePullsAvoided";
+    /** The total time the requests have waited for image pulls, their own or shared ones. */
+    public static final String STAT_NAME_IMAGE_PULL_WAIT_MICROS = "imagePullWaitMicros";
+
+    private static final List<String> IMAGE_PULL_STAT_NAMES = Arrays.asList(
+            STAT_NAME_IMAGE_PULLS, STAT_NAME_IMAGE_PULLS_AVOIDED,
+            STAT_NAME_IMAGE_PULL_WAIT_MICROS);
+
+    /**
+     * Prefix of the per host stats of the exec command latency returned by a GET, see
+     * {@link #getExecLatencyStatName(String)}.
+     */
+    public static final String STAT_NAME_EXEC_LATENCY_MICROS_PREFIX = "execLatencyMicros-";
+
+    private static final String IMAGE_DIGEST_SEPARATOR = "@";
+
     private SystemImageRetrievalManager imageRetrievalManager;
 
     /**
@@ -236,12 +264,28 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
     private volatile Integer retriesCount;
     private volatile Integer pullRetriesCount;
 
+    private final Map<String, DockerHostPipeline> pipelines = new ConcurrentHashMap<>();
+    private volatile long nextPruneMicros = Utils.fromNowMicrosUtc(
+            DockerHostPipeline.IDLE_PIPELINE_EXPIRATION_MICROS);
+
     private static class RequestContext extends BaseRequestContext {
         public ComputeState computeState;
         public ContainerState containerState;
         public ContainerDescription containerDescription;
 
         public DockerAdapterCommandExecutor executor;
+        public DockerHostPipeline pipeline;
+        /**
+         * The update of the container state with the id of the created container, awaited
+         * before the container state is updated with the inspected properties.
+         */
+        public DeferredResult<Void> containerIdPatch;
+        /**
+         * The key of the image which was not pulled since it was known to be available on the
+         * host, <code>null</code> if it was pulled. Used to pull it if the container cannot be
+         * created.
+         */
+        public String skippedImageKey;
         /**
          * Flags the request as already failed. Used to avoid patching a FAILED task to FINISHED
          * state after inspecting a container.
@@ -257,6 +301,11 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         public String auth;
     }
 
+    public DockerAdapterService() {
+        super();
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+    }
+
     @Override
     public void handleStart(Operation startPost) {
         imageRetrievalManager = new SystemImageRetrievalManager(getHost());
@@ -285,6 +334,39 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         processContainerRequest(context);
     }
 
+    /**
+     * Returns the image pull stats and the exec command latency stats of the docker hosts which
+     * have a pipeline. Unlike the service stats, the exec command latency stats are dropped
+     * together with the pipelines of the idle hosts.
+     */
+    @Override
+    public void handleGet(Operation get) {
+        ServiceStats stats = new ServiceStats();
+        for (String name : IMAGE_PULL_STAT_NAMES) {
+            ServiceStat stat = getStat(name);
+            if (stat != null && stat.version > 0) {
+                ServiceStat copy = new ServiceStat();
+                synchronized (stat) {
+                    copy.name = stat.name;
+                    copy.unit = stat.unit;
+                    copy.latestValue = stat.latestValue;
+                    copy.accumulatedValue = stat.accumulatedValue;
+                    copy.version = stat.version;
+                    copy.lastUpdateMicrosUtc = stat.lastUpdateMicrosUtc;
+                }
+                stats.entries.put(name, copy);
+            }
+        }
+        for (DockerHostPipeline pipeline : pipelines.values()) {
+            ServiceStat stat = pipeline.getExecLatency();
+            if (stat.version > 0) {
+                stat.name = getExecLatencyStatName(pipeline.getHostLink());
+                stats.entries.put(stat.name, stat);
+            }
+        }
+        get.setBody(stats).complete();
+    }
+
     /*
      * start processing the request - first fetch the ContainerState
      */
@@ -321,19 +403,44 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
             return;
         }
 
+        long nowMicros = Utils.getSystemNowMicrosUtc();
+        if (nowMicros >= nextPruneMicros) {
+            pruneIdlePipelines(nowMicros);
+        }
+        context.pipeline = pipelines.compute(context.containerState.parentLink,
+                (hostLink, pipeline) -> {
+                    if (pipeline == null) {
+                        pipeline = new DockerHostPipeline(hostLink);
+                    }
+                    pipeline.touch();
+                    return pipeline;
+                });
+        DockerHostPipeline.HostContext hostContext = context.pipeline.getHostContext();
+        if (hostContext != null) {
+            processHostContext(context, hostContext.computeState,
+                    new CommandInput(hostContext.commandInput));
+            return;
+        }
+
         getContainerHost(
                 context.request,
                 context.operation,
                 UriUtils.buildUri(getHost(), context.containerState.parentLink),
                 (computeState, commandInput) -> {
-                    context.commandInput = commandInput;
-                    context.executor = getCommandExecutor();
-                    context.computeState = computeState;
-                    handleExceptions(context.request, context.operation,
-                            () -> processOperation(context));
+                    context.pipeline.setHostContext(computeState, commandInput);
+                    processHostContext(context, computeState, commandInput);
                 });
     }
 
+    private void processHostContext(RequestContext context, ComputeState computeState,
+            CommandInput commandInput) {
+        context.commandInput = commandInput;
+        context.executor = getCommandExecutor();
+        context.computeState = computeState;
+        handleExceptions(context.request, context.operation,
+                () -> processOperation(context));
+    }
+
     private void processOperation(RequestContext context) {
         ContainerInstanceRequest request = (ContainerInstanceRequest) context.request;
         try {
@@ -384,6 +491,20 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
     private void processFetchContainerLog(RequestContext context) {
         CommandInput fetchLogCommandInput = constructFetchLogCommandInput(context.request,
                 context.commandInput, context.containerState);
+        boolean incremental = context.request.customProperties != null
+                && Boolean.parseBoolean(context.request.customProperties.get(
+                        ContainerLogService.INCREMENTAL_FETCH_PROP_NAME));
+        Long since = null;
+        if (incremental) {
+            // the log service drops the lines fetched again by their timestamps
+            fetchLogCommandInput.withProperty(TIMESTAMPS, true);
+            since = getLogFetchSince(context.request.customProperties.get(
+                    ContainerLogService.LAST_TIMESTAMP_PROP_NAME));
+            if (since != null) {
+                fetchLogCommandInput.withProperty(SINCE, since);
+            }
+        }
+        boolean append = since != null;
 
         context.executor.fetchContainerLog(fetchLogCommandInput, (op, ex) -> {
             if (ex != null) {
@@ -409,14 +530,20 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                         }
                     }
 
+                    if (append) {
+                        appendContainerLog(context, log != null ? log : new byte[0]);
+                        return;
+                    }
+
                     if (log == null) {
-                        log = "--".getBytes();
+                        // logs fetched incrementally are appended to later, no placeholder
+                        log = incremental ? new byte[0] : "--".getBytes();
                         // log a warning
                         String containerId = Service.getId(context.containerState.documentSelfLink);
                         logWarning("Found empty logs for container %s", containerId);
                     }
 
-                    processContainerLogResponse(context, log);
+                    processContainerLogResponse(context, log, incremental);
                 });
             }
         });
@@ -459,7 +586,52 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         return fetchLogCommandInput;
     }
 
-    private void processContainerLogResponse(RequestContext context, byte[] log) {
+    /**
+     * Returns the Unix timestamp in seconds from which to fetch the logs following the line with
+     * the given docker timestamp, <code>null</code> if there is none. Docker accepts whole seconds
+     * only, the lines of the same second fetched again are dropped by the {@link LogService}.
+     */
+    static Long getLogFetchSince(String lastTimestamp) {
+        if (lastTimestamp == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(lastTimestamp).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends the logs of an incremental fetch to the stored ones, falling back to storing them
+     * as the whole logs when there are none.
+     */
+    private void appendContainerLog(RequestContext context, byte[] log) {
+        LogService.LogServiceState logServiceState = new LogService.LogServiceState();
+        logServiceState.logs = log;
+        logServiceState.timestamped = true;
+
+        String logLink = UriUtils.buildUriPath(LogService.FACTORY_LINK,
+                Service.getId(context.containerState.documentSelfLink));
+        sendRequest(Operation.createPatch(this, logLink)
+                .setBodyNoCloning(logServiceState)
+                .setContextId(context.request.getRequestId())
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
+                            processContainerLogResponse(context, log, true);
+                        } else {
+                            fail(context.request, ex);
+                        }
+                    } else if (context.request.serviceTaskCallback.isEmpty()) {
+                        /* avoid logging warnings */
+                        patchTaskStage(context.request, TaskStage.FINISHED, null);
+                    }
+                }));
+    }
+
+    private void processContainerLogResponse(RequestContext context, byte[] log,
+            boolean timestamped) {
         LogService.LogServiceState logServiceState = new LogService.LogServiceState();
         logServiceState.documentSelfLink = Service.getId(context.containerState.documentSelfLink);
 
@@ -470,6 +642,7 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         }
 
         logServiceState.logs = log;
+        logServiceState.timestamped = timestamped ? true : null;
         logServiceState.tenantLinks = context.containerState.tenantLinks;
 
         sendRequest(Operation.createPost(this, LogService.FACTORY_LINK)
@@ -603,61 +776,63 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
     }
 
     /**
-     * read the temp file containing the downloaded image from the file system and proceed with
-     * imageCompletionAction
+     * stream the file containing the downloaded image to the host and proceed with
+     * imageCompletionAction. The file is not read in memory.
      *
      * @param context
-     * @param tempFile
+     * @param imageFile
      * @param imageCompletionAction
      */
-    private void processDownloadedImage(RequestContext context, File tempFile,
+    private void processDownloadedImage(RequestContext context, File imageFile,
             Runnable imageCompletionAction, boolean isTempFile) {
+        String fileName = context.containerDescription.imageReference.toString();
+        Runnable deleteTempFile = () -> {
+            if (isTempFile && !imageFile.delete()) {
+                this.logWarning("Failed to delete temp file: %s %s", imageFile,
+                        context.request.getRequestTrackingLog());
+            }
+        };
 
-        Operation fileReadOp = Operation.createPatch(null)
-                .setContextId(context.request.getRequestId())
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        fail(context.request, ex);
-                        return;
-                    }
-
-                    byte[] imageData = o.getBody(byte[].class);
-                    if (isTempFile && !tempFile.delete()) {
-                        this.logWarning("Failed to delete temp file: %s %s", tempFile,
-                                context.request.getRequestTrackingLog());
-                    }
-
-                    processLoadImageData(context, imageData,
-                            context.containerDescription.imageReference.toString(),
-                            imageCompletionAction);
-                });
+        if (imageFile.length() == 0) {
+            deleteTempFile.run();
+            failEmptyImage(context, fileName);
+            return;
+        }
 
-        FileUtils.readFileAndComplete(fileReadOp, tempFile);
+        logInfo("Streaming %d bytes of file: %s to host... %s", imageFile.length(), fileName,
+                context.request.getRequestTrackingLog());
+        CommandInput loadImageCommandInput = new CommandInput(context.commandInput)
+                .withProperty(DOCKER_IMAGE_DATA_PROP_NAME, imageFile);
+        doLoadImage(context, loadImageCommandInput, fileName, deleteTempFile,
+                imageCompletionAction);
     }
 
     private void processLoadImageData(RequestContext context, byte[] imageData, String fileName,
             Runnable imageCompletionAction) {
         // TODO consider merging this functionality with DockerHostAdapterImageService.doLoadImage
         if (imageData == null || imageData.length == 0) {
-            String errMsg = String.format("No content loaded for file: %s %s",
-                    fileName, context.request.getRequestTrackingLog());
-            this.logSevere(errMsg);
-            fail(context.request, new LocalizableValidationException(errMsg,
-                    "adapter.load.image.empty", fileName, context.request.getRequestTrackingLog()));
+            failEmptyImage(context, fileName);
             return;
         }
 
         logInfo("Loaded content for file: %s %s. Now sending to host...", fileName,
                 context.request.getRequestTrackingLog());
-        doLoadImage(context, imageData, fileName, imageCompletionAction);
-    }
-
-    private void doLoadImage(RequestContext context, byte[] imageData, String fileName,
-            Runnable imageCompletionAction) {
-
         CommandInput loadImageCommandInput = new CommandInput(context.commandInput)
                 .withProperty(DOCKER_IMAGE_DATA_PROP_NAME, imageData);
+        doLoadImage(context, loadImageCommandInput, fileName, () -> {
+        }, imageCompletionAction);
+    }
+
+    private void failEmptyImage(RequestContext context, String fileName) {
+        String errMsg = String.format("No content loaded for file: %s %s",
+                fileName, context.request.getRequestTrackingLog());
+        this.logSevere(errMsg);
+        fail(context.request, new LocalizableValidationException(errMsg,
+                "adapter.load.image.empty", fileName, context.request.getRequestTrackingLog()));
+    }
 
+    private void doLoadImage(RequestContext context, CommandInput loadImageCommandInput,
+            String fileName, Runnable cleanupAction, Runnable imageCompletionAction) {
         ensurePullRetriesPropertyExists((retryCountProperty) -> {
             new RetriableTaskBuilder<Void>(
                     String.format("load-image-from-file-%s", fileName))
@@ -669,6 +844,7 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                                     loadImageCommandInput))
                             .execute()
                             .whenComplete((ignore, ex) -> {
+                                cleanupAction.run();
                                 if (ex != null) {
                                     Throwable failureCause = ex instanceof CompletionException
                                             ? ex.getCause() : ex;
@@ -713,12 +889,118 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         };
     }
 
+    /**
+     * Pulls the image unless it is referenced by digest and known to be available on the host. A
+     * tag may have moved since it was last pulled, so an image referenced by tag is always
+     * pulled. Concurrent pulls of the same image with the same registry credentials to the same
+     * host are sent once.
+     */
     private void processPullImageFromRegistry(RequestContext context,
             CommandInput createImageCommandInput, Runnable imageCompletionAction) {
+        String fullImageName = DockerImage.fromImageName(context.containerDescription.image)
+                .toString();
+        String imageKey = getImageKey(fullImageName, createImageCommandInput);
+        if (!context.containerDescription.image.contains(IMAGE_DIGEST_SEPARATOR)) {
+            pullImage(context, fullImageName, imageKey, false, createImageCommandInput,
+                    imageCompletionAction);
+            return;
+        }
+
+        if (context.pipeline.isImageAvailable(imageKey)) {
+            logInfo("Image %s is available on host %s, skipping pull %s", fullImageName,
+                    context.computeState.documentSelfLink, context.request.getRequestTrackingLog());
+            adjustStat(STAT_NAME_IMAGE_PULLS_AVOIDED, 1);
+            context.skippedImageKey = imageKey;
+            imageCompletionAction.run();
+            return;
+        }
 
+        // an image referenced by digest does not change, no need to pull it if present
+        inspectImage(context, fullImageName, (present) -> {
+            if (present) {
+                context.pipeline.setImageAvailable(imageKey);
+                processPullImageFromRegistry(context, createImageCommandInput,
+                        imageCompletionAction);
+            } else {
+                pullImage(context, fullImageName, imageKey, true, createImageCommandInput,
+                        imageCompletionAction);
+            }
+        });
+    }
+
+    /**
+     * Returns the key of an image in the pipeline of a host, the image name along with a hash
+     * of the registry credentials of the pull, so that a pull or a cached image is not shared
+     * with requests using different credentials.
+     */
+    static String getImageKey(String fullImageName, CommandInput createImageCommandInput) {
+        Object registryAuth = createImageCommandInput.getProperties()
+                .get(DOCKER_IMAGE_REGISTRY_AUTH);
+        if (registryAuth == null) {
+            return fullImageName;
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(registryAuth.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(fullImageName).append('#');
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void inspectImage(RequestContext context, String fullImageName,
+            Consumer<Boolean> callback) {
+        CommandInput inspectImageCommandInput = new CommandInput(context.commandInput)
+                .withProperty(DOCKER_BUILD_IMAGE_INSPECT_NAME_PROP_NAME, fullImageName);
+        context.pipeline.submit(inspectImageCommandInput, context.executor::inspectImage,
+                (o, ex) -> {
+                    if (ex != null) {
+                        logFine("Image %s not found on host %s: %s", fullImageName,
+                                context.computeState.documentSelfLink, ex.getMessage());
+                    }
+                    handleExceptions(context.request, context.operation,
+                            () -> callback.accept(ex == null));
+                });
+    }
+
+    private void pullImage(RequestContext context, String fullImageName, String imageKey,
+            boolean cacheImage, CommandInput createImageCommandInput,
+            Runnable imageCompletionAction) {
+        long startMicros = Utils.getSystemNowMicrosUtc();
+        context.pipeline.pullImage(imageKey,
+                () -> retryPullImage(context, fullImageName, createImageCommandInput),
+                () -> {
+                    logInfo("Waiting for the pull of image %s in progress on host %s %s",
+                            fullImageName, context.computeState.documentSelfLink,
+                            context.request.getRequestTrackingLog());
+                    adjustStat(STAT_NAME_IMAGE_PULLS_AVOIDED, 1);
+                })
+                .whenComplete((ignore, ex) -> {
+                    adjustStat(STAT_NAME_IMAGE_PULL_WAIT_MICROS,
+                            Utils.getSystemNowMicrosUtc() - startMicros);
+                    if (ex != null) {
+                        Throwable failureCause = ex instanceof CompletionException
+                                ? ex.getCause() : ex;
+                        fail(context.request, failureCause);
+                        return;
+                    }
+
+                    if (cacheImage) {
+                        context.pipeline.setImageAvailable(imageKey);
+                    }
+                    imageCompletionAction.run();
+                });
+    }
+
+    private DeferredResult<Void> retryPullImage(RequestContext context, String fullImageName,
+            CommandInput createImageCommandInput) {
+        adjustStat(STAT_NAME_IMAGE_PULLS, 1);
+        DeferredResult<Void> result = new DeferredResult<>();
         ensurePullRetriesPropertyExists((retryCountProperty) -> {
-            String fullImageName = DockerImage.fromImageName(context.containerDescription.image)
-                    .toString();
             new RetriableTaskBuilder<Void>(
                     String.format("pull-image-%s", fullImageName))
                             .withMaximumRetries(retryCountProperty)
@@ -730,15 +1012,13 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                             .execute()
                             .whenComplete((ignore, ex) -> {
                                 if (ex != null) {
-                                    Throwable failureCause = ex instanceof CompletionException
-                                            ? ex.getCause() : ex;
-                                    fail(context.request, failureCause);
-                                    return;
+                                    result.fail(ex);
+                                } else {
+                                    result.complete(null);
                                 }
-
-                                imageCompletionAction.run();
                             });
         });
+        return result;
     }
 
     private Function<RetriableTask<Void>, DeferredResult<Void>> preparePullImageFunction(
@@ -928,6 +1208,14 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                                                 DOCKER_CONTAINER_CREATE_USE_LOCAL_IMAGE_WITH_PRIORITY,
                                                 "false");
                                         processContainerDescription(context);
+                                    } else if (context.skippedImageKey != null) {
+                                        logInfo("Unable to create container using image %s"
+                                                + " known to be on the host. Will be pulled...",
+                                                context.containerDescription.image);
+                                        context.pipeline.invalidateImage(
+                                                context.skippedImageKey);
+                                        context.skippedImageKey = null;
+                                        processContainerDescription(context);
                                     } else {
                                         Throwable failureCause = ex instanceof CompletionException
                                                 ? ex.getCause() : ex;
@@ -950,58 +1238,66 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
         return (task) -> {
             DeferredResult<Map<String, String>> deferredResult = new DeferredResult<>();
 
-            context.executor.createContainer(createCommandInput, (o, ex) -> {
-                if (ex == null) {
-                    try {
-                        // Nothing to do, success completion will be
-                        // handled on the retriable task completion
-                        @SuppressWarnings("unchecked")
-                        Map<String, String> taskResult = o.getBody(Map.class);
-                        deferredResult.complete(taskResult);
-                    } catch (Throwable e) {
-                        task.preventRetries();
-                        deferredResult.fail(e);
-                    }
+            context.pipeline.submit(createCommandInput, context.executor::createContainer,
+                    (o, ex) -> {
+                        if (ex == null) {
+                            try {
+                                // Nothing to do, success completion will be
+                                // handled on the retriable task completion
+                                @SuppressWarnings("unchecked")
+                                Map<String, String> taskResult = o.getBody(Map.class);
+                                deferredResult.complete(taskResult);
+                            } catch (Throwable e) {
+                                task.preventRetries();
+                                deferredResult.fail(e);
+                            }
 
-                    return;
-                }
+                            return;
+                        }
 
-                if (isRetriableFailure(o.getStatusCode())
-                        && !shouldTryCreateFromLocalImage(context.containerDescription)) {
-                    // if local image was currently preferred, another task
-                    // will be submitted to try with remote image
-                    markRequestAsRetriedAfterFailure(context.request);
-                } else {
-                    task.preventRetries();
-                    logSevere(
-                            "Failure creating container [%s] of host [%s] (status code: %s)",
-                            context.containerState.names.get(0),
-                            context.computeState.documentSelfLink,
-                            o.getStatusCode());
-                }
+                        if (isRetriableFailure(o.getStatusCode())
+                                && !shouldTryCreateFromLocalImage(context.containerDescription)) {
+                            // if local image was currently preferred, another task
+                            // will be submitted to try with remote image
+                            markRequestAsRetriedAfterFailure(context.request);
+                        } else {
+                            task.preventRetries();
+                            logSevere(
+                                    "Failure creating container [%s] of host [%s] (status code: %s)",
+                                    context.containerState.names.get(0),
+                                    context.computeState.documentSelfLink,
+                                    o.getStatusCode());
+                        }
 
-                deferredResult
-                        .fail(DockerAdapterUtils.runtimeExceptionFromFailedDockerOperation(o, ex));
-            });
+                        deferredResult.fail(DockerAdapterUtils
+                                .runtimeExceptionFromFailedDockerOperation(o, ex));
+                    });
 
             return deferredResult;
         };
 
     }
 
+    /**
+     * Updates the container state with the id of the created container and proceeds with the
+     * container without waiting for the update, which is awaited only before the container state
+     * is updated with the inspected properties.
+     */
     private void updateCreatedContainerStateWithId(RequestContext context, String id) {
         context.containerState.id = id;
-        sendRequest(Operation.createPatch(this, context.containerState.documentSelfLink)
-                .setBody(context.containerState)
-                .setReferer(getSelfLink())
-                .setCompletion((op, e) -> {
+        context.containerIdPatch = sendWithDeferredResult(
+                Operation.createPatch(this, context.containerState.documentSelfLink)
+                        .setBody(context.containerState)
+                        .setReferer(getSelfLink()))
+                .handle((op, e) -> {
                     if (e != null) {
                         logWarning(
                                 "Could not patch container state for created container %s",
                                 context.computeState.name);
                     }
-                    processCreatedContainer(context);
-                }));
+                    return null;
+                });
+        processCreatedContainer(context);
     }
 
     private void addVicRequiredConfig(CommandInput input) {
@@ -1128,31 +1424,32 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
 
             logFine("Connecting container [%s] to network [%s]", containerId, networkId);
 
-            context.executor.connectContainerToNetwork(connectCommandInput, (o, ex) -> {
-                if (ex == null) {
-                    // Nothing to do, success completion will be
-                    // handled on the combined tasks completion
-                    deferredResult.complete(null);
-                    return;
-                }
+            context.pipeline.submit(connectCommandInput,
+                    context.executor::connectContainerToNetwork, (o, ex) -> {
+                        if (ex == null) {
+                            // Nothing to do, success completion will be
+                            // handled on the combined tasks completion
+                            deferredResult.complete(null);
+                            return;
+                        }
 
-                if (isRetriableFailure(o.getStatusCode())) {
-                    markRequestAsRetriedAfterFailure(context.request);
-                } else {
-                    task.preventRetries();
-                    context.containerState.status = String
-                            .format("Cannot connect container to network %s", networkId);
-                    logSevere(
-                            "Failure connecting container [%s] of host [%s] to network [%s] (status code: %s)",
-                            context.containerState.id,
-                            networkId,
-                            context.computeState.documentSelfLink,
-                            o.getStatusCode());
-                }
+                        if (isRetriableFailure(o.getStatusCode())) {
+                            markRequestAsRetriedAfterFailure(context.request);
+                        } else {
+                            task.preventRetries();
+                            context.containerState.status = String
+                                    .format("Cannot connect container to network %s", networkId);
+                            logSevere(
+                                    "Failure connecting container [%s] of host [%s] to network [%s] (status code: %s)",
+                                    context.containerState.id,
+                                    networkId,
+                                    context.computeState.documentSelfLink,
+                                    o.getStatusCode());
+                        }
 
-                deferredResult
-                        .fail(DockerAdapterUtils.runtimeExceptionFromFailedDockerOperation(o, ex));
-            });
+                        deferredResult.fail(DockerAdapterUtils
+                                .runtimeExceptionFromFailedDockerOperation(o, ex));
+                    });
 
             return deferredResult;
         };
@@ -1258,34 +1555,36 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
                     .withProperty(DOCKER_CONTAINER_ID_PROP_NAME, context.containerState.id);
             logFine("Inspecting container [%s] for request [%s]", context.containerState.id,
                     context.request.getRequestTrackingLog());
-            context.executor.inspectContainer(inspectCommandInput, (o, ex) -> {
-                if (ex == null) {
-                    try {
-                        // Nothing to do, success completion will be
-                        // handled on the retriable task completion
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> props = o.getBody(Map.class);
-                        result.complete(props);
-                    } catch (Throwable e) {
-                        task.preventRetries();
-                        result.fail(e);
-                    }
-                    return;
-                }
+            context.pipeline.inspectContainer(inspectCommandInput, context.containerState.id,
+                    context.executor::inspectContainer, (o, ex) -> {
+                        if (ex == null) {
+                            try {
+                                // Nothing to do, success completion will be
+                                // handled on the retriable task completion
+                                @SuppressWarnings("unchecked")
+                                Map<String, Object> props = o.getBody(Map.class);
+                                result.complete(props);
+                            } catch (Throwable e) {
+                                task.preventRetries();
+                                result.fail(e);
+                            }
+                            return;
+                        }
 
-                if (isRetriableFailure(o.getStatusCode())) {
-                    markRequestAsRetriedAfterFailure(context.request);
-                } else {
-                    task.preventRetries();
-                    logSevere(
-                            "Failure inspecting container [%s] of host [%s] (status code: %s)",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink,
-                            o.getStatusCode());
-                }
+                        if (isRetriableFailure(o.getStatusCode())) {
+                            markRequestAsRetriedAfterFailure(context.request);
+                        } else {
+                            task.preventRetries();
+                            logSevere(
+                                    "Failure inspecting container [%s] of host [%s] (status code: %s)",
+                                    context.containerState.documentSelfLink,
+                                    context.computeState.documentSelfLink,
+                                    o.getStatusCode());
+                        }
 
-                result.fail(DockerAdapterUtils.runtimeExceptionFromFailedDockerOperation(o, ex));
-            });
+                        result.fail(DockerAdapterUtils
+                                .runtimeExceptionFromFailedDockerOperation(o, ex));
+                    });
 
             return result;
         };
@@ -1332,17 +1631,38 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
             return;
         }
 
-        context.executor.execContainer(execCommandInput, (op, ex) -> {
-            if (ex != null) {
-                context.operation.fail(ex);
-                fail(context.request, op, ex);
-            } else {
-                if (op.hasBody()) {
-                    context.operation.setBodyNoCloning(op.getBodyRaw());
-                }
-                context.operation.complete();
-            }
-        });
+        context.pipeline.submitExec(execCommandInput, context.executor::execContainer,
+                (op, ex) -> {
+                    if (ex != null) {
+                        context.operation.fail(ex);
+                        fail(context.request, op, ex);
+                    } else {
+                        if (op.hasBody()) {
+                            context.operation.setBodyNoCloning(op.getBodyRaw());
+                        }
+                        context.operation.complete();
+                    }
+                });
+    }
+
+    /**
+     * Evicts the pipelines of the hosts which have not been used for
+     * {@link DockerHostPipeline#IDLE_PIPELINE_EXPIRATION_MICROS}, e.g. of removed hosts.
+     */
+    void pruneIdlePipelines(long nowMicros) {
+        nextPruneMicros = nowMicros + DockerHostPipeline.IDLE_PIPELINE_EXPIRATION_MICROS;
+        for (String hostLink : pipelines.keySet()) {
+            pipelines.computeIfPresent(hostLink,
+                    (k, pipeline) -> pipeline.isIdle(nowMicros) ? null : pipeline);
+        }
+    }
+
+    /**
+     * Returns the name of the stat of the exec command latency, including the time queued in the
+     * pipeline, for the given docker host, see {@link DockerHostPipeline#getExecLatency()}.
+     */
+    public static String getExecLatencyStatName(String hostLink) {
+        return STAT_NAME_EXEC_LATENCY_MICROS_PREFIX + Service.getId(hostLink);
     }
 
     private void fetchContainerStats(RequestContext context) {
@@ -1413,6 +1733,14 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
 
     private void patchContainerState(AdapterRequest request,
             ContainerState containerState, Map<String, Object> properties, RequestContext context) {
+        if (context.containerIdPatch != null) {
+            DeferredResult<Void> containerIdPatch = context.containerIdPatch;
+            context.containerIdPatch = null;
+            containerIdPatch.whenComplete((ignore, e) -> handleExceptions(request,
+                    context.operation,
+                    () -> patchContainerState(request, containerState, properties, context)));
+            return;
+        }
 
         // start with a new ContainerState object because we don't want to overwrite with stale data
         ContainerState newContainerState = new ContainerState();
@@ -1494,39 +1822,41 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
             CommandInput deleteCommandInput = new CommandInput(context.commandInput)
                     .withProperty(DOCKER_CONTAINER_ID_PROP_NAME, context.containerState.id);
             logFine("Deleting container [%s]", context.containerState.id);
-            context.executor.removeContainer(deleteCommandInput, (o, ex) -> {
-                if (ex == null) {
-                    // Nothing to do, success completion will be
-                    // handled on the retriable task completion
-                    result.complete(true);
-                    return;
-                }
+            context.pipeline.submit(deleteCommandInput, context.executor::removeContainer,
+                    (o, ex) -> {
+                        if (ex == null) {
+                            // Nothing to do, success completion will be
+                            // handled on the retriable task completion
+                            result.complete(true);
+                            return;
+                        }
 
-                // there is no container to delete
-                if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND
-                        || ex.getMessage().contains(DELETE_CONTAINER_MISSING_ERROR)) {
-                    logWarning(
-                            "Could not delete container [%s] of host [%s]: "
-                                    + "container not found. Skipping deletion.",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink);
-                    result.complete(false);
-                    return;
-                }
+                        // there is no container to delete
+                        if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND
+                                || ex.getMessage().contains(DELETE_CONTAINER_MISSING_ERROR)) {
+                            logWarning(
+                                    "Could not delete container [%s] of host [%s]: "
+                                            + "container not found. Skipping deletion.",
+                                    context.containerState.documentSelfLink,
+                                    context.computeState.documentSelfLink);
+                            result.complete(false);
+                            return;
+                        }
 
-                if (isRetriableFailure(o.getStatusCode())) {
-                    markRequestAsRetriedAfterFailure(context.request);
-                } else {
-                    task.preventRetries();
-                    logSevere(
-                            "Failure deleting container [%s] of host [%s] (status code: %s)",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink,
-                            o.getStatusCode());
-                }
+                        if (isRetriableFailure(o.getStatusCode())) {
+                            markRequestAsRetriedAfterFailure(context.request);
+                        } else {
+                            task.preventRetries();
+                            logSevere(
+                                    "Failure deleting container [%s] of host [%s] (status code: %s)",
+                                    context.containerState.documentSelfLink,
+                                    context.computeState.documentSelfLink,
+                                    o.getStatusCode());
+                        }
 
-                result.fail(DockerAdapterUtils.runtimeExceptionFromFailedDockerOperation(o, ex));
-            });
+                        result.fail(DockerAdapterUtils
+                                .runtimeExceptionFromFailedDockerOperation(o, ex));
+                    });
 
             return result;
         };
@@ -1574,27 +1904,29 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
 
             logFine("Starting container [%s]", context.containerState.id);
 
-            context.executor.startContainer(startCommandInput, (o, ex) -> {
-                if (ex == null) {
-                    // Nothing to do, success completion will be
-                    // handled on the retriable task completion
-                    result.complete(null);
-                    return;
-                }
+            context.pipeline.submit(startCommandInput, context.executor::startContainer,
+                    (o, ex) -> {
+                        if (ex == null) {
+                            // Nothing to do, success completion will be
+                            // handled on the retriable task completion
+                            result.complete(null);
+                            return;
+                        }
 
-                if (isRetriableFailure(o.getStatusCode())) {
-                    markRequestAsRetriedAfterFailure(context.request);
-                } else {
-                    task.preventRetries();
-                    logSevere(
-                            "Failure starting container [%s] of host [%s] (status code: %s)",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink,
-                            o.getStatusCode());
-                }
+                        if (isRetriableFailure(o.getStatusCode())) {
+                            markRequestAsRetriedAfterFailure(context.request);
+                        } else {
+                            task.preventRetries();
+                            logSevere(
+                                    "Failure starting container [%s] of host [%s] (status code: %s)",
+                                    context.containerState.documentSelfLink,
+                                    context.computeState.documentSelfLink,
+                                    o.getStatusCode());
+                        }
 
-                result.fail(DockerAdapterUtils.runtimeExceptionFromFailedDockerOperation(o, ex));
-            });
+                        result.fail(DockerAdapterUtils
+                                .runtimeExceptionFromFailedDockerOperation(o, ex));
+                    });
 
             return result;
         };
@@ -1635,27 +1967,29 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
             CommandInput stopCommandInput = new CommandInput(context.commandInput)
                     .withProperty(DOCKER_CONTAINER_ID_PROP_NAME, context.containerState.id);
             logFine("Stopping container [%s]", context.containerState.id);
-            context.executor.stopContainer(stopCommandInput, (o, ex) -> {
-                if (ex == null) {
-                    // Nothing to do, success completion will be
-                    // handled on the retriable task completion
-                    result.complete(null);
-                    return;
-                }
+            context.pipeline.submit(stopCommandInput, context.executor::stopContainer,
+                    (o, ex) -> {
+                        if (ex == null) {
+                            // Nothing to do, success completion will be
+                            // handled on the retriable task completion
+                            result.complete(null);
+                            return;
+                        }
 
-                if (isRetriableFailure(o.getStatusCode())) {
-                    markRequestAsRetriedAfterFailure(context.request);
-                } else {
-                    task.preventRetries();
-                    logSevere(
-                            "Failure stopping container [%s] of host [%s] (status code: %s)",
-                            context.containerState.documentSelfLink,
-                            context.computeState.documentSelfLink,
-                            o.getStatusCode());
-                }
+                        if (isRetriableFailure(o.getStatusCode())) {
+                            markRequestAsRetriedAfterFailure(context.request);
+                        } else {
+                            task.preventRetries();
+                            logSevere(
+                                    "Failure stopping container [%s] of host [%s] (status code: %s)",
+                                    context.containerState.documentSelfLink,
+                                    context.computeState.documentSelfLink,
+                                    o.getStatusCode());
+                        }
 
-                result.fail(DockerAdapterUtils.runtimeExceptionFromFailedDockerOperation(o, ex));
-            });
+                        result.fail(DockerAdapterUtils
+                                .runtimeExceptionFromFailedDockerOperation(o, ex));
+                    });
 
             return result;
         };
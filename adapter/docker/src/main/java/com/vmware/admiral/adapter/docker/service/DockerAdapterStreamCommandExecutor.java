@@ -22,6 +22,22 @@ public interface DockerAdapterStreamCommandExecutor {
     String EVENT_TYPE_CONTAINER_START = "start";
     String EVENT_TYPE_CONTAINER_DIE = "die";
 
+    /**
+     * Listener of a tar payload streamed to the Docker API, e.g. an image to load or a build
+     * context. Called from the thread streaming the payload.
+     */
+    interface TransferProgressListener {
+        /**
+         * Called after every chunk of the payload is sent.
+         */
+        void onBytesSent(long sentBytes, long totalBytes);
+
+        /**
+         * Called for every line of the response, the JSON progress events of the Docker API.
+         */
+        void onEvent(String event);
+    }
+
     URLConnection openConnection(CommandInput input, URL url) throws NoSuchAlgorithmException, KeyManagementException, IOException;
 
     void closeConnection(URLConnection con) throws IOException;
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.photon.controller.model.constants.PhotonModelConstants;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.CompletionHandler;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Command pipeline of the {@link DockerAdapterService} for a single docker host. Caches the host
+ * context, i.e. the host {@link ComputeState} and the {@link CommandInput} with the docker URI
+ * and credentials, limits the count of in-flight Docker API commands to the host, queuing the
+ * rest, and coalesces inspections of the same container queued behind those commands into a
+ * single command.
+ * Exec commands, e.g. of health checks, are limited separately by {@link #MAX_INFLIGHT_EXECS},
+ * so that many execs to the host do not delay the container lifecycle commands. Their latency
+ * is tracked by the pipeline, so that it is dropped with the pipeline of a removed host.
+ *
+ * It also tracks the images known to be available on the host, as set by the adapter, and shares
+ * a pull in progress with the concurrent pulls of the same image. Images are tracked by a key
+ * which also identifies the registry credentials of the pull.
+ *
+ * The host context expires after {@link #HOST_CONTEXT_TTL_MICROS} and is invalidated when a
+ * command fails with a status other than a client error, so that changes of the host address or
+ * credentials are picked up.
+ */
+class DockerHostPipeline {
+
+    private static final Logger logger = Logger.getLogger(DockerHostPipeline.class.getName());
+
+    public static final long HOST_CONTEXT_TTL_MICROS = Long.getLong(
+            "dcp.management.docker.adapter.host.context.ttl.micros",
+            TimeUnit.MINUTES.toMicros(1));
+
+    /** How long an image pulled to or found on a host is considered available without a pull. */
+    public static final long IMAGE_CACHE_TTL_MICROS = Long.getLong(
+            "dcp.management.docker.adapter.image.cache.ttl.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    /** The count of in-flight commands to a host, 0 for no limit. */
+    public static final int MAX_INFLIGHT_COMMANDS = Integer.getInteger(
+            "dcp.management.docker.adapter.host.max.inflight.commands", 16);
+
+    /** How long a pipeline without commands is kept before it is evicted. */
+    public static final long IDLE_PIPELINE_EXPIRATION_MICROS = Long.getLong(
+            "dcp.management.docker.adapter.host.pipeline.idle.micros",
+            TimeUnit.MINUTES.toMicros(10));
+
+    /** The count of in-flight exec commands to a host, 0 for no limit. */
+    public static final int MAX_INFLIGHT_EXECS = Integer.getInteger(
+            "dcp.management.docker.adapter.host.max.inflight.execs", 8);
+
+    /**
+     * Commands sharing a limit of in-flight commands to the host; the queued commands are sent
+     * in submission order as the in-flight ones complete.
+     */
+    private static class CommandLane {
+        final int maxInflight;
+        final Queue<Runnable> queued = new ArrayDeque<>();
+        int inflight;
+
+        CommandLane(int maxInflight) {
+            this.maxInflight = maxInflight;
+        }
+    }
+
+    /**
+     * Inspection of a container, shared with the inspections of the container requested while
+     * it is queued. Once sent, a later inspection would get a result which might precede its
+     * request, so it is not shared anymore.
+     */
+    private static class Inspection {
+        final List<CompletionHandler> waiting = new ArrayList<>();
+        boolean sent;
+    }
+
+    static class HostContext {
+        final ComputeState computeState;
+        final CommandInput commandInput;
+        final long expirationMicros;
+
+        HostContext(ComputeState computeState, CommandInput commandInput) {
+            this.computeState = computeState;
+            this.commandInput = commandInput;
+            this.expirationMicros = Utils.getSystemNowMicrosUtc() + HOST_CONTEXT_TTL_MICROS;
+        }
+    }
+
+    private final String hostLink;
+    private volatile HostContext hostContext;
+
+    private final CommandLane commands = new CommandLane(MAX_INFLIGHT_COMMANDS);
+    private final CommandLane execs = new CommandLane(MAX_INFLIGHT_EXECS);
+
+    private final Map<String, Inspection> inspections = new HashMap<>();
+
+    // image key to the time until which it is considered available on the host
+    private final Map<String, Long> availableImages = new ConcurrentHashMap<>();
+    private final Map<String, DeferredResult<Void>> imagePulls = new HashMap<>();
+
+    private volatile long lastUsedMicros = Utils.getSystemNowMicrosUtc();
+
+    // latency of the exec commands, including the time queued
+    private final ServiceStat execLatency = new ServiceStat();
+
+    DockerHostPipeline(String hostLink) {
+        this.hostLink = hostLink;
+    }
+
+    String getHostLink() {
+        return hostLink;
+    }
+
+    void touch() {
+        lastUsedMicros = Utils.getSystemNowMicrosUtc();
+    }
+
+    /**
+     * Whether the pipeline has no pending commands, inspections or image pulls and has not been
+     * used for {@link #IDLE_PIPELINE_EXPIRATION_MICROS}.
+     */
+    boolean isIdle(long nowMicros) {
+        if (lastUsedMicros + IDLE_PIPELINE_EXPIRATION_MICROS > nowMicros) {
+            return false;
+        }
+        synchronized (commands) {
+            if (commands.inflight > 0 || !commands.queued.isEmpty()) {
+                return false;
+            }
+        }
+        synchronized (execs) {
+            if (execs.inflight > 0 || !execs.queued.isEmpty()) {
+                return false;
+            }
+        }
+        synchronized (inspections) {
+            if (!inspections.isEmpty()) {
+                return false;
+            }
+        }
+        synchronized (imagePulls) {
+            return imagePulls.isEmpty();
+        }
+    }
+
+    /**
+     * Returns the cached host context, <code>null</code> if there is none or it has expired.
+     */
+    HostContext getHostContext() {
+        HostContext context = hostContext;
+        if (context == null || context.expirationMicros < Utils.getSystemNowMicrosUtc()) {
+            return null;
+        }
+        return context;
+    }
+
+    void setHostContext(ComputeState computeState, CommandInput commandInput) {
+        hostContext = new HostContext(computeState, new CommandInput(commandInput));
+    }
+
+    void invalidateHostContext() {
+        hostContext = null;
+    }
+
+    boolean isImageAvailable(String image) {
+        Long expirationMicros = availableImages.get(image);
+        if (expirationMicros == null) {
+            return false;
+        }
+        if (expirationMicros < Utils.getSystemNowMicrosUtc()) {
+            availableImages.remove(image, expirationMicros);
+            return false;
+        }
+        return true;
+    }
+
+    void setImageAvailable(String image) {
+        availableImages.put(image, Utils.getSystemNowMicrosUtc() + IMAGE_CACHE_TTL_MICROS);
+    }
+
+    void invalidateImage(String image) {
+        availableImages.remove(image);
+    }
+
+    /**
+     * Pulls an image with the given function, unless a pull of the same image is already in
+     * progress, in which case <code>onShared</code> is called and the result of that pull is
+     * returned.
+     */
+    DeferredResult<Void> pullImage(String image, Supplier<DeferredResult<Void>> pull,
+            Runnable onShared) {
+        touch();
+        DeferredResult<Void> result;
+        synchronized (imagePulls) {
+            result = imagePulls.get(image);
+            if (result != null) {
+                onShared.run();
+                return result;
+            }
+            result = new DeferredResult<>();
+            imagePulls.put(image, result);
+        }
+
+        DeferredResult<Void> imagePull = result;
+        DeferredResult<Void> pulled;
+        try {
+            pulled = pull.get();
+        } catch (Throwable e) {
+            pulled = DeferredResult.failed(e);
+        }
+        pulled.whenComplete((ignore, e) -> {
+            synchronized (imagePulls) {
+                imagePulls.remove(image);
+            }
+            if (e != null) {
+                imagePull.fail(e);
+            } else {
+                imagePull.complete(null);
+            }
+        });
+        return imagePull;
+    }
+
+    /**
+     * Sends a command to the host once fewer than {@link #MAX_INFLIGHT_COMMANDS} commands are
+     * in flight.
+     */
+    void submit(CommandInput input, BiConsumer<CommandInput, CompletionHandler> command,
+            CompletionHandler completionHandler) {
+        submit(commands, input, command, completionHandler);
+    }
+
+    /**
+     * Sends an exec command to the host once fewer than {@link #MAX_INFLIGHT_EXECS} exec commands
+     * are in flight. Exec commands do not count against the limit of the other commands.
+     */
+    void submitExec(CommandInput input, BiConsumer<CommandInput, CompletionHandler> command,
+            CompletionHandler completionHandler) {
+        long startMicros = Utils.getSystemNowMicrosUtc();
+        submit(execs, input, command, (o, ex) -> {
+            long nowMicros = Utils.getSystemNowMicrosUtc();
+            synchronized (execLatency) {
+                execLatency.latestValue = nowMicros - startMicros;
+                execLatency.accumulatedValue += execLatency.latestValue;
+                execLatency.version++;
+                execLatency.lastUpdateMicrosUtc = nowMicros;
+            }
+            completionHandler.handle(o, ex);
+        });
+    }
+
+    /**
+     * Returns a copy of the stat of the exec command latency, whose latest value is the latency of
+     * the last exec and whose accumulated value divided by its version is the average latency.
+     */
+    ServiceStat getExecLatency() {
+        ServiceStat stat = new ServiceStat();
+        stat.unit = PhotonModelConstants.UNIT_MICROSECONDS;
+        synchronized (execLatency) {
+            stat.latestValue = execLatency.latestValue;
+            stat.accumulatedValue = execLatency.accumulatedValue;
+            stat.version = execLatency.version;
+            stat.lastUpdateMicrosUtc = execLatency.lastUpdateMicrosUtc;
+        }
+        return stat;
+    }
+
+    /**
+     * Inspects a container, sharing the result with the inspections of the same container
+     * requested before the command is sent to the host.
+     */
+    void inspectContainer(CommandInput input, String containerId,
+            BiConsumer<CommandInput, CompletionHandler> inspect,
+            CompletionHandler completionHandler) {
+        Inspection inspection;
+        synchronized (inspections) {
+            inspection = inspections.get(containerId);
+            if (inspection != null && !inspection.sent) {
+                inspection.waiting.add(completionHandler);
+                return;
+            }
+            // an inspection already sent is replaced, it completes independently
+            inspection = new Inspection();
+            inspections.put(containerId, inspection);
+        }
+
+        Inspection current = inspection;
+        submit(input, (i, handler) -> {
+            synchronized (inspections) {
+                current.sent = true;
+            }
+            inspect.accept(i, handler);
+        }, (o, ex) -> {
+            synchronized (inspections) {
+                inspections.remove(containerId, current);
+            }
+            completionHandler.handle(o, ex);
+            for (CompletionHandler handler : current.waiting) {
+                handler.handle(copyOf(o), ex);
+            }
+        });
+    }
+
+    private void submit(CommandLane lane, CommandInput input,
+            BiConsumer<CommandInput, CompletionHandler> command,
+            CompletionHandler completionHandler) {
+        touch();
+        synchronized (lane) {
+            if (lane.maxInflight > 0 && lane.inflight >= lane.maxInflight) {
+                lane.queued.add(() -> send(lane, input, command, completionHandler));
+                return;
+            }
+            lane.inflight++;
+        }
+        send(lane, input, command, completionHandler);
+    }
+
+    private void send(CommandLane lane, CommandInput input,
+            BiConsumer<CommandInput, CompletionHandler> command,
+            CompletionHandler completionHandler) {
+        AtomicBoolean completed = new AtomicBoolean();
+        try {
+            command.accept(input, (o, ex) -> {
+                if (completed.compareAndSet(false, true)) {
+                    release(lane);
+                }
+                if (ex != null && !isClientError(o)) {
+                    invalidateHostContext();
+                }
+                completionHandler.handle(o, ex);
+            });
+        } catch (Throwable e) {
+            if (completed.compareAndSet(false, true)) {
+                release(lane);
+            }
+            logger.log(Level.WARNING, String.format("Failure sending command to host %s: %s",
+                    hostLink, Utils.toString(e)));
+            completionHandler.handle(Operation.createGet(input.getDockerUri())
+                    .setStatusCode(Operation.STATUS_CODE_INTERNAL_ERROR), e);
+        }
+    }
+
+    private void release(CommandLane lane) {
+        Runnable next;
+        synchronized (lane) {
+            next = lane.queued.poll();
+            if (next == null) {
+                lane.inflight--;
+                return;
+            }
+        }
+        // the slot of the completed command is handed over to the queued one
+        next.run();
+    }
+
+    private static boolean isClientError(Operation o) {
+        return o != null && o.getStatusCode() >= Operation.STATUS_CODE_BAD_REQUEST
+                && o.getStatusCode() < Operation.STATUS_CODE_INTERNAL_ERROR;
+    }
+
+    /**
+     * Copies the response of a command for another consumer, since the consumers may modify the
+     * deserialized body.
+     */
+    private static Operation copyOf(Operation o) {
+        if (o == null) {
+            return null;
+        }
+        Operation copy = Operation.createGet(o.getUri())
+                .setStatusCode(o.getStatusCode())
+                .setContentType(o.getContentType());
+        Object body = o.getBodyRaw();
+        if (body instanceof String || body instanceof byte[]) {
+            copy.setBody(body);
+        } else if (body != null) {
+            copy.setBody(Utils.toJson(body))
+                    .setContentType(Operation.MEDIA_TYPE_APPLICATION_JSON);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.TransferProgressListener;
+import com.vmware.xenon.common.Operation;
+
+/**
+ * Streams tar payloads, i.e. image archives and build contexts, to the Docker API with chunked
+ * transfer encoding instead of sending them as request bodies, which are copied into the buffers
+ * of the service client and limited by its payload size. Files are transferred from their channel
+ * chunk by chunk, so the heap use does not depend on the size of the payload.
+ *
+ * The response of the Docker API, a stream of JSON progress events for image builds and loads,
+ * is reported line by line and only its tail is kept for the returned operation.
+ */
+class DockerTarStreamer {
+
+    public static final int CHUNK_SIZE = Integer.getInteger(
+            "adapter.docker.api.client.stream_chunk_size", 64 * 1024);
+
+    // the count of response characters kept for the returned operation
+    static final int MAX_RESPONSE_LENGTH = 64 * 1024;
+
+    private DockerTarStreamer() {
+    }
+
+    /**
+     * Returns the size of a payload, a byte[] or a {@link File}.
+     */
+    static long getSize(Object data) {
+        if (data instanceof byte[]) {
+            return ((byte[]) data).length;
+        }
+        if (data instanceof File) {
+            return ((File) data).length();
+        }
+        throw new IllegalArgumentException("Unsupported tar payload: "
+                + (data != null ? data.getClass().getName() : null));
+    }
+
+    /**
+     * Posts the payload with the given connection and returns the response. Blocks until the
+     * Docker API has completed the request.
+     */
+    static Operation post(URI uri, HttpURLConnection connection, Object data,
+            TransferProgressListener listener) throws IOException {
+        long size = getSize(data);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(CHUNK_SIZE);
+        connection.setRequestProperty(Operation.CONTENT_TYPE_HEADER,
+                RemoteApiDockerAdapterCommandExecutorImpl.MEDIA_TYPE_APPLICATION_TAR);
+
+        try (OutputStream out = connection.getOutputStream()) {
+            if (data instanceof File) {
+                writeFile((File) data, size, out, listener);
+            } else {
+                writeBytes((byte[]) data, out, listener);
+            }
+        }
+
+        int statusCode = connection.getResponseCode();
+        InputStream in = statusCode < Operation.STATUS_CODE_BAD_REQUEST
+                ? connection.getInputStream() : connection.getErrorStream();
+        StringBuilder body = new StringBuilder();
+        if (in != null) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        listener.onEvent(line);
+                    }
+                    body.append(line).append('\n');
+                    if (body.length() > MAX_RESPONSE_LENGTH) {
+                        body.delete(0, body.length() - MAX_RESPONSE_LENGTH);
+                    }
+                }
+            }
+        }
+
+        return Operation.createPost(uri)
+                .setStatusCode(statusCode)
+                .setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN)
+                .setBody(body.toString());
+    }
+
+    private static void writeFile(File file, long size, OutputStream out,
+            TransferProgressListener listener) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long sent = 0;
+            while (sent < size) {
+                long transferred = channel.transferTo(sent, Math.min(CHUNK_SIZE, size - sent),
+                        target);
+                if (transferred <= 0) {
+                    throw new EOFException(String.format("File %s truncated at %d of %d bytes",
+                            file, sent, size));
+                }
+                sent += transferred;
+                listener.onBytesSent(sent, size);
+            }
+        }
+    }
+
+    private static void writeBytes(byte[] data, OutputStream out,
+            TransferProgressListener listener) throws IOException {
+        int sent = 0;
+        while (sent < data.length) {
+            int length = Math.min(CHUNK_SIZE, data.length - sent);
+            out.write(data, sent, length);
+            sent += length;
+            listener.onBytesSent(sent, data.length);
+        }
+    }
+}
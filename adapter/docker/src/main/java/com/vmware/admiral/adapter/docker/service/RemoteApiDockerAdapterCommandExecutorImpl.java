@@ -29,8 +29,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -51,6 +53,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.yaml.snakeyaml.util.UriEncoder;
 
+import com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.TransferProgressListener;
 import com.vmware.admiral.adapter.docker.util.DockerStreamUtil;
 import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.ConfigurationUtil;
@@ -120,7 +123,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     private final ServiceClient serviceClient;
     // Used for commands like exec start
     private final ServiceClient attachServiceClient;
-    // Used for commands like load image from tar
+    // Used for commands with large payloads like image inspection, tars are streamed instead
     private final ServiceClient largeDataClient;
     // Used for storing the runnning threads which handles opened connections to hosts
     private volatile Map<String, Thread> runningThreads = new HashMap<>();
@@ -128,6 +131,11 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     private final DelegatingX509KeyManager keyManager = new DelegatingX509KeyManager();
     private ServerX509TrustManager trustManager;
 
+    // the SSL material last loaded in the key and trust managers for each trust alias, so that
+    // it is not parsed again for every command to the same host
+    private final Map<String, String> loadedTrustCertificates = new ConcurrentHashMap<>();
+    private final Map<String, String> loadedClientKeys = new ConcurrentHashMap<>();
+
     private final int DOCKER_REQUEST_PAYLOAD_SIZE_LIMIT = Integer.getInteger(
             "adapter.docker.api.client.request_payload_limit", 1024 * 1024 * 256);
 
@@ -209,10 +217,11 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         URI uri = UriUtils.extendUri(input.getDockerUri(), "/build");
 
         Map<String, Object> props = input.getProperties();
-        byte[] imageData = (byte[]) props.get(DockerAdapterCommandExecutor
+        Object imageData = props.remove(DockerAdapterCommandExecutor
                 .DOCKER_BUILD_IMAGE_DOCKERFILE_DATA);
+        TransferProgressListener progressListener = (TransferProgressListener) props.remove(
+                DOCKER_TRANSFER_PROGRESS_LISTENER_PROP_NAME);
 
-        props.remove(DockerAdapterCommandExecutor.DOCKER_BUILD_IMAGE_DOCKERFILE_DATA);
         props.remove(SSL_TRUST_ALIAS_PROP_NAME);
         props.remove(SSL_TRUST_CERT_PROP_NAME);
 
@@ -220,29 +229,37 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
 
         logger.info("Building image on: " + uri);
 
-        Operation op = Operation.createPost(uri)
-                .setBodyNoCloning(imageData)
-                .setContentType(MEDIA_TYPE_APPLICATION_TAR)
-                .setCompletion((o, ex) -> {
-                    String body = o.getBody(String.class);
-                    logger.info("Dump response body: " + body);
-                    if (ex == null) {
-                        // check the last status to make sure there was no error during download
-                        // the response is not valid json so this is hacky way to find out if there
-                        // was an error
-                        Matcher matcher = ERROR_PATTERN.matcher(body);
-                        if (matcher.find()) {
-                            logger.info("Build failure detected! Response Body: " + body);
-                            ex = new RuntimeException("Error: " + body);
-                        }
-                    } else {
-                        logger.severe("Unable to create image! Reason: " + ex.getMessage());
-                    }
-                    completionHandler.handle(o, ex);
-                });
+        // the response is not valid json so this is hacky way to find out if there was an
+        // error during the build
+        String[] error = new String[1];
+        TransferProgressListener errorListener = new TransferProgressListener() {
+            @Override
+            public void onBytesSent(long sentBytes, long totalBytes) {
+                if (progressListener != null) {
+                    progressListener.onBytesSent(sentBytes, totalBytes);
+                }
+            }
 
-        prepareRequest(op, true);
-        largeDataClient.send(op);
+            @Override
+            public void onEvent(String event) {
+                if (error[0] == null && ERROR_PATTERN.matcher(event).find()) {
+                    error[0] = event;
+                }
+                if (progressListener != null) {
+                    progressListener.onEvent(event);
+                }
+            }
+        };
+
+        sendTar(uri, input, imageData, errorListener, (o, ex) -> {
+            if (ex == null && error[0] != null) {
+                logger.info("Build failure detected! Response: " + error[0]);
+                ex = new RuntimeException("Error: " + error[0]);
+            } else if (ex != null) {
+                logger.severe("Unable to create image! Reason: " + ex.getMessage());
+            }
+            completionHandler.handle(o, ex);
+        });
 
         logger.info("Building image request sent.");
     }
@@ -279,7 +296,8 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         URI uri = UriUtils.extendUri(input.getDockerUri(), "/images/load");
         logger.info("Loading image: " + uri);
 
-        sendPost(uri, imageData, ClientMode.LARGE_DATA, completionHandler);
+        sendTar(uri, input, imageData, (TransferProgressListener) input.getProperties()
+                .get(DOCKER_TRANSFER_PROGRESS_LISTENER_PROP_NAME), completionHandler);
     }
 
     @Override
@@ -925,16 +943,28 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
             return;
         }
 
+        boolean cached = keyM == keyManager && trustM == trustManager;
         if (sslTrust != null && trustM != null) {
-            trustM.putDelegate(trustAlias, sslTrust);
+            if (!cached || !sslTrust.equals(loadedTrustCertificates.get(trustAlias))
+                    || trustM.getDelegate(trustAlias) == null) {
+                trustM.putDelegate(trustAlias, sslTrust);
+                if (cached) {
+                    loadedTrustCertificates.put(trustAlias, sslTrust);
+                }
+            }
         }
 
         if (input.getCredentials() == null) {
             return;
         }
 
-        String clientKey = EncryptionUtils.decrypt(input.getCredentials().privateKey);
         String clientCert = input.getCredentials().publicKey;
+        String keyMaterial = input.getCredentials().privateKey + "\n" + clientCert;
+        if (cached && keyMaterial.equals(loadedClientKeys.get(trustAlias))) {
+            return;
+        }
+
+        String clientKey = EncryptionUtils.decrypt(input.getCredentials().privateKey);
 
         // TODO use an LRU cache to limit the number of stored
         // KeyManagers while minimizing time wasted repeatedly
@@ -944,6 +974,9 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
                     .getKeyManagers(trustAlias, clientKey, clientCert)[0];
             keyM.putDelegate(trustAlias, delegateKeyManager);
         }
+        if (cached) {
+            loadedClientKeys.put(trustAlias, keyMaterial);
+        }
     }
 
     private boolean isSecure(URI dockerUri) {
@@ -1032,6 +1065,91 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         }
     }
 
+    /**
+     * Streams a tar payload to the Docker API on the connection thread pool, see
+     * {@link DockerTarStreamer}. The progress is logged and reported to the optional listener.
+     */
+    private void sendTar(URI uri, CommandInput input, Object data,
+            TransferProgressListener listener, CompletionHandler completionHandler) {
+        long size;
+        try {
+            size = DockerTarStreamer.getSize(data);
+        } catch (IllegalArgumentException e) {
+            completionHandler.handle(Operation.createPost(uri)
+                    .setStatusCode(Operation.STATUS_CODE_BAD_REQUEST), e);
+            return;
+        }
+
+        TransferProgressListener progressListener = new TransferProgressListener() {
+            private long reportedPercent = -1;
+
+            @Override
+            public void onBytesSent(long sentBytes, long totalBytes) {
+                long percent = totalBytes > 0 ? sentBytes * 100 / totalBytes : 100;
+                if (percent / 10 > reportedPercent / 10) {
+                    reportedPercent = percent;
+                    logger.info(String.format("Sent %d of %d bytes (%d%%) to %s", sentBytes,
+                            totalBytes, percent, uri));
+                }
+                if (listener != null) {
+                    listener.onBytesSent(sentBytes, totalBytes);
+                }
+            }
+
+            @Override
+            public void onEvent(String event) {
+                logger.fine(String.format("Progress of %s: %s", uri, event));
+                if (listener != null) {
+                    listener.onEvent(event);
+                }
+            }
+        };
+
+        // the completion is called with the authorization context of the caller
+        OperationContext callerContext = OperationContext.getOperationContext();
+        Runnable transfer = () -> {
+            Operation response;
+            Throwable failure = null;
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) openConnection(input, uri.toURL());
+                connection.setReadTimeout((int) TimeUnit.SECONDS.toMillis(
+                        DOCKER_IMAGE_REQUEST_TIMEOUT_SECONDS));
+                response = DockerTarStreamer.post(uri, connection, data, progressListener);
+                if (response.getStatusCode() >= Operation.STATUS_CODE_FAILURE_THRESHOLD) {
+                    failure = new IllegalStateException(String.format(
+                            "Request to %s failed with status %d: %s", uri,
+                            response.getStatusCode(), response.getBodyRaw()));
+                }
+            } catch (Throwable e) {
+                logger.warning(String.format("Failure streaming %d bytes to %s: %s", size, uri,
+                        Utils.toString(e)));
+                response = Operation.createPost(uri)
+                        .setStatusCode(Operation.STATUS_CODE_INTERNAL_ERROR);
+                failure = e;
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+
+            OperationContext threadContext = OperationContext.getOperationContext();
+            try {
+                OperationContext.restoreOperationContext(callerContext);
+                completionHandler.handle(response, failure);
+            } finally {
+                OperationContext.restoreOperationContext(threadContext);
+            }
+        };
+
+        try {
+            executor.execute(transfer);
+        } catch (RejectedExecutionException e) {
+            completionHandler.handle(Operation.createPost(uri)
+                    .setStatusCode(Operation.STATUS_CODE_UNAVAILABLE), e);
+        }
+    }
+
     private void setConnectionTag(AuthCredentialsServiceState credentials, Operation op) {
         // Avoid reusing an open channel to this host to ensure certs validation.
         if (credentials != null) {
@@ -13,15 +13,22 @@ package com.vmware.admiral.adapter.docker.mock;
 
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
 
 /**
  * Mock for servicing log requests for a container instance
  */
 public class MockDockerContainerLogsService extends StatelessService {
 
+    public static final String LOG_MESSAGE = "mock log message";
+    public static final String LOG_TIMESTAMP = "2018-01-01T10:00:00.123456789Z";
+
     @Override
     public void handleGet(Operation get) {
-        String logs = "mock log message";
+        String logs = LOG_MESSAGE;
+        if (Boolean.parseBoolean(UriUtils.parseUriQueryParams(get.getUri()).get("timestamps"))) {
+            logs = LOG_TIMESTAMP + " " + logs;
+        }
         get.setContentType("application/octet-stream");
         get.setBody(logs.getBytes());
         get.complete();
@@ -47,6 +47,7 @@ import org.junit.Test;
 import com.vmware.admiral.adapter.common.ContainerOperationType;
 import com.vmware.admiral.adapter.common.service.mock.MockTaskService.MockTaskState;
 import com.vmware.admiral.adapter.docker.mock.BaseMockDockerTestCase;
+import com.vmware.admiral.adapter.docker.mock.MockDockerContainerLogsService;
 import com.vmware.admiral.adapter.docker.mock.MockDockerPathConstants;
 import com.vmware.admiral.adapter.docker.util.DockerPortMapping.Protocol;
 import com.vmware.admiral.compute.ComputeConstants;
@@ -54,6 +55,7 @@ import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerLogService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.compute.container.PortBinding;
@@ -61,6 +63,8 @@ import com.vmware.admiral.compute.container.ServiceNetwork;
 import com.vmware.admiral.compute.container.maintenance.ContainerStats;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.admiral.service.common.LogService;
+import com.vmware.admiral.service.common.LogService.LogServiceState;
 import com.vmware.admiral.service.common.RegistryFactoryService;
 import com.vmware.admiral.service.common.RegistryService.RegistryState;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
@@ -71,10 +75,13 @@ import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.security.util.AuthCredentialsType;
 import com.vmware.photon.controller.model.security.util.CertificateUtil;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.AuthCredentialsService;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
 import com.vmware.xenon.services.common.FileContentService;
@@ -507,6 +514,40 @@ public class DockerAdapterServiceTest extends BaseMockDockerTestCase {
                 TaskState.TaskStage.FINISHED);
     }
 
+    @Test
+    public void testFetchContainerLogsIncrementally() throws Throwable {
+        String logLink = UriUtils.buildUriPath(LogService.FACTORY_LINK,
+                Service.getId(containerStateReference.getPath()));
+        Map<String, String> properties = new HashMap<>();
+        properties.put(ContainerLogService.INCREMENTAL_FETCH_PROP_NAME, Boolean.TRUE.toString());
+        sendFetchContainerLogRequest(properties);
+
+        waitFor(() -> getDocumentNoWait(LogServiceState.class, logLink) != null);
+        LogServiceState logState = getDocument(LogServiceState.class, logLink);
+        assertEquals(MockDockerContainerLogsService.LOG_MESSAGE, new String(logState.logs));
+        assertEquals(MockDockerContainerLogsService.LOG_TIMESTAMP, logState.lastTimestamp);
+
+        // the next fetch starts from the second of the last line, which is fetched again
+        properties.put(ContainerLogService.LAST_TIMESTAMP_PROP_NAME, logState.lastTimestamp);
+        sendFetchContainerLogRequest(properties);
+
+        long version = logState.documentVersion;
+        waitFor(() -> getDocument(LogServiceState.class, logLink).documentVersion > version);
+        logState = getDocument(LogServiceState.class, logLink);
+        assertEquals(MockDockerContainerLogsService.LOG_MESSAGE, new String(logState.logs));
+        assertEquals(MockDockerContainerLogsService.LOG_TIMESTAMP, logState.lastTimestamp);
+    }
+
+    @Test
+    public void testLogFetchSince() {
+        assertNull(DockerAdapterService.getLogFetchSince(null));
+        assertNull(DockerAdapterService.getLogFetchSince("invalid"));
+        assertEquals(1514800800L, (long) DockerAdapterService.getLogFetchSince(
+                MockDockerContainerLogsService.LOG_TIMESTAMP));
+        assertEquals(1514800800L, (long) DockerAdapterService.getLogFetchSince(
+                "2018-01-01T12:00:00.999+02:00"));
+    }
+
     @Test
     public void testInspectContainerWithRetry() throws Throwable {
         // verify container is running
@@ -672,6 +713,45 @@ public class DockerAdapterServiceTest extends BaseMockDockerTestCase {
         host.sendAndWaitExpectFailure(containerRequest, Operation.STATUS_CODE_INTERNAL_ERROR);
     }
 
+    @Test
+    public void testImagePullStatsAreReturnedWithGet() throws Throwable {
+        // the container of the test is created from an image pulled by tag
+        ServiceStats stats = getDocument(ServiceStats.class, dockerAdapterServiceUri);
+        ServiceStat pulls = stats.entries.get(DockerAdapterService.STAT_NAME_IMAGE_PULLS);
+        assertNotNull(pulls);
+        assertTrue(pulls.version >= 1);
+        assertNotNull(stats.entries.get(DockerAdapterService.STAT_NAME_IMAGE_PULL_WAIT_MICROS));
+    }
+
+    @Test
+    public void testExecLatencyIsDroppedWithIdlePipeline() throws Throwable {
+        createProvisioningTask();
+
+        ContainerInstanceRequest request = new ContainerInstanceRequest();
+        request.resourceReference = containerStateReference;
+        request.operationTypeId = ContainerOperationType.EXEC.id;
+        request.customProperties = new HashMap<>();
+        request.customProperties.put("command", "/foo/bar.sh");
+        request.customProperties.put(DOCKER_EXEC_ATTACH_STDERR_PROP_NAME, "true");
+        request.customProperties.put(DOCKER_EXEC_ATTACH_STDOUT_PROP_NAME, "true");
+        request.serviceTaskCallback = ServiceTaskCallback.create(provisioningTaskLink);
+
+        // the exec fails on the mock host, its latency is tracked nevertheless
+        host.sendAndWaitExpectFailure(Operation.createPatch(dockerAdapterServiceUri)
+                .setReferer(URI.create("/"))
+                .setBodyNoCloning(request), Operation.STATUS_CODE_INTERNAL_ERROR);
+
+        String statName = DockerAdapterService.getExecLatencyStatName(parentComputeStateLink);
+        ServiceStats stats = getDocument(ServiceStats.class, dockerAdapterServiceUri);
+        assertNotNull(stats.entries.get(statName));
+        assertEquals(1, stats.entries.get(statName).version);
+
+        dockerAdapterService.pruneIdlePipelines(Utils.getSystemNowMicrosUtc()
+                + DockerHostPipeline.IDLE_PIPELINE_EXPIRATION_MICROS + 1);
+        stats = getDocument(ServiceStats.class, dockerAdapterServiceUri);
+        assertNull(stats.entries.get(statName));
+    }
+
     @Test
     public void testInvalidOperationFail() throws Throwable {
 
@@ -814,6 +894,30 @@ public class DockerAdapterServiceTest extends BaseMockDockerTestCase {
         sendContainerRequest(ContainerOperationType.INSPECT);
     }
 
+    private void sendFetchContainerLogRequest(Map<String, String> properties) {
+        ContainerInstanceRequest request = new ContainerInstanceRequest();
+        request.resourceReference = containerStateReference;
+        request.operationTypeId = ContainerOperationType.FETCH_LOGS.id;
+        request.customProperties = new HashMap<>(properties);
+        request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
+
+        Operation fetchLogs = Operation
+                .createPatch(dockerAdapterServiceUri)
+                .setReferer(URI.create("/"))
+                .setBodyNoCloning(request)
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        host.failIteration(ex);
+                    }
+
+                    host.completeIteration();
+                });
+
+        host.testStart(1);
+        host.send(fetchLogs);
+        host.testWait();
+    }
+
     private void sendContainerRequest(ContainerOperationType type)
             throws Throwable {
 
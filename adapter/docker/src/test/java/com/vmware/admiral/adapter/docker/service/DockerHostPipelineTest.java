@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.CompletionHandler;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.Utils;
+
+public class DockerHostPipelineTest {
+
+    private static final URI DOCKER_URI = URI.create("https://127.0.0.1:2376");
+
+    private DockerHostPipeline pipeline;
+    private CommandInput input;
+    private List<CompletionHandler> sent;
+    private BiConsumer<CommandInput, CompletionHandler> command;
+
+    @Before
+    public void setUp() {
+        pipeline = new DockerHostPipeline("/resources/compute/test-host");
+        input = new CommandInput().withDockerUri(DOCKER_URI);
+        sent = new ArrayList<>();
+        command = (i, handler) -> sent.add(handler);
+    }
+
+    @Test
+    public void testInflightCommandsAreLimited() {
+        int commands = DockerHostPipeline.MAX_INFLIGHT_COMMANDS + 2;
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < commands; i++) {
+            pipeline.submit(input, command, (o, e) -> completed.incrementAndGet());
+        }
+        assertEquals(DockerHostPipeline.MAX_INFLIGHT_COMMANDS, sent.size());
+
+        sent.get(0).handle(createResponse(Operation.STATUS_CODE_OK), null);
+        assertEquals(1, completed.get());
+        assertEquals(DockerHostPipeline.MAX_INFLIGHT_COMMANDS + 1, sent.size());
+
+        for (int i = 1; i < sent.size(); i++) {
+            sent.get(i).handle(createResponse(Operation.STATUS_CODE_OK), null);
+        }
+        assertEquals(commands, sent.size());
+        assertEquals(commands, completed.get());
+    }
+
+    @Test
+    public void testExecsAreLimitedSeparately() {
+        int execs = DockerHostPipeline.MAX_INFLIGHT_EXECS + 1;
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < execs; i++) {
+            pipeline.submitExec(input, command, (o, e) -> completed.incrementAndGet());
+        }
+        assertEquals(DockerHostPipeline.MAX_INFLIGHT_EXECS, sent.size());
+
+        // other commands are not queued behind the execs
+        pipeline.submit(input, command, (o, e) -> completed.incrementAndGet());
+        assertEquals(DockerHostPipeline.MAX_INFLIGHT_EXECS + 1, sent.size());
+
+        sent.get(0).handle(createResponse(Operation.STATUS_CODE_OK), null);
+        assertEquals(1, completed.get());
+        assertEquals(DockerHostPipeline.MAX_INFLIGHT_EXECS + 2, sent.size());
+    }
+
+    @Test
+    public void testQueuedInspectionsAreCoalesced() {
+        for (int i = 0; i < DockerHostPipeline.MAX_INFLIGHT_COMMANDS; i++) {
+            pipeline.submit(input, command, (o, e) -> {
+            });
+        }
+
+        List<Map<?, ?>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pipeline.inspectContainer(input, "container-id", command,
+                    (o, e) -> results.add(o.getBody(Map.class)));
+        }
+        sent.get(0).handle(createResponse(Operation.STATUS_CODE_OK), null);
+        assertEquals(DockerHostPipeline.MAX_INFLIGHT_COMMANDS + 1, sent.size());
+
+        // an inspection requested once the queued one is sent does not share its result
+        AtomicInteger later = new AtomicInteger();
+        pipeline.inspectContainer(input, "container-id", command,
+                (o, e) -> later.incrementAndGet());
+
+        Operation response = createResponse(Operation.STATUS_CODE_OK)
+                .setBody("{\"Id\":\"container-id\"}")
+                .setContentType(Operation.MEDIA_TYPE_APPLICATION_JSON);
+        sent.get(DockerHostPipeline.MAX_INFLIGHT_COMMANDS).handle(response, null);
+        assertEquals(3, results.size());
+        for (Map<?, ?> result : results) {
+            assertEquals("container-id", result.get("Id"));
+        }
+        assertEquals(0, later.get());
+        assertEquals(DockerHostPipeline.MAX_INFLIGHT_COMMANDS + 2, sent.size());
+
+        sent.get(DockerHostPipeline.MAX_INFLIGHT_COMMANDS + 1).handle(response, null);
+        assertEquals(1, later.get());
+    }
+
+    @Test
+    public void testPipelineIsIdle() {
+        long idleMicros = Utils.getSystemNowMicrosUtc()
+                + DockerHostPipeline.IDLE_PIPELINE_EXPIRATION_MICROS + 1;
+        assertFalse(pipeline.isIdle(Utils.getSystemNowMicrosUtc()));
+        assertTrue(pipeline.isIdle(idleMicros));
+
+        pipeline.submit(input, command, (o, e) -> {
+        });
+        assertFalse(pipeline.isIdle(idleMicros
+                + DockerHostPipeline.IDLE_PIPELINE_EXPIRATION_MICROS));
+
+        sent.get(0).handle(createResponse(Operation.STATUS_CODE_OK), null);
+        assertTrue(pipeline.isIdle(idleMicros
+                + DockerHostPipeline.IDLE_PIPELINE_EXPIRATION_MICROS));
+    }
+
+    @Test
+    public void testExecLatencyIsTracked() {
+        assertEquals(0, pipeline.getExecLatency().version);
+
+        pipeline.submitExec(input, command, (o, e) -> {
+        });
+        pipeline.submitExec(input, command, (o, e) -> {
+        });
+        sent.get(0).handle(createResponse(Operation.STATUS_CODE_OK), null);
+        sent.get(1).handle(createResponse(Operation.STATUS_CODE_INTERNAL_ERROR),
+                new IllegalStateException("exec failed"));
+
+        ServiceStat latency = pipeline.getExecLatency();
+        assertEquals(2, latency.version);
+        assertTrue(latency.latestValue >= 0);
+        assertTrue(latency.accumulatedValue >= latency.latestValue);
+    }
+
+    @Test
+    public void testHostContextInvalidatedOnServerErrors() {
+        pipeline.setHostContext(new ComputeState(), input);
+        assertNotNull(pipeline.getHostContext());
+
+        pipeline.submit(input, command, (o, e) -> {
+        });
+        sent.get(0).handle(createResponse(Operation.STATUS_CODE_NOT_FOUND),
+                new IllegalStateException("not found"));
+        assertNotNull(pipeline.getHostContext());
+
+        pipeline.submit(input, command, (o, e) -> {
+        });
+        sent.get(1).handle(createResponse(Operation.STATUS_CODE_INTERNAL_ERROR),
+                new IllegalStateException("connection refused"));
+        assertNull(pipeline.getHostContext());
+    }
+
+    @Test
+    public void testConcurrentImagePullsAreShared() {
+        String image = "registry.hub.docker.com/library/alpine:latest";
+        List<DeferredResult<Void>> pulls = new ArrayList<>();
+        AtomicInteger shared = new AtomicInteger();
+        AtomicInteger pulled = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            pipeline.pullImage(image, () -> {
+                DeferredResult<Void> pull = new DeferredResult<>();
+                pulls.add(pull);
+                return pull;
+            }, shared::incrementAndGet).thenAccept(ignore -> pulled.incrementAndGet());
+        }
+        assertEquals(1, pulls.size());
+        assertEquals(2, shared.get());
+        assertFalse(pipeline.isImageAvailable(image));
+
+        pulls.get(0).complete(null);
+        assertEquals(3, pulled.get());
+
+        // the adapter decides which pulled images are cached
+        assertFalse(pipeline.isImageAvailable(image));
+        pipeline.setImageAvailable(image);
+        assertTrue(pipeline.isImageAvailable(image));
+
+        pipeline.invalidateImage(image);
+        assertFalse(pipeline.isImageAvailable(image));
+    }
+
+    @Test
+    public void testImageKeyIncludesRegistryCredentials() {
+        String image = "registry.hub.docker.com/library/alpine:latest";
+        assertEquals(image, DockerAdapterService.getImageKey(image, new CommandInput()));
+
+        String key = DockerAdapterService.getImageKey(image, new CommandInput()
+                .withProperty(DockerAdapterCommandExecutor.DOCKER_IMAGE_REGISTRY_AUTH, "auth"));
+        assertTrue(key.startsWith(image));
+        assertFalse(key.contains("auth"));
+        assertNotEquals(key, DockerAdapterService.getImageKey(image, new CommandInput()
+                .withProperty(DockerAdapterCommandExecutor.DOCKER_IMAGE_REGISTRY_AUTH,
+                        "other-auth")));
+    }
+
+    @Test
+    public void testFailedImagePullIsNotCached() {
+        String image = "registry.hub.docker.com/library/alpine:latest";
+        AtomicInteger failed = new AtomicInteger();
+        pipeline.pullImage(image, () -> DeferredResult.failed(new IllegalStateException()),
+                () -> {
+                }).exceptionally(e -> {
+                    failed.incrementAndGet();
+                    return null;
+                });
+        assertEquals(1, failed.get());
+        assertFalse(pipeline.isImageAvailable(image));
+    }
+
+    private static Operation createResponse(int statusCode) {
+        return Operation.createGet(DOCKER_URI).setStatusCode(statusCode);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.TransferProgressListener;
+import com.vmware.xenon.common.Operation;
+
+public class DockerTarStreamerTest {
+
+    private static final String PROGRESS = "{\"status\":\"Loading layer\"}\n"
+            + "{\"stream\":\"Loaded image: alpine:latest\"}\n";
+
+    private HttpServer server;
+    private URI uri;
+    private byte[] received;
+    private String transferEncoding;
+    private int statusCode = Operation.STATUS_CODE_OK;
+
+    private final List<Long> sentBytes = new ArrayList<>();
+    private final List<String> events = new ArrayList<>();
+    private final TransferProgressListener listener = new TransferProgressListener() {
+        @Override
+        public void onBytesSent(long sent, long total) {
+            sentBytes.add(sent);
+        }
+
+        @Override
+        public void onEvent(String event) {
+            events.add(event);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/images/load", exchange -> {
+            transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            received = body.toByteArray();
+
+            byte[] response = PROGRESS.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(statusCode, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/images/load");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testStreamFile() throws Exception {
+        byte[] data = new byte[3 * DockerTarStreamer.CHUNK_SIZE + 5];
+        new Random().nextBytes(data);
+        File file = File.createTempFile("image", ".tar");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+
+        Operation response = DockerTarStreamer.post(uri, openConnection(), file, listener);
+        assertTrue(file.delete());
+
+        assertEquals(Operation.STATUS_CODE_OK, response.getStatusCode());
+        assertEquals("chunked", transferEncoding);
+        assertArrayEquals(data, received);
+        assertEquals(4, sentBytes.size());
+        assertEquals(data.length, (long) sentBytes.get(sentBytes.size() - 1));
+        assertEquals(2, events.size());
+        assertEquals(PROGRESS, response.getBody(String.class));
+    }
+
+    @Test
+    public void testStreamBytes() throws Exception {
+        byte[] data = "build context".getBytes(StandardCharsets.UTF_8);
+
+        Operation response = DockerTarStreamer.post(uri, openConnection(), data, listener);
+
+        assertEquals(Operation.STATUS_CODE_OK, response.getStatusCode());
+        assertArrayEquals(data, received);
+        assertEquals(1, sentBytes.size());
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        statusCode = Operation.STATUS_CODE_INTERNAL_ERROR;
+
+        Operation response = DockerTarStreamer.post(uri, openConnection(), new byte[] { 1 },
+                listener);
+
+        assertEquals(Operation.STATUS_CODE_INTERNAL_ERROR, response.getStatusCode());
+        assertEquals(2, events.size());
+    }
+
+    private HttpURLConnection openConnection() throws Exception {
+        return (HttpURLConnection) uri.toURL().openConnection();
+    }
+}
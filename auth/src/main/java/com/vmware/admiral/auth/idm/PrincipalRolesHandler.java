@@ -24,6 +24,7 @@ import java.util.List;
 import com.vmware.admiral.auth.idm.Principal.PrincipalType;
 import com.vmware.admiral.auth.util.AuthUtil;
 import com.vmware.admiral.auth.util.PrincipalUtil;
+import com.vmware.admiral.auth.util.SecurityContextCache;
 import com.vmware.admiral.auth.util.UserGroupsUpdater;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
@@ -102,7 +103,9 @@ public class PrincipalRolesHandler {
                         return handleUserGroup();
                     }
                     return handleUser();
-                });
+                })
+                .whenComplete((ignore, ex) -> SecurityContextCache.invalidate(
+                        service.getHost()));
     }
 
     private DeferredResult<Void> handleUser() {
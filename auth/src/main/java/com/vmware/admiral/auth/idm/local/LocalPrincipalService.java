@@ -32,6 +32,7 @@ import java.util.stream.Collectors;
 
 import com.vmware.admiral.auth.idm.AuthConfigProvider.CredentialsScope;
 import com.vmware.admiral.auth.util.AuthUtil;
+import com.vmware.admiral.auth.util.SecurityContextCache;
 import com.vmware.admiral.auth.util.UserGroupsUpdater;
 import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.photon.controller.model.security.util.EncryptionUtils;
@@ -496,6 +497,7 @@ public class LocalPrincipalService extends StatefulService {
                         delete.fail(ex);
                         return;
                     }
+                    SecurityContextCache.invalidate(getHost());
                     super.handleDelete(delete);
                 });
 
@@ -533,6 +535,7 @@ public class LocalPrincipalService extends StatefulService {
                 delete.fail(ex);
                 return;
             }
+            SecurityContextCache.invalidate(getHost());
             super.handleDelete(delete);
         });
     }
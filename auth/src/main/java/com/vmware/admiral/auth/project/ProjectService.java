@@ -33,6 +33,7 @@ import com.vmware.admiral.auth.idm.Principal;
 import com.vmware.admiral.auth.project.ProjectRolesHandler.ProjectRoles;
 import com.vmware.admiral.auth.util.AuthUtil;
 import com.vmware.admiral.auth.util.ProjectUtil;
+import com.vmware.admiral.auth.util.SecurityContextCache;
 import com.vmware.admiral.auth.util.SecurityContextUtil;
 import com.vmware.admiral.auth.util.UserGroupsUpdater;
 import com.vmware.admiral.common.serialization.ReleaseConstants;
@@ -465,6 +466,7 @@ public class ProjectService extends StatefulService {
                         patch.fail(ex);
                         return;
                     }
+                    SecurityContextCache.invalidate(getHost());
                     patch.complete();
                 });
     }
@@ -515,6 +517,7 @@ public class ProjectService extends StatefulService {
             handleProjectIndex(index, putState);
             setState(put, putState);
             put.setBody(putState);
+            SecurityContextCache.invalidate(getHost());
             put.complete();
         });
     }
@@ -621,6 +624,7 @@ public class ProjectService extends StatefulService {
                         delete.fail(error);
                         return;
                     }
+                    SecurityContextCache.invalidate(getHost());
                     super.handleDelete(delete);
                 });
     }
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.vmware.admiral.auth.idm.SecurityContext;
+import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.RoleService.RoleState;
+import com.vmware.xenon.services.common.UserGroupService.UserGroupState;
+import com.vmware.xenon.services.common.UserService.UserState;
+
+/**
+ * Node local cache of {@link SecurityContext}s keyed by principal id. Concurrent lookups for the
+ * same principal share a single load. The whole cache is invalidated whenever a user, user group,
+ * role or project changes, since any of those may affect the roles of arbitrary principals.
+ * Entries additionally expire after a configurable period in order to pick up changes made in
+ * external identity providers.
+ *
+ * Changes made through the role, user group and project write paths of this node invalidate the
+ * cache synchronously with {@link #invalidate(ServiceHost)} before the write completes, so that a
+ * revoked role is not served once the write has returned. The continuous query covers the
+ * changes made on other nodes, which take effect once the notification is received.
+ *
+ * The cache of a host is removed when the host stops, together with the
+ * {@link SecurityContextCacheService} started with it.
+ */
+public class SecurityContextCache {
+
+    public static final String CACHE_ENABLED_PROPERTY =
+            "com.vmware.admiral.auth.security.context.cache.enabled";
+
+    private static final long CACHE_TTL_MICROS = TimeUnit.SECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.auth.security.context.cache.ttl.seconds", 60));
+    private static final int CACHE_MAX_SIZE = Integer.getInteger(
+            "com.vmware.admiral.auth.security.context.cache.max.size", 10000);
+
+    private static final String CONTINUOUS_QUERY_NAME = "security-context-cache";
+
+    // host id -> cache of the host, removed when the host stops
+    private static final Map<String, SecurityContextCache> CACHES = new ConcurrentHashMap<>();
+
+    private static class CacheEntry {
+        final DeferredResult<SecurityContext> result;
+        final long generation;
+        final long expirationMicros;
+
+        CacheEntry(DeferredResult<SecurityContext> result, long generation) {
+            this.result = result;
+            this.generation = generation;
+            this.expirationMicros = Utils.fromNowMicrosUtc(CACHE_TTL_MICROS);
+        }
+    }
+
+    private final ServiceHost host;
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private volatile boolean enabled = Boolean.parseBoolean(
+            System.getProperty(CACHE_ENABLED_PROPERTY, Boolean.TRUE.toString()));
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * Removes the cache of the host it is started on when the host stops.
+     */
+    public static class SecurityContextCacheService extends StatelessService {
+        public static final String SELF_LINK = ManagementUriParts.SECURITY_CONTEXT_CACHE;
+
+        private final SecurityContextCache cache;
+
+        SecurityContextCacheService(SecurityContextCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public void handleStop(Operation delete) {
+            CACHES.remove(getHost().getId(), cache);
+            super.handleStop(delete);
+        }
+    }
+
+    private SecurityContextCache(ServiceHost host) {
+        this.host = host;
+    }
+
+    /**
+     * Starts the cache for the given host and subscribes it for changes of the authorization
+     * related documents. Must be called with the system authorization context.
+     */
+    public static void start(ServiceHost host) {
+        SecurityContextCache cache = new SecurityContextCache(host);
+        if (CACHES.putIfAbsent(host.getId(), cache) != null) {
+            return;
+        }
+        host.startService(Operation.createPost(
+                UriUtils.buildUri(host, SecurityContextCacheService.SELF_LINK)),
+                new SecurityContextCacheService(cache));
+        cache.subscribe();
+    }
+
+    /**
+     * Returns the cache for the given host or <code>null</code> if it has not been started.
+     */
+    public static SecurityContextCache getInstance(ServiceHost host) {
+        return CACHES.get(host.getId());
+    }
+
+    /**
+     * Returns the cached {@link SecurityContext} for the given principal or loads it with the
+     * given loader when the cache is disabled or not started on the given host.
+     */
+    public static DeferredResult<SecurityContext> getSecurityContext(ServiceHost host,
+            String principalId, Supplier<DeferredResult<SecurityContext>> loader) {
+        SecurityContextCache cache = getInstance(host);
+        if (cache == null) {
+            return loader.get();
+        }
+        return cache.get(principalId, loader);
+    }
+
+    /**
+     * Invalidates the cache of the given host, if started. Called by the local write paths of
+     * roles, user groups and projects once the write is done, so that the new roles are effective
+     * without waiting for the continuous query notification.
+     */
+    public static void invalidate(ServiceHost host) {
+        SecurityContextCache cache = getInstance(host);
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the cached {@link SecurityContext} for the given principal or loads it with the
+     * given loader. The returned context is a copy and can be modified by the caller.
+     */
+    public DeferredResult<SecurityContext> get(String principalId,
+            Supplier<DeferredResult<SecurityContext>> loader) {
+        if (!enabled || principalId == null) {
+            return loader.get();
+        }
+
+        long now = Utils.getSystemNowMicrosUtc();
+        CacheEntry entry = entries.get(principalId);
+        if (entry != null && entry.expirationMicros > now) {
+            hitCount.incrementAndGet();
+            return entry.result.thenApply(Utils::clone);
+        }
+
+        missCount.incrementAndGet();
+        if (entries.size() >= CACHE_MAX_SIZE) {
+            invalidateAll();
+        }
+
+        CacheEntry newEntry = new CacheEntry(new DeferredResult<>(), generation.get());
+        CacheEntry current = entry == null
+                ? entries.putIfAbsent(principalId, newEntry)
+                : (entries.replace(principalId, entry, newEntry) ? null
+                        : entries.get(principalId));
+        if (current != null) {
+            // another lookup for the same principal is already loading it, share its result
+            return current.result.thenApply(Utils::clone);
+        }
+
+        loader.get().whenComplete((context, ex) -> {
+            if (ex != null || newEntry.generation != generation.get()) {
+                // do not cache failures and contexts loaded before an invalidation
+                entries.remove(principalId, newEntry);
+            }
+            if (ex != null) {
+                newEntry.result.fail(ex);
+            } else {
+                newEntry.result.complete(context);
+            }
+        });
+
+        return newEntry.result.thenApply(Utils::clone);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidationCount.incrementAndGet();
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void subscribe() {
+        if (subscribed.getAndSet(true)) {
+            return;
+        }
+        host.log(Level.INFO, "Starting security context cache");
+
+        Query query = Query.Builder.create()
+                .addInClause(ServiceDocument.FIELD_NAME_KIND, Arrays.asList(
+                        Utils.buildKind(UserState.class),
+                        Utils.buildKind(UserGroupState.class),
+                        Utils.buildKind(RoleState.class),
+                        Utils.buildKind(ProjectState.class)))
+                .build();
+
+        CommonContinuousQueries.subscribeTo(host, CONTINUOUS_QUERY_NAME, query,
+                this::onAuthStateChange);
+    }
+
+    private void onAuthStateChange(Operation op) {
+        op.complete();
+        if (entries.isEmpty()) {
+            return;
+        }
+        host.log(Level.FINE, "Authorization state changed, invalidating %d security contexts",
+                entries.size());
+        invalidateAll();
+    }
+}
@@ -43,12 +43,17 @@ public class SecurityContextUtil {
     }
 
     /**
-     * Gets the {@link SecurityContext} for the denoted user
+     * Gets the {@link SecurityContext} for the denoted user. The context is served from the node
+     * local {@link SecurityContextCache} when available.
      */
     public static DeferredResult<SecurityContext> getSecurityContext(Service requestorService,
             Operation requestorOperation, String userId) {
+        return SecurityContextCache.getSecurityContext(requestorService.getHost(), userId,
+                () -> loadSecurityContext(requestorService, requestorOperation, userId));
+    }
 
-
+    private static DeferredResult<SecurityContext> loadSecurityContext(Service requestorService,
+            Operation requestorOperation, String userId) {
         return PrincipalUtil.getPrincipal(requestorService, requestorOperation, encode(userId))
                 .thenCompose(principal -> PrincipalRolesUtil.getAllRolesForPrincipal(
                         requestorService, requestorOperation, principal))
@@ -123,8 +123,10 @@ public class UserGroupsUpdater {
             }
         }
 
-        return DeferredResult.allOf(usersResults).thenAccept((ignore) -> {
-        });
+        return DeferredResult.allOf(usersResults)
+                .whenComplete((ignore, ex) -> SecurityContextCache.invalidate(service.getHost()))
+                .thenAccept((ignore) -> {
+                });
     }
 
     // TODO: Create the user if not exist.
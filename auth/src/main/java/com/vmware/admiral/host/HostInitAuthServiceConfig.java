@@ -26,6 +26,7 @@ import com.vmware.admiral.auth.idm.SessionService;
 import com.vmware.admiral.auth.idm.content.AuthContentService;
 import com.vmware.admiral.auth.idm.local.LocalPrincipalFactoryService;
 import com.vmware.admiral.auth.project.ProjectFactoryService;
+import com.vmware.admiral.auth.util.SecurityContextCache;
 import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.service.common.AuthBootstrapService;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
@@ -72,6 +73,8 @@ public class HostInitAuthServiceConfig extends HostInitServiceHelper {
         startServiceFactories(host,
                 AuthBootstrapService.class);
 
+        SecurityContextCache.start(host);
+
         // start initialization of system documents
         host.sendRequest(Operation
                 .createPost(UriUtils.buildUri(host, AuthInitialBootService.class))
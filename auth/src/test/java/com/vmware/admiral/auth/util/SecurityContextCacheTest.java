@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.auth.AuthBaseTest;
+import com.vmware.admiral.auth.idm.AuthRole;
+import com.vmware.admiral.auth.idm.PrincipalRolesHandler.PrincipalRoleAssignment;
+import com.vmware.admiral.auth.idm.PrincipalService;
+import com.vmware.admiral.auth.idm.SecurityContext;
+import com.vmware.admiral.auth.project.ProjectRolesHandler.ProjectRoles;
+import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.admiral.auth.util.SecurityContextCache.SecurityContextCacheService;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+
+public class SecurityContextCacheTest extends AuthBaseTest {
+
+    private SecurityContextCache cache;
+
+    @Before
+    public void setUp() {
+        cache = SecurityContextCache.getInstance(host);
+        assertNotNull(cache);
+        cache.setEnabled(true);
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        DeferredResult<SecurityContext> pending = new DeferredResult<>();
+
+        DeferredResult<SecurityContext> first = cache.get("test-principal", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        DeferredResult<SecurityContext> second = cache.get("test-principal", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+
+        SecurityContext context = new SecurityContext();
+        context.id = "test-principal";
+        context.roles = Collections.singleton(AuthRole.BASIC_USER);
+        pending.complete(context);
+
+        assertEquals(1, loads.get());
+        assertEquals(context.id, getResult(first).id);
+        assertEquals(context.id, getResult(second).id);
+
+        // subsequent lookups are served from the cache
+        DeferredResult<SecurityContext> third = cache.get("test-principal", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        assertEquals(context.id, getResult(third).id);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testCacheIsInvalidatedOnProjectRolesChange() throws Throwable {
+        Operation testOperationByAdmin = createAuthorizedOperation(
+                host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN)));
+        host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN2));
+
+        ProjectState project = createProject("cached-project");
+        assertNotNull(project.documentSelfLink);
+
+        SecurityContext context = getResult(SecurityContextUtil.getSecurityContext(
+                privilegedTestService, testOperationByAdmin));
+        assertTrue(context.projects.stream()
+                .noneMatch(p -> project.documentSelfLink.equals(p.documentSelfLink)));
+
+        long hits = cache.getHitCount();
+        getResult(SecurityContextUtil.getSecurityContext(privilegedTestService,
+                testOperationByAdmin));
+        assertEquals(hits + 1, cache.getHitCount());
+
+        ProjectRoles projectRoles = new ProjectRoles();
+        PrincipalRoleAssignment admins = new PrincipalRoleAssignment();
+        admins.add = Collections.singletonList(USER_EMAIL_ADMIN);
+        projectRoles.administrators = admins;
+        doPatch(projectRoles, project.documentSelfLink);
+
+        // the local write invalidates the cache before it completes, no need to wait for the
+        // continuous query notification
+        context = getResult(SecurityContextUtil.getSecurityContext(privilegedTestService,
+                testOperationByAdmin));
+        assertTrue(context.isProjectAdmin(project.documentSelfLink));
+
+        projectRoles = new ProjectRoles();
+        admins = new PrincipalRoleAssignment();
+        admins.remove = Collections.singletonList(USER_EMAIL_ADMIN);
+        projectRoles.administrators = admins;
+        doPatch(projectRoles, project.documentSelfLink);
+
+        context = getResult(SecurityContextUtil.getSecurityContext(privilegedTestService,
+                testOperationByAdmin));
+        assertFalse(context.isProjectAdmin(project.documentSelfLink));
+    }
+
+    @Test
+    public void testRevokedCloudAdminRoleIsEffectiveImmediately() throws Throwable {
+        Operation testOperationByBasicUser = createAuthorizedOperation(
+                host.assumeIdentity(buildUserServicePath(USER_EMAIL_BASIC_USER)));
+        host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN));
+
+        SecurityContext context = getResult(SecurityContextUtil.getSecurityContext(
+                privilegedTestService, testOperationByBasicUser));
+        assertFalse(context.isCloudAdmin());
+
+        String rolesLink = UriUtils.buildUriPath(PrincipalService.SELF_LINK,
+                USER_EMAIL_BASIC_USER, "roles");
+        PrincipalRoleAssignment roleAssignment = new PrincipalRoleAssignment();
+        roleAssignment.add = Collections.singletonList(AuthRole.CLOUD_ADMIN.name());
+        doPatch(roleAssignment, rolesLink);
+
+        context = getResult(SecurityContextUtil.getSecurityContext(privilegedTestService,
+                testOperationByBasicUser));
+        assertTrue(context.isCloudAdmin());
+
+        roleAssignment = new PrincipalRoleAssignment();
+        roleAssignment.remove = Collections.singletonList(AuthRole.CLOUD_ADMIN.name());
+        doPatch(roleAssignment, rolesLink);
+
+        context = getResult(SecurityContextUtil.getSecurityContext(privilegedTestService,
+                testOperationByBasicUser));
+        assertFalse(context.isCloudAdmin());
+    }
+
+    @Test
+    public void testCacheIsToggledAndRemovedPerHost() throws Throwable {
+        cache.setEnabled(false);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("test-principal", () -> {
+            loads.incrementAndGet();
+            return DeferredResult.completed(new SecurityContext());
+        });
+        assertEquals(0, cache.size());
+        assertEquals(1, loads.get());
+
+        // the cache is removed when its service is stopped, e.g. with the host
+        doDelete(UriUtils.buildUri(host, SecurityContextCacheService.SELF_LINK), false);
+        waitFor(() -> SecurityContextCache.getInstance(host) == null);
+    }
+
+    private SecurityContext getResult(DeferredResult<SecurityContext> result) {
+        final SecurityContext[] context = new SecurityContext[1];
+        TestContext ctx = testCreate(1);
+        result.whenComplete((securityContext, ex) -> {
+            if (ex != null) {
+                ctx.failIteration(ex);
+                return;
+            }
+            context[0] = securityContext;
+            ctx.completeIteration();
+        });
+        ctx.await();
+        return context[0];
+    }
+}
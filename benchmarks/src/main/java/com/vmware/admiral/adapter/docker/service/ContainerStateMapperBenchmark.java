@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.benchmark.BenchmarkFixtures;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Measures mapping of a Docker container inspect response to a {@link ContainerState}, which is
+ * done for every container on every data collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ContainerStateMapperBenchmark {
+
+    private String inspectJson;
+    private Map<String, Object> inspectProperties;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        inspectJson = BenchmarkFixtures.loadResource(BenchmarkFixtures.CONTAINER_INSPECT_JSON);
+        inspectProperties = Utils.fromJson(inspectJson, Map.class);
+    }
+
+    @Benchmark
+    public ContainerState propertiesToContainerState() {
+        ContainerState containerState = new ContainerState();
+        ContainerStateMapper.propertiesToContainerState(containerState, inspectProperties);
+        return containerState;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public ContainerState parseAndMapInspectResponse() {
+        ContainerState containerState = new ContainerState();
+        ContainerStateMapper.propertiesToContainerState(containerState,
+                Utils.fromJson(inspectJson, Map.class));
+        return containerState;
+    }
+}
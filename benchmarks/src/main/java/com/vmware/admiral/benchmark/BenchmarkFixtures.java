@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+/**
+ * Fixtures shared by the benchmarks.
+ */
+public class BenchmarkFixtures {
+
+    public static final String CONTAINER_INSPECT_JSON = "/fixtures/container-inspect.json";
+    public static final String WORDPRESS_TEMPLATE_YAML = "/fixtures/wordpress-with-bindings.yaml";
+
+    private BenchmarkFixtures() {
+    }
+
+    public static String loadResource(String name) {
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing fixture " + name);
+            }
+            try (Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+                return scanner.useDelimiter("\\A").next();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load fixture " + name, e);
+        }
+    }
+
+    /**
+     * Builds a composite template with the given number of application tiers. Every tier has a
+     * web container which binds to the address and settings of its database container, similar
+     * to the WordPress with MySQL template repeated <code>tiers</code> times.
+     */
+    public static String compositeTemplateYaml(int tiers) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("---\n")
+                .append("name: benchmark-").append(tiers).append('\n')
+                .append("properties:\n")
+                .append("  _leaseDays: 3\n")
+                .append("components:\n");
+        for (int i = 0; i < tiers; i++) {
+            String db = "mysql-" + i;
+            sb.append("  wordpress-").append(i).append(":\n")
+                    .append("    type: App.Container\n")
+                    .append("    data:\n")
+                    .append("      name: wordpress-").append(i).append('\n')
+                    .append("      image: wordpress:4.3.1\n")
+                    .append("      restart_policy: ${").append(db).append("~restart_policy}\n")
+                    .append("      memory_limit: ${").append(db).append("~memory_limit}\n")
+                    .append("      _cluster: 2\n")
+                    .append("      env:\n")
+                    .append("      - var: WORDPRESS_DB_PASSWORD\n")
+                    .append("        value: pass@word01\n")
+                    .append("      - var: WORDPRESS_DB_NAME\n")
+                    .append("        value: wordpress\n")
+                    .append("      - var: WORDPRESS_DB_HOST\n")
+                    .append("        value: ${_resource~").append(db).append("~address}:3306\n")
+                    .append("      ports:\n")
+                    .append("      - container_port: \"80\"\n")
+                    .append("      depends_on:\n")
+                    .append("      - ").append(db).append('\n');
+            sb.append("  ").append(db).append(":\n")
+                    .append("    type: App.Container\n")
+                    .append("    data:\n")
+                    .append("      name: ").append(db).append('\n')
+                    .append("      image: mariadb:10.0.26\n")
+                    .append("      restart_policy: \"no\"\n")
+                    .append("      memory_limit: 536870912\n")
+                    .append("      env:\n")
+                    .append("      - var: MYSQL_ROOT_PASSWORD\n")
+                    .append("        value: pass@word01\n")
+                    .append("      ports:\n")
+                    .append("      - container_port: \"3306\"\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.photon.controller.model.security.util.CertificateUtil;
+
+/**
+ * Measures the verification of a server certificate chain by the
+ * {@link DelegatingX509TrustManager} as the number of trusted certificates, each one in its own
+ * delegate as loaded by the {@link ServerX509TrustManager}, grows. The chain is signed by the
+ * last trusted certificate. The trusted chain is verified with and without the cache of the
+ * validated certificates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class DelegatingX509TrustManagerBenchmark {
+
+    private static final String SIGNING_ALGORITHM = "SHA256withECDSA";
+    private static final String AUTH_TYPE = "ECDHE_ECDSA";
+
+    @Param({ "10", "100", "1000", "2000" })
+    public int certificates;
+
+    private DelegatingX509TrustManager trustManager;
+    private DelegatingX509TrustManager uncachedTrustManager;
+    private X509Certificate[] trustedChain;
+    private X509Certificate[] untrustedChain;
+
+    @Setup
+    public void setUp() throws Exception {
+        trustManager = new DelegatingX509TrustManager();
+        uncachedTrustManager = new DelegatingX509TrustManager(0);
+
+        KeyPair caKeyPair = null;
+        X509Certificate caCertificate = null;
+        for (int i = 0; i < certificates; i++) {
+            caKeyPair = generateKeyPair();
+            caCertificate = generateCertificate("CN=trusted-ca-" + i, caKeyPair,
+                    "CN=trusted-ca-" + i, caKeyPair.getPrivate(), true);
+            X509TrustManager delegate = createTrustManager(caCertificate);
+            trustManager.putDelegate("ca-" + i, delegate);
+            uncachedTrustManager.putDelegate("ca-" + i, delegate);
+        }
+
+        KeyPair serverKeyPair = generateKeyPair();
+        trustedChain = new X509Certificate[] {
+                generateCertificate("CN=trusted-server", serverKeyPair,
+                        "CN=trusted-ca-" + (certificates - 1), caKeyPair.getPrivate(), false),
+                caCertificate };
+
+        KeyPair untrustedKeyPair = generateKeyPair();
+        untrustedChain = new X509Certificate[] {
+                generateCertificate("CN=untrusted-server", untrustedKeyPair,
+                        "CN=untrusted-server", untrustedKeyPair.getPrivate(), false) };
+    }
+
+    @Benchmark
+    public void checkTrusted() throws CertificateException {
+        trustManager.checkServerTrusted(trustedChain, AUTH_TYPE);
+    }
+
+    @Benchmark
+    public void checkTrustedUncached() throws CertificateException {
+        uncachedTrustManager.checkServerTrusted(trustedChain, AUTH_TYPE);
+    }
+
+    @Benchmark
+    public CertificateException checkUntrusted() {
+        try {
+            trustManager.checkServerTrusted(untrustedChain, AUTH_TYPE);
+            throw new IllegalStateException("Untrusted certificate accepted");
+        } catch (CertificateException e) {
+            return e;
+        }
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        return generator.generateKeyPair();
+    }
+
+    private static X509Certificate generateCertificate(String subject, KeyPair keyPair,
+            String issuer, PrivateKey issuerKey, boolean ca) throws Exception {
+        long now = System.currentTimeMillis();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name(issuer), BigInteger.valueOf(System.nanoTime()),
+                new Date(now - TimeUnit.DAYS.toMillis(1)),
+                new Date(now + TimeUnit.DAYS.toMillis(365)),
+                new X500Name(subject), keyPair.getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+        return new JcaX509CertificateConverter().getCertificate(builder.build(
+                new JcaContentSignerBuilder(SIGNING_ALGORITHM).build(issuerKey)));
+    }
+
+    private static X509TrustManager createTrustManager(X509Certificate certificate)
+            throws Exception {
+        KeyStore store = CertificateUtil.createEmptyKeyStore();
+        store.setCertificateEntry("trusted", certificate);
+        return (X509TrustManager) CertificateUtil.getTrustManagers(store)[0];
+    }
+}
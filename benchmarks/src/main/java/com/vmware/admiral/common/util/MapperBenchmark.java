@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.benchmark.BenchmarkFixtures;
+
+/**
+ * Measures the {@link JsonMapper} and {@link YamlMapper} conversions on a Docker inspect
+ * response and a composite template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MapperBenchmark {
+
+    private String json;
+    private String yaml;
+    private Map<?, ?> document;
+
+    @Setup
+    public void setUp() throws IOException {
+        json = BenchmarkFixtures.loadResource(BenchmarkFixtures.CONTAINER_INSPECT_JSON);
+        yaml = BenchmarkFixtures.loadResource(BenchmarkFixtures.WORDPRESS_TEMPLATE_YAML);
+        document = JsonMapper.fromJSON(json, Map.class);
+    }
+
+    @Benchmark
+    public Map<?, ?> jsonFromJson() throws IOException {
+        return JsonMapper.fromJSON(json, Map.class);
+    }
+
+    @Benchmark
+    public String jsonToJson() throws IOException {
+        return JsonMapper.toJSON(document);
+    }
+
+    @Benchmark
+    public String yamlFromYamlToJson() throws IOException {
+        return YamlMapper.fromYamlToJson(yaml);
+    }
+
+    @Benchmark
+    public String yamlFromJsonToYaml() throws IOException {
+        return YamlMapper.fromJsonToYaml(json);
+    }
+}
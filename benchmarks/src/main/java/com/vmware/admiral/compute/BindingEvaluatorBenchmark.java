@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.benchmark.BenchmarkFixtures;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.content.Binding;
+import com.vmware.admiral.compute.content.Binding.BindingPlaceholder;
+import com.vmware.admiral.compute.content.CompositeTemplate;
+import com.vmware.admiral.compute.content.CompositeTemplateUtil;
+import com.vmware.admiral.compute.content.NestedState;
+import com.vmware.admiral.host.HostInitComputeServicesConfig;
+
+/**
+ * Measures the evaluation of design time bindings of a whole template and of provisioning time
+ * bindings of a single provisioned component, as done by the composition sub-tasks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class BindingEvaluatorBenchmark {
+
+    private static final String PROVISIONED_COMPONENT_NAME = "mysql";
+
+    // source and target fields of the provisioning time bindings, used round robin
+    private static final List<String> BOUND_FIELDS = Arrays.asList(
+            ContainerState.FIELD_NAME_PARENT_LINK, "address", "status", "volumeDriver",
+            "groupResourcePlacementLink");
+
+    @State(Scope.Benchmark)
+    public static class TemplateFixture {
+        @Param({ "1", "10", "50" })
+        public int tiers;
+
+        String templateYaml;
+
+        @Setup
+        public void setUp() {
+            HostInitComputeServicesConfig.initCompositeComponentRegistry();
+            templateYaml = BenchmarkFixtures.compositeTemplateYaml(tiers);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ProvisioningFixture {
+        @Param({ "5", "50", "200" })
+        public int bindings;
+
+        NestedState provisionedState;
+        List<Binding> provisioningTimeBindings;
+        CompiledBindings compiledBindings;
+        Map<String, NestedState> provisionedResources;
+
+        @Setup
+        public void setUp() {
+            HostInitComputeServicesConfig.initCompositeComponentRegistry();
+
+            ContainerState mysql = new ContainerState();
+            mysql.parentLink = "/resources/compute/docker-host-1";
+            mysql.address = "10.23.47.158";
+            mysql.status = "Up 2 minutes";
+            mysql.volumeDriver = "local";
+            mysql.groupResourcePlacementLink = "/resources/group-placements/default";
+            provisionedResources = new HashMap<>();
+            provisionedResources.put(PROVISIONED_COMPONENT_NAME, new NestedState(mysql));
+
+            provisioningTimeBindings = new ArrayList<>();
+            for (int i = 0; i < bindings; i++) {
+                String field = BOUND_FIELDS.get(i % BOUND_FIELDS.size());
+                String placeholder = "_resource~" + PROVISIONED_COMPONENT_NAME + "~" + field;
+                provisioningTimeBindings.add(new Binding(Arrays.asList(field),
+                        String.format("${%s}", placeholder),
+                        new BindingPlaceholder(placeholder)));
+            }
+            compiledBindings = CompiledBindings.compile(provisioningTimeBindings);
+
+            ContainerState wordpress = new ContainerState();
+            wordpress.names = Arrays.asList("wordpress");
+            wordpress.image = "wordpress:4.3.1";
+            provisionedState = new NestedState(wordpress);
+        }
+    }
+
+    /**
+     * The evaluation modifies the template, so it is deserialized on every invocation. See
+     * CompositeTemplateUtilBenchmark for the cost of the deserialization alone.
+     */
+    @Benchmark
+    public CompositeTemplate evaluateBindings(TemplateFixture fixture) throws IOException {
+        CompositeTemplate template = CompositeTemplateUtil
+                .deserializeCompositeTemplate(fixture.templateYaml);
+        BindingEvaluator.evaluateBindings(template);
+        return template;
+    }
+
+    @Benchmark
+    public NestedState evaluateProvisioningTimeBindings(ProvisioningFixture fixture) {
+        return BindingEvaluator.evaluateProvisioningTimeBindings(fixture.provisionedState,
+                fixture.provisioningTimeBindings, fixture.provisionedResources);
+    }
+
+    /**
+     * The bindings compiled once per composite description, as reused by the composition
+     * sub-tasks of all the resources of a component.
+     */
+    @Benchmark
+    public NestedState evaluateCompiledProvisioningTimeBindings(ProvisioningFixture fixture) {
+        return BindingEvaluator.evaluateProvisioningTimeBindings(fixture.provisionedState,
+                fixture.compiledBindings, fixture.provisionedResources);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.content;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.benchmark.BenchmarkFixtures;
+import com.vmware.admiral.host.HostInitComputeServicesConfig;
+
+/**
+ * Measures parsing and serializing composite templates of different sizes, the largest one with
+ * 200 components. Allocation per operation is reported with the gc-profiling profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class CompositeTemplateUtilBenchmark {
+
+    @Param({ "wordpress", "10", "50", "100" })
+    public String template;
+
+    private String templateYaml;
+
+    @Setup
+    public void setUp() throws IOException {
+        HostInitComputeServicesConfig.initCompositeComponentRegistry();
+
+        templateYaml = "wordpress".equals(template)
+                ? BenchmarkFixtures.loadResource(BenchmarkFixtures.WORDPRESS_TEMPLATE_YAML)
+                : BenchmarkFixtures.compositeTemplateYaml(Integer.parseInt(template));
+    }
+
+    @Benchmark
+    public CompositeTemplate deserializeCompositeTemplate() throws IOException {
+        return CompositeTemplateUtil.parseCompositeTemplate(templateYaml);
+    }
+
+    /**
+     * Importing or cloning content which was already parsed, the cost of hashing the content and
+     * copying the cached template.
+     */
+    @Benchmark
+    public CompositeTemplate deserializeCachedCompositeTemplate() throws IOException {
+        return CompositeTemplateUtil.deserializeCompositeTemplate(templateYaml);
+    }
+
+    @Benchmark
+    public String roundTripCompositeTemplate() throws IOException {
+        return CompositeTemplateUtil.serializeCompositeTemplate(
+                CompositeTemplateUtil.parseCompositeTemplate(templateYaml));
+    }
+}
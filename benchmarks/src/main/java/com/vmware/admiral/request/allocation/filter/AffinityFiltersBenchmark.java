@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.allocation.filter;
+
+import java.util.HashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.PortBinding;
+import com.vmware.admiral.compute.container.ServiceNetwork;
+import com.vmware.xenon.common.test.VerificationHost;
+
+/**
+ * Measures building the affinity filter chain of a container description and resolving its
+ * dependencies, which is done for every container placement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class AffinityFiltersBenchmark {
+
+    private VerificationHost host;
+    private ContainerDescription description;
+
+    @Setup
+    public void setUp() throws Throwable {
+        host = VerificationHost.create(0);
+
+        description = new ContainerDescription();
+        description.documentSelfLink = "/resources/container-descriptions/wordpress";
+        description.name = "wordpress";
+        description.image = "wordpress:4.3.1";
+        description.affinity = new String[] { "mysql", "!memcached:soft", "cache:hard" };
+        description.links = new String[] { "mysql:db", "memcached:cache" };
+        description.volumesFrom = new String[] { "data-container:ro" };
+        description.volumes = new String[] { "wordpress-data:/var/www/html" };
+        description.deploymentPolicyId = "/resources/deployment-policies/web";
+
+        PortBinding portBinding = new PortBinding();
+        portBinding.containerPort = "80";
+        portBinding.hostPort = "8080";
+        description.portBindings = new PortBinding[] { portBinding };
+
+        description.networks = new HashMap<>();
+        description.networks.put("frontend", new ServiceNetwork());
+        description.networks.put("backend", new ServiceNetwork());
+    }
+
+    @TearDown
+    public void tearDown() {
+        host.tearDown();
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public Queue<HostSelectionFilter> buildFilterQueue() {
+        return AffinityFilters.build(host, description).getQueue();
+    }
+
+    @Benchmark
+    public Set<String> getUniqueDependencies() {
+        return AffinityFilters.build(host, description).getUniqueDependencies();
+    }
+}
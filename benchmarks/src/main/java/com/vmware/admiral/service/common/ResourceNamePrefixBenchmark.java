@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.service.common.ResourceNamePrefixLeaseService.NamePrefixLeaseRequest;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.ResourceNamePrefixState;
+import com.vmware.xenon.common.FactoryService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.VerificationHost;
+
+/**
+ * Measures the resource names generated per second by a cluster of 3 nodes requesting them in
+ * parallel, either each one from the {@link ResourceNamePrefixService} document or from the
+ * blocks leased by the {@link ResourceNamePrefixLeaseService} of every node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ResourceNamePrefixBenchmark {
+
+    private static final int NODES = 3;
+    private static final int REQUESTS = 300;
+
+    @Param({ "document", "leased" })
+    public String mode;
+
+    private VerificationHost cluster;
+    private VerificationHost[] nodes;
+    private String prefixLink;
+
+    @Setup
+    public void setUp() throws Throwable {
+        cluster = VerificationHost.create(0);
+        cluster.start();
+        cluster.setUpPeerHosts(NODES);
+        cluster.joinNodesAndVerifyConvergence(NODES);
+
+        nodes = cluster.getInProcessHostMap().values().toArray(new VerificationHost[NODES]);
+        for (VerificationHost node : nodes) {
+            node.startService(Operation.createPost(UriUtils.buildUri(node,
+                    ResourceNamePrefixService.FACTORY_LINK)),
+                    FactoryService.create(ResourceNamePrefixService.class));
+            node.startService(Operation.createPost(UriUtils.buildUri(node,
+                    ResourceNamePrefixLeaseService.SELF_LINK)),
+                    new ResourceNamePrefixLeaseService());
+            node.waitForServiceAvailable(ResourceNamePrefixLeaseService.SELF_LINK);
+        }
+        cluster.waitForReplicatedFactoryServiceAvailable(UriUtils.buildUri(nodes[0],
+                ResourceNamePrefixService.FACTORY_LINK));
+
+        ResourceNamePrefixState state = new ResourceNamePrefixState();
+        state.prefix = "bench";
+        state.numberOfDigits = ResourceNamePrefixState.MAX_NUMBER_OF_DIGITS;
+        state.addRandomToken = false;
+        prefixLink = cluster.getTestRequestSender().sendAndWait(Operation
+                .createPost(nodes[0], ResourceNamePrefixService.FACTORY_LINK)
+                .setBody(state), ResourceNamePrefixState.class).documentSelfLink;
+    }
+
+    @TearDown
+    public void tearDown() {
+        cluster.tearDownInProcessPeers();
+        cluster.tearDown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void generateNames() throws Throwable {
+        CountDownLatch latch = new CountDownLatch(REQUESTS);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            VerificationHost node = nodes[i % NODES];
+            node.send(createRequest(node)
+                    .setReferer(node.getUri())
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            failure.set(e);
+                        }
+                        latch.countDown();
+                    }));
+        }
+        if (!latch.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Timed out waiting for the names");
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private Operation createRequest(ServiceHost node) {
+        if ("leased".equals(mode)) {
+            NamePrefixLeaseRequest request = new NamePrefixLeaseRequest();
+            request.resourceNamePrefixLink = prefixLink;
+            request.resourceCount = 1;
+            return Operation.createPost(node, ResourceNamePrefixLeaseService.SELF_LINK)
+                    .setBody(request);
+        }
+        NamePrefixRequest request = new NamePrefixRequest();
+        request.resourceCount = 1;
+        return Operation.createPatch(node, prefixLink).setBody(request);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.upgrade.transformation.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.admiral.upgrade.transformation.util.PagedTransformation.TransformationResult;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.services.common.ExampleService;
+import com.vmware.xenon.services.common.ExampleService.ExampleServiceState;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * Measures the time a {@link PagedTransformation} takes to update every document of a large
+ * factory, either from the start or resumed from a checkpoint in the middle of the documents.
+ * Every invocation updates all documents it processes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PagedTransformationBenchmark {
+
+    private static final String NAME = "benchmark";
+    private static final String CHECKPOINT_KEY = "upgrade.transformation." + NAME + ".checkpoint";
+    private static final int CREATE_BATCH_SIZE = 1000;
+
+    @Param({ "500000" })
+    public int documents;
+
+    @Param({ "full", "resumed" })
+    public String mode;
+
+    private VerificationHost host;
+    private StatelessService service;
+    private long round;
+
+    @Setup
+    public void setUp() throws Throwable {
+        host = VerificationHost.create(0);
+        host.start();
+        host.startFactory(new ExampleService());
+        host.waitForServiceAvailable(ExampleService.FACTORY_LINK);
+        host.startServiceAndWait(ConfigurationFactoryService.class,
+                ConfigurationFactoryService.SELF_LINK);
+
+        service = new StatelessService();
+        host.startServiceAndWait(service, "/benchmark/paged-transformation", null);
+
+        for (int start = 0; start < documents; start += CREATE_BATCH_SIZE) {
+            int end = Math.min(start + CREATE_BATCH_SIZE, documents);
+            CountDownLatch latch = new CountDownLatch(end - start);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int i = start; i < end; i++) {
+                ExampleServiceState state = new ExampleServiceState();
+                state.name = "document-" + i;
+                state.counter = 0L;
+                state.documentSelfLink = getDocumentLink(i);
+                host.send(Operation.createPost(host, ExampleService.FACTORY_LINK)
+                        .setBody(state)
+                        .setReferer(host.getUri())
+                        .setCompletion((o, e) -> {
+                            if (e != null) {
+                                failure.set(e);
+                            }
+                            latch.countDown();
+                        }));
+            }
+            await(latch, failure);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws Throwable {
+        round++;
+        if (!"resumed".equals(mode)) {
+            return;
+        }
+
+        // an interrupted run which processed the first half of the documents
+        TransformationResult progress = new TransformationResult();
+        progress.name = NAME;
+        progress.processedCount = documents / 2;
+        progress.updatedCount = documents / 2;
+        progress.lastDocumentSelfLink = getDocumentLink(documents / 2 - 1);
+
+        ConfigurationState checkpoint = new ConfigurationState();
+        checkpoint.key = CHECKPOINT_KEY;
+        checkpoint.documentSelfLink = UriUtils.buildUriPath(
+                ConfigurationFactoryService.SELF_LINK, CHECKPOINT_KEY);
+        checkpoint.value = Utils.toJson(progress);
+        host.getTestRequestSender().sendAndWait(Operation
+                .createPost(host, ConfigurationFactoryService.SELF_LINK)
+                .setBody(checkpoint));
+    }
+
+    @TearDown
+    public void tearDown() {
+        host.tearDown();
+    }
+
+    @Benchmark
+    public TransformationResult transform() throws Throwable {
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ExampleServiceState.class)
+                .build();
+        long counter = round;
+
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<TransformationResult> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        new PagedTransformation<>(service, NAME, ExampleServiceState.class, query)
+                .run(document -> {
+                    if (document.counter != null && document.counter == counter) {
+                        return DeferredResult.completed(null);
+                    }
+                    document.counter = counter;
+                    return DeferredResult.completed(document);
+                })
+                .whenComplete((r, e) -> {
+                    result.set(r);
+                    failure.set(e);
+                    latch.countDown();
+                });
+        await(latch, failure);
+        return result.get();
+    }
+
+    private static String getDocumentLink(int index) {
+        return UriUtils.buildUriPath(ExampleService.FACTORY_LINK,
+                String.format("document-%07d", index));
+    }
+
+    private static void await(CountDownLatch latch, AtomicReference<Throwable> failure)
+            throws Throwable {
+        if (!latch.await(30, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Timed out waiting for the documents");
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
+import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
+
+/**
+ * Measures the conversion of the queries issued by the container data collection and the
+ * container list views to SQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class PostgresQueryConverterBenchmark {
+
+    private VerificationHost host;
+    private TableDescription tableDescription;
+
+    private Query simpleQuery;
+    private Query complexQuery;
+    private QuerySpecification sortedQuerySpec;
+
+    @Setup
+    public void setUp() throws Throwable {
+        host = VerificationHost.create(0);
+
+        PostgresSchemaManager schemaManager = new PostgresSchemaManager(host);
+        schemaManager.addTable(td -> td
+                .setFactoryLink(ContainerFactoryService.SELF_LINK)
+                .setStateType(ContainerState.class)
+                .setServiceDocumentDescription(ServiceDocumentDescription.Builder.create()
+                        .buildDescription(ContainerState.class)));
+        tableDescription = schemaManager
+                .getTableDescriptionForFactoryLink(ContainerFactoryService.SELF_LINK);
+
+        simpleQuery = Query.Builder.create()
+                .addKindFieldClause(ContainerState.class)
+                .addFieldClause(ContainerState.FIELD_NAME_PARENT_LINK,
+                        "/resources/compute/docker-host-1")
+                .build();
+
+        List<String> hostLinks = Arrays.asList("/resources/compute/docker-host-1",
+                "/resources/compute/docker-host-2", "/resources/compute/docker-host-3",
+                "/resources/compute/docker-host-4");
+        complexQuery = Query.Builder.create()
+                .addKindFieldClause(ContainerState.class)
+                .addInClause(ContainerState.FIELD_NAME_PARENT_LINK, hostLinks)
+                .addFieldClause(ContainerState.FIELD_NAME_POWER_STATE, PowerState.RUNNING.name())
+                .addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
+                        ContainerFactoryService.SELF_LINK + "/wordpress*", MatchType.WILDCARD)
+                .addCollectionItemClause(ServiceDocument.FIELD_NAME_TENANT_LINKS,
+                        "/tenants/coke")
+                .addFieldClause(ContainerState.FIELD_NAME_SYSTEM, Boolean.TRUE.toString(),
+                        Occurance.MUST_NOT_OCCUR)
+                .build();
+
+        sortedQuerySpec = QueryTask.Builder.createDirectTask()
+                .setQuery(complexQuery)
+                .orderAscending(ServiceDocument.FIELD_NAME_SELF_LINK,
+                        ServiceDocumentDescription.TypeName.STRING)
+                .build().querySpec;
+    }
+
+    @TearDown
+    public void tearDown() {
+        host.tearDown();
+    }
+
+    @Benchmark
+    public String convertSimpleQuery() {
+        return PostgresQueryConverter.convert(simpleQuery, null, tableDescription);
+    }
+
+    @Benchmark
+    public String convertComplexQuery() {
+        return PostgresQueryConverter.convert(complexQuery, null, tableDescription);
+    }
+
+    @Benchmark
+    public List<String> convertSort() {
+        return PostgresQueryConverter.convertToPostgresSort(sortedQuerySpec, false,
+                tableDescription, true);
+    }
+}
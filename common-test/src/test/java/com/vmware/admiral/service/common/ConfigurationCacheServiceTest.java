@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.common.util.ConfigurationUtil;
+import com.vmware.admiral.service.common.ConfigurationCacheService.ConfigurationCacheStats;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+public class ConfigurationCacheServiceTest extends BaseTestCase {
+
+    private static final String KEY = "configuration.cache.test";
+
+    @Before
+    public void setUp() throws Throwable {
+        host.startServiceAndWait(ConfigurationFactoryService.class,
+                ConfigurationFactoryService.SELF_LINK);
+        createConfiguration(KEY, "1");
+        host.startServiceAndWait(ConfigurationCacheService.class,
+                ConfigurationCacheService.SELF_LINK);
+        waitFor(() -> ConfigurationCacheService.getInstance(host).isLoaded());
+    }
+
+    @Test
+    public void testReadLoadedProperties() throws Throwable {
+        assertEquals("1", ConfigurationUtil.getConfigProperty(host, KEY));
+        assertEquals(1, ConfigurationUtil.getConfigPropertyLong(host, KEY, 0));
+        assertFalse(ConfigurationUtil.getConfigPropertyBoolean(host, KEY, false));
+        assertEquals(5, ConfigurationUtil.getConfigPropertyLong(host, "missing", 5));
+        assertNull(ConfigurationUtil.getConfigProperty(host, "missing"));
+
+        String[] value = new String[] { "none" };
+        ConfigurationUtil.getConfigProperty(host, KEY, v -> value[0] = v);
+        assertEquals("1", value[0]);
+
+        ConfigurationCacheStats stats = getDocument(ConfigurationCacheStats.class,
+                ConfigurationCacheService.SELF_LINK);
+        assertTrue(stats.loaded);
+        assertTrue(stats.hits >= 6);
+        assertEquals(0, stats.misses);
+    }
+
+    @Test
+    public void testPropertyChanges() throws Throwable {
+        List<String> changes = new CopyOnWriteArrayList<>();
+        ConfigurationUtil.addConfigPropertyListener(host, KEY, changes::add);
+
+        ConfigurationState state = getDocument(ConfigurationState.class,
+                UriUtils.buildUriPath(ConfigurationFactoryService.SELF_LINK, KEY));
+        state.value = "2";
+        doPut(state);
+        waitFor(() -> "2".equals(ConfigurationUtil.getConfigProperty(host, KEY)));
+
+        createConfiguration("configuration.cache.added", "true");
+        waitFor(() -> ConfigurationUtil.getConfigPropertyBoolean(host,
+                "configuration.cache.added", false));
+
+        delete(state.documentSelfLink);
+        waitFor(() -> ConfigurationUtil.getConfigProperty(host, KEY) == null);
+
+        assertEquals("2", changes.get(0));
+        assertNull(changes.get(changes.size() - 1));
+
+        ConfigurationCacheStats stats = getDocument(ConfigurationCacheStats.class,
+                ConfigurationCacheService.SELF_LINK);
+        assertTrue(stats.updates >= 3);
+    }
+
+    @Test
+    public void testNotificationsDuringReload() throws Throwable {
+        ConfigurationCacheService cache = ConfigurationCacheService.getInstance(host);
+        ConfigurationState loaded = getDocument(ConfigurationState.class,
+                UriUtils.buildUriPath(ConfigurationFactoryService.SELF_LINK, KEY));
+
+        // the reload query has read its results before the notifications below
+        long reloadStartMicros = Utils.getNowMicrosUtc();
+
+        ConfigurationState added = new ConfigurationState();
+        added.key = "configuration.cache.added.during.reload";
+        added.value = "true";
+        added.documentSelfLink = UriUtils.buildUriPath(ConfigurationFactoryService.SELF_LINK,
+                added.key);
+        added.documentUpdateAction = Action.POST.toString();
+        added.documentUpdateTimeMicros = reloadStartMicros + 1;
+        cache.onConfigurationChange(added);
+
+        ConfigurationState deleted = Utils.clone(loaded);
+        deleted.documentUpdateAction = Action.DELETE.toString();
+        deleted.documentUpdateTimeMicros = reloadStartMicros + 2;
+        cache.onConfigurationChange(deleted);
+
+        cache.completeReload(Collections.singletonList(loaded), reloadStartMicros, true);
+
+        // neither the added property is evicted, nor the deleted one brought back
+        assertEquals("true", cache.getValue(added.key));
+        assertNull(cache.getValue(KEY));
+
+        ConfigurationCacheStats stats = getDocument(ConfigurationCacheStats.class,
+                ConfigurationCacheService.SELF_LINK);
+        assertEquals(0, stats.staleProperties);
+    }
+
+    @Test
+    public void testPropertiesAreReadBySelfLink() throws Throwable {
+        ConfigurationState state = new ConfigurationState();
+        state.key = "configuration.cache.key";
+        state.value = "true";
+        state.documentSelfLink = UriUtils.buildUriPath(ConfigurationFactoryService.SELF_LINK,
+                "configuration.cache.link");
+        doPost(state, ConfigurationFactoryService.SELF_LINK);
+
+        // the same name as with a request to the configuration service
+        waitFor(() -> ConfigurationUtil.getConfigPropertyBoolean(host,
+                "configuration.cache.link", false));
+        assertNull(ConfigurationUtil.getConfigProperty(host, state.key));
+    }
+
+    private void createConfiguration(String key, String value) throws Throwable {
+        ConfigurationState state = new ConfigurationState();
+        state.key = key;
+        state.value = value;
+        state.documentSelfLink = UriUtils.buildUriPath(ConfigurationFactoryService.SELF_LINK,
+                key);
+        doPost(state, ConfigurationFactoryService.SELF_LINK);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.host.interceptor.InterceptorLatencyStats;
+import com.vmware.admiral.host.interceptor.OperationInterceptorRegistry;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.admiral.service.common.InterceptorStatsService.InterceptorLatencyStat;
+import com.vmware.admiral.service.common.InterceptorStatsService.InterceptorStats;
+import com.vmware.admiral.service.common.InterceptorStatsService.InterceptorStatsRequest;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.UriUtils;
+
+public class InterceptorStatsServiceTest extends BaseTestCase {
+
+    @Override
+    protected void registerInterceptors(OperationInterceptorRegistry registry) {
+        super.registerInterceptors(registry);
+        registry.addFactoryServiceInterceptor(ConfigurationService.class, Action.POST,
+                InterceptorStatsServiceTest::handlePost);
+    }
+
+    private static DeferredResult<Void> handlePost(Service service, Operation op) {
+        return DeferredResult.completed(null);
+    }
+
+    @Before
+    public void setUp() throws Throwable {
+        InterceptorLatencyStats.reset();
+        host.startServiceAndWait(ConfigurationFactoryService.class,
+                ConfigurationFactoryService.SELF_LINK);
+        host.startServiceAndWait(InterceptorStatsService.class, InterceptorStatsService.SELF_LINK);
+    }
+
+    @After
+    public void tearDown() {
+        InterceptorLatencyStats.setEnabled(false);
+        InterceptorLatencyStats.setSampleRate(1);
+        InterceptorLatencyStats.reset();
+    }
+
+    @Test
+    public void testNotRecordedWhenDisabled() {
+        createConfiguration("disabled");
+
+        InterceptorLatencyStat stat = findStat(getStats());
+        assertTrue(stat == null || stat.count == 0);
+    }
+
+    @Test
+    public void testRecordLatency() {
+        InterceptorStatsRequest request = new InterceptorStatsRequest();
+        request.enabled = true;
+        InterceptorStats stats = host.getTestRequestSender().sendAndWait(Operation
+                .createPatch(host, InterceptorStatsService.SELF_LINK)
+                .setBody(request), InterceptorStats.class);
+        assertTrue(stats.enabled);
+
+        createConfiguration("key1");
+        createConfiguration("key2");
+
+        InterceptorLatencyStat stat = findStat(getStats());
+        assertNotNull(stat);
+        assertEquals(Action.POST.name(), stat.action);
+        assertEquals(2, stat.count);
+        assertTrue(stat.p99Micros <= stat.maxMicros);
+
+        String text = host.getTestRequestSender().sendAndWait(Operation.createGet(
+                UriUtils.extendUriWithQuery(UriUtils.buildUri(host,
+                        InterceptorStatsService.SELF_LINK),
+                        InterceptorStatsService.FORMAT_PARAM,
+                        InterceptorStatsService.FORMAT_PROMETHEUS)), String.class);
+        assertTrue(text, text.contains(InterceptorStatsService.PROMETHEUS_METRIC + "_count{"
+                + "service=\"ConfigurationService (factory)\",action=\"POST\","
+                + "interceptor=\"InterceptorStatsServiceTest\"} 2"));
+
+        request = new InterceptorStatsRequest();
+        request.reset = true;
+        stats = host.getTestRequestSender().sendAndWait(Operation
+                .createPatch(host, InterceptorStatsService.SELF_LINK)
+                .setBody(request), InterceptorStats.class);
+        assertTrue(stats.enabled);
+        assertEquals(0, findStat(stats).count);
+
+        // the service keeps recording after a reset
+        createConfiguration("key3");
+        assertEquals(1, findStat(getStats()).count);
+    }
+
+    @Test
+    public void testInvalidSampleRate() {
+        InterceptorStatsRequest request = new InterceptorStatsRequest();
+        request.sampleRate = 0;
+        host.getTestRequestSender().sendAndWaitFailure(Operation
+                .createPatch(host, InterceptorStatsService.SELF_LINK)
+                .setBody(request));
+        assertFalse(InterceptorLatencyStats.getSampleRate() == 0);
+    }
+
+    private void createConfiguration(String key) {
+        ConfigurationState state = new ConfigurationState();
+        state.key = key;
+        state.value = "value";
+        host.getTestRequestSender().sendAndWait(Operation
+                .createPost(host, ConfigurationFactoryService.SELF_LINK)
+                .setBody(state), ConfigurationState.class);
+    }
+
+    private InterceptorStats getStats() {
+        URI uri = UriUtils.buildUri(host, InterceptorStatsService.SELF_LINK);
+        return host.getTestRequestSender().sendAndWait(Operation.createGet(uri),
+                InterceptorStats.class);
+    }
+
+    private static InterceptorLatencyStat findStat(InterceptorStats stats) {
+        return stats.latencies.stream()
+                .filter(s -> "ConfigurationService (factory)".equals(s.service)
+                        && "InterceptorStatsServiceTest".equals(s.interceptor))
+                .findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.service.common.NodeMigrationCheckpointService.NodeMigrationCheckpointState;
+import com.vmware.admiral.service.common.NodeMigrationService.FactoryMigrationStage;
+import com.vmware.admiral.service.common.NodeMigrationService.FactoryMigrationStatus;
+import com.vmware.admiral.service.common.NodeMigrationService.MigrationRequest;
+import com.vmware.admiral.service.common.NodeMigrationService.MigrationStatus;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost.ServiceNotFoundException;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.services.common.LegacyMigrationTaskService;
+
+public class NodeMigrationServiceTest extends BaseTestCase {
+
+    private static final String SOURCE_NODE_GROUP = "http://127.0.0.1:1/core/node-groups/default";
+    private static final String TEST_FACTORY = "/test/migrated-factory";
+
+    @Before
+    public void setUp() throws Throwable {
+        host.startFactory(new NodeMigrationCheckpointService());
+        host.waitForServiceAvailable(NodeMigrationCheckpointService.FACTORY_LINK);
+        host.startFactory(new LegacyMigrationTaskService());
+        host.waitForServiceAvailable(LegacyMigrationTaskService.FACTORY_LINK);
+        host.startServiceAndWait(NodeMigrationService.class, NodeMigrationService.SELF_LINK);
+
+        doPatch(Collections.singletonMap("services", Collections.singletonList(TEST_FACTORY)),
+                NodeMigrationService.SELF_LINK);
+    }
+
+    @Test
+    public void testConcurrentMigrationsStartOnce() throws Throwable {
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        TestContext ctx = testCreate(1);
+        for (int i = 0; i < 2; i++) {
+            // the started migration polls its tasks after a delay, so only the rejected request
+            // completes here
+            host.send(createMigrationPost(false).setCompletion((o, e) -> {
+                failures.add(e);
+                ctx.completeIteration();
+            }));
+        }
+        ctx.await();
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof IllegalStateException);
+        assertTrue(failures.get(0).getMessage().contains("already in progress"));
+
+        MigrationStatus status = getDocument(MigrationStatus.class,
+                NodeMigrationService.SELF_LINK);
+        assertEquals(TaskStage.STARTED, status.stage);
+    }
+
+    @Test
+    public void testResumeFromPersistedCheckpoint() throws Throwable {
+        NodeMigrationCheckpointState checkpoint = new NodeMigrationCheckpointState();
+        checkpoint.documentSelfLink = NodeMigrationCheckpointService.CHECKPOINT_LINK;
+        checkpoint.sourceNodeGroup = SOURCE_NODE_GROUP;
+        checkpoint.factories = new LinkedHashMap<>();
+        for (String factory : Arrays.asList(TEST_FACTORY, "/core/auth/credentials",
+                "/resources/pools", "/resources/groups", "/resources/tags",
+                "/resources/compute-descriptions", ManagementUriParts.ELASTIC_PLACEMENT_ZONES,
+                ComputeService.FACTORY_LINK)) {
+            FactoryMigrationStatus factoryStatus = new FactoryMigrationStatus();
+            factoryStatus.stage = FactoryMigrationStage.FINISHED;
+            checkpoint.factories.put(factory, factoryStatus);
+        }
+        doPost(checkpoint, NodeMigrationCheckpointService.FACTORY_LINK);
+
+        // no previous run on this node, the migration resumes from the persisted checkpoint and
+        // completes without starting any migration task
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        TestContext ctx = testCreate(1);
+        host.send(createMigrationPost(true).setCompletion((o, e) -> {
+            failure.set(e);
+            ctx.completeIteration();
+        }));
+        ctx.await();
+        assertNull(failure.get());
+
+        MigrationStatus status = getDocument(MigrationStatus.class,
+                NodeMigrationService.SELF_LINK);
+        assertEquals(TaskStage.FINISHED, status.stage);
+        assertEquals(checkpoint.factories.size(), status.factories.size());
+        for (FactoryMigrationStatus factoryStatus : status.factories.values()) {
+            assertEquals(FactoryMigrationStage.FINISHED, factoryStatus.stage);
+        }
+
+        // the checkpoint is deleted once the migration completes
+        waitFor(() -> !isCheckpointPresent());
+    }
+
+    private Operation createMigrationPost(boolean resume) {
+        MigrationRequest request = new MigrationRequest();
+        request.sourceNodeGroup = SOURCE_NODE_GROUP;
+        request.resume = resume;
+        return Operation.createPost(host, NodeMigrationService.SELF_LINK)
+                .setBody(request);
+    }
+
+    private boolean isCheckpointPresent() {
+        AtomicReference<Boolean> present = new AtomicReference<>();
+        TestContext ctx = testCreate(1);
+        host.send(Operation.createGet(host, NodeMigrationCheckpointService.CHECKPOINT_LINK)
+                .setCompletion((o, e) -> {
+                    if (e != null && !(e instanceof ServiceNotFoundException)) {
+                        ctx.failIteration(e);
+                        return;
+                    }
+                    present.set(e == null);
+                    ctx.completeIteration();
+                }));
+        ctx.await();
+        return present.get();
+    }
+}
@@ -25,12 +25,14 @@ public interface ManagementUriParts {
     String REGISTRIES = CONFIG + "/registries";
     String REGISTRY_HOSTS = CONFIG + "/registry-spec";
     String CONFIG_PROPS = CONFIG + "/props";
+    String CONFIG_PROPS_CACHE = CONFIG + "/props-cache";
     String CONFIG_CA_CREDENTIALS = CONFIG + "/ca-credentials";
     String SSL_TRUST_CERTS = CONFIG + "/trust-certs";
     String SSL_TRUST_CERTS_IMPORT = CONFIG + "/trust-certs-import";
     String USER_INITIALIZATION_SERVICE = CONFIG + "/user-init-service";
     String INSTANCE_TYPE_PROFILES = CONFIG + "/instance-types";
     String MIGRATION = CONFIG + "/migration";
+    String MIGRATION_CHECKPOINTS = CONFIG + "/migration-checkpoints";
     String UNIQUE_PROPERTIES = CONFIG + "/unique-properties";
     String FAVORITE_IMAGES_FLAG = CONFIG + "/should-populate-favorites";
 
@@ -47,6 +49,9 @@ public interface ManagementUriParts {
     String UTIL = URI_PREFIX + "/util";
     String LONG_URI_GET = UTIL + "/long-uri-get";
     String DANGLING_DESCRIPTIONS_CLEANUP = UTIL + "/cleanup-dangling-descriptions";
+    String INTERCEPTOR_STATS = UTIL + "/interceptor-stats";
+    String SECURITY_CONTEXT_CACHE = UTIL + "/security-context-cache";
+    String COMPOSITION_SCHEDULER = UTIL + "/composition-scheduler";
 
     String CERT_DISTRIBUTION_ADD_REGISTRY = CONFIG + "/cert-dist-add-reg";
     String CERT_DISTRIBUTION_ADD_HOST = CONFIG + "/certs-dist-add-host";
@@ -66,6 +71,7 @@ public interface ManagementUriParts {
     String RESOURCES = URI_PREFIX + "/resources";
     String RESOURCE_GROUP_PLACEMENTS = RESOURCES + "/group-placements";
     String RESOURCE_NAME_PREFIXES = RESOURCES + "/name-prefixes";
+    String RESOURCE_NAME_PREFIX_LEASES = RESOURCE_NAME_PREFIXES + "-leases";
     String DEPLOYMENT_POLICIES = RESOURCES + "/deployment-policies";
     String HOST_PORT_PROFILES = RESOURCES + "/host-port-profiles";
     String ELASTIC_PLACEMENT_ZONES = RESOURCES + "/elastic-placement-zones";
@@ -116,6 +122,7 @@ public interface ManagementUriParts {
     String CONTAINER_HOST_DATA_COLLECTION = RESOURCES + "/hosts-data-collections";
     String CONTAINER_CONTROL_LOOP = RESOURCES + "/container-control-loop";
     String HOST_CONTAINER_LIST_DATA_COLLECTION = RESOURCES + "/host-container-list-data-collection";
+    String CONTAINER_STATE_SYNC = RESOURCES + "/container-state-sync";
     String HOST_NETWORK_LIST_DATA_COLLECTION = RESOURCES + "/host-network-list-data-collection";
     String HOST_VOLUME_LIST_DATA_COLLECTION = RESOURCES + "/host-volume-list-data-collection";
     String KUBERNETES_ENTITY_DATA_COLLECTION = RESOURCES
@@ -83,7 +83,37 @@ public class CommonContinuousQueries {
      */
     public static void subscribeTo(ServiceHost host, ContinuousQueryId queryId,
             Consumer<Operation> consumer) {
-        QueryTask task = getQueryTask(host, queryId);
+        subscribeTo(host, getQueryTask(host, queryId), consumer, null);
+    }
+
+    /**
+     * Subscribes a consumer to a continuous query over the given query. The query task is
+     * shared between all subscribers using the same <code>queryName</code>.
+     */
+    public static void subscribeTo(ServiceHost host, String queryName, Query query,
+            Consumer<Operation> consumer) {
+        subscribeTo(host, queryName, query, consumer, null);
+    }
+
+    /**
+     * Subscribes a consumer to a continuous query over the given query and runs the given callback
+     * once the subscription is active, i.e. the consumer will be notified of all changes made
+     * after that point.
+     */
+    public static void subscribeTo(ServiceHost host, String queryName, Query query,
+            Consumer<Operation> consumer, Runnable onSubscribed) {
+        QueryTask task = QueryTask.Builder.create()
+                .addOptions(EnumSet.of(QueryOption.CONTINUOUS, QueryOption.EXPAND_CONTENT))
+                .setQuery(query).build();
+        task.documentSelfLink = getTaskSelfLink(queryName);
+        task.documentExpirationTimeMicros = Utils.fromNowMicrosUtc(
+                TimeUnit.DAYS.toMicros(QUERY_TASK_EXPIRATION_DAYS));
+
+        subscribeTo(host, task, consumer, onSubscribed);
+    }
+
+    private static void subscribeTo(ServiceHost host, QueryTask task,
+            Consumer<Operation> consumer, Runnable onSubscribed) {
         Operation.createPost(host, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS)
                 .setBody(task)
                 .setReferer(host.getUri())
@@ -100,6 +130,8 @@ public class CommonContinuousQueries {
                             .setCompletion((op, ex) -> {
                                 if (ex != null) {
                                     host.log(Level.SEVERE, Utils.toString(ex));
+                                } else if (onSubscribed != null) {
+                                    onSubscribed.run();
                                 }
                             });
 
@@ -159,6 +191,10 @@ public class CommonContinuousQueries {
     }
 
     private static String getTaskSelfLink(ContinuousQueryId queryId) {
-        return QUERY_TASK_SELF_LINK_PREFIX + "-" + queryId.name().toLowerCase();
+        return getTaskSelfLink(queryId.name());
+    }
+
+    private static String getTaskSelfLink(String queryName) {
+        return QUERY_TASK_SELF_LINK_PREFIX + "-" + queryName.toLowerCase();
     }
 }
@@ -16,6 +16,7 @@ import static com.vmware.admiral.common.ManagementUriParts.CONFIG_PROPS;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
+import com.vmware.admiral.service.common.ConfigurationCacheService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
@@ -106,7 +107,8 @@ public class ConfigurationUtil {
     }
 
     /**
-     * Retrieves the property value from the configuration properties service.
+     * Retrieves the property value from the configuration properties service, or from the node
+     * local {@link ConfigurationCacheService} snapshot once it is loaded.
      */
     public static void getConfigProperty(ServiceHost host, String propName,
             Consumer<String> callback) {
@@ -115,6 +117,14 @@ public class ConfigurationUtil {
             callback.accept(Boolean.toString(false));
             return;
         }
+        ConfigurationCacheService cache = ConfigurationCacheService.getInstance(host);
+        if (cache != null) {
+            if (cache.isLoaded()) {
+                callback.accept(cache.getValue(propName));
+                return;
+            }
+            cache.countMiss();
+        }
         host.sendRequest(Operation
                 .createGet(host, UriUtils.buildUriPath(CONFIG_PROPS, propName))
                 .setReferer(host.getUri())
@@ -128,4 +138,60 @@ public class ConfigurationUtil {
                     callback.accept(body.value);
                 }));
     }
+
+    /**
+     * Retrieves the property value synchronously from the node local
+     * {@link ConfigurationCacheService} snapshot. Until the snapshot is loaded, the value is
+     * retrieved from the configuration properties files, see {@link #getProperty(String)}.
+     */
+    public static String getConfigProperty(ServiceHost host, String propName) {
+        if (ALLOW_SSH_CONSOLE_PROPERTY.equals(propName)) {
+            // shell in a box feature was removed due to security issues
+            return Boolean.toString(false);
+        }
+        ConfigurationCacheService cache = ConfigurationCacheService.getInstance(host);
+        if (cache != null) {
+            if (cache.isLoaded()) {
+                return cache.getValue(propName);
+            }
+            cache.countMiss();
+        }
+        return getProperty(propName);
+    }
+
+    public static boolean getConfigPropertyBoolean(ServiceHost host, String propName,
+            boolean defaultValue) {
+        String value = getConfigProperty(host, propName);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    public static long getConfigPropertyLong(ServiceHost host, String propName,
+            long defaultValue) {
+        String value = getConfigProperty(host, propName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning(String.format("Invalid value of config property %s: %s", propName,
+                    value));
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Registers a listener called with the new value of the property, <code>null</code> if it is
+     * removed, whenever it changes. Does nothing if there is no {@link ConfigurationCacheService}
+     * on the host.
+     */
+    public static void addConfigPropertyListener(ServiceHost host, String propName,
+            Consumer<String> listener) {
+        ConfigurationCacheService cache = ConfigurationCacheService.getInstance(host);
+        if (cache == null) {
+            logger.warning(String.format("No configuration cache to listen for %s", propName));
+            return;
+        }
+        cache.addListener(propName, listener);
+    }
 }
@@ -11,21 +11,70 @@
 
 package com.vmware.admiral.common.util;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
 
 /**
  * A TrustManager implementation that delegates to a dynamic list of other TrustManagers.
  *
  * The list can be changed in runtime without reloading or replacing the main TrustManager.
+ *
+ * The certificates accepted by the delegates are indexed by subject DN and by public key
+ * fingerprint, so that a chain is checked only by the delegates which trust one of the
+ * certificates of the chain or one of their issuers, instead of by every delegate. Delegates
+ * which do not report their accepted issuers are always checked. The leaf certificates of the
+ * recently trusted chains are cached until a delegate is removed or replaced with one trusting
+ * different certificates.
  */
 public class DelegatingX509TrustManager implements X509TrustManager {
+    public static final int VALIDATED_CERTIFICATES_CACHE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.trust.validated.certificates.cache.size", 1000);
+
+    private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
     private final Map<Object, X509TrustManager> delegates = new ConcurrentHashMap<Object, X509TrustManager>();
 
+    // the index, updated while holding the lock of this trust manager
+    private final Map<X500Principal, Set<Object>> keysBySubject = new ConcurrentHashMap<>();
+    private final Map<String, Set<Object>> keysByPublicKey = new ConcurrentHashMap<>();
+    private final Map<Object, X509Certificate[]> acceptedIssuersByKey = new ConcurrentHashMap<>();
+    private final Set<Object> unindexedKeys = ConcurrentHashMap.newKeySet();
+
+    // leaf certificate fingerprint and auth type -> not after time of the leaf certificate
+    private final Map<String, Long> validatedCertificates = new LinkedHashMap<String, Long>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > validatedCertificatesCacheSize;
+        }
+    };
+    // incremented when the validated certificates are cleared, guarded by validatedCertificates
+    private long validatedGeneration;
+    private final int validatedCertificatesCacheSize;
+
+    public DelegatingX509TrustManager() {
+        this(VALIDATED_CERTIFICATES_CACHE_SIZE);
+    }
+
+    DelegatingX509TrustManager(int validatedCertificatesCacheSize) {
+        this.validatedCertificatesCacheSize = validatedCertificatesCacheSize;
+    }
+
     @Override
     public void checkClientTrusted(X509Certificate[] chain, String authType)
             throws CertificateException {
@@ -42,13 +91,37 @@ public class DelegatingX509TrustManager implements X509TrustManager {
             throw new CertificateException("Can't work without any delegates");
         }
 
+        String validatedKey = getValidatedKey(chain, authType);
+        long generation;
+        synchronized (validatedCertificates) {
+            Long notAfter = validatedKey != null ? validatedCertificates.get(validatedKey) : null;
+            if (notAfter != null && notAfter > System.currentTimeMillis()) {
+                return;
+            }
+            generation = validatedGeneration;
+        }
+
         CertificateException lastException = null;
-        for (X509TrustManager delegate : delegates.values()) {
+        for (Object key : getCandidateKeys(chain)) {
+            X509TrustManager delegate = delegates.get(key);
+            if (delegate == null) {
+                // removed in the meantime
+                continue;
+            }
             try {
                 delegate.checkServerTrusted(chain, authType);
 
                 // found a delegate that accepts the certificate, so break out
                 // without checking the rest
+                if (validatedKey != null) {
+                    synchronized (validatedCertificates) {
+                        // not cached if the trust has changed during the check
+                        if (generation == validatedGeneration) {
+                            validatedCertificates.put(validatedKey,
+                                    chain[0].getNotAfter().getTime());
+                        }
+                    }
+                }
                 return;
 
             } catch (CertificateException x) {
@@ -59,6 +132,10 @@ public class DelegatingX509TrustManager implements X509TrustManager {
 
         // if we reached here then none of the delegates accepted the
         // certificate, so throw the last exception
+        if (lastException == null) {
+            lastException = new CertificateException(
+                    "No trusted certificate found for " + getSubject(chain));
+        }
         throw lastException;
     }
 
@@ -74,8 +151,17 @@ public class DelegatingX509TrustManager implements X509TrustManager {
      * @param key
      * @param newDelegate
      */
-    public void putDelegate(Object key, X509TrustManager newDelegate) {
-        delegates.put(key, newDelegate);
+    public synchronized void putDelegate(Object key, X509TrustManager newDelegate) {
+        X509Certificate[] acceptedIssuers = newDelegate.getAcceptedIssuers();
+        X509TrustManager previous = delegates.put(key, newDelegate);
+        if (previous != null) {
+            X509Certificate[] previousAcceptedIssuers = unindex(key);
+            if (!Arrays.equals(previousAcceptedIssuers, acceptedIssuers)) {
+                // the trust has changed
+                clearValidatedCertificates();
+            }
+        }
+        index(key, acceptedIssuers);
     }
 
     /**
@@ -94,8 +180,106 @@ public class DelegatingX509TrustManager implements X509TrustManager {
      * @param key
      * @return
      */
-    public X509TrustManager removeDelegate(Object key) {
-        return delegates.remove(key);
+    public synchronized X509TrustManager removeDelegate(Object key) {
+        X509TrustManager removed = delegates.remove(key);
+        if (removed != null) {
+            unindex(key);
+            clearValidatedCertificates();
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the keys of the delegates to check the given chain with: the ones trusting a
+     * certificate of the chain or one of their issuers, and the ones which are not indexed.
+     */
+    private Set<Object> getCandidateKeys(X509Certificate[] chain) {
+        Set<Object> keys = new LinkedHashSet<>();
+        if (chain != null) {
+            for (X509Certificate certificate : chain) {
+                addAll(keys, keysBySubject.get(certificate.getSubjectX500Principal()));
+                addAll(keys, keysBySubject.get(certificate.getIssuerX500Principal()));
+                addAll(keys, keysByPublicKey.get(getPublicKeyFingerprint(certificate)));
+            }
+        }
+        keys.addAll(unindexedKeys);
+        return keys;
+    }
+
+    private void index(Object key, X509Certificate[] acceptedIssuers) {
+        if (acceptedIssuers == null || acceptedIssuers.length == 0) {
+            unindexedKeys.add(key);
+            return;
+        }
+        acceptedIssuersByKey.put(key, acceptedIssuers);
+        for (X509Certificate certificate : acceptedIssuers) {
+            keysBySubject.computeIfAbsent(certificate.getSubjectX500Principal(),
+                    k -> ConcurrentHashMap.newKeySet()).add(key);
+            keysByPublicKey.computeIfAbsent(getPublicKeyFingerprint(certificate),
+                    k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    private X509Certificate[] unindex(Object key) {
+        unindexedKeys.remove(key);
+        X509Certificate[] acceptedIssuers = acceptedIssuersByKey.remove(key);
+        if (acceptedIssuers == null) {
+            return null;
+        }
+        for (X509Certificate certificate : acceptedIssuers) {
+            removeKey(keysBySubject, certificate.getSubjectX500Principal(), key);
+            removeKey(keysByPublicKey, getPublicKeyFingerprint(certificate), key);
+        }
+        return acceptedIssuers;
+    }
+
+    private void clearValidatedCertificates() {
+        synchronized (validatedCertificates) {
+            validatedCertificates.clear();
+            validatedGeneration++;
+        }
+    }
+
+    private static <K> void removeKey(Map<K, Set<Object>> index, K indexKey, Object key) {
+        index.computeIfPresent(indexKey, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static void addAll(Set<Object> keys, Set<Object> toAdd) {
+        if (toAdd != null) {
+            keys.addAll(toAdd);
+        }
+    }
+
+    private static String getValidatedKey(X509Certificate[] chain, String authType) {
+        if (chain == null || chain.length == 0) {
+            return null;
+        }
+        try {
+            return fingerprint(chain[0].getEncoded()) + ":" + authType;
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    private static String getPublicKeyFingerprint(X509Certificate certificate) {
+        return fingerprint(certificate.getPublicKey().getEncoded());
+    }
+
+    private static String fingerprint(byte[] encoded) {
+        try {
+            return Base64.getEncoder().encodeToString(
+                    MessageDigest.getInstance(FINGERPRINT_ALGORITHM).digest(encoded));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getSubject(X509Certificate[] chain) {
+        return chain != null && chain.length > 0
+                ? chain[0].getSubjectX500Principal().getName() : "an empty chain";
     }
 
 }
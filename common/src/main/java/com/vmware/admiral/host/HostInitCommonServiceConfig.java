@@ -24,17 +24,21 @@ import java.util.logging.Level;
 
 import com.vmware.admiral.log.EventLogFactoryService;
 import com.vmware.admiral.service.common.CommonInitialBootService;
+import com.vmware.admiral.service.common.ConfigurationCacheService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
 import com.vmware.admiral.service.common.CounterSubTaskService;
 import com.vmware.admiral.service.common.CredentialsProxyService;
 import com.vmware.admiral.service.common.EventTopicService;
 import com.vmware.admiral.service.common.ExtensibilitySubscriptionCallbackService;
 import com.vmware.admiral.service.common.ExtensibilitySubscriptionFactoryService;
+import com.vmware.admiral.service.common.InterceptorStatsService;
 import com.vmware.admiral.service.common.LogService;
 import com.vmware.admiral.service.common.LongURIGetService;
 import com.vmware.admiral.service.common.NodeHealthCheckService;
+import com.vmware.admiral.service.common.NodeMigrationCheckpointService;
 import com.vmware.admiral.service.common.NodeMigrationService;
 import com.vmware.admiral.service.common.RegistryFactoryService;
+import com.vmware.admiral.service.common.ResourceNamePrefixLeaseService;
 import com.vmware.admiral.service.common.ResourceNamePrefixService;
 import com.vmware.admiral.service.common.ReverseProxyService;
 import com.vmware.admiral.service.common.SslTrustCertificateFactoryService;
@@ -59,19 +63,23 @@ public class HostInitCommonServiceConfig extends HostInitServiceHelper {
                     service(NodeMigrationService.class),
                     service(SslTrustImportService.class),
                     service(ConfigurationFactoryService.class),
+                    service(ConfigurationCacheService.class),
                     service(SslTrustCertificateFactoryService.class),
                     service(CommonInitialBootService.class),
                     service(ReverseProxyService.class),
                     service(ExtensibilitySubscriptionFactoryService.class),
                     service(LongURIGetService.class),
+                    service(InterceptorStatsService.class),
                     service(RegistryFactoryService.class),
                     service(EventLogFactoryService.class),
+                    service(ResourceNamePrefixLeaseService.class),
                     factoryService(ResourceNamePrefixService.class),
                     factoryService(LogService.class),
                     factoryService(CounterSubTaskService.class),
                     factoryService(ExtensibilitySubscriptionCallbackService.class),
                     factoryService(EventTopicService.class),
-                    factoryService(UniquePropertiesService.class)));
+                    factoryService(UniquePropertiesService.class),
+                    factoryService(NodeMigrationCheckpointService.class)));
 
     @SuppressWarnings("unchecked")
     private static final Class<? extends Service>[] servicesToStart = new Class[] {
@@ -79,13 +87,16 @@ public class HostInitCommonServiceConfig extends HostInitServiceHelper {
             NodeHealthCheckService.class,
             SslTrustImportService.class,
             ConfigurationFactoryService.class,
+            ConfigurationCacheService.class,
             SslTrustCertificateFactoryService.class,
             CommonInitialBootService.class,
             ReverseProxyService.class,
             ExtensibilitySubscriptionFactoryService.class,
             LongURIGetService.class,
+            InterceptorStatsService.class,
             RegistryFactoryService.class,
-            EventLogFactoryService.class
+            EventLogFactoryService.class,
+            ResourceNamePrefixLeaseService.class
     };
 
     @SuppressWarnings("unchecked")
@@ -95,7 +106,8 @@ public class HostInitCommonServiceConfig extends HostInitServiceHelper {
             CounterSubTaskService.class,
             ExtensibilitySubscriptionCallbackService.class,
             EventTopicService.class,
-            UniquePropertiesService.class
+            UniquePropertiesService.class,
+            NodeMigrationCheckpointService.class
     };
 
 
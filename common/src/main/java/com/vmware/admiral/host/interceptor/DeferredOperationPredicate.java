@@ -12,9 +12,11 @@
 package com.vmware.admiral.host.interceptor;
 
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.logging.Level;
 
+import com.vmware.admiral.host.interceptor.InterceptorLatencyStats.InterceptorLatency;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationProcessingChain;
@@ -31,6 +33,10 @@ public class DeferredOperationPredicate implements Filter {
     private final Service service;
     private final Action action;
     private final BiFunction<Service, Operation, DeferredResult<Void>> predicate;
+    private final String serviceName;
+    private final String interceptorName;
+    // action ordinal -> latency of the predicate, created on first use
+    private final InterceptorLatency[] latencies = new InterceptorLatency[Action.values().length];
 
     /**
      * Constructs a new instance.
@@ -42,9 +48,22 @@ public class DeferredOperationPredicate implements Filter {
      */
     public DeferredOperationPredicate(Service service, Action action,
             BiFunction<Service, Operation, DeferredResult<Void>> predicate) {
+        this(service, action, predicate, service.getClass().getSimpleName(),
+                InterceptorLatencyStats.getInterceptorName(predicate));
+    }
+
+    /**
+     * Constructs a new instance, which latency is recorded in {@link InterceptorLatencyStats}
+     * under the given service and interceptor names.
+     */
+    public DeferredOperationPredicate(Service service, Action action,
+            BiFunction<Service, Operation, DeferredResult<Void>> predicate, String serviceName,
+            String interceptorName) {
         this.service = service;
         this.action = action;
         this.predicate = predicate;
+        this.serviceName = serviceName;
+        this.interceptorName = interceptorName;
     }
 
     @Override
@@ -59,6 +78,8 @@ public class DeferredOperationPredicate implements Filter {
             return FilterReturnCode.CONTINUE_PROCESSING;
         }
 
+        boolean sampled = InterceptorLatencyStats.sample();
+        long startNanos = sampled ? System.nanoTime() : 0;
         DeferredResult<Void> dr;
         try {
             dr = this.predicate.apply(this.service, operation);
@@ -70,6 +91,9 @@ public class DeferredOperationPredicate implements Filter {
         }
 
         dr.whenComplete((ignore, e) -> {
+            if (sampled) {
+                recordLatency(operation.getAction(), startNanos);
+            }
             if (e != null) {
                 this.service.getHost().log(Level.INFO,
                         "Operation interceptor %s: Action: %s returned error: %s",
@@ -90,4 +114,15 @@ public class DeferredOperationPredicate implements Filter {
         });
         return FilterReturnCode.SUCCESS_STOP_PROCESSING;
     }
+
+    private void recordLatency(Action operationAction, long startNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        InterceptorLatency latency = this.latencies[operationAction.ordinal()];
+        if (latency == null) {
+            latency = InterceptorLatencyStats.getLatency(this.serviceName, operationAction,
+                    this.interceptorName);
+            this.latencies[operationAction.ordinal()] = latency;
+        }
+        latency.histogram.recordMicros(micros);
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host.interceptor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.vmware.xenon.common.Service.Action;
+
+/**
+ * Latency added by the operation interceptors, per intercepted service, action and interceptor.
+ * The latency of an interceptor is the time from its invocation until the completion of the
+ * deferred result it returns.
+ * <p>
+ * Disabled by default, in which case the interceptors only check a flag. Enabled with
+ * <code>com.vmware.admiral.interceptor.latency.stats.enabled</code> or at runtime through
+ * {@link com.vmware.admiral.service.common.InterceptorStatsService}. With
+ * <code>com.vmware.admiral.interceptor.latency.stats.sample.rate</code> set to N only one of
+ * every N operations, chosen at random, is recorded.
+ */
+public class InterceptorLatencyStats {
+
+    public static final String ENABLED_PROPERTY =
+            "com.vmware.admiral.interceptor.latency.stats.enabled";
+    public static final String SAMPLE_RATE_PROPERTY =
+            "com.vmware.admiral.interceptor.latency.stats.sample.rate";
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+    private static volatile int sampleRate = Math.max(1,
+            Integer.getInteger(SAMPLE_RATE_PROPERTY, 1));
+
+    // service|action|interceptor -> latency
+    private static final Map<String, InterceptorLatency> LATENCIES = new ConcurrentHashMap<>();
+
+    /**
+     * The latency of an interceptor for an action of a service.
+     */
+    public static class InterceptorLatency {
+        public final String service;
+        public final Action action;
+        public final String interceptor;
+        public final LatencyHistogram histogram = new LatencyHistogram();
+
+        private InterceptorLatency(String service, Action action, String interceptor) {
+            this.service = service;
+            this.action = action;
+            this.interceptor = interceptor;
+        }
+    }
+
+    private InterceptorLatencyStats() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        InterceptorLatencyStats.enabled = enabled;
+    }
+
+    public static int getSampleRate() {
+        return sampleRate;
+    }
+
+    public static void setSampleRate(int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("'sampleRate' must be positive");
+        }
+        InterceptorLatencyStats.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns whether the latency of the operation about to be intercepted is to be recorded.
+     */
+    static boolean sample() {
+        if (!enabled) {
+            return false;
+        }
+        int rate = sampleRate;
+        return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    static InterceptorLatency getLatency(String service, Action action, String interceptor) {
+        return LATENCIES.computeIfAbsent(service + "|" + action + "|" + interceptor,
+                k -> new InterceptorLatency(service, action, interceptor));
+    }
+
+    /**
+     * Returns the recorded latencies, ordered by service, action and interceptor.
+     */
+    public static List<InterceptorLatency> getLatencies() {
+        List<InterceptorLatency> latencies = new ArrayList<>(LATENCIES.values());
+        latencies.sort(Comparator.comparing((InterceptorLatency l) -> l.service)
+                .thenComparing(l -> l.action)
+                .thenComparing(l -> l.interceptor));
+        return latencies;
+    }
+
+    public static void reset() {
+        LATENCIES.values().forEach(l -> l.histogram.reset());
+    }
+
+    /**
+     * Returns the name of the given interceptor, i.e. the simple name of the class declaring it,
+     * which is how the interceptors are registered, as method references.
+     */
+    static String getInterceptorName(Object interceptor) {
+        String name = interceptor.getClass().getName();
+        int lambdaIndex = name.indexOf("$$Lambda");
+        if (lambdaIndex > 0) {
+            name = name.substring(0, lambdaIndex);
+        }
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+}
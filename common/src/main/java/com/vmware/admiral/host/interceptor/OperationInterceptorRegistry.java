@@ -33,6 +33,9 @@ public class OperationInterceptorRegistry {
     private static class InterceptorData {
         public Action action;
         public BiFunction<Service, Operation, DeferredResult<Void>> interceptor;
+        /** Names under which the latency of the interceptor is recorded. */
+        public String serviceName;
+        public String interceptorName;
     }
 
     private final Map<Class<? extends Service>, Collection<InterceptorData>> serviceInterceptors =
@@ -51,6 +54,8 @@ public class OperationInterceptorRegistry {
         InterceptorData data = new InterceptorData();
         data.action = action;
         data.interceptor = interceptor;
+        data.serviceName = serviceType.getSimpleName();
+        data.interceptorName = InterceptorLatencyStats.getInterceptorName(interceptor);
         this.serviceInterceptors.computeIfAbsent(serviceType, s -> new ArrayList<>()).add(data);
     }
 
@@ -62,6 +67,8 @@ public class OperationInterceptorRegistry {
         InterceptorData data = new InterceptorData();
         data.action = action;
         data.interceptor = interceptor;
+        data.serviceName = serviceInstanceType.getSimpleName() + " (factory)";
+        data.interceptorName = InterceptorLatencyStats.getInterceptorName(interceptor);
         this.factoryServiceInterceptors.computeIfAbsent(
                 serviceInstanceType, s -> new ArrayList<>()).add(data);
     }
@@ -77,7 +84,9 @@ public class OperationInterceptorRegistry {
             for (InterceptorData data : interceptors) {
                 DeferredOperationPredicate filter = new DeferredOperationPredicate(service,
                         data.action,
-                        data.interceptor);
+                        data.interceptor,
+                        data.serviceName,
+                        data.interceptorName);
                 filter.init();
                 chain.getFilters().add(filter);
             }
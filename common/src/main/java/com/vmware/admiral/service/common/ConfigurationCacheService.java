@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * Node local snapshot of the configuration properties, loaded on start and kept up to date with a
+ * continuous query over the {@link ConfigurationState}s, so that the configuration properties are
+ * read without a request to the configuration service. See
+ * {@link com.vmware.admiral.common.util.ConfigurationUtil}. The properties are keyed by the id of
+ * their self link, the name they are read with from the configuration service.
+ *
+ * The snapshot is reloaded periodically, the properties found to differ from the snapshot, e.g.
+ * because of a missed notification, are counted as stale. A GET returns the hit, miss and stale
+ * counters.
+ */
+public class ConfigurationCacheService extends StatelessService {
+
+    public static final String SELF_LINK = ManagementUriParts.CONFIG_PROPS_CACHE;
+
+    private static final String QUERY_NAME = "configuration-properties";
+
+    public static final long RELOAD_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.configuration.cache.reload.interval.micros",
+            TimeUnit.MINUTES.toMicros(5));
+
+    // host id -> cache started on the host, removed when the host stops
+    private static final Map<String, ConfigurationCacheService> CACHES =
+            new ConcurrentHashMap<>();
+
+    public static class ConfigurationCacheStats {
+        public boolean loaded;
+        public int size;
+        /** Reads answered from the snapshot. */
+        public long hits;
+        /** Reads sent to the configuration service since the snapshot was not loaded yet. */
+        public long misses;
+        /** Changes applied to the snapshot from notifications. */
+        public long updates;
+        /** Properties found to differ from the snapshot when it was reloaded. */
+        public long staleProperties;
+        /** Time from the last change of a property until it was applied to the snapshot. */
+        public long lastUpdateLagMicros;
+    }
+
+    private final Map<String, ConfigurationState> properties = new ConcurrentHashMap<>();
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    // the update times of the deleted properties, kept until a reload started after the delete
+    // completes so that a reload does not bring back a property deleted while it was running
+    private final Map<String, Long> tombstones = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong staleProperties = new AtomicLong();
+    private volatile long lastUpdateLagMicros;
+
+    public ConfigurationCacheService() {
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(RELOAD_INTERVAL_MICROS);
+    }
+
+    /**
+     * Returns the configuration cache started on the given host, or <code>null</code> if there
+     * is none.
+     */
+    public static ConfigurationCacheService getInstance(ServiceHost host) {
+        return CACHES.get(host.getId());
+    }
+
+    @Override
+    public void handleStart(Operation startPost) {
+        CACHES.put(getHost().getId(), this);
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ConfigurationState.class)
+                .build();
+        CommonContinuousQueries.subscribeTo(getHost(), QUERY_NAME, query,
+                this::onConfigurationChange, () -> reload(false));
+        startPost.complete();
+    }
+
+    @Override
+    public void handleStop(Operation delete) {
+        CACHES.remove(getHost().getId(), this);
+        super.handleStop(delete);
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        ConfigurationCacheStats stats = new ConfigurationCacheStats();
+        stats.loaded = loaded;
+        stats.size = properties.size();
+        stats.hits = hits.get();
+        stats.misses = misses.get();
+        stats.updates = updates.get();
+        stats.staleProperties = staleProperties.get();
+        stats.lastUpdateLagMicros = lastUpdateLagMicros;
+        get.setBody(stats).complete();
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        if (loaded) {
+            reload(true);
+        }
+        post.complete();
+    }
+
+    /**
+     * Whether the snapshot is loaded, i.e. the properties can be read from it.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns the value of a property from the snapshot, <code>null</code> if there is no such
+     * property. Only to be called when the snapshot is loaded.
+     */
+    public String getValue(String propName) {
+        hits.incrementAndGet();
+        ConfigurationState state = properties.get(propName);
+        return state != null ? state.value : null;
+    }
+
+    /**
+     * Counts a read which could not be answered from the snapshot.
+     */
+    public void countMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Registers a listener to be called with the new value of a property, <code>null</code> if
+     * the property is deleted, whenever it changes.
+     */
+    public void addListener(String propName, Consumer<String> listener) {
+        listeners.computeIfAbsent(propName, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void removeListener(String propName, Consumer<String> listener) {
+        List<Consumer<String>> propListeners = listeners.get(propName);
+        if (propListeners != null) {
+            propListeners.remove(listener);
+        }
+    }
+
+    private void onConfigurationChange(Operation notification) {
+        notification.complete();
+        QueryTask queryTask = notification.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        for (Object document : queryTask.results.documents.values()) {
+            onConfigurationChange(Utils.fromJson(document, ConfigurationState.class));
+        }
+    }
+
+    void onConfigurationChange(ConfigurationState state) {
+        boolean deleted = Action.DELETE.toString().equals(state.documentUpdateAction);
+        if (apply(state, deleted)) {
+            updates.incrementAndGet();
+            lastUpdateLagMicros = Math.max(0,
+                    Utils.getNowMicrosUtc() - state.documentUpdateTimeMicros);
+        }
+    }
+
+    /**
+     * Loads all properties, counting the ones which differ from the snapshot when it is
+     * <code>resync</code>-ed.
+     */
+    private void reload(boolean resync) {
+        long reloadStartMicros = Utils.getNowMicrosUtc();
+        QueryTask queryTask = QueryUtil.addExpandOption(
+                QueryUtil.buildQuery(ConfigurationState.class, true));
+        List<ConfigurationState> loadedProperties = new ArrayList<>();
+        new ServiceDocumentQuery<>(getHost(), ConfigurationState.class).query(queryTask, r -> {
+            if (r.hasException()) {
+                logWarning("Failed to load the configuration properties: %s",
+                        Utils.toString(r.getException()));
+            } else if (r.hasResult()) {
+                loadedProperties.add(r.getResult());
+            } else {
+                completeReload(loadedProperties, reloadStartMicros, resync);
+            }
+        });
+    }
+
+    /**
+     * Applies the properties loaded by a reload started at <code>reloadStartMicros</code>. The
+     * properties missing from the loaded ones are removed from the snapshot, unless they were
+     * changed after the reload started, i.e. notified after the query has read its results.
+     */
+    void completeReload(Collection<ConfigurationState> loadedProperties,
+            long reloadStartMicros, boolean resync) {
+        int stale = 0;
+        Set<String> loadedKeys = new HashSet<>();
+        for (ConfigurationState state : loadedProperties) {
+            loadedKeys.add(getPropertyName(state));
+            if (apply(state, false) && resync) {
+                stale++;
+            }
+        }
+        for (Entry<String, ConfigurationState> entry : properties.entrySet()) {
+            if (!loadedKeys.contains(entry.getKey())
+                    && entry.getValue().documentUpdateTimeMicros < reloadStartMicros
+                    && apply(entry.getValue(), true) && resync) {
+                stale++;
+            }
+        }
+        tombstones.values().removeIf(deletedMicros -> deletedMicros < reloadStartMicros);
+        staleProperties.addAndGet(stale);
+        if (!loaded) {
+            loaded = true;
+            logInfo("Loaded %d configuration properties", properties.size());
+        }
+    }
+
+    /**
+     * Applies a change of a property to the snapshot, unless the snapshot already has a newer
+     * version of it or the property was deleted later, and notifies the listeners. Returns
+     * whether the value of the property has changed.
+     */
+    private boolean apply(ConfigurationState state, boolean deleted) {
+        String propName = getPropertyName(state);
+        if (propName == null) {
+            return false;
+        }
+        if (deleted) {
+            tombstones.merge(propName, state.documentUpdateTimeMicros, Math::max);
+        } else {
+            Long deletedMicros = tombstones.get(propName);
+            if (deletedMicros != null && deletedMicros >= state.documentUpdateTimeMicros) {
+                return false;
+            }
+        }
+        boolean[] changed = new boolean[1];
+        properties.compute(propName, (k, current) -> {
+            if (current != null
+                    && current.documentUpdateTimeMicros > state.documentUpdateTimeMicros) {
+                return current;
+            }
+            changed[0] = deleted
+                    ? current != null
+                    : current == null || !Objects.equals(current.value, state.value);
+            return deleted ? null : state;
+        });
+        if (changed[0]) {
+            notifyListeners(propName, deleted ? null : state.value);
+        }
+        return changed[0];
+    }
+
+    /**
+     * Returns the name a property is read with, i.e. the id of its self link.
+     */
+    private static String getPropertyName(ConfigurationState state) {
+        return state.documentSelfLink != null
+                ? UriUtils.getLastPathSegment(state.documentSelfLink) : null;
+    }
+
+    private void notifyListeners(String propName, String value) {
+        List<Consumer<String>> propListeners = listeners.get(propName);
+        if (propListeners == null) {
+            return;
+        }
+        for (Consumer<String> listener : propListeners) {
+            try {
+                listener.accept(value);
+            } catch (Throwable e) {
+                logWarning("Configuration property listener for %s failed: %s", propName,
+                        Utils.toString(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.CompletionHandler;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.ServiceStats.ServiceStatLogHistogram;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Dispatches extensibility notifications to subscriber endpoints. Every endpoint (scheme, host and
+ * port of the callback reference) gets its own connection pool, a cap of in-flight requests with a
+ * bounded queue of pending ones and a circuit breaker that fails notifications fast after a number
+ * of consecutive failures. Once the circuit has been open for {@link #CIRCUIT_BREAKER_OPEN_MICROS}
+ * it is half-open: a single notification is let through as a probe, while the others are still
+ * rejected, and the outcome of the probe closes or reopens the circuit. Request counts, failures,
+ * queue depths and latencies are recorded by each endpoint, see {@link #getStats()}.
+ *
+ * Endpoints which have been idle for {@link #IDLE_ENDPOINT_EXPIRATION_MICROS} are pruned together
+ * with their stats.
+ */
+class ExtensibilityNotificationDispatcher {
+
+    static final String STAT_NAME_PREFIX = "extensibilityNotification:";
+    static final String STAT_NAME_SUFFIX_REQUESTS = ":requests";
+    static final String STAT_NAME_SUFFIX_FAILURES = ":failures";
+    static final String STAT_NAME_SUFFIX_REJECTED = ":rejected";
+    static final String STAT_NAME_SUFFIX_LATENCY_MICROS = ":latencyMicros";
+    static final String STAT_NAME_SUFFIX_QUEUE_DEPTH = ":queueDepth";
+
+    static final int MAX_IN_FLIGHT_PER_ENDPOINT = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.endpoint.inflight", 16);
+    static final int MAX_QUEUED_PER_ENDPOINT = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.endpoint.queue", 1000);
+    static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = Integer.getInteger(
+            "com.vmware.admiral.service.extensibility.notification.circuit.failures", 5);
+    static final long CIRCUIT_BREAKER_OPEN_MICROS = TimeUnit.SECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.service.extensibility.notification.circuit.open.seconds", 30));
+    static final long IDLE_ENDPOINT_EXPIRATION_MICROS = TimeUnit.MINUTES.toMicros(Long.getLong(
+            "com.vmware.admiral.service.extensibility.notification.endpoint.idle.minutes", 10));
+
+    private final Service service;
+    private final long circuitOpenMicros;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private volatile long nextPruneMicros = Utils.fromNowMicrosUtc(IDLE_ENDPOINT_EXPIRATION_MICROS);
+
+    ExtensibilityNotificationDispatcher(Service service) {
+        this(service, CIRCUIT_BREAKER_OPEN_MICROS);
+    }
+
+    ExtensibilityNotificationDispatcher(Service service, long circuitOpenMicros) {
+        this.service = service;
+        this.circuitOpenMicros = circuitOpenMicros;
+    }
+
+    /**
+     * Sends the given operation to its target endpoint. The completion of the operation is
+     * invoked when the request completes or when it is rejected because the circuit of the
+     * endpoint is open or its queue is full.
+     */
+    void send(Operation op) {
+        long nowMicros = Utils.getSystemNowMicrosUtc();
+        if (nowMicros >= nextPruneMicros) {
+            pruneIdleEndpoints(nowMicros);
+        }
+        // the endpoint is reserved while still mapped, so that it cannot be pruned before the
+        // submit and a concurrent send cannot get a second endpoint for the same key
+        Endpoint endpoint = endpoints.compute(getEndpointKey(op.getUri()), (key, existing) -> {
+            Endpoint result = existing != null ? existing : new Endpoint(key);
+            result.reserve();
+            return result;
+        });
+        endpoint.submit(op);
+    }
+
+    boolean isCircuitOpen(URI uri) {
+        Endpoint endpoint = endpoints.get(getEndpointKey(uri));
+        return endpoint != null && endpoint.isCircuitOpen(Utils.getSystemNowMicrosUtc());
+    }
+
+    int getEndpointCount() {
+        return endpoints.size();
+    }
+
+    /**
+     * Returns a copy of the stats of the current endpoints. The latency stats of each endpoint
+     * have the latency of its last notification as latest value, the sum of all latencies as
+     * accumulated value, the number of notifications as version and a log10 histogram of the
+     * latencies.
+     */
+    ServiceStats getStats() {
+        ServiceStats stats = new ServiceStats();
+        for (Endpoint endpoint : endpoints.values()) {
+            endpoint.copyStats(stats.entries);
+        }
+        return stats;
+    }
+
+    static String getEndpointKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+
+    /**
+     * Removes the endpoints without pending notifications which have not been used for
+     * {@link #IDLE_ENDPOINT_EXPIRATION_MICROS}, unless their circuit is still open.
+     */
+    void pruneIdleEndpoints(long nowMicros) {
+        nextPruneMicros = nowMicros + IDLE_ENDPOINT_EXPIRATION_MICROS;
+        for (String key : endpoints.keySet()) {
+            endpoints.computeIfPresent(key,
+                    (k, endpoint) -> endpoint.isIdle(nowMicros) ? null : endpoint);
+        }
+    }
+
+    private class Endpoint {
+        private final String key;
+        private final Deque<Operation> queue = new ArrayDeque<>();
+        private final Map<String, ServiceStat> stats = new HashMap<>();
+        private int reserved;
+        private int inFlight;
+        private int consecutiveFailures;
+        private long circuitOpenUntilMicros;
+        private boolean probeInFlight;
+        private long lastUsedMicros = Utils.getSystemNowMicrosUtc();
+
+        Endpoint(String key) {
+            this.key = key;
+            // dedicated connection pool per subscriber endpoint, sized to the in-flight cap
+            service.getHost().getClient().setConnectionLimitPerTag(getConnectionTag(),
+                    MAX_IN_FLIGHT_PER_ENDPOINT);
+        }
+
+        synchronized void reserve() {
+            reserved++;
+        }
+
+        void submit(Operation op) {
+            String rejectReason = null;
+            boolean dispatch = false;
+            boolean probe = false;
+            synchronized (this) {
+                long nowMicros = Utils.getSystemNowMicrosUtc();
+                reserved--;
+                lastUsedMicros = nowMicros;
+                if (isCircuitOpen(nowMicros)) {
+                    rejectReason = "circuit open after " + consecutiveFailures
+                            + " consecutive failures";
+                } else if (consecutiveFailures >= CIRCUIT_BREAKER_FAILURE_THRESHOLD) {
+                    // half-open, only a single probe is sent until the circuit is closed again
+                    if (probeInFlight) {
+                        rejectReason = "circuit half-open, waiting for the probe notification";
+                    } else {
+                        probeInFlight = true;
+                        probe = true;
+                        inFlight++;
+                        dispatch = true;
+                    }
+                } else if (inFlight < MAX_IN_FLIGHT_PER_ENDPOINT) {
+                    inFlight++;
+                    dispatch = true;
+                } else if (queue.size() < MAX_QUEUED_PER_ENDPOINT) {
+                    queue.add(op);
+                } else {
+                    rejectReason = "too many pending notifications";
+                }
+                updateStat(STAT_NAME_SUFFIX_QUEUE_DEPTH, queue.size());
+            }
+
+            if (rejectReason != null) {
+                reject(op, rejectReason);
+            } else if (dispatch) {
+                dispatch(op, probe);
+            }
+        }
+
+        synchronized boolean isCircuitOpen(long nowMicros) {
+            return consecutiveFailures >= CIRCUIT_BREAKER_FAILURE_THRESHOLD
+                    && nowMicros < circuitOpenUntilMicros;
+        }
+
+        synchronized boolean isIdle(long nowMicros) {
+            return reserved == 0 && inFlight == 0 && queue.isEmpty() && !isCircuitOpen(nowMicros)
+                    && nowMicros - lastUsedMicros >= IDLE_ENDPOINT_EXPIRATION_MICROS;
+        }
+
+        private void dispatch(Operation op, boolean probe) {
+            long startMicros = Utils.getSystemNowMicrosUtc();
+            CompletionHandler completion = op.getCompletion();
+            op.setConnectionTag(getConnectionTag());
+            op.setCompletion((o, e) -> {
+                onComplete(o, e, probe, Utils.getSystemNowMicrosUtc() - startMicros);
+                if (completion != null) {
+                    completion.handle(o, e);
+                }
+            });
+
+            adjustStat(STAT_NAME_SUFFIX_REQUESTS);
+            service.sendRequest(op);
+        }
+
+        private void onComplete(Operation o, Throwable e, boolean probe, long latencyMicros) {
+            // client errors mean the endpoint is alive, only server and transport errors count
+            boolean failed = e != null && (o.getStatusCode() < Operation.STATUS_CODE_BAD_REQUEST
+                    || o.getStatusCode() >= Operation.STATUS_CODE_SERVER_FAILURE_THRESHOLD);
+            Operation next;
+            List<Operation> rejected = Collections.emptyList();
+            synchronized (this) {
+                updateStat(STAT_NAME_SUFFIX_LATENCY_MICROS, latencyMicros);
+                if (failed) {
+                    adjustStat(STAT_NAME_SUFFIX_FAILURES);
+                }
+                if (probe) {
+                    probeInFlight = false;
+                }
+                if (failed) {
+                    consecutiveFailures++;
+                    if (consecutiveFailures >= CIRCUIT_BREAKER_FAILURE_THRESHOLD) {
+                        // opens the circuit, or reopens it after a failed probe
+                        circuitOpenUntilMicros = Utils.fromNowMicrosUtc(circuitOpenMicros);
+                        // fail the pending notifications fast instead of waiting for each of them
+                        rejected = new ArrayList<>(queue);
+                        queue.clear();
+                    }
+                } else {
+                    consecutiveFailures = 0;
+                }
+                next = queue.poll();
+                if (next == null) {
+                    inFlight--;
+                }
+                updateStat(STAT_NAME_SUFFIX_QUEUE_DEPTH, queue.size());
+            }
+
+            for (Operation op : rejected) {
+                reject(op, "circuit open after " + CIRCUIT_BREAKER_FAILURE_THRESHOLD
+                        + " consecutive failures");
+            }
+            if (next != null) {
+                dispatch(next, false);
+            }
+        }
+
+        private void reject(Operation op, String reason) {
+            synchronized (this) {
+                adjustStat(STAT_NAME_SUFFIX_REJECTED);
+            }
+            op.fail(new IllegalStateException(String.format(
+                    "Notification to [%s] rejected: %s", key, reason)));
+        }
+
+        private String getConnectionTag() {
+            return STAT_NAME_PREFIX + key;
+        }
+
+        synchronized void copyStats(Map<String, ServiceStat> target) {
+            for (ServiceStat stat : stats.values()) {
+                target.put(stat.name, Utils.clone(stat));
+            }
+        }
+
+        private void adjustStat(String suffix) {
+            ServiceStat stat = getStat(suffix);
+            stat.latestValue++;
+            stat.accumulatedValue++;
+            stat.version++;
+            stat.lastUpdateMicrosUtc = Utils.getSystemNowMicrosUtc();
+        }
+
+        private void updateStat(String suffix, double value) {
+            ServiceStat stat = getStat(suffix);
+            stat.latestValue = value;
+            stat.accumulatedValue += value;
+            stat.version++;
+            stat.lastUpdateMicrosUtc = Utils.getSystemNowMicrosUtc();
+            if (stat.logHistogram != null) {
+                int bin = value >= 1 ? (int) Math.log10(value) : 0;
+                stat.logHistogram.bins[Math.min(bin, stat.logHistogram.bins.length - 1)]++;
+            }
+        }
+
+        private ServiceStat getStat(String suffix) {
+            return stats.computeIfAbsent(suffix, s -> {
+                ServiceStat stat = new ServiceStat();
+                stat.name = STAT_NAME_PREFIX + key + s;
+                if (STAT_NAME_SUFFIX_LATENCY_MICROS.equals(s)) {
+                    stat.logHistogram = new ServiceStatLogHistogram();
+                }
+                return stat;
+            });
+        }
+    }
+}
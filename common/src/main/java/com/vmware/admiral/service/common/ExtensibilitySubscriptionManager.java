@@ -74,6 +74,9 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
 
     private AtomicBoolean initialized = new AtomicBoolean();
 
+    private final ExtensibilityNotificationDispatcher dispatcher =
+            new ExtensibilityNotificationDispatcher(this);
+
     public ExtensibilitySubscriptionManager() {
     }
 
@@ -82,6 +85,15 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
         initialize(start);
     }
 
+    /**
+     * Returns the notification stats of the subscriber endpoints, which are dropped together with
+     * the idle endpoints.
+     */
+    @Override
+    public void handleGet(Operation get) {
+        get.setBody(dispatcher.getStats()).complete();
+    }
+
     @Override
     public void handleStop(Operation delete) {
         initialized.set(false);
@@ -342,8 +354,9 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
     }
 
     /**
-     * Sends a service document to external url. Supports retry in case of an error and if task
-     * service is provided this method will call failTask when no more retries left.
+     * Sends a service document to external url through the per endpoint dispatcher. Supports
+     * retry in case of an error and if task service is provided this method will call failTask
+     * when no more retries left.
      *
      * @param extensibility extensibility state
      * @param body          document to send
@@ -356,7 +369,7 @@ public class ExtensibilitySubscriptionManager extends StatelessService {
             ServiceDocument body, T state,
             int retriesLeft) {
 
-        sendRequest(Operation.createPost(extensibility.callbackReference)
+        dispatcher.send(Operation.createPost(extensibility.callbackReference)
                 .setBody(body)
                 .setCompletion((o, e) -> {
                     if (e != null) {
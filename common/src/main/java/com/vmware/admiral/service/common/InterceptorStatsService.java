@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.host.interceptor.InterceptorLatencyStats;
+import com.vmware.admiral.host.interceptor.InterceptorLatencyStats.InterceptorLatency;
+import com.vmware.admiral.host.interceptor.LatencyHistogram;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+
+/**
+ * Exposes the latency added by the operation interceptors of this node, as JSON or, with
+ * <code>?format=prometheus</code>, in the Prometheus text format. The recording is enabled and the
+ * sample rate is set and the recorded latencies are cleared with a PATCH.
+ */
+public class InterceptorStatsService extends StatelessService {
+
+    public static final String SELF_LINK = ManagementUriParts.INTERCEPTOR_STATS;
+
+    public static final String FORMAT_PARAM = "format";
+    public static final String FORMAT_PROMETHEUS = "prometheus";
+    public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    static final String PROMETHEUS_METRIC = "admiral_interceptor_latency_seconds";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    public static class InterceptorStatsRequest {
+        public Boolean enabled;
+        /** Only one of every <code>sampleRate</code> operations is recorded. */
+        public Integer sampleRate;
+        /** Clears the recorded latencies. */
+        public Boolean reset;
+    }
+
+    public static class InterceptorStats {
+        public boolean enabled;
+        public int sampleRate;
+        public List<InterceptorLatencyStat> latencies;
+    }
+
+    public static class InterceptorLatencyStat {
+        public String service;
+        public String action;
+        public String interceptor;
+        /** Number of recorded operations. */
+        public long count;
+        public long totalMicros;
+        public long maxMicros;
+        public long p50Micros;
+        public long p90Micros;
+        public long p99Micros;
+        public long p999Micros;
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+        if (FORMAT_PROMETHEUS.equals(params.get(FORMAT_PARAM))) {
+            get.setContentType(PROMETHEUS_CONTENT_TYPE);
+            get.setBody(toPrometheusText(InterceptorLatencyStats.getLatencies()));
+        } else {
+            get.setBody(getStats());
+        }
+        get.complete();
+    }
+
+    @Override
+    public void handlePatch(Operation patch) {
+        InterceptorStatsRequest body = patch.getBody(InterceptorStatsRequest.class);
+        try {
+            if (body.sampleRate != null) {
+                InterceptorLatencyStats.setSampleRate(body.sampleRate);
+            }
+        } catch (IllegalArgumentException e) {
+            patch.fail(e);
+            return;
+        }
+        if (body.enabled != null) {
+            InterceptorLatencyStats.setEnabled(body.enabled);
+        }
+        if (Boolean.TRUE.equals(body.reset)) {
+            InterceptorLatencyStats.reset();
+        }
+        patch.setBody(getStats());
+        patch.complete();
+    }
+
+    static InterceptorStats getStats() {
+        InterceptorStats stats = new InterceptorStats();
+        stats.enabled = InterceptorLatencyStats.isEnabled();
+        stats.sampleRate = InterceptorLatencyStats.getSampleRate();
+        stats.latencies = new ArrayList<>();
+        for (InterceptorLatency latency : InterceptorLatencyStats.getLatencies()) {
+            LatencyHistogram histogram = latency.histogram;
+            InterceptorLatencyStat stat = new InterceptorLatencyStat();
+            stat.service = latency.service;
+            stat.action = latency.action.name();
+            stat.interceptor = latency.interceptor;
+            stat.count = histogram.getCount();
+            stat.totalMicros = histogram.getTotalMicros();
+            stat.maxMicros = histogram.getMaxMicros();
+            stat.p50Micros = histogram.getPercentileMicros(50);
+            stat.p90Micros = histogram.getPercentileMicros(90);
+            stat.p99Micros = histogram.getPercentileMicros(99);
+            stat.p999Micros = histogram.getPercentileMicros(99.9);
+            stats.latencies.add(stat);
+        }
+        return stats;
+    }
+
+    static String toPrometheusText(List<InterceptorLatency> latencies) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP ").append(PROMETHEUS_METRIC)
+                .append(" Latency added by the operation interceptors.\n");
+        sb.append("# TYPE ").append(PROMETHEUS_METRIC).append(" summary\n");
+        for (InterceptorLatency latency : latencies) {
+            LatencyHistogram histogram = latency.histogram;
+            String labels = String.format("service=\"%s\",action=\"%s\",interceptor=\"%s\"",
+                    escapeLabelValue(latency.service), latency.action,
+                    escapeLabelValue(latency.interceptor));
+            for (double quantile : QUANTILES) {
+                sb.append(PROMETHEUS_METRIC).append('{').append(labels)
+                        .append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(toSeconds(histogram.getPercentileMicros(quantile * 100)))
+                        .append('\n');
+            }
+            sb.append(PROMETHEUS_METRIC).append("_sum{").append(labels).append("} ")
+                    .append(toSeconds(histogram.getTotalMicros())).append('\n');
+            sb.append(PROMETHEUS_METRIC).append("_count{").append(labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String toSeconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public ServiceDocument getDocumentTemplate() {
+        ServiceDocument d = super.getDocumentTemplate();
+        addServiceRequestRoute(d, Action.GET,
+                "Get the latency added by the operation interceptors, in the Prometheus text "
+                        + "format with ?format=prometheus.", InterceptorStats.class);
+        addServiceRequestRoute(d, Action.PATCH,
+                "Enable the latency recording, set its sample rate or clear the recorded "
+                        + "latencies.", InterceptorStatsRequest.class);
+        return d;
+    }
+}
@@ -11,8 +11,19 @@
 
 package com.vmware.admiral.service.common;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.photon.controller.model.ServiceUtils;
@@ -22,10 +33,24 @@ import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexingOption;
 import com.vmware.xenon.common.StatefulService;
+import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
 /**
  * LogService is log management service which maintains the logs of a container.
+ *
+ * The logs are kept in a ring buffer of deflated segments of up to {@link #SEGMENT_SIZE} bytes,
+ * the oldest segments being dropped once the logs exceed {@link #MAX_LOG_SIZE}. A PUT replaces
+ * the logs, a PATCH appends to them, and the logs a state is created with are moved to segments
+ * on its first update. Every byte has an offset in the log stream of the container,
+ * which increases across appends and replacements, and a GET with the
+ * {@link #OFFSET_QUERY_PARAM} returns only the logs from the given offset on.
+ *
+ * Logs fetched incrementally have their lines prefixed with the docker timestamps, see
+ * {@link LogServiceState#timestamped}. The lines not newer than the last stored one are dropped,
+ * since consecutive fetches overlap, and the rest are stored with their timestamps. A GET applies
+ * the {@link #TAIL_QUERY_PARAM}, {@link #SINCE_QUERY_PARAM} and {@link #TIMESTAMPS_QUERY_PARAM}
+ * options of the docker logs API to the stored logs, the timestamps are removed by default.
  */
 public class LogService extends StatefulService {
     private static final String CONTAINER_LOG_MAX_SIZE_PROPERTY = "container.log.max.size";
@@ -35,6 +60,31 @@ public class LogService extends StatefulService {
 
     public static final String FACTORY_LINK = ManagementUriParts.LOGS;
 
+    /** URI query parameter of a GET for the logs from the given offset on. */
+    public static final String OFFSET_QUERY_PARAM = "offset";
+
+    /** URI query parameter of a GET for the given count of lines from the end of the logs. */
+    public static final String TAIL_QUERY_PARAM = "tail";
+
+    /** URI query parameter of a GET for the lines since the given Unix timestamp in seconds. */
+    public static final String SINCE_QUERY_PARAM = "since";
+
+    /** URI query parameter of a GET for the lines with their docker timestamps. */
+    public static final String TIMESTAMPS_QUERY_PARAM = "timestamps";
+
+    // stream type, 3 zero bytes and the big endian size of a frame of multiplexed docker logs
+    private static final int FRAME_HEADER_LENGTH = 8;
+
+    // the length of a docker timestamp with nanoseconds and a zone offset
+    private static final int MAX_TIMESTAMP_LENGTH = 35;
+
+    /** The uncompressed size of a log segment, at most a quarter of the minimal log size. */
+    public static final int SEGMENT_SIZE = Math.min(MIN_LOG_SIZE / 4, Integer.getInteger(
+            "dcp.management.container.log.segment.size", 256 * 1024));
+
+    // 256 bytes spare for service document data
+    private static final int MAX_RETAINED_LOG_SIZE = MAX_LOG_SIZE - 256;
+
     protected static final long DEFAULT_EXPIRATION_MICROS = Long.getLong(
             "com.vmware.admiral.service.common.expiration.micros", TimeUnit.MINUTES.toMicros(5));
 
@@ -51,6 +101,91 @@ public class LogService extends StatefulService {
                 PropertyIndexingOption.STORE_ONLY,
                 PropertyIndexingOption.EXCLUDE_FROM_SIGNATURE })
         public byte[] logs;
+
+        /**
+         * The deflated log segments, the logs are assembled from them on GET.
+         */
+        @Documentation(description = "The deflated log segments.")
+        @PropertyOptions(indexing = {
+                PropertyIndexingOption.STORE_ONLY,
+                PropertyIndexingOption.EXCLUDE_FROM_SIGNATURE })
+        public List<LogSegment> segments;
+
+        /**
+         * The offset of the first retained byte in the log stream of the container.
+         */
+        @Documentation(description = "The offset of the first retained byte in the log stream.")
+        public Long startOffset;
+
+        /**
+         * The offset after the last byte in the log stream of the container.
+         */
+        @Documentation(description = "The offset after the last byte in the log stream.")
+        public Long endOffset;
+
+        /**
+         * The docker timestamp of the last line of the logs fetched incrementally, the logs are
+         * fetched from it next time.
+         */
+        @Documentation(description = "The docker timestamp of the last line of the logs fetched"
+                + " incrementally.")
+        public String lastTimestamp;
+
+        /**
+         * Set on an update when each line of its logs starts with the docker timestamp of the
+         * line, i.e. the logs were fetched with timestamps. Not stored.
+         */
+        @Documentation(description = "Whether each line of the logs of the update starts with"
+                + " its docker timestamp.")
+        public Boolean timestamped;
+    }
+
+    /**
+     * The options of a GET applied to the lines of the stored logs.
+     */
+    private static class LogView {
+        static final LogView DEFAULT = new LogView(null, null, false);
+
+        final Long since;
+        final Integer tail;
+        final boolean timestamps;
+
+        LogView(Long since, Integer tail, boolean timestamps) {
+            this.since = since;
+            this.tail = tail;
+            this.timestamps = timestamps;
+        }
+    }
+
+    /**
+     * A line of the logs, or a frame of multiplexed stdout and stderr, with its docker timestamp.
+     */
+    private static class LogEntry {
+        final int start;
+        final boolean frame;
+        final int end;
+        // the index of the space following the timestamp
+        final int separator;
+        final String timestamp;
+        final OffsetDateTime time;
+
+        LogEntry(int start, boolean frame, int end, int separator, String timestamp,
+                OffsetDateTime time) {
+            this.start = start;
+            this.frame = frame;
+            this.end = end;
+            this.separator = separator;
+            this.timestamp = timestamp;
+            this.time = time;
+        }
+    }
+
+    public static class LogSegment {
+        /** The uncompressed length of the segment. */
+        public int length;
+
+        /** The deflated segment data. */
+        public byte[] data;
     }
 
     public LogService() {
@@ -72,6 +207,12 @@ public class LogService extends StatefulService {
             return;
         }
 
+        LogServiceState state = startPost.getBody(LogServiceState.class);
+        if (Boolean.TRUE.equals(state.timestamped) && state.logs != null) {
+            dropStaleLines(state, null);
+        }
+        state.timestamped = null;
+
         /* Disabled until https://www.pivotaltracker.com/n/projects/1471320/stories/143794415
          * is fixed */
         // Set the expiration time to be 15 minutes by default.
@@ -82,6 +223,29 @@ public class LogService extends StatefulService {
         startPost.complete();
     }
 
+    @Override
+    public void handleGet(Operation get) {
+        LogServiceState currentState = getState(get);
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+        Long offset;
+        LogView view;
+        try {
+            offset = parseLong(params.get(OFFSET_QUERY_PARAM));
+            Long tail = parseLong(params.get(TAIL_QUERY_PARAM));
+            view = new LogView(parseLong(params.get(SINCE_QUERY_PARAM)),
+                    tail != null ? (int) Math.min(Integer.MAX_VALUE, tail) : null,
+                    Boolean.parseBoolean(params.get(TIMESTAMPS_QUERY_PARAM)));
+        } catch (NumberFormatException e) {
+            get.fail(new IllegalArgumentException("Invalid log view option: " + e.getMessage()));
+            return;
+        }
+        try {
+            get.setBodyNoCloning(createResponse(currentState, offset, view)).complete();
+        } catch (Throwable e) {
+            get.fail(e);
+        }
+    }
+
     @Override
     public void handlePut(Operation put) {
         if (!checkForBody(put)) {
@@ -92,14 +256,63 @@ public class LogService extends StatefulService {
         LogServiceState newState = put.getBody(LogServiceState.class);
 
         if (newState.logs != null) {
-            currentState.logs = newState.logs;
+            if (Boolean.TRUE.equals(newState.timestamped)) {
+                dropStaleLines(newState, null);
+            }
+            replaceLogs(currentState, newState.logs);
+            currentState.lastTimestamp = newState.lastTimestamp;
         }
         // workaround for NullPointerException in xenon when the service has no REPLICATION option
         if (currentState.documentEpoch == null) {
             currentState.documentEpoch = 0L;
         }
         setState(put, currentState);
-        put.setBody(currentState).complete();
+        try {
+            put.setBodyNoCloning(createResponse(currentState, null, LogView.DEFAULT)).complete();
+        } catch (Throwable e) {
+            put.fail(e);
+        }
+    }
+
+    /**
+     * Appends the logs of the body to the stored ones. When the logs are {@link
+     * LogServiceState#timestamped}, their lines not newer than the last stored one are dropped.
+     * Only the offsets are returned.
+     */
+    @Override
+    public void handlePatch(Operation patch) {
+        if (!checkForBody(patch)) {
+            return;
+        }
+
+        LogServiceState currentState = getState(patch);
+        LogServiceState patchState = patch.getBody(LogServiceState.class);
+
+        try {
+            if (patchState.logs != null) {
+                if (Boolean.TRUE.equals(patchState.timestamped)) {
+                    dropStaleLines(patchState, currentState.lastTimestamp);
+                }
+                appendLogs(currentState, patchState.logs);
+            }
+        } catch (Throwable e) {
+            patch.fail(e);
+            return;
+        }
+        if (patchState.lastTimestamp != null) {
+            currentState.lastTimestamp = patchState.lastTimestamp;
+        }
+        // workaround for NullPointerException in xenon when the service has no REPLICATION option
+        if (currentState.documentEpoch == null) {
+            currentState.documentEpoch = 0L;
+        }
+        setState(patch, currentState);
+        try {
+            patch.setBodyNoCloning(createResponse(currentState, currentState.endOffset,
+                    LogView.DEFAULT)).complete();
+        } catch (Throwable e) {
+            patch.fail(e);
+        }
     }
 
     /* Workaround for https://www.pivotaltracker.com/n/projects/1471320/stories/143794415
@@ -170,6 +383,267 @@ public class LogService extends StatefulService {
         return template;
     }
 
+    private static void replaceLogs(LogServiceState state, byte[] logs) {
+        migrateLogs(state);
+        state.segments = new ArrayList<>();
+        state.startOffset = state.endOffset;
+        appendSegments(state, logs, 0);
+    }
+
+    private static void appendLogs(LogServiceState state, byte[] logs)
+            throws DataFormatException {
+        migrateLogs(state);
+        LogSegment last = state.segments.isEmpty() ? null
+                : state.segments.get(state.segments.size() - 1);
+        if (last == null || last.length >= SEGMENT_SIZE || logs.length == 0) {
+            appendSegments(state, logs, 0);
+            return;
+        }
+
+        // the last segment is not full yet, merge the appended logs into it
+        byte[] lastData = inflate(last);
+        state.segments.remove(state.segments.size() - 1);
+        state.endOffset -= last.length;
+        byte[] merged = Arrays.copyOf(lastData, lastData.length + logs.length);
+        System.arraycopy(logs, 0, merged, lastData.length, logs.length);
+        appendSegments(state, merged, 0);
+    }
+
+    private static void appendSegments(LogServiceState state, byte[] logs, int from) {
+        for (int i = from; i < logs.length; i += SEGMENT_SIZE) {
+            LogSegment segment = new LogSegment();
+            segment.length = Math.min(SEGMENT_SIZE, logs.length - i);
+            segment.data = deflate(logs, i, segment.length);
+            state.segments.add(segment);
+            state.endOffset += segment.length;
+        }
+
+        // drop the oldest segments exceeding the maximal log size
+        long length = 0;
+        long deflatedLength = 0;
+        for (LogSegment segment : state.segments) {
+            length += segment.length;
+            deflatedLength += segment.data.length;
+        }
+        while (state.segments.size() > 1 && (length > MAX_RETAINED_LOG_SIZE
+                || deflatedLength > MAX_RETAINED_LOG_SIZE)) {
+            LogSegment first = state.segments.remove(0);
+            length -= first.length;
+            deflatedLength -= first.data.length;
+            state.startOffset += first.length;
+        }
+    }
+
+    /**
+     * Moves the logs of a state created with them, or stored before the logs were kept in
+     * segments, to segments.
+     */
+    private static void migrateLogs(LogServiceState state) {
+        if (state.segments == null) {
+            byte[] logs = state.logs != null ? state.logs : new byte[0];
+            state.segments = new ArrayList<>();
+            state.startOffset = 0L;
+            state.endOffset = 0L;
+            state.logs = null;
+            appendSegments(state, logs, 0);
+        }
+    }
+
+    /**
+     * Drops the lines of the timestamped logs of the state which are not newer than the given
+     * timestamp, and sets the timestamp of the last line as the
+     * {@link LogServiceState#lastTimestamp} of the state. Lines without a timestamp are kept.
+     */
+    static void dropStaleLines(LogServiceState state, String lastTimestamp) {
+        byte[] logs = state.logs;
+        OffsetDateTime last = parseTimestamp(lastTimestamp);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(logs.length);
+        for (LogEntry entry : parseEntries(logs)) {
+            if (entry.time != null) {
+                if (last != null && !entry.time.isAfter(last)) {
+                    continue;
+                }
+                last = entry.time;
+                lastTimestamp = entry.timestamp;
+            }
+            out.write(logs, entry.start, entry.end - entry.start);
+        }
+        state.logs = out.toByteArray();
+        state.lastTimestamp = lastTimestamp;
+        state.timestamped = null;
+    }
+
+    /**
+     * Returns the lines of the logs selected by the view, with or without their timestamps.
+     */
+    private static byte[] applyView(byte[] logs, LogView view) {
+        List<LogEntry> entries = parseEntries(logs);
+        if (view.since != null) {
+            entries.removeIf(e -> e.time != null && e.time.toEpochSecond() < view.since);
+        }
+        if (view.tail != null && view.tail >= 0 && entries.size() > view.tail) {
+            entries = entries.subList(entries.size() - view.tail, entries.size());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(logs.length);
+        for (LogEntry entry : entries) {
+            if (entry.time == null || view.timestamps) {
+                out.write(logs, entry.start, entry.end - entry.start);
+                continue;
+            }
+            // the sizes of the frames of multiplexed stdout and stderr are adjusted
+            int length = entry.end - entry.separator - 1;
+            if (entry.frame) {
+                out.write(logs, entry.start, FRAME_HEADER_LENGTH - 4);
+                out.write(length >>> 24);
+                out.write(length >>> 16);
+                out.write(length >>> 8);
+                out.write(length);
+            }
+            out.write(logs, entry.separator + 1, length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Splits the logs into lines or frames of multiplexed stdout and stderr.
+     */
+    private static List<LogEntry> parseEntries(byte[] logs) {
+        List<LogEntry> entries = new ArrayList<>();
+        int i = 0;
+        while (i < logs.length) {
+            boolean frame = isFrameHeader(logs, i);
+            int start = frame ? i + FRAME_HEADER_LENGTH : i;
+            int end = frame ? start + getFrameSize(logs, i)
+                    : indexOf(logs, (byte) '\n', i, logs.length) + 1;
+            if (end <= 0 || end > logs.length) {
+                end = logs.length;
+            }
+
+            int separator = indexOf(logs, (byte) ' ', start,
+                    Math.min(end, start + MAX_TIMESTAMP_LENGTH + 1));
+            String timestamp = separator > start
+                    ? new String(logs, start, separator - start, StandardCharsets.US_ASCII)
+                    : null;
+            OffsetDateTime time = parseTimestamp(timestamp);
+            entries.add(new LogEntry(i, frame, end, separator, time != null ? timestamp : null,
+                    time));
+            i = end;
+        }
+        return entries;
+    }
+
+    private static boolean isFrameHeader(byte[] logs, int i) {
+        if (i + FRAME_HEADER_LENGTH > logs.length || logs[i] < 0 || logs[i] > 2
+                || logs[i + 1] != 0 || logs[i + 2] != 0 || logs[i + 3] != 0) {
+            return false;
+        }
+        int size = getFrameSize(logs, i);
+        return size >= 0 && i + FRAME_HEADER_LENGTH + (long) size <= logs.length;
+    }
+
+    private static int getFrameSize(byte[] logs, int i) {
+        return (logs[i + 4] & 0xff) << 24 | (logs[i + 5] & 0xff) << 16
+                | (logs[i + 6] & 0xff) << 8 | (logs[i + 7] & 0xff);
+    }
+
+    private static int indexOf(byte[] logs, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (logs[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static OffsetDateTime parseTimestamp(String timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(timestamp);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Long parseLong(String value) {
+        return value != null && !value.isEmpty() ? Long.parseLong(value) : null;
+    }
+
+    /**
+     * Creates a copy of the state with the lines of the view of the logs from the given offset
+     * on, all of the retained logs when the offset is outside of them.
+     */
+    private static LogServiceState createResponse(LogServiceState state, Long offset,
+            LogView view) throws DataFormatException {
+        LogServiceState response = new LogServiceState();
+        state.copyTo(response);
+        response.lastTimestamp = state.lastTimestamp;
+        if (state.segments == null) {
+            byte[] logs = state.logs != null ? state.logs : new byte[0];
+            response.startOffset = 0L;
+            response.endOffset = (long) logs.length;
+            int from = offset != null && offset >= 0 && offset <= logs.length
+                    ? offset.intValue() : 0;
+            response.logs = state.logs != null
+                    ? applyView(Arrays.copyOfRange(logs, from, logs.length), view) : null;
+            return response;
+        }
+        response.startOffset = state.startOffset;
+        response.endOffset = state.endOffset;
+
+        long from = offset != null && offset >= state.startOffset && offset <= state.endOffset
+                ? offset : state.startOffset;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                (int) (state.endOffset - from));
+        long segmentOffset = state.startOffset;
+        for (LogSegment segment : state.segments) {
+            long segmentEnd = segmentOffset + segment.length;
+            if (segmentEnd > from) {
+                int skip = (int) Math.max(0, from - segmentOffset);
+                out.write(inflate(segment), skip, segment.length - skip);
+            }
+            segmentOffset = segmentEnd;
+        }
+        response.logs = applyView(out.toByteArray(), view);
+        return response;
+    }
+
+    private static byte[] deflate(byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(LogSegment segment) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(segment.data);
+            byte[] data = new byte[segment.length];
+            int length = 0;
+            while (length < data.length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, data.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("Truncated log segment");
+                }
+                length += inflated;
+            }
+            return data;
+        } finally {
+            inflater.end();
+        }
+    }
+
     // Default is 16 MB. Not recommended to be increased as it is likely to cause performance
     // problems. A grand maximum of 64 MB, when we will fail when receiving the response from
     // Docker. Currently, if the log goes over 64MB, we will still fail, because we won't be able to
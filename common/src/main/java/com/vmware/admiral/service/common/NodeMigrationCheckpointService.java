@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.Map;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.service.common.NodeMigrationService.FactoryMigrationStatus;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatefulService;
+import com.vmware.xenon.common.UriUtils;
+
+/**
+ * Internal document with the checkpoint of the last interrupted node migration, maintained by
+ * {@link NodeMigrationService}. It is not migrated itself.
+ */
+public class NodeMigrationCheckpointService extends StatefulService {
+    public static final String FACTORY_LINK = ManagementUriParts.MIGRATION_CHECKPOINTS;
+    public static final String CHECKPOINT_ID = "default";
+    public static final String CHECKPOINT_LINK = UriUtils.buildUriPath(FACTORY_LINK,
+            CHECKPOINT_ID);
+
+    public static class NodeMigrationCheckpointState extends ServiceDocument {
+        public String sourceNodeGroup;
+        public Map<String, FactoryMigrationStatus> factories;
+    }
+
+    public NodeMigrationCheckpointService() {
+        super(NodeMigrationCheckpointState.class);
+        super.toggleOption(ServiceOption.PERSISTENCE, true);
+        super.toggleOption(ServiceOption.REPLICATION, true);
+        super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+        super.toggleOption(ServiceOption.IDEMPOTENT_POST, true);
+    }
+}
@@ -14,25 +14,45 @@ package com.vmware.admiral.service.common;
 import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
 
 import java.net.URI;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.service.common.NodeMigrationCheckpointService.NodeMigrationCheckpointState;
 import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost.ServiceNotFoundException;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.LegacyMigrationTaskService;
 import com.vmware.xenon.services.common.LegacyMigrationTaskService.State;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 
 /**
  * Service is meant to do a migration of the documents/states from another xenon node.
+ * <p>
+ * Every registered factory is migrated by its own {@link LegacyMigrationTaskService} task. The tasks are run by a bounded pool of workers
+ * following the dependencies between the factories. The progress of each factory is kept as a
+ * checkpoint so an interrupted migration can be resumed skipping the already migrated factories.
+ * The checkpoint is persisted in an internal {@link NodeMigrationCheckpointService} document
+ * whenever a factory completes, so a migration can also be resumed after a restart of this node, and it is
+ * deleted once the migration completes. The progress and throughput of the current migration are
+ * available with GET.
  */
 public class NodeMigrationService extends StatelessService {
 
@@ -41,14 +61,59 @@ public class NodeMigrationService extends StatelessService {
     private static final int MIGRATION_CHECK_DELAY_SECONDS = 6;
     private static final int MIGRATION_CHECK_RETRIES = 200;
 
+    private static final int MIGRATION_PARALLELISM = Integer.getInteger(
+            "com.vmware.admiral.service.migration.parallelism", 4);
+
+    // stat maintained by the migration task with the number of migrated documents
+    private static final String STAT_NAME_PROCESSED_DOCUMENTS = "processedDocuments";
+
+    private static final String FACTORY_MISSING_ON_SOURCE_MESSAGE =
+            "Failed to get factory config from all source nodes";
+
     public Set<String> services = ConcurrentHashMap.newKeySet();
 
-    // Services that must be migrated last because their states depend on others
-    private Set<String> dependentServices = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<MigrationRun> currentRun = new AtomicReference<>();
 
     public static class MigrationRequest {
         public String sourceNodeGroup;
         public String destinationNodeGroup;
+        /**
+         * Resume the last interrupted migration from the same source. Factories which are already
+         * migrated are skipped.
+         */
+        public boolean resume;
+    }
+
+    public static enum FactoryMigrationStage {
+        PENDING, RUNNING, FINISHED, SKIPPED, FAILED
+    }
+
+    public static class FactoryMigrationStatus {
+        public FactoryMigrationStage stage = FactoryMigrationStage.PENDING;
+        public String taskLink;
+        public long processedDocuments;
+        public Long startTimeMicros;
+        public Long endTimeMicros;
+        public double documentsPerSecond;
+        public String failure;
+    }
+
+    public static class MigrationStatus {
+        public TaskStage stage;
+        public String sourceNodeGroup;
+        public int parallelism;
+        public Map<String, FactoryMigrationStatus> factories;
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        MigrationRun run = currentRun.get();
+        MigrationStatus status = run != null ? run.getStatus() : new MigrationStatus();
+        if (status.factories == null) {
+            status.factories = Collections.emptyMap();
+        }
+        status.parallelism = MIGRATION_PARALLELISM;
+        get.setBody(status).complete();
     }
 
     @Override
@@ -63,8 +128,59 @@ public class NodeMigrationService extends StatelessService {
             post.fail(new Throwable("sourceNodeGroup is required"));
             return;
         }
-        setDependentServices();
-        migrateData(body, post);
+
+        MigrationRun previousRun = currentRun.get();
+        if (previousRun != null && previousRun.isRunning()) {
+            post.fail(new IllegalStateException("Migration is already in progress"));
+            return;
+        }
+
+        State migrationState = buildMigrationState(body, post);
+        if (migrationState == null) {
+            return;
+        }
+
+        MigrationRun run = new MigrationRun(post, body.sourceNodeGroup, migrationState,
+                getFactoriesToMigrate());
+        // only one of concurrent requests replaces the previous run and starts the migration
+        if (!currentRun.compareAndSet(previousRun, run)) {
+            post.fail(new IllegalStateException("Migration is already in progress"));
+            return;
+        }
+
+        if (!body.resume) {
+            run.start();
+        } else if (previousRun != null
+                && body.sourceNodeGroup.equals(previousRun.sourceNodeGroup)) {
+            run.resumeFrom(previousRun.getStatus());
+            run.start();
+        } else {
+            // no previous run on this node since its start, resume from the persisted checkpoint
+            loadCheckpoint(run);
+        }
+    }
+
+    private void loadCheckpoint(MigrationRun run) {
+        Operation get = Operation.createGet(this, NodeMigrationCheckpointService.CHECKPOINT_LINK)
+                .setCompletion((o, ex) -> {
+                    if (ex != null && !(ex instanceof ServiceNotFoundException)) {
+                        logWarning("Failed to load the migration checkpoint: %s",
+                                Utils.toString(ex));
+                    } else if (ex == null) {
+                        NodeMigrationCheckpointState checkpoint = o.getBody(
+                                NodeMigrationCheckpointState.class);
+                        if (checkpoint.factories != null
+                                && run.sourceNodeGroup.equals(checkpoint.sourceNodeGroup)) {
+                            MigrationStatus status = new MigrationStatus();
+                            status.sourceNodeGroup = checkpoint.sourceNodeGroup;
+                            status.factories = checkpoint.factories;
+                            run.resumeFrom(status);
+                        }
+                    }
+                    run.start();
+                });
+        setAuthorizationContext(get, getSystemAuthorizationContext());
+        sendRequest(get);
     }
 
     @Override
@@ -89,28 +205,42 @@ public class NodeMigrationService extends StatelessService {
         services.remove(ManagementUriParts.HOST_VOLUME_LIST_DATA_COLLECTION);
         services.remove(ManagementUriParts.EVENT_TOPIC);
         services.remove(ManagementUriParts.EXTENSIBILITY_SUBSCRIPTION);
+        services.remove(NodeMigrationCheckpointService.FACTORY_LINK);
 
         patch.complete();
     }
 
-    private void setDependentServices() {
-        // elastic placement zones depend on resource pools
-        services.remove(ManagementUriParts.ELASTIC_PLACEMENT_ZONES);
-        // compute states should be migrated after containers to avoid discovered containers
-        services.remove(ComputeService.FACTORY_LINK);
-        dependentServices.add(ManagementUriParts.ELASTIC_PLACEMENT_ZONES);
-        dependentServices.add(ComputeService.FACTORY_LINK);
+    /**
+     * Returns the factories to migrate mapped to the factories which must be migrated before
+     * them because their states depend on others.
+     */
+    private Map<String, Set<String>> getFactoriesToMigrate() {
+        Map<String, Set<String>> factories = new LinkedHashMap<>();
+        for (String service : services) {
+            factories.put(service, Collections.emptySet());
+        }
+
+        // elastic placement zones depend on resource pools and compute states should be migrated
+        // after containers to avoid discovered containers, both are migrated after all others
+        Set<String> others = new HashSet<>(factories.keySet());
+        others.remove(ManagementUriParts.ELASTIC_PLACEMENT_ZONES);
+        others.remove(ComputeService.FACTORY_LINK);
+        factories.put(ManagementUriParts.ELASTIC_PLACEMENT_ZONES, others);
+        factories.put(ComputeService.FACTORY_LINK, others);
+
+        return factories;
     }
 
-    private void migrateData(MigrationRequest body, Operation post) {
+    private State buildMigrationState(MigrationRequest body, Operation post) {
         State migrationState = new State();
         migrationState.continuousMigration = false;
+        migrationState.migrateMismatchedOwnerDocuments = true;
         try {
             migrationState.sourceNodeGroupReference = new URI(body.sourceNodeGroup);
         } catch (Exception e) {
             getHost().log(Level.SEVERE, "Invalid sourceNodeGroupReference", e.getMessage());
             post.fail(new Throwable("Invalid sourceNodeGroupReference", e));
-            return;
+            return null;
         }
         if (body.destinationNodeGroup == null || body.destinationNodeGroup.isEmpty()) {
             try {
@@ -120,7 +250,7 @@ public class NodeMigrationService extends StatelessService {
                 getHost().log(Level.SEVERE, "Invalid destinationNodeGroupReference",
                         e.getMessage());
                 post.fail(e);
-                return;
+                return null;
             }
         } else {
             try {
@@ -129,116 +259,307 @@ public class NodeMigrationService extends StatelessService {
                 getHost().log(Level.SEVERE, "Invalid destinationNodeGroupReference",
                         e.getMessage());
                 post.fail(new Throwable("Invalid destinationNodeGroupReference", e));
-                return;
+                return null;
             }
         }
+        return migrationState;
+    }
 
-        performMigration(post, services, migrationState, () -> {
-            performMigration(post, dependentServices, migrationState, () -> {
-                logInfo("Migration completed successfully");
-                post.complete();
+    /**
+     * A single migration of all registered factories.
+     */
+    private class MigrationRun {
+        private final Operation post;
+        private final String sourceNodeGroup;
+        private final State migrationState;
+        private final Map<String, Set<String>> dependencies;
+        private final Map<String, FactoryMigrationStatus> factories = new LinkedHashMap<>();
+
+        private TaskStage stage = TaskStage.CREATED;
+        private int inFlight;
+
+        MigrationRun(Operation post, String sourceNodeGroup, State migrationState,
+                Map<String, Set<String>> dependencies) {
+            this.post = post;
+            this.sourceNodeGroup = sourceNodeGroup;
+            this.migrationState = migrationState;
+            this.dependencies = dependencies;
+            for (String factory : dependencies.keySet()) {
+                factories.put(factory, new FactoryMigrationStatus());
+            }
+        }
+
+        synchronized boolean isRunning() {
+            return stage == TaskStage.STARTED;
+        }
+
+        synchronized void resumeFrom(MigrationStatus previous) {
+            previous.factories.forEach((factory, status) -> {
+                if (factories.containsKey(factory)
+                        && (status.stage == FactoryMigrationStage.FINISHED
+                                || status.stage == FactoryMigrationStage.SKIPPED)) {
+                    factories.put(factory, status);
+                }
             });
-        });
-    }
+            logInfo("Resuming migration from %s, %d factories already migrated",
+                    sourceNodeGroup, factories.values().stream()
+                            .filter(f -> f.stage != FactoryMigrationStage.PENDING).count());
+        }
 
-    private void performMigration(Operation post, Set<String> services, State migrationState,
-            Runnable callback) {
+        synchronized MigrationStatus getStatus() {
+            MigrationStatus status = new MigrationStatus();
+            status.stage = stage;
+            status.sourceNodeGroup = sourceNodeGroup;
+            status.factories = new LinkedHashMap<>();
+            factories.forEach((factory, s) -> status.factories.put(factory, Utils.clone(s)));
+            return status;
+        }
 
-        Set<String> migrationTasksInProgress = ConcurrentHashMap.newKeySet();
-        AtomicBoolean hasError = new AtomicBoolean(false);
+        void start() {
+            synchronized (this) {
+                stage = TaskStage.STARTED;
+            }
+            scheduleNext();
+        }
 
-        Iterator<String> servicesIterator = services.iterator();
-        servicesIterator.forEachRemaining(currentService -> {
-            migrationState.destinationFactoryLink = currentService;
-            migrationState.sourceFactoryLink = currentService;
-            migrationState.migrateMismatchedOwnerDocuments = true;
+        /**
+         * Starts migration tasks for all factories which dependencies are already migrated, up to
+         * the configured parallelism, and completes the migration when nothing is left.
+         */
+        private void scheduleNext() {
+            List<String> toStart = new ArrayList<>();
+            boolean completed = false;
+            boolean blocked = false;
+            synchronized (this) {
+                if (stage != TaskStage.STARTED) {
+                    return;
+                }
+                boolean hasPending = false;
+                for (Entry<String, FactoryMigrationStatus> e : factories.entrySet()) {
+                    if (e.getValue().stage != FactoryMigrationStage.PENDING) {
+                        continue;
+                    }
+                    hasPending = true;
+                    if (inFlight < MIGRATION_PARALLELISM && isReady(e.getKey())) {
+                        e.getValue().stage = FactoryMigrationStage.RUNNING;
+                        e.getValue().startTimeMicros = Utils.getSystemNowMicrosUtc();
+                        inFlight++;
+                        toStart.add(e.getKey());
+                    }
+                }
+                if (inFlight == 0 && !hasPending) {
+                    stage = TaskStage.FINISHED;
+                    completed = true;
+                } else if (inFlight == 0 && toStart.isEmpty()) {
+                    stage = TaskStage.FAILED;
+                    blocked = true;
+                }
+            }
+
+            if (completed) {
+                logInfo("Migration completed successfully");
+                deleteCheckpoint();
+                post.complete();
+            } else if (blocked) {
+                logSevere("Migration failed: unresolvable dependencies between factories");
+                post.fail(new Throwable("Unresolvable dependencies between factories"));
+            }
+            toStart.forEach(this::startFactoryMigration);
+        }
+
+        private boolean isReady(String factory) {
+            for (String dependency : dependencies.get(factory)) {
+                FactoryMigrationStatus status = factories.get(dependency);
+                if (status != null && status.stage != FactoryMigrationStage.FINISHED
+                        && status.stage != FactoryMigrationStage.SKIPPED) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void startFactoryMigration(String factory) {
+            State state = Utils.clone(migrationState);
+            state.sourceFactoryLink = factory;
+            state.destinationFactoryLink = factory;
 
             Operation operation = Operation
-                    .createPost(this, LegacyMigrationTaskService.FACTORY_LINK)
-                    .setBody(migrationState)
+                    .createPost(NodeMigrationService.this, LegacyMigrationTaskService.FACTORY_LINK)
+                    .setBody(state)
                     .setCompletion((o, ex) -> {
                         if (ex != null) {
                             getHost().log(Level.SEVERE,
                                     "Failure when calling migration task. Error: %s",
                                     ex.getMessage());
-                            if (hasError.compareAndSet(false, true)) {
-                                post.fail(new Throwable("Failure when calling migration task", ex));
-                            }
-                        } else {
-                            State state = o.getBody(State.class);
-                            migrationTasksInProgress.add(state.documentSelfLink);
-                            getHost().log(Level.INFO, "Migration task created: %s",
-                                    state.documentSelfLink);
-                            if (migrationTasksInProgress.size() == services.size()) {
-                                waitForMigrationToComplete(MIGRATION_CHECK_RETRIES,
-                                        migrationTasksInProgress, hasError, post, callback);
-                            }
+                            onFactoryMigrationFailed(factory, ex.getMessage());
+                            return;
                         }
+                        String taskLink = o.getBody(State.class).documentSelfLink;
+                        synchronized (this) {
+                            factories.get(factory).taskLink = taskLink;
+                        }
+                        getHost().log(Level.INFO, "Migration task created: %s", taskLink);
+                        waitForFactoryMigration(factory, taskLink, MIGRATION_CHECK_RETRIES);
                     });
-            super.setAuthorizationContext(operation, this.getSystemAuthorizationContext());
+            setAuthorizationContext(operation, getSystemAuthorizationContext());
             sendRequest(operation);
-        });
-    }
-
-    private void waitForMigrationToComplete(int retryCount, Set<String> migrationTasksInProgress,
-            AtomicBoolean hasError, Operation post, Runnable callback) {
+        }
 
-        getHost().schedule(() -> {
-            Iterator<String> tasksIterator = migrationTasksInProgress.iterator();
-            tasksIterator.forEachRemaining(currentTask -> {
-                sendRequest(Operation.createGet(this, currentTask)
+        private void waitForFactoryMigration(String factory, String taskLink, int retryCount) {
+            getHost().schedule(() -> {
+                sendRequest(Operation.createGet(NodeMigrationService.this, taskLink)
                         .setCompletion((o, ex) -> {
                             if (ex != null) {
                                 getHost().log(Level.SEVERE,
                                         "Failure getting migration task: %s. Error: %s",
-                                        currentTask, ex.getMessage());
+                                        taskLink, ex.getMessage());
+                                retryOrFail(factory, taskLink, retryCount);
+                                return;
+                            }
+                            State state = o.getBody(State.class);
+                            if (state.taskInfo.stage == TaskStage.FINISHED) {
+                                logInfo("Migration task completed: %s", taskLink);
+                                updateProgress(factory, taskLink,
+                                        () -> onFactoryMigrationCompleted(factory,
+                                                FactoryMigrationStage.FINISHED));
+                            } else if (state.taskInfo.stage == TaskStage.FAILED) {
+                                // If a factory is missing on the source this is not a problem
+                                // for the migration. The factory should be skipped.
+                                if (state.taskInfo.failure != null
+                                        && state.taskInfo.failure.message != null
+                                        && state.taskInfo.failure.message.contains(
+                                                FACTORY_MISSING_ON_SOURCE_MESSAGE)) {
+                                    logInfo("Migration task skipped because it does not exist"
+                                            + " on source: %s", taskLink);
+                                    onFactoryMigrationCompleted(factory,
+                                            FactoryMigrationStage.SKIPPED);
+                                } else {
+                                    logInfo("Migration task failed: %s", taskLink);
+                                    onFactoryMigrationFailed(factory, state.taskInfo.failure != null
+                                            ? state.taskInfo.failure.message : null);
+                                }
                             } else {
-                                State state = o.getBody(State.class);
-                                if (state.taskInfo.stage == TaskStage.FINISHED) {
-                                    logInfo("Migration task completed: %s", currentTask);
-                                    migrationTasksInProgress.remove(currentTask);
-                                } else if (state.taskInfo.stage == TaskStage.FAILED) {
-                                    // If a factory is missing on the source this is not a problem
-                                    // for the migration. The factory should be skipped.
-                                    if (state.taskInfo.failure.message.contains(
-                                            "Failed to get factory config from all source nodes")) {
-                                        logInfo("Migration task skipped because it does not exist"
-                                                        + " on source: %s", currentTask);
-                                        migrationTasksInProgress.remove(currentTask);
-                                    } else {
-                                        logInfo("Migration task failed: %s", currentTask);
-                                        if (hasError.compareAndSet(false, true)) {
-                                            logSevere("Migration failed");
-                                            post.fail(new Throwable(
-                                                    "One or more migration tasks failed"));
-                                            migrationTasksInProgress.remove(currentTask);
-                                        }
+                                updateProgress(factory, taskLink,
+                                        () -> retryOrFail(factory, taskLink, retryCount));
+                            }
+                        }));
+            }, MIGRATION_CHECK_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+
+        private void retryOrFail(String factory, String taskLink, int retryCount) {
+            if (retryCount > 0) {
+                waitForFactoryMigration(factory, taskLink, retryCount - 1);
+            } else {
+                logSevere("Migration of %s did not finish in the expected time frame", factory);
+                onFactoryMigrationFailed(factory,
+                        "Migration did not finish in the expected time frame");
+            }
+        }
+
+        private void updateProgress(String factory, String taskLink, Runnable callback) {
+            sendRequest(Operation.createGet(UriUtils.buildStatsUri(
+                    UriUtils.buildUri(getHost(), taskLink)))
+                    .setCompletion((o, ex) -> {
+                        if (ex == null) {
+                            ServiceStats stats = o.getBody(ServiceStats.class);
+                            ServiceStat processed = stats.entries != null
+                                    ? stats.entries.get(STAT_NAME_PROCESSED_DOCUMENTS) : null;
+                            if (processed != null) {
+                                synchronized (this) {
+                                    FactoryMigrationStatus status = factories.get(factory);
+                                    status.processedDocuments = (long) processed.latestValue;
+                                    long elapsedMicros = Utils.getSystemNowMicrosUtc()
+                                            - status.startTimeMicros;
+                                    if (elapsedMicros > 0) {
+                                        status.documentsPerSecond = status.processedDocuments
+                                                / (elapsedMicros / (double) TimeUnit.SECONDS
+                                                        .toMicros(1));
                                     }
                                 }
                             }
-                        }));
-            });
-            if (migrationTasksInProgress.isEmpty() && !hasError.get()) {
-                callback.run();
-                return;
+                        }
+                        callback.run();
+                    }));
+        }
+
+        private void onFactoryMigrationCompleted(String factory, FactoryMigrationStage result) {
+            synchronized (this) {
+                FactoryMigrationStatus status = factories.get(factory);
+                status.stage = result;
+                status.endTimeMicros = Utils.getSystemNowMicrosUtc();
+                inFlight--;
             }
-            if (retryCount > 0) {
-                waitForMigrationToComplete(retryCount - 1, migrationTasksInProgress, hasError,
-                        post, callback);
-            } else if (!hasError.get()) {
-                post.fail(new Throwable("Migration did not finish in the expected time frame"));
-                logSevere("Migration did not finish in the expected time frame");
+            // the checkpoint is saved before the next factories are scheduled, so that it is
+            // not written after the migration has completed and deleted it
+            saveCheckpoint(this::scheduleNext);
+        }
+
+        private void onFactoryMigrationFailed(String factory, String failure) {
+            boolean failRun;
+            synchronized (this) {
+                FactoryMigrationStatus status = factories.get(factory);
+                status.stage = FactoryMigrationStage.FAILED;
+                status.endTimeMicros = Utils.getSystemNowMicrosUtc();
+                status.failure = failure;
+                inFlight--;
+                failRun = stage == TaskStage.STARTED;
+                if (failRun) {
+                    stage = TaskStage.FAILED;
+                }
             }
-        }, MIGRATION_CHECK_DELAY_SECONDS, TimeUnit.SECONDS);
+            saveCheckpoint(() -> {
+                if (failRun) {
+                    logSevere("Migration failed");
+                    post.fail(new Throwable("One or more migration tasks failed"));
+                }
+            });
+        }
+
+        private void saveCheckpoint(Runnable callback) {
+            MigrationStatus status = getStatus();
+            NodeMigrationCheckpointState checkpoint = new NodeMigrationCheckpointState();
+            checkpoint.documentSelfLink = NodeMigrationCheckpointService.CHECKPOINT_LINK;
+            checkpoint.sourceNodeGroup = status.sourceNodeGroup;
+            checkpoint.factories = status.factories;
+
+            // the idempotent POST replaces the existing checkpoint
+            Operation post = Operation.createPost(NodeMigrationService.this,
+                    NodeMigrationCheckpointService.FACTORY_LINK)
+                    .setBody(checkpoint)
+                    .setCompletion((o, ex) -> {
+                        if (ex != null) {
+                            logWarning("Failed to save the migration checkpoint: %s",
+                                    Utils.toString(ex));
+                        }
+                        callback.run();
+                    });
+            setAuthorizationContext(post, getSystemAuthorizationContext());
+            sendRequest(post);
+        }
+
+        private void deleteCheckpoint() {
+            Operation delete = Operation.createDelete(NodeMigrationService.this,
+                    NodeMigrationCheckpointService.CHECKPOINT_LINK)
+                    .setCompletion((o, ex) -> {
+                        if (ex != null && !(ex instanceof ServiceNotFoundException)) {
+                            logWarning("Failed to delete the migration checkpoint: %s",
+                                    Utils.toString(ex));
+                        }
+                    });
+            setAuthorizationContext(delete, getSystemAuthorizationContext());
+            sendRequest(delete);
+        }
     }
 
     @Override
     public ServiceDocument getDocumentTemplate() {
         ServiceDocument d = super.getDocumentTemplate();
-        addServiceRequestRoute(d, Action.GET,
+        addServiceRequestRoute(d, Action.POST,
                 "Do migration of documents from another xenon node.", MigrationRequest.class);
         addServiceRequestRoute(d, Action.PATCH,
                 "Add services for migration from another xenon node.", NodeMigrationService.class);
+        addServiceRequestRoute(d, Action.GET,
+                "Get the progress of the current migration.", MigrationStatus.class);
         return d;
     }
 }
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static com.vmware.admiral.common.util.AssertUtil.assertNotEmpty;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
+import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixResponse;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.LocalizableValidationException;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Node local generator of resource name prefixes. Instead of requesting every prefix from the
+ * {@link ResourceNamePrefixService} document, which serializes the requests of all the nodes on
+ * its owner, blocks of consecutive numbers are leased from it and the prefixes are generated
+ * locally. A new block is leased ahead of the exhaustion of the current one. Leased blocks
+ * expire, so that changes of the prefix are picked up, and the unused ones are returned when
+ * the service is stopped.
+ *
+ * The numbers are unique but not consecutive across the nodes.
+ */
+public class ResourceNamePrefixLeaseService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.RESOURCE_NAME_PREFIX_LEASES;
+
+    /** The count of numbers to lease at once, 0 to request every prefix from the document. */
+    public static final long LEASE_SIZE = Long.getLong(
+            "dcp.management.name.prefix.lease.size", 1000);
+    public static final long LEASE_EXPIRATION_MICROS = Long.getLong(
+            "dcp.management.name.prefix.lease.expiration.micros",
+            TimeUnit.MINUTES.toMicros(10));
+
+    // a new block is leased when fewer numbers than this remain
+    private static final long RENEWAL_THRESHOLD = LEASE_SIZE / 4;
+
+    /** An DTO used during POST request in order to get the next prefixes of a prefix document. */
+    public static class NamePrefixLeaseRequest {
+        public String resourceNamePrefixLink;
+        public long resourceCount;
+    }
+
+    private static class Block {
+        long next;
+        long end;
+        long expirationMicros;
+        String prefix;
+        Boolean addRandomToken;
+    }
+
+    private static class Lease {
+        final String resourceNamePrefixLink;
+        final Deque<Block> blocks = new ArrayDeque<>();
+        long range;
+        DeferredResult<Void> renewal;
+
+        Lease(String resourceNamePrefixLink) {
+            this.resourceNamePrefixLink = resourceNamePrefixLink;
+        }
+
+        long available() {
+            long available = 0;
+            for (Block block : blocks) {
+                available += block.end - block.next;
+            }
+            return available;
+        }
+    }
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public void handlePost(Operation post) {
+        if (!checkForBody(post)) {
+            return;
+        }
+        NamePrefixLeaseRequest request = post.getBody(NamePrefixLeaseRequest.class);
+        try {
+            assertNotEmpty(request.resourceNamePrefixLink, "resourceNamePrefixLink");
+            if (request.resourceCount <= 0) {
+                throw new LocalizableValidationException(
+                        "Requested resource count must be positive number.",
+                        "common.name-prefix.count.positive");
+            }
+        } catch (Throwable e) {
+            post.fail(e);
+            return;
+        }
+
+        DeferredResult<List<String>> result;
+        if (LEASE_SIZE <= 0) {
+            result = requestNamePrefixes(request);
+        } else {
+            Lease lease = leases.computeIfAbsent(request.resourceNamePrefixLink, Lease::new);
+            result = allocate(lease, request.resourceCount,
+                    new ArrayList<>((int) request.resourceCount));
+        }
+        result.whenComplete((names, e) -> {
+            if (e != null) {
+                post.fail(e);
+                return;
+            }
+            NamePrefixResponse response = new NamePrefixResponse();
+            response.resourceNamePrefixes = names;
+            post.setBodyNoCloning(response).complete();
+        });
+    }
+
+    @Override
+    public void handleStop(Operation delete) {
+        List<DeferredResult<Void>> returns = new ArrayList<>();
+        for (Lease lease : leases.values()) {
+            List<Block> blocks;
+            synchronized (lease) {
+                blocks = new ArrayList<>(lease.blocks);
+                lease.blocks.clear();
+            }
+            // the most recent block first, so that the preceding one can be reused as well
+            DeferredResult<Void> leaseReturns = DeferredResult.completed(null);
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block block = blocks.get(i);
+                leaseReturns = leaseReturns.thenCompose(
+                        v -> returnBlock(lease.resourceNamePrefixLink, block));
+            }
+            returns.add(leaseReturns);
+        }
+        leases.clear();
+        DeferredResult.allOf(returns).whenComplete((v, e) -> super.handleStop(delete));
+    }
+
+    /**
+     * Takes <code>count</code> numbers from the leased blocks into <code>names</code>, leasing
+     * more when the blocks are exhausted.
+     */
+    private DeferredResult<List<String>> allocate(Lease lease, long count, List<String> names) {
+        DeferredResult<Void> renewal;
+        List<Block> expired = new ArrayList<>();
+        synchronized (lease) {
+            if (lease.range > 0 && count > lease.range) {
+                return DeferredResult.failed(new LocalizableValidationException(
+                        "Requested resource count must be less than the range.",
+                        "common.name-prefix.count.range"));
+            }
+
+            long now = Utils.getSystemNowMicrosUtc();
+            Iterator<Block> it = lease.blocks.iterator();
+            while (names.size() < count && it.hasNext()) {
+                Block block = it.next();
+                if (block.expirationMicros < now) {
+                    it.remove();
+                    expired.add(block);
+                    continue;
+                }
+                while (names.size() < count && block.next < block.end) {
+                    names.add(ResourceNamePrefixService.buildNamePrefix(block.prefix,
+                            block.next++, block.addRandomToken));
+                }
+                if (block.next == block.end) {
+                    it.remove();
+                }
+            }
+
+            if (names.size() == count) {
+                if (lease.renewal == null && lease.available() < RENEWAL_THRESHOLD) {
+                    renew(lease, 1);
+                }
+                renewal = null;
+            } else {
+                renewal = lease.renewal != null ? lease.renewal
+                        : renew(lease, count - names.size());
+            }
+        }
+
+        for (Block block : expired) {
+            returnBlock(lease.resourceNamePrefixLink, block);
+        }
+        if (renewal == null) {
+            return DeferredResult.completed(names);
+        }
+        return renewal.thenCompose(v -> allocate(lease, count, names));
+    }
+
+    /**
+     * Leases a new block of at least <code>resourceCount</code> numbers. Called while holding
+     * the lock of the lease.
+     */
+    private DeferredResult<Void> renew(Lease lease, long resourceCount) {
+        DeferredResult<Void> renewal = new DeferredResult<>();
+        lease.renewal = renewal;
+
+        NamePrefixRequest request = new NamePrefixRequest();
+        request.resourceCount = resourceCount;
+        request.leaseCount = LEASE_SIZE;
+        sendWithDeferredResult(Operation
+                .createPatch(this, lease.resourceNamePrefixLink)
+                .setBody(request), NamePrefixResponse.class)
+                .whenComplete((response, e) -> {
+                    synchronized (lease) {
+                        if (lease.renewal == renewal) {
+                            lease.renewal = null;
+                        }
+                        if (e == null) {
+                            addBlock(lease, response);
+                        }
+                    }
+                    if (e != null) {
+                        logWarning("Failure leasing name prefixes of %s: %s",
+                                lease.resourceNamePrefixLink, Utils.toString(e));
+                        renewal.fail(e);
+                    } else {
+                        renewal.complete(null);
+                    }
+                });
+        return renewal;
+    }
+
+    private void addBlock(Lease lease, NamePrefixResponse response) {
+        lease.range = response.range;
+        if (response.leaseCount <= 0) {
+            return;
+        }
+        Block block = new Block();
+        block.next = response.leaseStart;
+        block.end = response.leaseStart + response.leaseCount;
+        block.expirationMicros = Utils.getSystemNowMicrosUtc() + LEASE_EXPIRATION_MICROS;
+        block.prefix = response.prefix;
+        block.addRandomToken = response.addRandomToken;
+        lease.blocks.add(block);
+    }
+
+    private DeferredResult<Void> returnBlock(String resourceNamePrefixLink, Block block) {
+        if (block.next >= block.end) {
+            return DeferredResult.completed(null);
+        }
+        NamePrefixRequest request = new NamePrefixRequest();
+        request.returnedNumber = block.next;
+        request.returnedCount = block.end - block.next;
+        return sendWithDeferredResult(Operation
+                .createPatch(this, resourceNamePrefixLink)
+                .setBody(request))
+                .thenAccept(o -> {
+                })
+                .exceptionally(e -> {
+                    logFine("Failure returning name prefixes of %s: %s",
+                            resourceNamePrefixLink, Utils.toString(e));
+                    return null;
+                });
+    }
+
+    private DeferredResult<List<String>> requestNamePrefixes(NamePrefixLeaseRequest request) {
+        NamePrefixRequest namePrefixRequest = new NamePrefixRequest();
+        namePrefixRequest.resourceCount = request.resourceCount;
+        return sendWithDeferredResult(Operation
+                .createPatch(this, request.resourceNamePrefixLink)
+                .setBody(namePrefixRequest), NamePrefixResponse.class)
+                .thenApply(response -> response.resourceNamePrefixes);
+    }
+}
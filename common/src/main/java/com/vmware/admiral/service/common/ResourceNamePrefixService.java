@@ -117,11 +117,32 @@ public class ResourceNamePrefixService extends StatefulService {
     /** An DTO used during PATCH request in order to get the next prefix in the sequence. */
     public static class NamePrefixRequest {
         public long resourceCount;
+
+        /**
+         * When set, a block of at least that many consecutive numbers is leased instead of
+         * generating the prefixes, so that the prefixes can be generated by the leasing node. See
+         * {@link ResourceNamePrefixLeaseService}.
+         */
+        public long leaseCount;
+
+        /**
+         * The first number and the count of a leased block which is returned unused. The numbers
+         * are reused only if no other block was leased after it.
+         */
+        public long returnedNumber;
+        public long returnedCount;
     }
 
     /** An DTO used during PATCH response in order to return the requested prefixes. */
     public static class NamePrefixResponse {
         public List<String> resourceNamePrefixes;
+
+        /** The leased block, set when a block was requested with {@link NamePrefixRequest#leaseCount}. */
+        public long leaseStart;
+        public long leaseCount;
+        public String prefix;
+        public Boolean addRandomToken;
+        public long range;
     }
 
     public ResourceNamePrefixService() {
@@ -191,6 +212,11 @@ public class ResourceNamePrefixService extends StatefulService {
 
         NamePrefixRequest request = patch.getBody(NamePrefixRequest.class);
         ResourceNamePrefixState state = getState(patch);
+        if (request.returnedCount > 0) {
+            returnLease(state, request);
+            patch.complete();
+            return;
+        }
         if (request.resourceCount <= 0) {
             patch.fail(new LocalizableValidationException(
                     "Requested resource count must be positive number.", "common.name-prefix.count.positive"));
@@ -202,31 +228,73 @@ public class ResourceNamePrefixService extends StatefulService {
         }
 
         NamePrefixResponse response = new NamePrefixResponse();
+        if (request.leaseCount > 0) {
+            lease(state, Math.max(request.resourceCount, request.leaseCount), response);
+            patch.setBodyNoCloning(response);
+            patch.complete();
+            return;
+        }
+
         response.resourceNamePrefixes = new ArrayList<String>((int) request.resourceCount);
 
         for (int i = 0; i < request.resourceCount; i++) {
-            final StringBuilder namePrefix = new StringBuilder();
-            namePrefix.append(state.prefix);
-            namePrefix.append(state.currentCount++);
-            if (state.addRandomToken) {
-                namePrefix.append(RANDOM_GENERATED_TOKEN_DELIMITER);
-                //adding time since 2016 as shortest and smallest possible guaranteed random token
-                long timestamp = System.currentTimeMillis() - SINCE_TIME;
-                namePrefix.append(timestamp);
-            }
-            response.resourceNamePrefixes.add(namePrefix.toString());
-            if (state.currentCount > state.getMaxNumber()) {
-                // reset back to the beginning.
-                logWarning("Reseting name prefix counter [%s] to initial value [%s]...",
-                        state.currentCount, state.nextNumber);
-                state.currentCount = state.nextNumber;
-            }
+            response.resourceNamePrefixes.add(buildNamePrefix(state.prefix,
+                    state.currentCount++, state.addRandomToken));
+            resetCountIfExhausted(state);
         }
 
         patch.setBodyNoCloning(response);
         patch.complete();
     }
 
+    /**
+     * Leases up to <code>count</code> consecutive numbers. The block does not wrap, so fewer
+     * numbers are leased when the counter is about to be reset.
+     */
+    private void lease(ResourceNamePrefixState state, long count,
+            NamePrefixResponse response) {
+        response.leaseStart = state.currentCount;
+        response.leaseCount = Math.min(count, state.getMaxNumber() - state.currentCount + 1);
+        response.prefix = state.prefix;
+        response.addRandomToken = state.addRandomToken;
+        response.range = state.getRange();
+
+        state.currentCount += response.leaseCount;
+        resetCountIfExhausted(state);
+    }
+
+    private void returnLease(ResourceNamePrefixState state, NamePrefixRequest request) {
+        if (state.currentCount == request.returnedNumber + request.returnedCount) {
+            state.currentCount = request.returnedNumber;
+        } else {
+            logFine("Not reusing returned name prefix numbers [%s-%s], counter is at [%s]",
+                    request.returnedNumber, request.returnedNumber + request.returnedCount - 1,
+                    state.currentCount);
+        }
+    }
+
+    private void resetCountIfExhausted(ResourceNamePrefixState state) {
+        if (state.currentCount > state.getMaxNumber()) {
+            // reset back to the beginning.
+            logWarning("Reseting name prefix counter [%s] to initial value [%s]...",
+                    state.currentCount, state.nextNumber);
+            state.currentCount = state.nextNumber;
+        }
+    }
+
+    public static String buildNamePrefix(String prefix, long number, Boolean addRandomToken) {
+        final StringBuilder namePrefix = new StringBuilder();
+        namePrefix.append(prefix);
+        namePrefix.append(number);
+        if (Boolean.TRUE.equals(addRandomToken)) {
+            namePrefix.append(RANDOM_GENERATED_TOKEN_DELIMITER);
+            //adding time since 2016 as shortest and smallest possible guaranteed random token
+            long timestamp = System.currentTimeMillis() - SINCE_TIME;
+            namePrefix.append(timestamp);
+        }
+        return namePrefix.toString();
+    }
+
     @Override
     public ServiceDocument getDocumentTemplate() {
         ServiceDocument template = super.getDocumentTemplate();
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link DelegatingX509TrustManager} class.
+ */
+public class DelegatingX509TrustManagerTest {
+
+    private X509Certificate ca;
+    private X509Certificate signedServer;
+    private X509Certificate untrustedServer;
+
+    private DelegatingX509TrustManager trustManager;
+    private CountingTrustManager caDelegate;
+    private CountingTrustManager otherDelegate;
+
+    @Before
+    public void setUp() throws Exception {
+        ca = getCertificate("/certs/ca.pem");
+        signedServer = getCertificate("/certs/signed-server.crt");
+        untrustedServer = getCertificate("/certs/untrusted-server.crt");
+
+        trustManager = new DelegatingX509TrustManager();
+        caDelegate = new CountingTrustManager(ca);
+        otherDelegate = new CountingTrustManager(getCertificate("/certs/trusted_server.crt"));
+        trustManager.putDelegate("ca", caDelegate);
+        trustManager.putDelegate("other", otherDelegate);
+    }
+
+    @Test
+    public void testOnlyMatchingDelegatesAreChecked() throws Exception {
+        trustManager.checkServerTrusted(new X509Certificate[] { signedServer }, "RSA");
+        assertEquals(1, caDelegate.checks);
+        assertEquals(0, otherDelegate.checks);
+
+        try {
+            trustManager.checkServerTrusted(new X509Certificate[] { untrustedServer }, "RSA");
+            fail("Should not trust untrusted certificate");
+        } catch (CertificateException ignored) {
+        }
+        assertEquals(1, caDelegate.checks);
+        assertEquals(0, otherDelegate.checks);
+    }
+
+    @Test
+    public void testValidatedCertificatesAreCached() throws Exception {
+        X509Certificate[] chain = new X509Certificate[] { signedServer };
+        trustManager.checkServerTrusted(chain, "RSA");
+        trustManager.checkServerTrusted(chain, "RSA");
+        assertEquals(1, caDelegate.checks);
+
+        // reloading the same certificate keeps the cache
+        trustManager.putDelegate("ca", caDelegate);
+        trustManager.checkServerTrusted(chain, "RSA");
+        assertEquals(1, caDelegate.checks);
+
+        trustManager.removeDelegate("ca");
+        try {
+            trustManager.checkServerTrusted(chain, "RSA");
+            fail("Should not trust certificate of a removed CA");
+        } catch (CertificateException ignored) {
+        }
+    }
+
+    @Test
+    public void testUnindexedDelegatesAreChecked() throws Exception {
+        CountingTrustManager unindexedDelegate = new CountingTrustManager(untrustedServer) {
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        trustManager.putDelegate("unindexed", unindexedDelegate);
+
+        trustManager.checkServerTrusted(new X509Certificate[] { untrustedServer }, "RSA");
+        assertEquals(1, unindexedDelegate.checks);
+    }
+
+    private static X509Certificate getCertificate(String name) throws Exception {
+        try (InputStream is = DelegatingX509TrustManagerTest.class.getResourceAsStream(name)) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(is);
+        }
+    }
+
+    /**
+     * Trusts the chains which contain its certificate or are issued by it, and counts the checks.
+     */
+    private static class CountingTrustManager implements X509TrustManager {
+        private final X509Certificate certificate;
+        private int checks;
+
+        CountingTrustManager(X509Certificate certificate) {
+            this.certificate = certificate;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+                throws CertificateException {
+            checks++;
+            boolean trusted = Arrays.stream(chain).anyMatch(c -> c.equals(certificate)
+                    || c.getIssuerX500Principal().equals(certificate.getSubjectX500Principal()));
+            if (!trusted) {
+                throw new CertificateException("Untrusted certificate");
+            }
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[] { certificate };
+        }
+    }
+}
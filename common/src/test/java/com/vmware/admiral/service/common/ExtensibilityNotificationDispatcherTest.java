@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class ExtensibilityNotificationDispatcherTest {
+
+    private static final URI UNREACHABLE_ENDPOINT = URI.create("http://127.0.0.1:1/notify");
+
+    private static final long CIRCUIT_OPEN_MICROS = TimeUnit.MILLISECONDS.toMicros(200);
+
+    /**
+     * Subscriber endpoint which fails the notifications or holds them until released.
+     */
+    public static class TestSubscriberService extends StatelessService {
+        public static final String SELF_LINK = "/test/subscriber";
+
+        volatile boolean failing;
+        volatile boolean holding;
+        final List<Operation> held = new ArrayList<>();
+
+        @Override
+        public void handlePost(Operation post) {
+            if (failing) {
+                post.fail(Operation.STATUS_CODE_UNAVAILABLE);
+            } else if (holding) {
+                synchronized (held) {
+                    held.add(post);
+                }
+            } else {
+                post.complete();
+            }
+        }
+
+        void release() {
+            holding = false;
+            synchronized (held) {
+                held.forEach(Operation::complete);
+                held.clear();
+            }
+        }
+    }
+
+    private VerificationHost host;
+    private StatelessService service;
+    private ExtensibilityNotificationDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Throwable {
+        host = VerificationHost.create(0);
+        host.start();
+
+        service = new StatelessService();
+        host.startServiceAndWait(service, "/test/dispatcher", null);
+
+        dispatcher = new ExtensibilityNotificationDispatcher(service);
+    }
+
+    @After
+    public void tearDown() {
+        if (host != null) {
+            host.tearDown();
+        }
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() {
+        for (int i = 0; i < ExtensibilityNotificationDispatcher.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+                i++) {
+            assertFalse(dispatcher.isCircuitOpen(UNREACHABLE_ENDPOINT));
+            assertNotNull(send());
+        }
+
+        assertTrue(dispatcher.isCircuitOpen(UNREACHABLE_ENDPOINT));
+
+        Throwable failure = send();
+        assertTrue(failure instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testHalfOpenCircuitSendsSingleProbe() throws Throwable {
+        TestSubscriberService subscriber = new TestSubscriberService();
+        host.startServiceAndWait(subscriber, TestSubscriberService.SELF_LINK, null);
+        URI subscriberUri = UriUtils.buildUri(host, TestSubscriberService.SELF_LINK);
+        dispatcher = new ExtensibilityNotificationDispatcher(service, CIRCUIT_OPEN_MICROS);
+
+        subscriber.failing = true;
+        for (int i = 0; i < ExtensibilityNotificationDispatcher.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+                i++) {
+            assertNotNull(send(subscriberUri));
+        }
+        assertTrue(dispatcher.isCircuitOpen(subscriberUri));
+
+        // half-open: the failed probe reopens the circuit
+        Thread.sleep(TimeUnit.MICROSECONDS.toMillis(CIRCUIT_OPEN_MICROS) + 50);
+        assertFalse(dispatcher.isCircuitOpen(subscriberUri));
+        assertNotNull(send(subscriberUri));
+        assertTrue(dispatcher.isCircuitOpen(subscriberUri));
+
+        // half-open again: while the probe is in flight the other notifications are rejected
+        Thread.sleep(TimeUnit.MICROSECONDS.toMillis(CIRCUIT_OPEN_MICROS) + 50);
+        subscriber.failing = false;
+        subscriber.holding = true;
+        AtomicReference<Throwable> probeFailure = new AtomicReference<>();
+        TestContext probeCtx = host.testCreate(1);
+        dispatcher.send(Operation.createPost(subscriberUri)
+                .setBody(new ServiceDocument())
+                .setCompletion((o, e) -> {
+                    probeFailure.set(e);
+                    probeCtx.completeIteration();
+                }));
+        host.waitFor("Probe not received", () -> {
+            synchronized (subscriber.held) {
+                return subscriber.held.size() == 1;
+            }
+        });
+        assertTrue(send(subscriberUri) instanceof IllegalStateException);
+
+        // the successful probe closes the circuit
+        subscriber.release();
+        probeCtx.await();
+        assertNull(probeFailure.get());
+        assertFalse(dispatcher.isCircuitOpen(subscriberUri));
+        assertNull(send(subscriberUri));
+        assertNull(send(subscriberUri));
+    }
+
+    @Test
+    public void testIdleEndpointsArePruned() {
+        assertNotNull(send());
+        assertEquals(1, dispatcher.getEndpointCount());
+        assertNotNull(getStat(UNREACHABLE_ENDPOINT,
+                ExtensibilityNotificationDispatcher.STAT_NAME_SUFFIX_FAILURES));
+
+        dispatcher.pruneIdleEndpoints(Utils.getSystemNowMicrosUtc());
+        assertEquals(1, dispatcher.getEndpointCount());
+
+        dispatcher.pruneIdleEndpoints(Utils.fromNowMicrosUtc(
+                ExtensibilityNotificationDispatcher.IDLE_ENDPOINT_EXPIRATION_MICROS));
+        assertEquals(0, dispatcher.getEndpointCount());
+        assertTrue(dispatcher.getStats().entries.isEmpty());
+    }
+
+    @Test
+    public void testLatenciesAreAccumulated() throws Throwable {
+        TestSubscriberService subscriber = new TestSubscriberService();
+        host.startServiceAndWait(subscriber, TestSubscriberService.SELF_LINK, null);
+        URI subscriberUri = UriUtils.buildUri(host, TestSubscriberService.SELF_LINK);
+
+        int count = 3;
+        for (int i = 0; i < count; i++) {
+            assertNull(send(subscriberUri));
+        }
+
+        ServiceStat requests = getStat(subscriberUri,
+                ExtensibilityNotificationDispatcher.STAT_NAME_SUFFIX_REQUESTS);
+        assertEquals(count, requests.latestValue, 0);
+
+        ServiceStat latency = getStat(subscriberUri,
+                ExtensibilityNotificationDispatcher.STAT_NAME_SUFFIX_LATENCY_MICROS);
+        assertEquals(count, latency.version);
+        assertTrue(latency.accumulatedValue >= latency.latestValue);
+        assertEquals(count, Arrays.stream(latency.logHistogram.bins).sum());
+    }
+
+    private ServiceStat getStat(URI uri, String suffix) {
+        return dispatcher.getStats().entries.get(ExtensibilityNotificationDispatcher
+                .STAT_NAME_PREFIX + ExtensibilityNotificationDispatcher.getEndpointKey(uri)
+                + suffix);
+    }
+
+    private Throwable send() {
+        return send(UNREACHABLE_ENDPOINT);
+    }
+
+    private Throwable send(URI uri) {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        TestContext ctx = host.testCreate(1);
+        dispatcher.send(Operation.createPost(uri)
+                .setBody(new ServiceDocument())
+                .setCompletion((o, e) -> {
+                    failure.set(e);
+                    ctx.completeIteration();
+                }));
+        ctx.await();
+        return failure.get();
+    }
+}
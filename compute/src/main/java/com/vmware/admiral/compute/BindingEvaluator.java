@@ -12,7 +12,11 @@
 package com.vmware.admiral.compute;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -39,6 +44,8 @@ import com.google.gson.JsonPrimitive;
 import com.vmware.admiral.closures.services.closure.Closure;
 import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.admiral.common.util.YamlMapper;
+import com.vmware.admiral.compute.CompiledBindings.CompiledBinding;
+import com.vmware.admiral.compute.CompiledBindings.PathSegment;
 import com.vmware.admiral.compute.content.Binding;
 import com.vmware.admiral.compute.content.Binding.ComponentBinding;
 import com.vmware.admiral.compute.content.ComponentTemplate;
@@ -160,19 +167,33 @@ public class BindingEvaluator {
             NestedState state,
             List<Binding> bindings,
             Map<String, NestedState> provisionedResources) {
-        NestedState result = state;
+        return evaluateProvisioningTimeBindings(state, CompiledBindings.compile(bindings),
+                provisionedResources);
+    }
+
+    /**
+     * Applies the precompiled bindings on a Component, after a dependent component is
+     * provisioned.
+     */
+    public static NestedState evaluateProvisioningTimeBindings(
+            NestedState state,
+            CompiledBindings bindings,
+            Map<String, NestedState> provisionedResources) {
         Map<String, Object> evaluatedBindingMap = new HashMap<>();
-        for (Binding binding : bindings) {
-            if (!binding.isProvisioningTimeBinding()) {
-                continue;
-            }
+        for (CompiledBinding binding : bindings.provisioningTimeBindings) {
             try {
-                evaluateProvisioningTimeBinding(binding, provisionedResources, evaluatedBindingMap);
-            } catch (ReflectiveOperationException | IOException e) {
+                evaluateProvisioningTimeBinding(binding, provisionedResources,
+                        evaluatedBindingMap);
+            } catch (ReflectiveOperationException e) {
                 throw new RuntimeException(e);
             }
         }
 
+        if (evaluatedBindingMap.isEmpty()) {
+            // nothing to apply, spare the serialization of the state
+            return state;
+        }
+
         try {
             final Map<String, Object> resultBindingMap = new HashMap<>();
             sanitizeState(state, (normalizedState) -> {
@@ -187,15 +208,11 @@ public class BindingEvaluator {
             });
 
             applyEvaluatedState(resultBindingMap, evaluatedBindingMap, bindings);
-            if (!evaluatedBindingMap.isEmpty()) {
-                result = TemplateSerializationUtils.deserializeServiceDocument(resultBindingMap,
-                        state.object.getClass());
-            }
+            return TemplateSerializationUtils.deserializeServiceDocument(resultBindingMap,
+                    state.object.getClass());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-
-        return result;
     }
 
     private static void sanitizeState(NestedState state, Consumer<NestedState> serializationCall)
@@ -226,9 +243,9 @@ public class BindingEvaluator {
     }
 
     private static void applyEvaluatedState(Map<String, Object> resultBindingMap,
-            Map<String, Object> evaluatedBindingMap, List<Binding> bindings) {
+            Map<String, Object> evaluatedBindingMap, CompiledBindings bindings) {
         evaluatedBindingMap.forEach((k, v) -> {
-            Binding targetBinding = findBindingByExpression(k, bindings);
+            Binding targetBinding = bindings.targetByExpression.get(k);
             if (targetBinding != null) {
                 setValue(resultBindingMap, targetBinding.targetFieldPath, v);
             }
@@ -236,34 +253,19 @@ public class BindingEvaluator {
 
     }
 
-    private static Binding findBindingByExpression(String k, List<Binding> bindings) {
-        for (Binding b : bindings) {
-            if (k.equalsIgnoreCase(b.placeholder.bindingExpression)) {
-                return b;
-            }
-        }
-
-        return null;
-    }
-
-    private static void evaluateProvisioningTimeBinding(Binding binding,
+    private static void evaluateProvisioningTimeBinding(CompiledBinding binding,
             Map<String, NestedState> provisionedResources, Map<String, Object> evaluatedBindings)
-            throws ReflectiveOperationException, IOException {
-
-        String componentName = BindingUtils
-                .extractComponentNameFromBindingExpression(binding.placeholder.bindingExpression);
+            throws ReflectiveOperationException {
 
-        NestedState provisionedResource = provisionedResources.get(componentName);
+        NestedState provisionedResource = provisionedResources.get(binding.componentName);
         if (provisionedResource == null) {
             return;
         }
 
-        Object value = getFieldValueByPath(
-                BindingUtils.convertToFieldPath(binding.placeholder.bindingExpression),
-                provisionedResource);
+        Object value = getFieldValueByPath(binding.sourcePath, provisionedResource);
 
-        value = BindingUtils.valueForBinding(binding, value);
-        evaluatedBindings.put(binding.placeholder.bindingExpression, value);
+        value = binding.valueFor(value);
+        evaluatedBindings.put(binding.binding.placeholder.bindingExpression, value);
     }
 
     @SuppressWarnings("unchecked")
@@ -318,7 +320,8 @@ public class BindingEvaluator {
         @SuppressWarnings("rawtypes")
         ComponentTemplate sourceTemplate = componentNameToDescription.get(sourceComponentName);
 
-        Object rootSourceValue = getFieldValueByPath(sourceFieldPath, sourceTemplate.data);
+        Object rootSourceValue = getFieldValueByPath(
+                CompiledBindings.compilePath(sourceFieldPath), sourceTemplate.data);
 
         // if the source value is null it may be bound to something else
         if (rootSourceValue == null) {
@@ -439,7 +442,7 @@ public class BindingEvaluator {
     }
 
     @SuppressWarnings("rawtypes")
-    private static Object getFieldValueByPath(List<String> fieldPath, Object startObject)
+    private static Object getFieldValueByPath(PathSegment[] fieldPath, Object startObject)
             throws ReflectiveOperationException {
 
         boolean isCurrentFieldLink = false;
@@ -455,15 +458,16 @@ public class BindingEvaluator {
             value = startObject;
         }
 
-        for (int i = 0; i < fieldPath.size(); ++i) {
-            String fieldName = fieldPath.get(i);
+        for (PathSegment segment : fieldPath) {
+            String fieldName = segment.name;
             if (value == null) {
                 return null;
             }
 
+            FieldAccessor accessor = FieldAccessor.get(value.getClass(), fieldName);
+
             // this field contains links
-            isCurrentFieldLink =
-                    NestedState.getNestedObjectType(value.getClass(), fieldName) != null;
+            isCurrentFieldLink = accessor.link;
 
             // special case for a map
             if (value instanceof Map) {
@@ -479,7 +483,7 @@ public class BindingEvaluator {
             }
 
             if (value instanceof List) {
-                value = ((List) value).get(Integer.parseInt(fieldName));
+                value = ((List) value).get(segment.index());
 
                 /**
                  * Here we have an index e.g. "0". We have to know if the List is a list of links
@@ -496,7 +500,7 @@ public class BindingEvaluator {
             }
 
             if (value.getClass().isArray()) {
-                value = ((Object[]) value)[Integer.parseInt(fieldName)];
+                value = ((Object[]) value)[segment.index()];
 
                 if (isParentFieldLink) {
                     String link = (String) value;
@@ -517,18 +521,11 @@ public class BindingEvaluator {
                 continue;
             }
 
-            Class<?> type = value.getClass();
-            Field field = PropertyUtils.findField(type, fieldName);
-            if (field == null) {
-                String snakeCaseFieldName = convertSnakeCaseToCamelCase(fieldName);
-                field = PropertyUtils.findField(type, snakeCaseFieldName);
-            }
-
-            if (field != null) {
+            if (accessor.hasField()) {
                 if (value instanceof Closure) {
-                    value = fromClosureMap(value, field);
+                    value = fromClosureMap(accessor.getValue(value));
                 } else {
-                    value = field.get(value);
+                    value = accessor.getValue(value);
 
                     if (value instanceof String && isCurrentFieldLink) {
                         String link = (String) value;
@@ -539,7 +536,7 @@ public class BindingEvaluator {
             } else {
                 // handle special case, as we implicitly put any not know property into
                 // customProperties.
-                value = tryGetValueFromCustomProperties(type, value, fieldName);
+                value = accessor.getCustomPropertyValue(value, fieldName);
             }
             isParentFieldLink = isCurrentFieldLink;
         }
@@ -547,8 +544,8 @@ public class BindingEvaluator {
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    private static Object fromClosureMap(Object value, Field field) throws IllegalAccessException {
-        Map values = (Map) field.get(value);
+    private static Object fromClosureMap(Object value) {
+        Map values = (Map) value;
         Map convertedMap = new HashMap(values.size());
 
         values.forEach((k, v) -> {
@@ -564,20 +561,118 @@ public class BindingEvaluator {
         return convertedMap;
     }
 
-    @SuppressWarnings("unchecked")
-    private static Object tryGetValueFromCustomProperties(Class<?> type, Object value,
-            String fieldName) {
-        Object result = null;
-        Field field = PropertyUtils.findField(type, ResourceState.FIELD_NAME_CUSTOM_PROPERTIES);
-        if (field != null) {
+    /**
+     * Reads a field referenced by binding expressions from objects of a given type. The field
+     * lookup, which takes reflection and a search through the link fields, is done once per type
+     * and field name and the field is then read through a method handle.
+     */
+    private static class FieldAccessor {
+
+        private static final ClassValue<Map<String, FieldAccessor>> ACCESSORS =
+                new ClassValue<Map<String, FieldAccessor>>() {
+                    @Override
+                    protected Map<String, FieldAccessor> computeValue(Class<?> type) {
+                        return new ConcurrentHashMap<>();
+                    }
+                };
+
+        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class,
+                Object.class);
+
+        final boolean link;
+        private final boolean hasField;
+        private final MethodHandle getter;
+        private final MethodHandle customPropertiesGetter;
+        private final IllegalAccessException accessFailure;
+
+        private FieldAccessor(Class<?> type, String fieldName) {
+            this.link = NestedState.getNestedObjectType(type, fieldName) != null;
+
+            Field field = null;
+            MethodHandle getter = null;
+            MethodHandle customPropertiesGetter = null;
+            IllegalAccessException accessFailure = null;
+            // maps, lists, arrays and strings are navigated without reflection
+            if (!Map.class.isAssignableFrom(type) && !List.class.isAssignableFrom(type)
+                    && !type.isArray() && type != String.class) {
+                field = PropertyUtils.findField(type, fieldName);
+                if (field == null) {
+                    String snakeCaseFieldName = convertSnakeCaseToCamelCase(fieldName);
+                    field = PropertyUtils.findField(type, snakeCaseFieldName);
+                }
+                if (field != null) {
+                    try {
+                        getter = unreflectGetter(field);
+                    } catch (IllegalAccessException e) {
+                        // reported when the field is read, as before
+                        accessFailure = e;
+                    }
+                } else {
+                    Field customPropertiesField = PropertyUtils.findField(type,
+                            ResourceState.FIELD_NAME_CUSTOM_PROPERTIES);
+                    if (customPropertiesField != null) {
+                        try {
+                            customPropertiesGetter = unreflectGetter(customPropertiesField);
+                        } catch (IllegalAccessException e) {
+                            // Do nothing here
+                        }
+                    }
+                }
+            }
+            this.hasField = field != null;
+            this.getter = getter;
+            this.customPropertiesGetter = customPropertiesGetter;
+            this.accessFailure = accessFailure;
+        }
+
+        static FieldAccessor get(Class<?> type, String fieldName) {
+            Map<String, FieldAccessor> accessors = ACCESSORS.get(type);
+            FieldAccessor accessor = accessors.get(fieldName);
+            if (accessor == null) {
+                accessor = accessors.computeIfAbsent(fieldName,
+                        f -> new FieldAccessor(type, f));
+            }
+            return accessor;
+        }
+
+        boolean hasField() {
+            return hasField;
+        }
+
+        Object getValue(Object target) throws IllegalAccessException {
+            if (accessFailure != null) {
+                throw accessFailure;
+            }
+            return invoke(getter, target);
+        }
+
+        @SuppressWarnings("unchecked")
+        Object getCustomPropertyValue(Object target, String fieldName) {
+            if (customPropertiesGetter == null) {
+                return null;
+            }
+            Map<String, Object> customProperties = (Map<String, Object>) invoke(
+                    customPropertiesGetter, target);
+            return customProperties != null ? customProperties.get(fieldName) : null;
+        }
+
+        private static MethodHandle unreflectGetter(Field field) throws IllegalAccessException {
+            MethodHandle getter = MethodHandles.publicLookup().unreflectGetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            }
+            return getter.asType(GETTER_TYPE);
+        }
+
+        private static Object invoke(MethodHandle getter, Object target) {
             try {
-                Map<String, Object> customProperties = (Map<String, Object>) field.get(value);
-                result = customProperties.get(fieldName);
-            } catch (ReflectiveOperationException e) {
-                // Do nothing here
+                return (Object) getter.invokeExact(target);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
             }
         }
-        return result;
     }
 
     private static Map<String, ComponentTemplate<?>> getComponentNameToDescription(
@@ -205,11 +205,15 @@ public class BindingUtils {
     }
 
     public static Object valueForBinding(Binding binding, Object value) {
+        return valueForBinding(binding,
+                toPlaceholderExpression(binding.placeholder.bindingExpression), value);
+    }
+
+    static Object valueForBinding(Binding binding, String placeholderExpr, Object value) {
         if (value == null) {
             value = binding.placeholder.defaultValue;
         }
 
-        String placeholderExpr = String.format("${%s}", binding.placeholder.bindingExpression);
         if (binding.originalFieldExpression.equals(placeholderExpr)) {
             return value;
         }
@@ -217,4 +221,8 @@ public class BindingUtils {
         return binding.originalFieldExpression.replace(placeholderExpr,
                 value != null ? value.toString() : "");
     }
+
+    static String toPlaceholderExpression(String bindingExpression) {
+        return PLACEHOLDER_PREFIX + bindingExpression + PLACEHOLDER_SUFFIX;
+    }
 }
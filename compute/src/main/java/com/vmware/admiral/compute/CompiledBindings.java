@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vmware.admiral.compute.content.Binding;
+
+/**
+ * Provisioning time bindings of a component with their expressions parsed ahead of the
+ * evaluation. Instances are immutable, so the bindings of a component description are compiled
+ * once and shared between the evaluations of all resources provisioned from it, see
+ * {@link #forComponent(String, String, List)}.
+ */
+public class CompiledBindings {
+
+    private static final int CACHE_MAX_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.bindings.cache.max.size", 1000);
+
+    // composite description link and component description link -> compiled bindings
+    private static final Map<String, CompiledBindings> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * A field name of a binding expression, with the list index it stands for, if any.
+     */
+    static class PathSegment {
+        final String name;
+        private final Integer index;
+
+        PathSegment(String name) {
+            this.name = name;
+            Integer index;
+            try {
+                index = Integer.valueOf(name);
+            } catch (NumberFormatException e) {
+                index = null;
+            }
+            this.index = index;
+        }
+
+        int index() {
+            // fails the same way as the evaluation did before the path was compiled
+            return index != null ? index : Integer.parseInt(name);
+        }
+    }
+
+    static class CompiledBinding {
+        final Binding binding;
+        final String componentName;
+        final PathSegment[] sourcePath;
+        private final String placeholderExpression;
+
+        private CompiledBinding(Binding binding) {
+            String bindingExpression = binding.placeholder.bindingExpression;
+            this.binding = binding;
+            this.componentName = BindingUtils
+                    .extractComponentNameFromBindingExpression(bindingExpression);
+            this.sourcePath = compilePath(BindingUtils.convertToFieldPath(bindingExpression));
+            this.placeholderExpression = BindingUtils.toPlaceholderExpression(bindingExpression);
+        }
+
+        Object valueFor(Object sourceValue) {
+            return BindingUtils.valueForBinding(binding, placeholderExpression, sourceValue);
+        }
+    }
+
+    private final List<Binding> bindings;
+    final List<CompiledBinding> provisioningTimeBindings;
+    // binding expression -> the binding which target field is set to its value
+    final Map<String, Binding> targetByExpression;
+
+    private CompiledBindings(List<Binding> bindings) {
+        this.bindings = new ArrayList<>(bindings);
+
+        List<CompiledBinding> compiled = new ArrayList<>();
+        Map<String, Binding> targets = new HashMap<>();
+        for (Binding binding : bindings) {
+            if (!binding.isProvisioningTimeBinding()) {
+                continue;
+            }
+            compiled.add(new CompiledBinding(binding));
+
+            String expression = binding.placeholder.bindingExpression;
+            if (!targets.containsKey(expression)) {
+                Binding target = findBindingByExpression(expression, bindings);
+                if (target != null) {
+                    targets.put(expression, target);
+                }
+            }
+        }
+        this.provisioningTimeBindings = Collections.unmodifiableList(compiled);
+        this.targetByExpression = Collections.unmodifiableMap(targets);
+    }
+
+    public static CompiledBindings compile(List<Binding> bindings) {
+        return new CompiledBindings(bindings);
+    }
+
+    /**
+     * Returns the compiled bindings of the given component of a composite description. The
+     * bindings are compiled again whenever they differ from the ones compiled last time, i.e. the
+     * description has been changed.
+     */
+    public static CompiledBindings forComponent(String compositeDescriptionLink,
+            String componentDescriptionLink, List<Binding> bindings) {
+        String key = compositeDescriptionLink + "#" + componentDescriptionLink;
+        CompiledBindings compiled = CACHE.get(key);
+        if (compiled != null && compiled.isCompiledFrom(bindings)) {
+            return compiled;
+        }
+
+        compiled = compile(bindings);
+        if (CACHE.size() >= CACHE_MAX_SIZE) {
+            CACHE.clear();
+        }
+        CACHE.put(key, compiled);
+        return compiled;
+    }
+
+    static PathSegment[] compilePath(List<String> fieldPath) {
+        PathSegment[] path = new PathSegment[fieldPath.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = new PathSegment(fieldPath.get(i));
+        }
+        return path;
+    }
+
+    private boolean isCompiledFrom(List<Binding> other) {
+        if (bindings.size() != other.size()) {
+            return false;
+        }
+        for (int i = 0; i < bindings.size(); i++) {
+            Binding compiled = bindings.get(i);
+            Binding binding = other.get(i);
+            if (!Objects.equals(compiled.targetFieldPath, binding.targetFieldPath)
+                    || !Objects.equals(compiled.originalFieldExpression,
+                            binding.originalFieldExpression)
+                    || !isSamePlaceholder(compiled.placeholder, binding.placeholder)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSamePlaceholder(Binding.BindingPlaceholder p1,
+            Binding.BindingPlaceholder p2) {
+        if (p1 == null || p2 == null) {
+            return p1 == p2;
+        }
+        return Objects.equals(p1.bindingExpression, p2.bindingExpression)
+                && Objects.equals(p1.defaultValue, p2.defaultValue);
+    }
+
+    private static Binding findBindingByExpression(String expression, List<Binding> bindings) {
+        for (Binding b : bindings) {
+            if (b.placeholder != null
+                    && expression.equalsIgnoreCase(b.placeholder.bindingExpression)) {
+                return b;
+            }
+        }
+        return null;
+    }
+}
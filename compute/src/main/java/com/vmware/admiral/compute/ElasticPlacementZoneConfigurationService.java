@@ -53,7 +53,10 @@ import com.vmware.xenon.services.common.ServiceUriPaths;
  *
  * <li>{@code POST}: Post a valid {@link ElasticPlacementZoneConfigurationState} with no document
  * self links to create a resource pool and optionally a corresponding elastic placement zone. The
- * returned body contains the created {@link ElasticPlacementZoneConfigurationState}.
+ * returned body contains the created {@link ElasticPlacementZoneConfigurationState}. When the
+ * resource pool and zone self links are set, the existing documents are replaced, and a
+ * {@link Operation#PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE} of the request is passed on to recreate
+ * deleted ones.
  *
  * <li>{@code PATCH}: Send a valid {@link ElasticPlacementZoneConfigurationState} to update the
  * resource pool and optionally the elastic placement zone. A {@code PATCH} is done for the
@@ -273,6 +276,11 @@ public class ElasticPlacementZoneConfigurationService extends StatelessService {
                 .createPost(getHost(), ResourcePoolService.FACTORY_LINK)
                 .setBody(state.resourcePoolState)
                 .setReferer(getUri());
+        boolean forceIndexUpdate = originalOp.hasPragmaDirective(
+                Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
+        if (forceIndexUpdate) {
+            createRpOp.addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
+        }
         Operation[] createEpzOpHolder = { null };
 
         // create operation sequence
@@ -307,6 +315,10 @@ public class ElasticPlacementZoneConfigurationService extends StatelessService {
             createEpzOpHolder[0] = Operation
                     .createPost(getHost(), ElasticPlacementZoneService.FACTORY_LINK)
                     .setReferer(getUri());
+            if (forceIndexUpdate) {
+                createEpzOpHolder[0].addPragmaDirective(
+                        Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
+            }
             operations = operations.next(createEpzOpHolder[0])
                     .setCompletion(false, (ops, exs) -> {
                         if (exs != null) {
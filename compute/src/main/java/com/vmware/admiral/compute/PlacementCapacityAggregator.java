@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.compute.PlacementCapacityUpdateTaskService.AggregatedComputeStats;
+import com.vmware.admiral.compute.PlacementCapacityUpdateTaskService.ComputeStats;
+import com.vmware.photon.controller.model.query.QueryUtils.QueryByPages;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryFilter;
+import com.vmware.xenon.services.common.QueryFilter.QueryFilterException;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * Keeps running capacity and usage totals per resource pool, updated with the changes of the
+ * computes as they happen instead of querying all computes of all resource pools. Which computes
+ * belong to a resource pool is decided by evaluating the pool query in memory.
+ * <p>
+ * The totals of a resource pool are published, through {@link PlacementCapacityUpdateTaskService},
+ * only when they change by more than
+ * <code>com.vmware.admiral.compute.placement.capacity.update.threshold</code> (a fraction of the
+ * total). Since single changes can be missed, e.g. when a notification is lost, the totals are
+ * rebuilt from scratch on every {@link #reconcile()}. The changes received while reconciling are
+ * replayed on the rebuilt totals. A new resource pool, or a pool which query changed, is
+ * filled with the computes matching its query, without a reconcile. Resource pools which query cannot be
+ * evaluated in memory are left to full capacity update tasks, see
+ * {@link #getUnsupportedResourcePoolLinks()}.
+ */
+class PlacementCapacityAggregator {
+
+    private static final double UPDATE_THRESHOLD = Double.parseDouble(System.getProperty(
+            "com.vmware.admiral.compute.placement.capacity.update.threshold", "0.01"));
+
+    private static final long PUBLISH_DELAY_SECONDS = Long.getLong(
+            "com.vmware.admiral.compute.placement.capacity.publish.delay.seconds", 10);
+
+    private static final String COMPUTES_QUERY_NAME = "placement-capacity-computes";
+    private static final String RESOURCE_POOLS_QUERY_NAME = "placement-capacity-resource-pools";
+
+    private static final ServiceDocumentDescription COMPUTE_DESCRIPTION =
+            ServiceDocumentDescription.Builder.create().buildDescription(ComputeState.class);
+
+    private static class PoolEntry {
+        // the pool query as JSON, to tell a change of the query from a change of the capacity
+        final String queryJson;
+        // null if the query cannot be evaluated in memory
+        final QueryFilter filter;
+        final AggregatedComputeStats totals = new AggregatedComputeStats();
+        // the totals last handed over to the capacity update task, null if none yet
+        AggregatedComputeStats published;
+
+        PoolEntry(String queryJson, QueryFilter filter) {
+            this.queryJson = queryJson;
+            this.filter = filter;
+        }
+    }
+
+    private static class ComputeEntry {
+        final long documentVersion;
+        // null if the compute does not contribute to the capacity, e.g. it is not a host
+        final ComputeStats stats;
+        final Set<String> resourcePoolLinks;
+
+        ComputeEntry(long documentVersion, ComputeStats stats, Set<String> resourcePoolLinks) {
+            this.documentVersion = documentVersion;
+            this.stats = stats;
+            this.resourcePoolLinks = resourcePoolLinks;
+        }
+    }
+
+    /**
+     * Resource pools and computes as of a point in time. Replaced as a whole when reconciled.
+     */
+    private static class Snapshot {
+        final Map<String, PoolEntry> pools = new HashMap<>();
+        final Map<String, ComputeEntry> computes = new HashMap<>();
+    }
+
+    private final Service sender;
+    private final Map<String, ComputeDescription> descriptions = new ConcurrentHashMap<>();
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+    // guarded by this
+    private Snapshot snapshot;
+    private boolean reconciling;
+    // a reconcile requested while reconciling, run once the running one completes
+    private boolean reconcileRequested;
+    // compute and resource pool changes received while reconciling, replayed on the
+    // reconciled snapshot
+    private List<ComputeState> pendingChanges;
+    private List<ResourcePoolState> pendingPoolChanges;
+
+    PlacementCapacityAggregator(Service sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Subscribes for compute and resource pool changes and loads the initial totals.
+     */
+    void start() {
+        Query computeQuery = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .build();
+        Query resourcePoolQuery = Query.Builder.create()
+                .addKindFieldClause(ResourcePoolState.class)
+                .build();
+
+        CommonContinuousQueries.subscribeTo(sender.getHost(), RESOURCE_POOLS_QUERY_NAME,
+                resourcePoolQuery, this::onResourcePoolChange);
+        CommonContinuousQueries.subscribeTo(sender.getHost(), COMPUTES_QUERY_NAME, computeQuery,
+                this::onComputeChange, this::reconcile);
+    }
+
+    synchronized boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Returns the resource pools which totals are not maintained here.
+     */
+    synchronized Collection<String> getUnsupportedResourcePoolLinks() {
+        if (snapshot == null) {
+            return new ArrayList<>();
+        }
+        return snapshot.pools.entrySet().stream()
+                .filter(e -> e.getValue().filter == null)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Rebuilds the totals of all resource pools from scratch and publishes the ones which have
+     * drifted from the published figures.
+     */
+    void reconcile() {
+        synchronized (this) {
+            if (reconciling) {
+                reconcileRequested = true;
+                return;
+            }
+            reconciling = true;
+            reconcileRequested = false;
+            pendingChanges = new ArrayList<>();
+            pendingPoolChanges = new ArrayList<>();
+        }
+
+        Snapshot reconciled = new Snapshot();
+        loadResourcePools(reconciled)
+                .thenCompose(ignore -> loadComputes(reconciled))
+                .whenComplete((ignore, e) -> {
+                    List<ComputeState> changes;
+                    List<ResourcePoolState> changedPools = new ArrayList<>();
+                    boolean rerun;
+                    synchronized (this) {
+                        changes = pendingChanges;
+                        pendingChanges = null;
+                        if (e == null) {
+                            if (snapshot != null) {
+                                reconciled.pools.forEach((link, pool) -> {
+                                    PoolEntry current = snapshot.pools.get(link);
+                                    pool.published = current != null ? current.published : null;
+                                });
+                            }
+                            snapshot = reconciled;
+                            changedPools = applyResourcePoolChanges(snapshot,
+                                    pendingPoolChanges);
+                        }
+                        pendingPoolChanges = null;
+                        reconciling = false;
+                        rerun = reconcileRequested;
+                    }
+
+                    if (e != null) {
+                        sender.getHost().log(Level.WARNING,
+                                "Failed to reconcile placement capacity: %s", Utils.toString(e));
+                    } else {
+                        applyChanges(changes);
+                        changedPools.forEach(this::loadResourcePoolComputes);
+                        schedulePublish();
+                    }
+                    if (rerun) {
+                        reconcile();
+                    }
+                });
+    }
+
+    private DeferredResult<Void> loadResourcePools(Snapshot target) {
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ResourcePoolState.class)
+                .build();
+        return new QueryByPages<>(sender.getHost(), query, ResourcePoolState.class, null)
+                .queryDocuments(pool -> addResourcePool(target, pool));
+    }
+
+    private DeferredResult<Void> loadComputes(Snapshot target) {
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .build();
+        List<ComputeState> page = new ArrayList<>();
+        return new QueryByPages<>(sender.getHost(), query, ComputeState.class, null)
+                .queryDocuments(page::add)
+                // compute descriptions rarely change, pick up the changes with every reconcile
+                .thenCompose(ignore -> loadDescriptions(page, true))
+                .thenAccept(ignore -> page.forEach(compute -> update(target, compute, false)));
+    }
+
+    private void onResourcePoolChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null
+                || queryTask.results.documents.isEmpty()) {
+            return;
+        }
+        List<ResourcePoolState> pools = queryTask.results.documents.values().stream()
+                .map(json -> Utils.fromJson(json, ResourcePoolState.class))
+                .collect(Collectors.toList());
+
+        List<ResourcePoolState> changedPools;
+        synchronized (this) {
+            if (pendingPoolChanges != null) {
+                pendingPoolChanges.addAll(pools);
+            }
+            if (snapshot == null) {
+                return;
+            }
+            changedPools = applyResourcePoolChanges(snapshot, pools);
+        }
+        changedPools.forEach(this::loadResourcePoolComputes);
+    }
+
+    /**
+     * Applies the given resource pool changes and returns the new pools and the pools which query
+     * changed, which computes have to be loaded. Capacity updates of the pools themselves are
+     * ignored.
+     */
+    private static List<ResourcePoolState> applyResourcePoolChanges(Snapshot target,
+            List<ResourcePoolState> pools) {
+        List<ResourcePoolState> changedPools = new ArrayList<>();
+        for (ResourcePoolState pool : pools) {
+            PoolEntry current = target.pools.get(pool.documentSelfLink);
+            boolean deleted = Action.DELETE.name().equals(pool.documentUpdateAction);
+            if (!deleted && current != null
+                    && current.queryJson.equals(Utils.toJson(pool.query))) {
+                continue;
+            }
+            target.pools.remove(pool.documentSelfLink);
+            target.computes.values()
+                    .forEach(compute -> compute.resourcePoolLinks.remove(pool.documentSelfLink));
+            if (deleted) {
+                continue;
+            }
+            PoolEntry entry = addResourcePool(target, pool);
+            entry.published = current != null ? current.published : null;
+            if (entry.filter != null) {
+                changedPools.add(pool);
+            }
+        }
+        return changedPools;
+    }
+
+    /**
+     * Adds the computes matching the query of the given resource pool to its totals.
+     */
+    private void loadResourcePoolComputes(ResourcePoolState pool) {
+        PoolEntry entry;
+        synchronized (this) {
+            entry = snapshot.pools.get(pool.documentSelfLink);
+        }
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .addClause(pool.query)
+                .build();
+        List<ComputeState> computes = new ArrayList<>();
+        new QueryByPages<>(sender.getHost(), query, ComputeState.class, null)
+                .queryDocuments(computes::add)
+                .whenComplete((ignore, e) -> {
+                    if (e != null) {
+                        sender.getHost().log(Level.WARNING,
+                                "Failed to retrieve the computes of resource pool %s: %s",
+                                pool.documentSelfLink, Utils.toString(e));
+                        reconcile();
+                        return;
+                    }
+                    synchronized (this) {
+                        // the pool changed again or the snapshot was reconciled meanwhile
+                        if (entry == null || snapshot.pools.get(pool.documentSelfLink) != entry) {
+                            return;
+                        }
+                        for (ComputeState compute : computes) {
+                            ComputeEntry current = snapshot.computes.get(compute.documentSelfLink);
+                            // computes changed after the query was run were already evaluated
+                            // against the pool, unknown computes are evaluated once received
+                            if (current == null || current.stats == null
+                                    || current.documentVersion > compute.documentVersion) {
+                                continue;
+                            }
+                            if (current.resourcePoolLinks.add(pool.documentSelfLink)) {
+                                entry.totals.add(current.stats, 1);
+                            }
+                        }
+                    }
+                    schedulePublish();
+                });
+    }
+
+    private void onComputeChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null
+                || queryTask.results.documents.isEmpty()) {
+            return;
+        }
+        List<ComputeState> computes = queryTask.results.documents.values().stream()
+                .map(json -> Utils.fromJson(json, ComputeState.class))
+                .collect(Collectors.toList());
+
+        loadDescriptions(computes, false).whenComplete((ignore, e) -> {
+            if (e != null) {
+                sender.getHost().log(Level.WARNING,
+                        "Failed to retrieve compute descriptions: %s", Utils.toString(e));
+                return;
+            }
+            applyChanges(computes);
+            schedulePublish();
+        });
+    }
+
+    private void applyChanges(List<ComputeState> computes) {
+        if (computes == null || computes.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (pendingChanges != null) {
+                pendingChanges.addAll(computes);
+            }
+            if (snapshot == null) {
+                return;
+            }
+            for (ComputeState compute : computes) {
+                update(snapshot, compute,
+                        Action.DELETE.name().equals(compute.documentUpdateAction));
+            }
+        }
+    }
+
+    private static PoolEntry addResourcePool(Snapshot target, ResourcePoolState pool) {
+        QueryFilter filter = null;
+        if (pool.query != null) {
+            try {
+                filter = QueryFilter.create(pool.query);
+            } catch (QueryFilterException e) {
+                // left to the full capacity update task
+            }
+        }
+        PoolEntry entry = new PoolEntry(Utils.toJson(pool.query), filter);
+        target.pools.put(pool.documentSelfLink, entry);
+        return entry;
+    }
+
+    /**
+     * Replaces the contribution of the given compute to the totals of the resource pools it was
+     * and is in.
+     */
+    private void update(Snapshot target, ComputeState compute, boolean deleted) {
+        ComputeEntry current = target.computes.get(compute.documentSelfLink);
+        if (current != null && current.documentVersion >= compute.documentVersion) {
+            return;
+        }
+
+        ComputeStats stats = null;
+        Set<String> poolLinks = new HashSet<>();
+        if (!deleted) {
+            ComputeDescription description = descriptions.get(compute.descriptionLink);
+            stats = description != null
+                    ? PlacementCapacityUpdateTaskService.getComputeStats(compute, description)
+                    : null;
+            if (stats != null) {
+                target.pools.forEach((link, pool) -> {
+                    if (pool.filter != null
+                            && pool.filter.evaluate(compute, COMPUTE_DESCRIPTION)) {
+                        poolLinks.add(link);
+                    }
+                });
+            }
+        }
+
+        if (current != null && current.stats != null) {
+            for (String link : current.resourcePoolLinks) {
+                PoolEntry pool = target.pools.get(link);
+                if (pool != null) {
+                    pool.totals.add(current.stats, -1);
+                }
+            }
+        }
+        if (stats != null) {
+            for (String link : poolLinks) {
+                target.pools.get(link).totals.add(stats, 1);
+            }
+        }
+        target.computes.put(compute.documentSelfLink,
+                new ComputeEntry(compute.documentVersion, stats, poolLinks));
+    }
+
+    /**
+     * Loads the descriptions of the given computes which are not loaded yet, or all of them when
+     * refreshed. Loaded descriptions are replaced, never removed, as they may be in use.
+     */
+    private DeferredResult<Void> loadDescriptions(List<ComputeState> computes, boolean refresh) {
+        Set<String> missing = computes.stream()
+                .map(c -> c.descriptionLink)
+                .filter(link -> link != null && (refresh || !descriptions.containsKey(link)))
+                .collect(Collectors.toSet());
+        if (missing.isEmpty()) {
+            return DeferredResult.completed(null);
+        }
+
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ComputeDescription.class)
+                .addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, missing)
+                .build();
+        return new QueryByPages<>(sender.getHost(), query, ComputeDescription.class, null)
+                .queryDocuments(d -> descriptions.put(d.documentSelfLink, d));
+    }
+
+    private void schedulePublish() {
+        if (publishScheduled.getAndSet(true)) {
+            return;
+        }
+        sender.getHost().schedule(() -> {
+            publishScheduled.set(false);
+            publish();
+        }, PUBLISH_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hands the totals of the resource pools which have changed significantly since last time
+     * over to the capacity update task.
+     */
+    private void publish() {
+        Map<String, AggregatedComputeStats> changed = new HashMap<>();
+        synchronized (this) {
+            if (snapshot == null) {
+                return;
+            }
+            snapshot.pools.forEach((link, pool) -> {
+                if (pool.filter != null && isSignificantChange(pool.published, pool.totals)) {
+                    changed.put(link, Utils.clone(pool.totals));
+                }
+            });
+        }
+
+        changed.forEach((link, totals) -> PlacementCapacityUpdateTaskService
+                .triggerForResourcePool(sender, link, totals, started -> {
+                    if (!started) {
+                        // e.g. a task for the pool is still running, try again later
+                        schedulePublish();
+                        return;
+                    }
+                    synchronized (this) {
+                        PoolEntry pool = snapshot.pools.get(link);
+                        if (pool != null) {
+                            pool.published = totals;
+                        }
+                    }
+                }));
+    }
+
+    static boolean isSignificantChange(AggregatedComputeStats published,
+            AggregatedComputeStats current) {
+        if (published == null) {
+            return true;
+        }
+        if (published.computeCount != current.computeCount
+                || published.totalMemoryBytes != current.totalMemoryBytes
+                || published.cpuCoreCount != current.cpuCoreCount) {
+            return true;
+        }
+        double memoryChange = Math.abs(published.availableMemoryBytes
+                - current.availableMemoryBytes);
+        if (memoryChange > UPDATE_THRESHOLD * current.totalMemoryBytes) {
+            return true;
+        }
+        // the cpu usage is a percentage
+        double cpuUsageChange = Math.abs(published.getCpuUsage() - current.getCpuUsage());
+        return cpuUsageChange > UPDATE_THRESHOLD * 100;
+    }
+}
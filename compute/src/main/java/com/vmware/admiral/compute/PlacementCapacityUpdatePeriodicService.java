@@ -27,6 +27,11 @@ import com.vmware.xenon.services.common.QueryTask;
 /**
  * A stateless service that periodically triggers capacity update on placements and
  * placement zones based on the computes participating in them.
+ * <p>
+ * Unless <code>com.vmware.admiral.compute.placement.capacity.incremental</code> is disabled, the
+ * capacity is aggregated as the computes change by a {@link PlacementCapacityAggregator} and the
+ * periodic maintenance only reconciles the aggregated figures. Full capacity update tasks are
+ * then triggered only for the placement zones which query cannot be evaluated in memory.
  */
 public class PlacementCapacityUpdatePeriodicService extends StatelessService {
 
@@ -39,8 +44,13 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
     // used to avoid refresh on compute change too soon after a previous refresh
     private static final long PAUSE_SECONDS = Long.getLong(
             "dcp.management.placement.compute.periodic.pause.seconds", 10);
+    private static final boolean INCREMENTAL = Boolean.parseBoolean(System.getProperty(
+            "com.vmware.admiral.compute.placement.capacity.incremental",
+            Boolean.TRUE.toString()));
+
     private final AtomicBoolean paused = new AtomicBoolean();
     private final AtomicBoolean invalidated = new AtomicBoolean();
+    private PlacementCapacityAggregator aggregator;
 
     public PlacementCapacityUpdatePeriodicService() {
         super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
@@ -50,6 +60,9 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
     @Override
     public void handlePeriodicMaintenance(Operation post) {
         post.complete();
+        if (aggregator != null && aggregator.isLoaded()) {
+            aggregator.reconcile();
+        }
         doTrigger(() -> "Periodic refresh", false);
     }
 
@@ -57,6 +70,10 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
     public void handleStart(Operation startPost) {
         startPost.complete();
 
+        if (INCREMENTAL) {
+            aggregator = new PlacementCapacityAggregator(this);
+            aggregator.start();
+        }
         CommonContinuousQueries.subscribeTo(this.getHost(), ContinuousQueryId.COMPUTES,
                 this::onComputeChange);
     }
@@ -86,7 +103,12 @@ public class PlacementCapacityUpdatePeriodicService extends StatelessService {
 
         // refresh
         logInfo(logSupplier);
-        PlacementCapacityUpdateTaskService.triggerForAllResourcePools(this);
+        if (aggregator != null && aggregator.isLoaded()) {
+            aggregator.getUnsupportedResourcePoolLinks().forEach(rpLink ->
+                    PlacementCapacityUpdateTaskService.triggerForResourcePool(this, rpLink));
+        } else {
+            PlacementCapacityUpdateTaskService.triggerForAllResourcePools(this);
+        }
 
         // re-enable after the pause
         this.getHost().schedule(() -> {
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -108,7 +109,7 @@ public class PlacementCapacityUpdateTaskService extends
     /**
      * Represents collected statistics for a given compute.
      */
-    private static class ComputeStats {
+    static class ComputeStats {
         public long totalMemoryBytes;
         public long cpuCoreCount;
         public long cpuMhzPerCore;
@@ -120,8 +121,7 @@ public class PlacementCapacityUpdateTaskService extends
     /**
      * Represents aggregated statistics over multiple computes.
      */
-    private static class AggregatedComputeStats {
-        @SuppressWarnings("unused")
+    static class AggregatedComputeStats {
         public long computeCount;
         public long totalMemoryBytes;
         public long cpuCoreCount;
@@ -130,6 +130,24 @@ public class PlacementCapacityUpdateTaskService extends
 
         public double cpuUsageSumAllCores;
         public long availableMemoryBytes;
+
+        /**
+         * Adds the statistics of a compute to the aggregate, or removes them with a negative
+         * <code>sign</code>.
+         */
+        void add(ComputeStats stats, int sign) {
+            computeCount += sign;
+            totalMemoryBytes += sign * stats.totalMemoryBytes;
+            cpuCoreCount += sign * stats.cpuCoreCount;
+            totalCpuMhz += sign * stats.cpuCoreCount * stats.cpuMhzPerCore;
+
+            availableMemoryBytes += sign * stats.availableMemoryBytes;
+            cpuUsageSumAllCores += sign * stats.cpuCoreCount * stats.cpuUsage;
+        }
+
+        double getCpuUsage() {
+            return cpuCoreCount > 0 ? cpuUsageSumAllCores / cpuCoreCount : 0.0;
+        }
     }
 
     /**
@@ -137,9 +155,20 @@ public class PlacementCapacityUpdateTaskService extends
      * are run in parallel for the same resource pool.
      */
     public static void triggerForResourcePool(Service sender, String resourcePoolLink) {
+        triggerForResourcePool(sender, resourcePoolLink, null, null);
+    }
+
+    /**
+     * Triggers the capacity update task for the given resource pool with already aggregated
+     * statistics of its computes, in which case the task does not query the computes. The given
+     * callback, if any, is called with whether the task has been started.
+     */
+    static void triggerForResourcePool(Service sender, String resourcePoolLink,
+            AggregatedComputeStats aggregatedStats, Consumer<Boolean> callback) {
         PlacementCapacityUpdateTaskState task = new PlacementCapacityUpdateTaskState();
         task.resourcePoolLink = resourcePoolLink;
         task.documentSelfLink = extractRpId(task);
+        task.aggregatedStats = aggregatedStats;
 
         Operation.createPost(sender.getHost(), PlacementCapacityUpdateTaskService.FACTORY_LINK)
                 .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
@@ -148,6 +177,9 @@ public class PlacementCapacityUpdateTaskService extends
                     if (o.getStatusCode() == Operation.STATUS_CODE_NOT_MODIFIED) {
                         sender.getHost().log(Level.FINE,
                                 "Capacity update task already running for " + resourcePoolLink);
+                        if (callback != null) {
+                            callback.accept(false);
+                        }
                         return;
                     }
 
@@ -155,11 +187,17 @@ public class PlacementCapacityUpdateTaskService extends
                         sender.getHost().log(Level.WARNING,
                                 "Failed to start capacity update task for %s: %s", resourcePoolLink,
                                 e.getMessage());
+                        if (callback != null) {
+                            callback.accept(false);
+                        }
                         return;
                     }
 
-                    sender.getHost().log(Level.INFO,
+                    sender.getHost().log(aggregatedStats != null ? Level.FINE : Level.INFO,
                             "Started capacity update task for " + resourcePoolLink);
+                    if (callback != null) {
+                        callback.accept(true);
+                    }
                 }).sendWith(sender);
     }
 
@@ -213,7 +251,12 @@ public class PlacementCapacityUpdateTaskService extends
     protected void handleStartedStagePatch(PlacementCapacityUpdateTaskState state) {
         switch (state.taskSubStage) {
         case CREATED:
-            proceedTo(PlacementCapacityUpdateTaskState.SubStage.QUERY_COMPUTES);
+            if (state.aggregatedStats != null) {
+                // already aggregated by the caller, no need to query the computes
+                proceedTo(PlacementCapacityUpdateTaskState.SubStage.UPDATE_RESOURCE_POOL);
+            } else {
+                proceedTo(PlacementCapacityUpdateTaskState.SubStage.QUERY_COMPUTES);
+            }
             break;
         case QUERY_COMPUTES:
             startComputeQuery(state, null);
@@ -359,18 +402,12 @@ public class PlacementCapacityUpdateTaskService extends
                 continue;
             }
 
-            ComputeStats stats = getComputeStats(state, compute, computeDescription);
+            ComputeStats stats = getComputeStats(compute, computeDescription);
             if (stats == null) {
                 continue;
             }
 
-            aggregatedStats.computeCount++;
-            aggregatedStats.totalMemoryBytes += stats.totalMemoryBytes;
-            aggregatedStats.cpuCoreCount += stats.cpuCoreCount;
-            aggregatedStats.totalCpuMhz += stats.cpuCoreCount * stats.cpuMhzPerCore;
-
-            aggregatedStats.availableMemoryBytes += stats.availableMemoryBytes;
-            aggregatedStats.cpuUsageSumAllCores += stats.cpuCoreCount * stats.cpuUsage;
+            aggregatedStats.add(stats, 1);
         }
 
         return aggregatedStats;
@@ -378,11 +415,7 @@ public class PlacementCapacityUpdateTaskService extends
 
     private void updateResourcePool(PlacementCapacityUpdateTaskState state) {
         // calculate average cpu usage per core
-        double totalCpuUsage = 0.0;
-        if (state.aggregatedStats.cpuCoreCount > 0) {
-            totalCpuUsage = state.aggregatedStats.cpuUsageSumAllCores
-                    / state.aggregatedStats.cpuCoreCount;
-        }
+        double totalCpuUsage = state.aggregatedStats.getCpuUsage();
 
         ResourcePoolState rpPatchState = new ResourcePoolState();
         rpPatchState.customProperties = new HashMap<>();
@@ -498,8 +531,10 @@ public class PlacementCapacityUpdateTaskService extends
         return tenantAndGroupLinks != null ? String.join("/", tenantAndGroupLinks) : "";
     }
 
-    private ComputeStats getComputeStats(PlacementCapacityUpdateTaskState state,
-            ComputeState compute,
+    /**
+     * Returns the statistics of the given compute or <code>null</code> if it is not a host.
+     */
+    static ComputeStats getComputeStats(ComputeState compute,
             ComputeDescription computeDescription) {
         if (computeDescription.supportedChildren != null) {
             if (computeDescription.supportedChildren.contains(ComputeType.DOCKER_CONTAINER.name())) {
@@ -512,7 +547,7 @@ public class PlacementCapacityUpdateTaskService extends
         return null;
     }
 
-    private ComputeStats getContainerHostStats(ComputeState compute,
+    private static ComputeStats getContainerHostStats(ComputeState compute,
             ComputeDescription description) {
         ComputeStats stats = new ComputeStats();
 
@@ -530,7 +565,8 @@ public class PlacementCapacityUpdateTaskService extends
         return stats;
     }
 
-    private ComputeStats getComputeHostStats(ComputeState compute, ComputeDescription description) {
+    private static ComputeStats getComputeHostStats(ComputeState compute,
+            ComputeDescription description) {
         ComputeStats stats = new ComputeStats();
 
         stats.totalMemoryBytes = description.totalMemoryBytes;
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016-2017 VMware, Inc. All Rights Reserved.
+ * Copyright (c) 2016-2018 VMware, Inc. All Rights Reserved.
  *
  * This product is licensed to you under the Apache License, Version 2.0 (the "License").
  * You may not use this product except in compliance with the License.
@@ -13,6 +13,10 @@ package com.vmware.admiral.compute.container;
 
 import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
@@ -30,10 +34,29 @@ import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
+/**
+ * Returns the stored logs of a container and requests the adapter to fetch them again. The logs
+ * are fetched incrementally from the timestamp of the last stored line and appended to the stored
+ * ones, the offset, tail, since and timestamps options select the returned lines of the stored
+ * logs, see {@link LogService}.
+ */
 public class ContainerLogService extends StatelessService {
     public static final String SELF_LINK = ManagementUriParts.CONTAINER_LOGS;
     public static final String CONTAINER_ID_QUERY_PARAM = "id";
 
+    /** Adapter request property for an incremental fetch of the logs. */
+    public static final String INCREMENTAL_FETCH_PROP_NAME = "__incrementalLogFetch";
+
+    /**
+     * Adapter request property with the docker timestamp of the last stored line, from which the
+     * logs are fetched incrementally.
+     */
+    public static final String LAST_TIMESTAMP_PROP_NAME = "__lastLogTimestamp";
+
+    private static final List<String> VIEW_QUERY_PARAMS = Arrays.asList(
+            LogService.OFFSET_QUERY_PARAM, LogService.TAIL_QUERY_PARAM,
+            LogService.SINCE_QUERY_PARAM, LogService.TIMESTAMPS_QUERY_PARAM);
+
     @Override
     public void handleGet(Operation get) {
         Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
@@ -44,15 +67,37 @@ public class ContainerLogService extends StatelessService {
             return;
         }
 
-        final String containerLogsLink = UriUtils.buildUriPath(LogService.FACTORY_LINK,
-                containerId);
+        List<String> viewQuery = new ArrayList<>();
+        for (String option : VIEW_QUERY_PARAMS) {
+            String value = params.remove(option);
+            if (value != null) {
+                viewQuery.add(option);
+                viewQuery.add(value);
+            }
+        }
+        boolean incremental = params.isEmpty();
+
+        final URI containerLogsUri = UriUtils.extendUriWithQuery(
+                UriUtils.buildUri(getHost(),
+                        UriUtils.buildUriPath(LogService.FACTORY_LINK, containerId)),
+                viewQuery.toArray(new String[viewQuery.size()]));
 
-        sendRequest(Operation.createGet(this, containerLogsLink)
+        sendRequest(Operation.createGet(containerLogsUri)
                 .setCompletion((o, e) -> {
                     if (e != null) {
+                        if (incremental) {
+                            params.put(INCREMENTAL_FETCH_PROP_NAME, Boolean.TRUE.toString());
+                        }
                         requestLog(get, containerId, params);
                     } else {
-                        get.setBody(o.getBody(LogServiceState.class)).complete();
+                        LogServiceState logState = o.getBody(LogServiceState.class);
+                        if (incremental) {
+                            params.put(INCREMENTAL_FETCH_PROP_NAME, Boolean.TRUE.toString());
+                            if (logState.lastTimestamp != null) {
+                                params.put(LAST_TIMESTAMP_PROP_NAME, logState.lastTimestamp);
+                            }
+                        }
+                        get.setBody(logState).complete();
                         requestLog(null, containerId, params);
                     }
                 }));
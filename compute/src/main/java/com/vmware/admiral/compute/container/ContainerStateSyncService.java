@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.AssertUtil;
+import com.vmware.admiral.common.util.OperationUtil;
+import com.vmware.admiral.compute.ContainerHostService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Applies the container changes found by a container list data collection of a host in a single
+ * request: creates the containers discovered on the host, patches the changed ones and deletes
+ * the missing ones, and then updates the number of containers of the host once, from the outcome
+ * of these changes rather than counting the containers of the host again.
+ * <p>
+ * The changes are applied independently of each other, a failed change is reported in the
+ * response and does not stop the rest.
+ */
+public class ContainerStateSyncService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.CONTAINER_STATE_SYNC;
+
+    public static class ContainerStateSyncRequest {
+        public String containerHostLink;
+
+        /**
+         * Number of containers, and of system containers, of the host before the changes.
+         */
+        public long containerCount;
+        public long systemContainerCount;
+
+        public List<ContainerState> containersToCreate = new ArrayList<>();
+
+        /**
+         * Patches of the existing containers, e.g. retiring them, by container link.
+         */
+        public Map<String, ContainerState> containersToUpdate = new HashMap<>();
+
+        public List<String> containersToDelete = new ArrayList<>();
+    }
+
+    public static class ContainerStateSyncResponse {
+        public List<ContainerState> createdContainers = new ArrayList<>();
+        public List<String> failedContainerLinks = new ArrayList<>();
+        public long containerCount;
+        public long systemContainerCount;
+    }
+
+    @Override
+    public void handlePost(Operation post) {
+        if (!post.hasBody()) {
+            post.fail(new IllegalArgumentException("body is required"));
+            return;
+        }
+        ContainerStateSyncRequest request = post.getBody(ContainerStateSyncRequest.class);
+        try {
+            AssertUtil.assertNotNull(request.containerHostLink, "containerHostLink");
+        } catch (Throwable e) {
+            post.fail(e);
+            return;
+        }
+
+        ContainerStateSyncResponse response = new ContainerStateSyncResponse();
+        AtomicLong containerCount = new AtomicLong(request.containerCount);
+        AtomicLong systemContainerCount = new AtomicLong(request.systemContainerCount);
+        List<DeferredResult<Void>> changes = new ArrayList<>();
+
+        if (request.containersToCreate != null) {
+            for (ContainerState containerState : request.containersToCreate) {
+                changes.add(createContainer(containerState, response, containerCount,
+                        systemContainerCount));
+            }
+        }
+        if (request.containersToUpdate != null) {
+            for (Entry<String, ContainerState> entry : request.containersToUpdate.entrySet()) {
+                changes.add(updateContainer(entry.getKey(), entry.getValue(), response));
+            }
+        }
+        if (request.containersToDelete != null) {
+            for (String containerLink : request.containersToDelete) {
+                changes.add(deleteContainer(containerLink, response, containerCount));
+            }
+        }
+
+        DeferredResult.allOf(changes).whenComplete((ignore, e) -> {
+            response.containerCount = containerCount.get();
+            response.systemContainerCount = systemContainerCount.get();
+            updateNumberOfContainers(request.containerHostLink, response,
+                    () -> post.setBodyNoCloning(response).complete());
+        });
+    }
+
+    private DeferredResult<Void> createContainer(ContainerState containerState,
+            ContainerStateSyncResponse response, AtomicLong containerCount,
+            AtomicLong systemContainerCount) {
+        DeferredResult<Void> result = new DeferredResult<>();
+        sendRequest(OperationUtil
+                .createForcedPost(this, ContainerFactoryService.SELF_LINK)
+                .setBodyNoCloning(containerState)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        if (OperationUtil.isServiceAlreadyStarted(e, o)) {
+                            logWarning("Container state already exists for container (id=%s)",
+                                    containerState.id);
+                        } else {
+                            logSevere("Failed to create ContainerState for discovered container"
+                                    + " (id=%s): %s", containerState.id, e.getMessage());
+                            addFailure(response, containerState.documentSelfLink);
+                        }
+                        result.complete(null);
+                        return;
+                    }
+
+                    logInfo("Created ContainerState for discovered container: %s",
+                            containerState.id);
+                    containerCount.incrementAndGet();
+                    if (Boolean.TRUE.equals(containerState.system)) {
+                        systemContainerCount.incrementAndGet();
+                    }
+                    synchronized (response) {
+                        response.createdContainers.add(o.getBody(ContainerState.class));
+                    }
+                    result.complete(null);
+                }));
+        return result;
+    }
+
+    private DeferredResult<Void> updateContainer(String containerLink, ContainerState patch,
+            ContainerStateSyncResponse response) {
+        DeferredResult<Void> result = new DeferredResult<>();
+        sendRequest(Operation
+                .createPatch(this, containerLink)
+                .setBodyNoCloning(patch)
+                .setCompletion((o, e) -> {
+                    if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
+                        logFine("Container %s not found to be updated.", containerLink);
+                    } else if (e != null) {
+                        logWarning("Failed to update container %s: %s", containerLink,
+                                Utils.toString(e));
+                        addFailure(response, containerLink);
+                    }
+                    result.complete(null);
+                }));
+        return result;
+    }
+
+    private DeferredResult<Void> deleteContainer(String containerLink,
+            ContainerStateSyncResponse response, AtomicLong containerCount) {
+        DeferredResult<Void> result = new DeferredResult<>();
+        sendRequest(Operation
+                .createDelete(this, containerLink)
+                .setBodyNoCloning(new ServiceDocument())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failed deleting ContainerState of missing container: %s",
+                                containerLink, e);
+                        addFailure(response, containerLink);
+                    } else {
+                        logInfo("Deleted ContainerState of missing container: %s",
+                                containerLink);
+                        containerCount.decrementAndGet();
+                    }
+                    result.complete(null);
+                }));
+        return result;
+    }
+
+    private void updateNumberOfContainers(String containerHostLink,
+            ContainerStateSyncResponse response, Runnable callback) {
+        ComputeState state = new ComputeState();
+        state.customProperties = new HashMap<>();
+        state.customProperties.put(ContainerHostService.NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME,
+                String.valueOf(response.containerCount));
+        state.customProperties.put(ContainerHostService.NUMBER_OF_SYSTEM_CONTAINERS_PROP_NAME,
+                String.valueOf(response.systemContainerCount));
+
+        sendRequest(Operation
+                .createPatch(this, containerHostLink)
+                .setBodyNoCloning(state)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logSevere("Failure updating host [%s] with container count. Error: %s",
+                                containerHostLink, Utils.toString(e));
+                    } else {
+                        logFine("Host [%s] updated with container count.", containerHostLink);
+                    }
+                    callback.run();
+                }));
+    }
+
+    private static void addFailure(ContainerStateSyncResponse response, String containerLink) {
+        if (containerLink == null) {
+            return;
+        }
+        synchronized (response) {
+            response.failedContainerLinks.add(containerLink);
+        }
+    }
+}
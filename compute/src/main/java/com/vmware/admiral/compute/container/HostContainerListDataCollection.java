@@ -50,6 +50,8 @@ import com.vmware.admiral.compute.HostConfigCertificateDistributionService.HostC
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.ContainerStateSyncService.ContainerStateSyncRequest;
+import com.vmware.admiral.compute.container.ContainerStateSyncService.ContainerStateSyncResponse;
 import com.vmware.admiral.compute.container.util.ContainerUtil;
 import com.vmware.admiral.service.common.AbstractCallbackServiceHandler;
 import com.vmware.admiral.service.common.AbstractCallbackServiceHandler.CallbackServiceHandlerState;
@@ -409,6 +411,16 @@ public class HostContainerListDataCollection extends StatefulService {
             List<ContainerState> containerStates, String containerHostLink) {
         final List<String> systemContainersToInstall = SystemContainerDescriptions
                 .getSystemContainerNames();
+
+        // all the container state changes are sent in a single sync request
+        ContainerStateSyncRequest syncRequest = new ContainerStateSyncRequest();
+        syncRequest.containerHostLink = containerHostLink;
+        syncRequest.containerCount = containerStates.size();
+        syncRequest.systemContainerCount = containerStates.stream()
+                .filter(c -> Boolean.TRUE.equals(c.system))
+                .count();
+        List<ContainerState> containersToInspect = new ArrayList<>();
+
         for (ContainerState existingContainerState : containerStates) {
             boolean exists = false;
             if (existingContainerState.id != null) {
@@ -429,12 +441,14 @@ public class HostContainerListDataCollection extends StatefulService {
                         || existingContainerState.powerState == PowerState.STOPPED
                         || existingContainerState.powerState == PowerState.PAUSED;
                 if (active) {
-                    handleMissingContainer(existingContainerState);
+                    handleMissingContainer(existingContainerState, syncRequest);
                 }
             } else {
                 callback.containerIdsAndNames.remove(existingContainerState.id);
 
-                updateExistingContainer(existingContainerState, callback);
+                if (updateExistingContainer(existingContainerState, callback, syncRequest)) {
+                    containersToInspect.add(existingContainerState);
+                }
 
                 checkIfSystemContainer(containerHostLink, systemContainersToInstall,
                         existingContainerState);
@@ -504,23 +518,31 @@ public class HostContainerListDataCollection extends StatefulService {
                                 systemContainerName, null);
                     }
 
-                    createDiscoveredContainers(containersLeft, (e) -> {
+                    filterDiscoveredContainers(containersLeft, (discoveredContainers, e) -> {
                         if (e == null) {
-                            updateNumberOfContainers(callback.containerHostLink);
+                            syncRequest.containersToCreate.addAll(discoveredContainers);
                         }
 
-                        for (ContainerState container : systemContainersToStart) {
-                            handleDiscoveredSystemContainer(container, containerHostLink, null);
-                        }
+                        syncContainerStates(syncRequest, containersToInspect, () -> {
+                            for (ContainerState container : systemContainersToStart) {
+                                handleDiscoveredSystemContainer(container, containerHostLink,
+                                        null);
+                            }
 
-                        unlockCurrentDataCollectionForHost(callback.containerHostLink);
+                            unlockCurrentDataCollectionForHost(callback.containerHostLink);
+                        });
                     });
                 });
 
         sendRequest(operation);
     }
 
-    private void updateExistingContainer(ContainerState c, ContainerListCallback callback) {
+    /**
+     * Adds the changes of the given container to the sync request and returns whether the
+     * container has changed.
+     */
+    private boolean updateExistingContainer(ContainerState c, ContainerListCallback callback,
+            ContainerStateSyncRequest syncRequest) {
         boolean changed = false;
         ContainerState patch = new ContainerState();
 
@@ -539,11 +561,9 @@ public class HostContainerListDataCollection extends StatefulService {
 
         if (changed) {
             // power state is change - save the new state and inspect the container
-            sendRequest(Operation
-                    .createPatch(this, c.documentSelfLink)
-                    .setBodyNoCloning(patch));
-            inspectContainer(c, ServiceTaskCallback.createEmpty());
+            syncRequest.containersToUpdate.put(c.documentSelfLink, patch);
         }
+        return changed;
     }
 
     private void checkIfSystemContainer(String containerHostLink,
@@ -965,100 +985,108 @@ public class HostContainerListDataCollection extends StatefulService {
                 }));
     }
 
-    private void createDiscoveredContainers(List<ContainerState> containerStates,
-            Consumer<Throwable> callback) {
-        if (containerStates.isEmpty()) {
-            callback.accept(null);
-        } else {
-            AtomicInteger counter = new AtomicInteger(containerStates.size());
-            for (ContainerState containerState : containerStates) {
-                if (containerState.names == null || containerState.names.isEmpty()) {
-                    logInfo("Names not set for container: %s", containerState.documentSelfLink);
-                    if (counter.decrementAndGet() == 0) {
-                        callback.accept(null);
+    /**
+     * Sends the collected container state changes of a host in a single request, which also
+     * updates the number of containers of the host, and follows up on the changed containers.
+     */
+    private void syncContainerStates(ContainerStateSyncRequest syncRequest,
+            List<ContainerState> containersToInspect, Runnable callback) {
+        sendRequest(Operation
+                .createPost(this, ContainerStateSyncService.SELF_LINK)
+                .setBodyNoCloning(syncRequest)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logSevere("Failed to sync the containers of host [%s]: %s",
+                                syncRequest.containerHostLink, Utils.toString(e));
+                        callback.run();
+                        return;
                     }
-                    continue;
-                }
-                // check again if the container state already exists by names. This is needed in
-                // cluster mode not to create container states that we already have
-                String selfLink = UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK,
-                        containerState.names.get(0));
-                List<ContainerState> containerStatesFound = new ArrayList<>();
-                QueryTask containerServicesQuery = QueryUtil.buildPropertyQuery(
-                        ContainerState.class,
-                        ContainerState.FIELD_NAME_SELF_LINK, selfLink);
-                containerServicesQuery.querySpec.options.add(QueryOption.INCLUDE_DELETED);
-                new ServiceDocumentQuery<>(getHost(), ContainerState.class)
-                        .query(containerServicesQuery, (r) -> {
-                            if (r.hasException()) {
-                                logSevere("Failed to get container %s : %s",
-                                        containerState.names.get(0), r.getException().getMessage());
-                                callback.accept(r.getException());
-                            } else if (r.hasResult()) {
-                                if (r.getResult().documentUpdateTimeMicros < Utils.fromNowMicrosUtc(
-                                        -MAINTENANCE_INTERVAL_MICROS / 2)) {
-                                    containerStatesFound.add(r.getResult());
-                                }
-                            } else {
-                                if (containerStatesFound.isEmpty()) {
-                                    createDiscoveredContainer(callback, counter, containerState);
-                                } else {
-                                    if (counter.decrementAndGet() == 0) {
-                                        callback.accept(null);
-                                    }
-                                }
-                            }
-                        });
-            }
-        }
-    }
 
-    private void createDiscoveredContainer(Consumer<Throwable> callback, AtomicInteger counter,
-            ContainerState containerState) {
-        logFine("Creating ContainerState for discovered container: %s",
-                containerState.id);
-        URI containerFactoryUri = UriUtils.buildUri(getHost(), ContainerFactoryService.class);
-        sendRequest(OperationUtil
-                .createForcedPost(containerFactoryUri)
-                .setBody(containerState)
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        if (OperationUtil.isServiceAlreadyStarted(ex, o)) {
-                            logWarning("Container state already exists for container (id=%s)",
-                                    containerState.id);
-                        } else {
-                            logSevere("Failed to create ContainerState for discovered container"
-                                    + " (id=%s): %s", containerState.id, ex.getMessage());
-                            callback.accept(ex);
-                            return;
+                    ContainerStateSyncResponse response = o.getBody(
+                            ContainerStateSyncResponse.class);
+                    for (ContainerState container : containersToInspect) {
+                        if (!response.failedContainerLinks.contains(container.documentSelfLink)) {
+                            inspectContainer(container, ServiceTaskCallback.createEmpty());
                         }
-                    } else {
-                        logInfo("Created ContainerState for discovered container: %s",
-                                containerState.id);
-
-                        // as soon as the ContainerService is started, its maintenance handler will
-                        // be invoked to fetch up-to-date attributes
                     }
 
-                    // Shouldn't create ContainerDescription for system containers.
-                    String systemContainerName = isSystemContainer(
-                            SystemContainerDescriptions.getSystemContainerNames(),
-                            containerState.names);
+                    for (ContainerState container : response.createdContainers) {
+                        // Shouldn't create ContainerDescription for system containers.
+                        String systemContainerName = isSystemContainer(
+                                SystemContainerDescriptions.getSystemContainerNames(),
+                                container.names);
+                        if (systemContainerName == null) {
+                            createDiscoveredContainerDescription(container);
+                        }
 
-                    ContainerState body = o.getBody(ContainerState.class);
-                    if (systemContainerName == null) {
-                        createDiscoveredContainerDescription(body);
+                        // inspect newly discovered container
+                        inspectContainer(container, ServiceTaskCallback.createEmpty());
                     }
 
-                    // inspect newly discovered container
-                    inspectContainer(body, ServiceTaskCallback.createEmpty());
-
-                    if (counter.decrementAndGet() == 0) {
-                        callback.accept(null);
-                    }
+                    callback.run();
                 }));
     }
 
+    /**
+     * Leaves out the discovered containers which container states already exist, e.g. created by
+     * another node in cluster mode.
+     */
+    private void filterDiscoveredContainers(List<ContainerState> containerStates,
+            BiConsumer<List<ContainerState>, Throwable> callback) {
+        List<ContainerState> discoveredContainers = new ArrayList<>();
+        if (containerStates.isEmpty()) {
+            callback.accept(discoveredContainers, null);
+            return;
+        }
+
+        AtomicInteger counter = new AtomicInteger(containerStates.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        for (ContainerState containerState : containerStates) {
+            if (containerState.names == null || containerState.names.isEmpty()) {
+                logInfo("Names not set for container: %s", containerState.documentSelfLink);
+                if (counter.decrementAndGet() == 0) {
+                    callback.accept(discoveredContainers, null);
+                }
+                continue;
+            }
+            // check again if the container state already exists by names. This is needed in
+            // cluster mode not to create container states that we already have
+            String selfLink = UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK,
+                    containerState.names.get(0));
+            List<ContainerState> containerStatesFound = new ArrayList<>();
+            QueryTask containerServicesQuery = QueryUtil.buildPropertyQuery(
+                    ContainerState.class,
+                    ContainerState.FIELD_NAME_SELF_LINK, selfLink);
+            containerServicesQuery.querySpec.options.add(QueryOption.INCLUDE_DELETED);
+            new ServiceDocumentQuery<>(getHost(), ContainerState.class)
+                    .query(containerServicesQuery, (r) -> {
+                        if (r.hasException()) {
+                            logSevere("Failed to get container %s : %s",
+                                    containerState.names.get(0), r.getException().getMessage());
+                            if (failed.compareAndSet(false, true)) {
+                                callback.accept(null, r.getException());
+                            }
+                        } else if (r.hasResult()) {
+                            if (r.getResult().documentUpdateTimeMicros < Utils.fromNowMicrosUtc(
+                                    -MAINTENANCE_INTERVAL_MICROS / 2)) {
+                                containerStatesFound.add(r.getResult());
+                            }
+                        } else {
+                            if (containerStatesFound.isEmpty()) {
+                                logFine("Creating ContainerState for discovered container: %s",
+                                        containerState.id);
+                                synchronized (discoveredContainers) {
+                                    discoveredContainers.add(containerState);
+                                }
+                            }
+                            if (counter.decrementAndGet() == 0 && !failed.get()) {
+                                callback.accept(discoveredContainers, null);
+                            }
+                        }
+                    });
+        }
+    }
+
     private void createDiscoveredContainerDescription(ContainerState containerState) {
         logFine("Creating ContainerDescription for discovered container: %s", containerState.id);
 
@@ -1079,7 +1107,8 @@ public class HostContainerListDataCollection extends StatefulService {
                 }));
     }
 
-    private void handleMissingContainer(ContainerState containerState) {
+    private void handleMissingContainer(ContainerState containerState,
+            ContainerStateSyncRequest syncRequest) {
 
         // do not set RETIRED state to the system container.
         if (SystemContainerDescriptions.isSystemContainer(containerState)) {
@@ -1088,18 +1117,7 @@ public class HostContainerListDataCollection extends StatefulService {
 
         if (containerState.isDeleted) {
             // delete container state
-            sendRequest(Operation
-                    .createDelete(this, containerState.documentSelfLink)
-                    .setBodyNoCloning(new ServiceDocument())
-                    .setCompletion((op, ex) -> {
-                        if (ex != null) {
-                            logWarning("Failed deleting ContainerState of missing container: %s",
-                                    containerState.documentSelfLink, ex);
-                            return;
-                        }
-                        logInfo("Deleted ContainerState of missing container: %s",
-                                containerState.documentSelfLink);
-                    }));
+            syncRequest.containersToDelete.add(containerState.documentSelfLink);
         } else {
             // patch container status to RETIRED
             ContainerState patchContainerState = new ContainerState();
@@ -1108,22 +1126,10 @@ public class HostContainerListDataCollection extends StatefulService {
                 patchContainerState.documentExpirationTimeMicros = Utils.fromNowMicrosUtc(
                         TimeUnit.HOURS.toMicros(RETIRED_CONTAINER_EXPIRE_PERIOD_HOURS));
             }
-            sendRequest(Operation
-                    .createPatch(this, containerState.documentSelfLink)
-                    .setBodyNoCloning(patchContainerState)
-                    .setCompletion((o, ex) -> {
-                        if (o.getStatusCode() == Operation.STATUS_CODE_NOT_FOUND) {
-                            logFine("Container %s not found to be marked as missing.",
-                                    containerState.documentSelfLink);
-                        } else if (ex != null) {
-                            logWarning("Failed to mark container %s as missing: %s",
-                                    containerState.documentSelfLink, Utils.toString(ex));
-                        } else {
-                            logInfo("Marked container as missing: %s (expiration=%d hours)",
-                                    containerState.documentSelfLink,
-                                    RETIRED_CONTAINER_EXPIRE_PERIOD_HOURS);
-                        }
-                    }));
+            logInfo("Marking container as missing: %s (expiration=%d hours)",
+                    containerState.documentSelfLink, RETIRED_CONTAINER_EXPIRE_PERIOD_HOURS);
+            syncRequest.containersToUpdate.put(containerState.documentSelfLink,
+                    patchContainerState);
         }
     }
 
@@ -16,6 +16,7 @@ import static com.vmware.admiral.common.util.AssertUtil.assertNotNull;
 
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -92,6 +93,12 @@ public class HostPortProfileService extends StatefulService {
         /** Specific host ports to allocate. */
         public Set<Long> specificHostPorts;
 
+        /**
+         * Requests for several containers, applied in order with a single update of the profile.
+         * When set, the other fields are ignored.
+         */
+        public List<HostPortProfileReservationRequest> containerRequests;
+
     }
 
     public HostPortProfileService() {
@@ -118,9 +125,25 @@ public class HostPortProfileService extends StatefulService {
 
         HostPortProfileReservationRequest request = patch.getBody(HostPortProfileReservationRequest.class);
 
+        HostPortProfileState hostPortProfileState = getState(patch);
+        if (request.containerRequests != null && !request.containerRequests.isEmpty()) {
+            // apply to a copy, so that the profile is not partially updated on failure
+            hostPortProfileState = Utils.clone(hostPortProfileState);
+            for (HostPortProfileReservationRequest containerRequest : request.containerRequests) {
+                handleReservationRequest(hostPortProfileState, containerRequest);
+            }
+            setState(patch, hostPortProfileState);
+        } else {
+            handleReservationRequest(hostPortProfileState, request);
+        }
+        patch.setBody(hostPortProfileState);
+        patch.complete();
+    }
+
+    private void handleReservationRequest(HostPortProfileState hostPortProfileState,
+            HostPortProfileReservationRequest request) {
         assertNotEmpty(request.containerLink, "containerLink");
         assertNotNull(request.mode, "mode");
-        HostPortProfileState hostPortProfileState = getState(patch);
         switch (request.mode) {
         case ALLOCATE:
             allocatePorts(hostPortProfileState, request);
@@ -134,8 +157,6 @@ public class HostPortProfileService extends StatefulService {
         default:
             throw new UnsupportedOperationException("This operation is not supported: " + request.mode);
         }
-        patch.setBody(hostPortProfileState);
-        patch.complete();
     }
 
     public static String getHostPortProfileLink(String hostLink) {
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.content;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Caches parsed composite templates by the hash of their YAML content and the templates converted
+ * from composite descriptions by the versions of the description and its components. The cached
+ * templates are never handed out, callers get a copy they are free to modify.
+ */
+class CompositeTemplateCache {
+
+    private static final int PARSED_CACHE_MAX_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.template.parse.cache.max.size", 100);
+
+    private static final int CONVERTED_CACHE_MAX_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.template.conversion.cache.max.size", 100);
+
+    // SHA-256 of the YAML content -> parsed template
+    private static final Map<String, CompositeTemplate> PARSED = new ConcurrentHashMap<>();
+
+    // composite description link -> template converted from the description
+    private static final Map<String, ConvertedTemplate> CONVERTED = new ConcurrentHashMap<>();
+
+    private static class ConvertedTemplate {
+        final long documentVersion;
+        final long documentUpdateTimeMicros;
+        // self link -> version of the component descriptions and their children
+        final Map<String, Long> componentVersions;
+        final CompositeTemplate template;
+
+        ConvertedTemplate(CompositeDescription description, Map<String, Long> componentVersions,
+                CompositeTemplate template) {
+            this.documentVersion = description.documentVersion;
+            this.documentUpdateTimeMicros = description.documentUpdateTimeMicros;
+            this.componentVersions = componentVersions;
+            this.template = template;
+        }
+
+        boolean isConvertedFrom(CompositeDescription description) {
+            return documentVersion == description.documentVersion
+                    && documentUpdateTimeMicros == description.documentUpdateTimeMicros;
+        }
+    }
+
+    private CompositeTemplateCache() {
+    }
+
+    static String contentHash(String yaml) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(yaml.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static CompositeTemplate getParsed(String contentHash) {
+        CompositeTemplate template = PARSED.get(contentHash);
+        return template != null ? Utils.clone(template) : null;
+    }
+
+    static void putParsed(String contentHash, CompositeTemplate template) {
+        if (PARSED_CACHE_MAX_SIZE <= 0) {
+            return;
+        }
+        if (PARSED.size() >= PARSED_CACHE_MAX_SIZE) {
+            PARSED.clear();
+        }
+        PARSED.put(contentHash, Utils.clone(template));
+    }
+
+    /**
+     * Returns a copy of the template converted from the given composite description, if neither
+     * the description nor any of its components have changed since the conversion. Otherwise
+     * completes with <code>null</code>.
+     */
+    static DeferredResult<CompositeTemplate> getConverted(Service sender,
+            CompositeDescription description) {
+        ConvertedTemplate converted = description.documentSelfLink != null
+                ? CONVERTED.get(description.documentSelfLink) : null;
+        if (converted == null || !converted.isConvertedFrom(description)) {
+            return DeferredResult.completed(null);
+        }
+
+        return getDocumentVersions(sender, converted.componentVersions.keySet())
+                .thenApply(versions -> versions.equals(converted.componentVersions)
+                        ? Utils.clone(converted.template) : null);
+    }
+
+    static void putConverted(CompositeDescription description, List<NestedState> components,
+            CompositeTemplate template) {
+        if (CONVERTED_CACHE_MAX_SIZE <= 0 || description.documentSelfLink == null) {
+            return;
+        }
+
+        Map<String, Long> componentVersions = new HashMap<>();
+        for (NestedState component : components) {
+            collectDocumentVersions(component, componentVersions);
+        }
+
+        if (CONVERTED.size() >= CONVERTED_CACHE_MAX_SIZE) {
+            CONVERTED.clear();
+        }
+        CONVERTED.put(description.documentSelfLink, new ConvertedTemplate(description,
+                componentVersions, Utils.clone(template)));
+    }
+
+    static void clear() {
+        PARSED.clear();
+        CONVERTED.clear();
+    }
+
+    private static void collectDocumentVersions(NestedState nestedState,
+            Map<String, Long> versions) {
+        versions.put(nestedState.object.documentSelfLink, nestedState.object.documentVersion);
+        for (NestedState child : nestedState.children.values()) {
+            collectDocumentVersions(child, versions);
+        }
+    }
+
+    /**
+     * Gets the current versions of the given documents with a single query, instead of getting
+     * every document, which is what the conversion does.
+     */
+    private static DeferredResult<Map<String, Long>> getDocumentVersions(Service sender,
+            Collection<String> documentLinks) {
+        if (documentLinks.isEmpty()) {
+            return DeferredResult.completed(new HashMap<>());
+        }
+
+        Query query = Query.Builder.create()
+                .addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, documentLinks)
+                .build();
+        QueryTask queryTask = QueryTask.Builder.createDirectTask()
+                .setQuery(query)
+                .addOption(QueryOption.EXPAND_SELECTED_FIELDS)
+                .addSelectTerm(ServiceDocument.FIELD_NAME_SELF_LINK)
+                .addSelectTerm(ServiceDocument.FIELD_NAME_VERSION)
+                .build();
+
+        Operation post = Operation.createPost(sender, ServiceUriPaths.CORE_QUERY_TASKS)
+                .setBody(queryTask);
+        return sender.sendWithDeferredResult(post, QueryTask.class).thenApply(result -> {
+            Map<String, Long> versions = new HashMap<>();
+            if (result.results != null && result.results.documents != null) {
+                result.results.documents.forEach((link, json) -> versions.put(link,
+                        Utils.fromJson(json, ServiceDocument.class).documentVersion));
+            }
+            return versions;
+        });
+    }
+}
@@ -170,8 +170,25 @@ public class CompositeTemplateUtil {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Parses the given YAML into a {@link CompositeTemplate}. Parsed templates are cached by the
+     * hash of the YAML content, so importing or cloning the same content again returns a copy of
+     * the already parsed template.
+     */
     public static CompositeTemplate deserializeCompositeTemplate(String yaml) throws IOException {
+        assertNotEmpty(yaml, "yaml");
+        String trimmedYaml = yaml.trim();
+        String contentHash = CompositeTemplateCache.contentHash(trimmedYaml);
+        CompositeTemplate entity = CompositeTemplateCache.getParsed(contentHash);
+        if (entity == null) {
+            entity = parseCompositeTemplate(trimmedYaml);
+            CompositeTemplateCache.putParsed(contentHash, entity);
+        }
+        return entity;
+    }
+
+    @SuppressWarnings("unchecked")
+    static CompositeTemplate parseCompositeTemplate(String yaml) throws IOException {
         assertNotEmpty(yaml, "yaml");
         CompositeTemplate entity;
         try {
@@ -988,8 +1005,22 @@ public class CompositeTemplateUtil {
         });
     }
 
+    /**
+     * Converts the given composite description and its components to a {@link CompositeTemplate}.
+     * The result is cached and reused for as long as the versions of the description and all of
+     * its components stay the same.
+     */
     public static DeferredResult<CompositeTemplate> convertCompositeDescriptionToCompositeTemplate(
             Service service, CompositeDescription compositeDescription) {
+        return CompositeTemplateCache.getConverted(service, compositeDescription)
+                .thenCompose(template -> template != null
+                        ? DeferredResult.completed(template)
+                        : doConvertCompositeDescriptionToCompositeTemplate(service,
+                                compositeDescription));
+    }
+
+    private static DeferredResult<CompositeTemplate> doConvertCompositeDescriptionToCompositeTemplate(
+            Service service, CompositeDescription compositeDescription) {
 
         // get each component recursively
         List<DeferredResult<NestedState>> components = compositeDescription.descriptionLinks
@@ -1019,6 +1050,7 @@ public class CompositeTemplateUtil {
                         .put(((ResourceState) nestedState.object).name,
                                 component);
             }
+            CompositeTemplateCache.putConverted(compositeDescription, nestedStates, template);
             return template;
         }
 
@@ -44,6 +44,7 @@ import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
 import com.vmware.admiral.compute.container.ContainerLogService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerShellService;
+import com.vmware.admiral.compute.container.ContainerStateSyncService;
 import com.vmware.admiral.compute.container.ContainerStatsService;
 import com.vmware.admiral.compute.container.DeploymentPolicyService;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService;
@@ -121,6 +122,7 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
                     service(ContainerLogService.class),
                     service(ContainerShellService.class),
                     service(ShellContainerExecutorService.class),
+                    service(ContainerStateSyncService.class),
                     service(HostConfigCertificateDistributionService.class),
                     service(RegistryConfigCertificateDistributionService.class),
                     service(ComputeInitialBootService.class),
@@ -177,6 +179,7 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
                 CompositeDescriptionContentService.class, TemplateSearchService.class,
                 CompositeComponentFactoryService.class, ContainerLogService.class,
                 ContainerShellService.class, ShellContainerExecutorService.class,
+                ContainerStateSyncService.class,
                 HostConfigCertificateDistributionService.class,
                 RegistryConfigCertificateDistributionService.class,
                 ComputeInitialBootService.class,
@@ -12,6 +12,7 @@
 package com.vmware.admiral.service.test;
 
 import java.net.URI;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
@@ -46,6 +47,11 @@ public abstract class BaseMockAdapterService extends StatelessService {
             return;
         }
 
+        if (errorResponse == null && MockAdapterSimulation.nextFailure()) {
+            errorResponse = Utils.toServiceErrorResponse(
+                    new IllegalStateException("Simulated adapter failure"));
+        }
+
         if (errorResponse != null) {
             callbackResponse = state.serviceTaskCallback.getFailedResponse(errorResponse);
         } else if (callbackResponse == null) {
@@ -58,8 +64,9 @@ public abstract class BaseMockAdapterService extends StatelessService {
                     state.serviceTaskCallback.serviceSelfLink);
         }
 
-        // tell the parent we are done. We are a mock service, so we get things done, fast.
-        sendRequest(Operation
+        // tell the parent we are done. We are a mock service, so we get things done, fast,
+        // unless a latency is simulated.
+        Operation patch = Operation
                 .createPatch(callbackReference)
                 .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_QUEUE_FOR_SERVICE_AVAILABILITY)
                 .setBody(callbackResponse)
@@ -70,7 +77,14 @@ public abstract class BaseMockAdapterService extends StatelessService {
                                         "Notifying parent task %s from mock docker host adapter failed: %s",
                                         o.getUri(), Utils.toString(e));
                             }
-                        }));
+                        });
+
+        long latencyMillis = MockAdapterSimulation.nextLatencyMillis();
+        if (latencyMillis > 0) {
+            getHost().schedule(() -> sendRequest(patch), latencyMillis, TimeUnit.MILLISECONDS);
+        } else {
+            sendRequest(patch);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and failure distribution applied by the mock adapters when they notify the calling
+ * task, so that the control plane can be exercised against slow and unreliable hosts. Disabled by
+ * default: the mocks answer immediately and only fail when explicitly asked to.
+ */
+public class MockAdapterSimulation {
+
+    public static final String LATENCY_MILLIS_PROPERTY =
+            "com.vmware.admiral.mock.adapter.latency.millis";
+    public static final String LATENCY_JITTER_MILLIS_PROPERTY =
+            "com.vmware.admiral.mock.adapter.latency.jitter.millis";
+    public static final String LATENCY_DISTRIBUTION_PROPERTY =
+            "com.vmware.admiral.mock.adapter.latency.distribution";
+    public static final String FAILURE_RATE_PROPERTY =
+            "com.vmware.admiral.mock.adapter.failure.rate";
+
+    public enum LatencyDistribution {
+        /** The jitter is uniformly distributed between zero and the configured jitter. */
+        UNIFORM,
+        /** The jitter is exponentially distributed with mean the configured jitter. */
+        EXPONENTIAL
+    }
+
+    private static volatile long latencyMillis;
+    private static volatile long latencyJitterMillis;
+    private static volatile LatencyDistribution latencyDistribution;
+    private static volatile double failureRate;
+
+    static {
+        reset();
+    }
+
+    private MockAdapterSimulation() {
+    }
+
+    /**
+     * Sets the latency, on top of the base latency a random jitter drawn from the given
+     * distribution is added, and the probability in the range [0, 1] of an adapter request to
+     * fail.
+     */
+    public static void configure(long latencyMillis, long latencyJitterMillis,
+            LatencyDistribution latencyDistribution, double failureRate) {
+        if (latencyMillis < 0 || latencyJitterMillis < 0) {
+            throw new IllegalArgumentException("'latency' must not be negative");
+        }
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("'failureRate' must be in the range [0, 1]");
+        }
+        MockAdapterSimulation.latencyMillis = latencyMillis;
+        MockAdapterSimulation.latencyJitterMillis = latencyJitterMillis;
+        MockAdapterSimulation.latencyDistribution = latencyDistribution;
+        MockAdapterSimulation.failureRate = failureRate;
+    }
+
+    /**
+     * Restores the configuration given with system properties.
+     */
+    public static void reset() {
+        configure(Long.getLong(LATENCY_MILLIS_PROPERTY, 0),
+                Long.getLong(LATENCY_JITTER_MILLIS_PROPERTY, 0),
+                LatencyDistribution.valueOf(System.getProperty(LATENCY_DISTRIBUTION_PROPERTY,
+                        LatencyDistribution.UNIFORM.name())),
+                Double.parseDouble(System.getProperty(FAILURE_RATE_PROPERTY, "0")));
+    }
+
+    public static double getFailureRate() {
+        return failureRate;
+    }
+
+    public static long nextLatencyMillis() {
+        long jitter = latencyJitterMillis;
+        if (jitter == 0) {
+            return latencyMillis;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (latencyDistribution) {
+        case EXPONENTIAL:
+            return latencyMillis + (long) (-jitter * Math.log(1 - random.nextDouble()));
+        case UNIFORM:
+        default:
+            return latencyMillis + random.nextLong(jitter + 1);
+        }
+    }
+
+    public static boolean nextFailure() {
+        double rate = failureRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}
@@ -13,7 +13,9 @@ package com.vmware.admiral.compute;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -519,6 +521,56 @@ public class BindingEvaluatorTest {
 
     }
 
+    @Test
+    public void testEvaluateCompiledProvisioningBindings() {
+        List<Binding> bindings = Arrays.asList(
+                binding(Arrays.asList("parentLink"), "_resource~A~parentLink"),
+                binding(Arrays.asList("address"), "_resource~A~customProperties~ip"));
+
+        Map<String, NestedState> containers = new HashMap<>();
+        ContainerState containerState = new ContainerState();
+        containerState.parentLink = "some-host";
+        containerState.customProperties = new HashMap<>();
+        containerState.customProperties.put("ip", "10.0.0.1");
+        containers.put("A", new NestedState(containerState));
+
+        CompiledBindings compiledBindings = CompiledBindings.forComponent("composite-link",
+                "component-link", bindings);
+        assertSame(compiledBindings, CompiledBindings.forComponent("composite-link",
+                "component-link", bindings));
+
+        for (int i = 0; i < 2; i++) {
+            NestedState evalObj = BindingEvaluator.evaluateProvisioningTimeBindings(
+                    new NestedState(new ContainerState()), compiledBindings, containers);
+            assertEquals(containerState.parentLink,
+                    ((ContainerState) evalObj.object).parentLink);
+            assertEquals("10.0.0.1", ((ContainerState) evalObj.object).address);
+        }
+
+        // the description is changed
+        List<Binding> changedBindings = Arrays.asList(
+                binding(Arrays.asList("parentLink"), "_resource~A~address"));
+        CompiledBindings changedCompiledBindings = CompiledBindings.forComponent(
+                "composite-link", "component-link", changedBindings);
+        assertNotSame(compiledBindings, changedCompiledBindings);
+
+        containerState.address = "10.0.0.2";
+        NestedState evalObj = BindingEvaluator.evaluateProvisioningTimeBindings(
+                new NestedState(new ContainerState()), changedCompiledBindings, containers);
+        assertEquals(containerState.address, ((ContainerState) evalObj.object).parentLink);
+    }
+
+    @Test
+    public void testEvaluateProvisioningBindingsWithoutProvisionedSource() {
+        List<Binding> bindings = Arrays
+                .asList(binding(Arrays.asList("parentLink"), "_resource~A~parentLink"));
+
+        NestedState nestedState = new NestedState(new ContainerState());
+        NestedState evalObj = BindingEvaluator.evaluateProvisioningTimeBindings(nestedState,
+                bindings, new HashMap<>());
+        assertSame(nestedState, evalObj);
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     public static CompositeTemplate createCompositeTemplate(
             List<? extends ResourceState> containerDescriptions,
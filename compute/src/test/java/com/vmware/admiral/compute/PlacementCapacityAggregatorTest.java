@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.PlacementCapacityUpdateTaskService.AggregatedComputeStats;
+import com.vmware.admiral.compute.PlacementCapacityUpdateTaskService.ComputeStats;
+import com.vmware.admiral.compute.container.ComputeBaseTest;
+import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription.ComputeType;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.UriUtils;
+
+/**
+ * Tests for the {@link PlacementCapacityAggregator} class.
+ */
+public class PlacementCapacityAggregatorTest extends ComputeBaseTest {
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(PlacementCapacityUpdateTaskService.FACTORY_LINK);
+        host.startServiceAndWait(PlacementCapacityUpdatePeriodicService.class,
+                PlacementCapacityUpdatePeriodicService.SELF_LINK);
+    }
+
+    @Test
+    public void testAggregateComputeChanges() throws Throwable {
+        ResourcePoolState rp = createResourcePool();
+        ComputeDescription cd = createComputeDescription();
+        createContainerHost(cd.documentSelfLink, rp.documentSelfLink, 4_000_000L, 2_000_000L);
+        ComputeState c2 = createContainerHost(cd.documentSelfLink, rp.documentSelfLink,
+                4_000_000L, 4_000_000L);
+        waitForFigures(rp.documentSelfLink, 8_000_000L, 6_000_000L);
+
+        ComputeState patch = new ComputeState();
+        patch.customProperties = new HashMap<>();
+        patch.customProperties.put(ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME,
+                "1000000");
+        doPatch(patch, c2.documentSelfLink);
+        waitForFigures(rp.documentSelfLink, 8_000_000L, 3_000_000L);
+
+        doDelete(UriUtils.buildUri(host, c2.documentSelfLink), false);
+        waitForFigures(rp.documentSelfLink, 4_000_000L, 2_000_000L);
+    }
+
+    @Test
+    public void testResourcePoolCreatedAfterItsComputes() throws Throwable {
+        ComputeDescription cd = createComputeDescription();
+        String rpLink = UriUtils.buildUriPath(ResourcePoolService.FACTORY_LINK,
+                UUID.randomUUID().toString());
+        createContainerHost(cd.documentSelfLink, rpLink, 4_000_000L, 2_000_000L);
+        createContainerHost(cd.documentSelfLink, rpLink, 4_000_000L, 4_000_000L);
+
+        // the computes of the new pool are queried by its query
+        ResourcePoolState rp = new ResourcePoolState();
+        rp.name = UUID.randomUUID().toString();
+        rp.documentSelfLink = rpLink;
+        doPost(rp, ResourcePoolService.FACTORY_LINK);
+        waitForFigures(rpLink, 8_000_000L, 6_000_000L);
+    }
+
+    @Test
+    public void testSignificantChange() {
+        ComputeStats stats = new ComputeStats();
+        stats.totalMemoryBytes = 1_000_000L;
+        stats.availableMemoryBytes = 500_000L;
+        stats.cpuCoreCount = 4;
+        stats.cpuUsage = 10.0;
+
+        AggregatedComputeStats published = new AggregatedComputeStats();
+        published.add(stats, 1);
+        assertTrue(PlacementCapacityAggregator.isSignificantChange(null, published));
+
+        // less than 1% of the memory and of the cpu
+        AggregatedComputeStats current = new AggregatedComputeStats();
+        stats.availableMemoryBytes = 495_000L;
+        stats.cpuUsage = 10.5;
+        current.add(stats, 1);
+        assertFalse(PlacementCapacityAggregator.isSignificantChange(published, current));
+
+        current.add(stats, -1);
+        stats.availableMemoryBytes = 480_000L;
+        current.add(stats, 1);
+        assertTrue(PlacementCapacityAggregator.isSignificantChange(published, current));
+
+        current.add(stats, -1);
+        stats.availableMemoryBytes = 500_000L;
+        stats.cpuUsage = 12.0;
+        current.add(stats, 1);
+        assertTrue(PlacementCapacityAggregator.isSignificantChange(published, current));
+
+        // a compute added or removed
+        current = new AggregatedComputeStats();
+        assertTrue(PlacementCapacityAggregator.isSignificantChange(published, current));
+    }
+
+    private ComputeState createContainerHost(String descriptionLink, String rpLink,
+            long totalMemoryBytes, long availableMemoryBytes) throws Throwable {
+        ComputeState cs = new ComputeState();
+        cs.descriptionLink = descriptionLink;
+        cs.resourcePoolLink = rpLink;
+        cs.customProperties = new HashMap<>();
+        cs.customProperties.put(ContainerHostService.DOCKER_HOST_TOTAL_MEMORY_PROP_NAME,
+                Long.toString(totalMemoryBytes));
+        cs.customProperties.put(ContainerHostService.DOCKER_HOST_AVAILABLE_MEMORY_PROP_NAME,
+                Long.toString(availableMemoryBytes));
+        return doPost(cs, ComputeService.FACTORY_LINK);
+    }
+
+    private ResourcePoolState createResourcePool() throws Throwable {
+        ResourcePoolState rp = new ResourcePoolState();
+        rp.name = UUID.randomUUID().toString();
+        return doPost(rp, ResourcePoolService.FACTORY_LINK);
+    }
+
+    private ComputeDescription createComputeDescription() throws Throwable {
+        ComputeDescription cd = new ComputeDescription();
+        cd.instanceAdapterReference = new URI("http://instanceAdapterReference");
+        cd.supportedChildren = new ArrayList<>();
+        cd.supportedChildren.add(ComputeType.DOCKER_CONTAINER.toString());
+        return doPost(cd, ComputeDescriptionService.FACTORY_LINK);
+    }
+
+    private void waitForFigures(String resourcePoolLink, long maxMemoryBytes,
+            long availableMemoryBytes) throws Throwable {
+        waitFor(() -> {
+            ResourcePoolState rp = getDocument(ResourcePoolState.class, resourcePoolLink);
+            if (rp.maxMemoryBytes == null || rp.customProperties == null) {
+                return false;
+            }
+            String availableMemory = rp.customProperties.get(
+                    ContainerHostDataCollectionService.RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP);
+            return rp.maxMemoryBytes == maxMemoryBytes && availableMemory != null
+                    && Math.abs(Double.parseDouble(availableMemory) - availableMemoryBytes) < 1;
+        });
+    }
+}
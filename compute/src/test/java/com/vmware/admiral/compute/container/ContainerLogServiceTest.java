@@ -13,18 +13,24 @@ package com.vmware.admiral.compute.container;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.vmware.admiral.adapter.common.AdapterRequest;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.service.common.LogService;
 import com.vmware.admiral.service.common.LogService.LogServiceState;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 
 public class ContainerLogServiceTest extends ComputeBaseTest {
@@ -62,14 +68,69 @@ public class ContainerLogServiceTest extends ComputeBaseTest {
         assertEquals(TEST_LOG_CONTENT, new String(currentLogState.logs));
     }
 
+    @Test
+    public void testIncrementalFetchFromLastTimestamp() throws Throwable {
+        AtomicReference<AdapterRequest> adapterRequest = startAdapter();
+
+        logState.lastTimestamp = "2018-01-01T10:00:00.123456789Z";
+        doPost(logState, LogService.FACTORY_LINK);
+
+        assertEquals(TEST_LOG_CONTENT, new String(getContainerLog().logs));
+        waitFor(() -> adapterRequest.get() != null);
+        assertEquals(Boolean.TRUE.toString(), adapterRequest.get().customProperties
+                .get(ContainerLogService.INCREMENTAL_FETCH_PROP_NAME));
+        assertEquals(logState.lastTimestamp, adapterRequest.get().customProperties
+                .get(ContainerLogService.LAST_TIMESTAMP_PROP_NAME));
+    }
+
+    @Test
+    public void testViewsAreFetchedIncrementally() throws Throwable {
+        AtomicReference<AdapterRequest> adapterRequest = startAdapter();
+
+        logState.logs = "line1\nline2\nline3\n".getBytes();
+        doPost(logState, LogService.FACTORY_LINK);
+
+        LogServiceState view = getContainerLog(LogService.OFFSET_QUERY_PARAM + "=6&"
+                + LogService.TAIL_QUERY_PARAM + "=1");
+        assertEquals("line3\n", new String(view.logs));
+        waitFor(() -> adapterRequest.get() != null);
+        assertEquals(Boolean.TRUE.toString(), adapterRequest.get().customProperties
+                .get(ContainerLogService.INCREMENTAL_FETCH_PROP_NAME));
+        assertNull(adapterRequest.get().customProperties.get(LogService.TAIL_QUERY_PARAM));
+        assertNull(adapterRequest.get().customProperties.get(LogService.OFFSET_QUERY_PARAM));
+    }
+
+    private AtomicReference<AdapterRequest> startAdapter() throws Throwable {
+        AtomicReference<AdapterRequest> adapterRequest = new AtomicReference<>();
+        String adapterLink = UriUtils.buildUriPath("test", "adapter", UUID.randomUUID().toString());
+        host.startServiceAndWait(new StatelessService() {
+            @Override
+            public void handlePatch(Operation patch) {
+                adapterRequest.set(patch.getBody(AdapterRequest.class));
+                patch.complete();
+            }
+        }, adapterLink, null);
+
+        ContainerState patch = new ContainerState();
+        patch.powerState = PowerState.RUNNING;
+        patch.adapterManagementReference = URI.create(adapterLink);
+        doPatch(patch, container.documentSelfLink);
+        return adapterRequest;
+    }
+
     private LogServiceState getContainerLog() throws Throwable {
+        return getContainerLog(null);
+    }
+
+    private LogServiceState getContainerLog(String query) throws Throwable {
         LogServiceState[] result = new LogServiceState[] { null };
 
         host.testStart(1);
         host.send(Operation.createGet(
                 UriUtils.buildUri(host, ContainerLogService.SELF_LINK,
                         ContainerLogService.CONTAINER_ID_QUERY_PARAM + "="
-                                + extractId(container.documentSelfLink)))
+                                + extractId(container.documentSelfLink)
+                                + (query != null ? "&" + query : "")))
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         host.failIteration(e);
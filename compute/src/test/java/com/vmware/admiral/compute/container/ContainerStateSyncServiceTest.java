@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.ContainerHostService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.ContainerStateSyncService.ContainerStateSyncRequest;
+import com.vmware.admiral.compute.container.ContainerStateSyncService.ContainerStateSyncResponse;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.Operation;
+
+/**
+ * Tests for the {@link ContainerStateSyncService} class.
+ */
+public class ContainerStateSyncServiceTest extends ComputeBaseTest {
+
+    private ComputeState containerHost;
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(ContainerStateSyncService.SELF_LINK);
+        waitForServiceAvailability(ContainerFactoryService.SELF_LINK);
+
+        ComputeState computeState = new ComputeState();
+        computeState.address = "no-address";
+        computeState.descriptionLink = "no-description-link";
+        containerHost = doPost(computeState, ComputeService.FACTORY_LINK);
+    }
+
+    @Test
+    public void testSyncContainerStates() throws Throwable {
+        ContainerState running = createContainer();
+        ContainerState missing = createContainer();
+        ContainerState deleted = createContainer();
+
+        ContainerStateSyncRequest request = new ContainerStateSyncRequest();
+        request.containerHostLink = containerHost.documentSelfLink;
+        request.containerCount = 3;
+
+        ContainerState discovered = new ContainerState();
+        discovered.id = UUID.randomUUID().toString();
+        discovered.names = Arrays.asList("discovered-" + discovered.id);
+        discovered.parentLink = containerHost.documentSelfLink;
+        request.containersToCreate.add(discovered);
+
+        ContainerState runningPatch = new ContainerState();
+        runningPatch.powerState = PowerState.STOPPED;
+        request.containersToUpdate.put(running.documentSelfLink, runningPatch);
+        ContainerState missingPatch = new ContainerState();
+        missingPatch.powerState = PowerState.RETIRED;
+        request.containersToUpdate.put(missing.documentSelfLink, missingPatch);
+
+        request.containersToDelete.add(deleted.documentSelfLink);
+
+        ContainerStateSyncResponse response = host.getTestRequestSender().sendAndWait(Operation
+                .createPost(host, ContainerStateSyncService.SELF_LINK)
+                .setBody(request), ContainerStateSyncResponse.class);
+
+        assertTrue(response.failedContainerLinks.isEmpty());
+        assertEquals(1, response.createdContainers.size());
+        assertEquals(discovered.id, response.createdContainers.get(0).id);
+        // retired containers are still counted, as long as their states exist
+        assertEquals(3, response.containerCount);
+        assertEquals(0, response.systemContainerCount);
+
+        assertEquals(PowerState.STOPPED,
+                getDocument(ContainerState.class, running.documentSelfLink).powerState);
+        assertEquals(PowerState.RETIRED,
+                getDocument(ContainerState.class, missing.documentSelfLink).powerState);
+        assertNull(getDocumentNoWait(ContainerState.class, deleted.documentSelfLink));
+
+        ComputeState updatedHost = getDocument(ComputeState.class,
+                containerHost.documentSelfLink);
+        assertEquals("3", updatedHost.customProperties.get(
+                ContainerHostService.NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME));
+        assertEquals("0", updatedHost.customProperties.get(
+                ContainerHostService.NUMBER_OF_SYSTEM_CONTAINERS_PROP_NAME));
+    }
+
+    private ContainerState createContainer() throws Throwable {
+        ContainerState containerState = new ContainerState();
+        containerState.id = UUID.randomUUID().toString();
+        containerState.names = Arrays.asList("name-" + containerState.id);
+        containerState.parentLink = containerHost.documentSelfLink;
+        containerState.powerState = PowerState.RUNNING;
+        return doPost(containerState, ContainerFactoryService.SELF_LINK);
+    }
+}
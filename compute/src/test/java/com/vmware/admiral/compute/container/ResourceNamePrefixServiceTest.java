@@ -22,6 +22,8 @@ import java.util.logging.Level;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.vmware.admiral.service.common.ResourceNamePrefixLeaseService;
+import com.vmware.admiral.service.common.ResourceNamePrefixLeaseService.NamePrefixLeaseRequest;
 import com.vmware.admiral.service.common.ResourceNamePrefixService;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixResponse;
@@ -210,6 +212,70 @@ public class ResourceNamePrefixServiceTest extends ComputeBaseTest {
         }
     }
 
+    @Test
+    public void testLeaseAndReturnNamePrefixes() throws Throwable {
+        ResourceNamePrefixState state = createValidResourceNamePrefixState();
+        state.nextNumber = 990;
+        state = doPost(state, ResourceNamePrefixService.FACTORY_LINK);
+
+        NamePrefixRequest request = new NamePrefixRequest();
+        request.resourceCount = 1;
+        request.leaseCount = 5;
+        NamePrefixResponse response = patch(state, request);
+        assertNull(response.resourceNamePrefixes);
+        assertEquals(990, response.leaseStart);
+        assertEquals(5, response.leaseCount);
+        assertEquals(state.prefix, response.prefix);
+        assertEquals(995, getDocument(ResourceNamePrefixState.class,
+                state.documentSelfLink).currentCount);
+
+        // the last leased block is reused when returned
+        NamePrefixRequest returnRequest = new NamePrefixRequest();
+        returnRequest.returnedNumber = 993;
+        returnRequest.returnedCount = 2;
+        patch(state, returnRequest);
+        assertEquals(993, getDocument(ResourceNamePrefixState.class,
+                state.documentSelfLink).currentCount);
+
+        // a block does not wrap
+        response = patch(state, request);
+        assertEquals(993, response.leaseStart);
+        assertEquals(5, response.leaseCount);
+        response = patch(state, request);
+        assertEquals(998, response.leaseStart);
+        assertEquals(2, response.leaseCount);
+        assertEquals(state.nextNumber, getDocument(ResourceNamePrefixState.class,
+                state.documentSelfLink).currentCount);
+    }
+
+    @Test
+    public void testLeasedResourcePrefixNameRequest() throws Throwable {
+        ResourceNamePrefixState state = createValidResourceNamePrefixState();
+        state.numberOfDigits = 0;
+        state.addRandomToken = false;
+        state = doPost(state, ResourceNamePrefixService.FACTORY_LINK);
+
+        NamePrefixLeaseRequest request = new NamePrefixLeaseRequest();
+        request.resourceNamePrefixLink = state.documentSelfLink;
+        request.resourceCount = 2;
+        NamePrefixResponse response = host.getTestRequestSender().sendAndWait(Operation
+                .createPost(host, ResourceNamePrefixLeaseService.SELF_LINK)
+                .setBody(request), NamePrefixResponse.class);
+        assertEquals(state.prefix + state.nextNumber, response.resourceNamePrefixes.get(0));
+        assertEquals(state.prefix + (state.nextNumber + 1),
+                response.resourceNamePrefixes.get(1));
+
+        response = host.getTestRequestSender().sendAndWait(Operation
+                .createPost(host, ResourceNamePrefixLeaseService.SELF_LINK)
+                .setBody(request), NamePrefixResponse.class);
+        assertEquals(state.prefix + (state.nextNumber + 2),
+                response.resourceNamePrefixes.get(0));
+
+        // both requests are served from a single leased block
+        assertEquals(state.nextNumber + ResourceNamePrefixLeaseService.LEASE_SIZE,
+                getDocument(ResourceNamePrefixState.class, state.documentSelfLink).currentCount);
+    }
+
     private void validateIllegalArgument(ResourceNamePrefixState state, String expecation)
             throws Throwable {
         validateLocalizableException(() -> {
@@ -54,6 +54,7 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceErrorResponse;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.test.TestRequestSender;
 
 /**
  * Test the CompositeDescriptionContentService
@@ -381,6 +382,51 @@ public class CompositeDescriptionContentServiceTest extends ComputeBaseTest {
             waitForServiceAvailability(CompositeDescriptionContentService.SELF_LINK);
         }
 
+        @Test
+        public void testExportAfterComponentChange() throws Throwable {
+            String template = CommonTestStateFactory
+                    .getFileContent("WordPress_with_MySQL_containers.yaml");
+            TestRequestSender sender = host.getTestRequestSender();
+
+            Operation importOp = sender.sendAndWait(Operation
+                    .createPost(UriUtils.buildUri(host, CompositeDescriptionContentService.SELF_LINK))
+                    .setContentType(MEDIA_TYPE_APPLICATION_YAML)
+                    .setBody(template));
+            String location = importOp.getResponseHeader(Operation.LOCATION_HEADER);
+            assertNotNull(location);
+
+            String exported = exportTemplate(sender, location);
+            assertEquals(exported, exportTemplate(sender, location));
+
+            CompositeDescription description = sender.sendAndWait(
+                    Operation.createGet(host, location), CompositeDescription.class);
+            ContainerDescription wordpress = null;
+            for (String link : description.descriptionLinks) {
+                ContainerDescription desc = sender.sendAndWait(Operation.createGet(host, link),
+                        ContainerDescription.class);
+                if ("wordpress".equals(desc.name)) {
+                    wordpress = desc;
+                }
+            }
+            assertNotNull(wordpress);
+
+            ContainerDescription patch = new ContainerDescription();
+            patch.image = "registry.local/wordpress:changed";
+            sender.sendAndWait(Operation.createPatch(host, wordpress.documentSelfLink)
+                    .setBody(patch));
+
+            String exportedAfterChange = exportTemplate(sender, location);
+            assertFalse(exported.contains(patch.image));
+            assertTrue(exportedAfterChange.contains(patch.image));
+        }
+
+        private String exportTemplate(TestRequestSender sender, String selfLink) {
+            URI uri = UriUtils.buildUri(host, CompositeDescriptionContentService.SELF_LINK);
+            uri = UriUtils.extendUriWithQuery(uri,
+                    CompositeDescriptionContentService.SELF_LINK_PARAM_NAME, selfLink);
+            return sender.sendAndWait(Operation.createGet(uri), String.class);
+        }
+
         @Test
         public void testFailedImport() throws Throwable {
             String template = CommonTestStateFactory.getFileContent("VotingApp_no_image_provided.yaml");
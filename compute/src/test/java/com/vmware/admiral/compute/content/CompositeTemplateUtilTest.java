@@ -14,6 +14,7 @@ package com.vmware.admiral.compute.content;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -909,6 +910,24 @@ public class CompositeTemplateUtilTest {
         }
     }
 
+    @Test
+    public void testDeserializeCachedCompositeTemplate() throws IOException {
+        String yaml = getContent("composite.wordpress.yaml");
+
+        CompositeTemplate template1 = deserializeCompositeTemplate(yaml);
+        String expectedTemplateYaml = serializeCompositeTemplate(template1);
+
+        // the cached template is not affected by changes of the returned one
+        template1.name = "changed";
+        template1.components.clear();
+
+        CompositeTemplate template2 = deserializeCompositeTemplate(yaml);
+        assertNotSame(template1, template2);
+        assertEquals(expectedTemplateYaml, serializeCompositeTemplate(template2));
+        assertEquals(expectedTemplateYaml, serializeCompositeTemplate(
+                CompositeTemplateUtil.parseCompositeTemplate(yaml)));
+    }
+
     public static String getContent(String filename) {
         return FileUtil.getResourceAsString("/compose/" + filename, true);
     }
@@ -11,9 +11,13 @@
 
 package com.vmware.admiral.service.common;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.time.OffsetDateTime;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
@@ -43,6 +47,130 @@ public class LogServiceTest extends ComputeBaseTest {
         assertEquals(new String(logState.logs), new String(newLogState.logs));
     }
 
+    @Test
+    public void testAppendAndReadFromOffset() throws Throwable {
+        LogServiceState logState = new LogServiceState();
+        logState.logs = "line1\nline2\n".getBytes();
+        logState = doPost(logState, LogService.FACTORY_LINK);
+
+        LogServiceState append = new LogServiceState();
+        append.logs = "line3\n".getBytes();
+        logState = doPatch(append, logState.documentSelfLink);
+        assertEquals("line1\nline2\nline3\n", new String(logState.logs));
+        assertEquals(0L, (long) logState.startOffset);
+        assertEquals(18L, (long) logState.endOffset);
+
+        LogServiceState tail = getDocument(LogServiceState.class, logState.documentSelfLink,
+                LogService.OFFSET_QUERY_PARAM, "12");
+        assertEquals("line3\n", new String(tail.logs));
+        assertEquals(18L, (long) tail.endOffset);
+
+        // the offsets keep increasing when the logs are replaced
+        logState.logs = "new".getBytes();
+        doPut(logState);
+        tail = getDocument(LogServiceState.class, logState.documentSelfLink,
+                LogService.OFFSET_QUERY_PARAM, "18");
+        assertEquals("new", new String(tail.logs));
+        assertEquals(18L, (long) tail.startOffset);
+    }
+
+    @Test
+    public void testTimestampedLogsAreDeduplicated() throws Throwable {
+        LogServiceState logState = new LogServiceState();
+        logState.logs = ("2018-01-01T10:00:00.1Z line1\n2018-01-01T10:00:00.2Z line2\n")
+                .getBytes();
+        logState.timestamped = true;
+        logState = doPost(logState, LogService.FACTORY_LINK);
+
+        logState = getDocument(LogServiceState.class, logState.documentSelfLink);
+        assertEquals("line1\nline2\n", new String(logState.logs));
+        assertEquals("2018-01-01T10:00:00.2Z", logState.lastTimestamp);
+
+        // the next fetch starts from the second of the last line, so it fetches the stored lines
+        // again, a line repeating the content of the last one is still appended
+        LogServiceState append = new LogServiceState();
+        append.logs = ("2018-01-01T10:00:00.1Z line1\n2018-01-01T10:00:00.2Z line2\n"
+                + "2018-01-01T10:00:00.3Z line2\nno timestamp\n").getBytes();
+        append.timestamped = true;
+        doPatch(append, logState.documentSelfLink);
+
+        logState = getDocument(LogServiceState.class, logState.documentSelfLink);
+        assertEquals("line1\nline2\nline2\nno timestamp\n", new String(logState.logs));
+        assertEquals("2018-01-01T10:00:00.3Z", logState.lastTimestamp);
+    }
+
+    @Test
+    public void testTimestampsAreRemovedFromFrames() throws Throwable {
+        LogServiceState logState = new LogServiceState();
+        logState.logs = frames(
+                "2018-01-01T10:00:00.123456789Z out\n", "2018-01-01T10:00:01Z err\n");
+        logState.timestamped = true;
+        logState = doPost(logState, LogService.FACTORY_LINK);
+
+        LogServiceState append = new LogServiceState();
+        append.logs = frames("2018-01-01T10:00:01Z err\n", "2018-01-01T10:00:01.5Z out2\n");
+        append.timestamped = true;
+        doPatch(append, logState.documentSelfLink);
+
+        logState = getDocument(LogServiceState.class, logState.documentSelfLink);
+        assertArrayEquals(frames("out\n", "err\n", "out2\n"), logState.logs);
+        assertEquals("2018-01-01T10:00:01.5Z", logState.lastTimestamp);
+    }
+
+    @Test
+    public void testViews() throws Throwable {
+        LogServiceState logState = new LogServiceState();
+        logState.logs = ("2018-01-01T10:00:00Z line1\n2018-01-01T10:00:01Z line2\n"
+                + "2018-01-01T10:00:02.5Z line3\n").getBytes();
+        logState.timestamped = true;
+        logState = doPost(logState, LogService.FACTORY_LINK);
+
+        LogServiceState view = getDocument(LogServiceState.class, logState.documentSelfLink,
+                LogService.TIMESTAMPS_QUERY_PARAM, "true");
+        assertEquals("2018-01-01T10:00:00Z line1\n2018-01-01T10:00:01Z line2\n"
+                + "2018-01-01T10:00:02.5Z line3\n", new String(view.logs));
+
+        view = getDocument(LogServiceState.class, logState.documentSelfLink,
+                LogService.TAIL_QUERY_PARAM, "2");
+        assertEquals("line2\nline3\n", new String(view.logs));
+
+        long since = OffsetDateTime.parse("2018-01-01T10:00:01Z").toEpochSecond();
+        view = getDocument(LogServiceState.class, logState.documentSelfLink,
+                LogService.SINCE_QUERY_PARAM, Long.toString(since),
+                LogService.TIMESTAMPS_QUERY_PARAM, "true");
+        assertEquals("2018-01-01T10:00:01Z line2\n2018-01-01T10:00:02.5Z line3\n",
+                new String(view.logs));
+
+        // the views apply to the logs from the offset on
+        LogServiceState append = new LogServiceState();
+        append.logs = "2018-01-01T10:00:03Z line4\n2018-01-01T10:00:04Z line5\n".getBytes();
+        append.timestamped = true;
+        doPatch(append, logState.documentSelfLink);
+
+        view = getDocument(LogServiceState.class, logState.documentSelfLink,
+                LogService.OFFSET_QUERY_PARAM, view.endOffset.toString(),
+                LogService.TAIL_QUERY_PARAM, "1");
+        assertEquals("line5\n", new String(view.logs));
+    }
+
+    @Test
+    public void testLogsAreTrimmedToMaxLogSize() throws Throwable {
+        byte[] segment = new byte[LogService.SEGMENT_SIZE];
+        LogServiceState logState = doPost(new LogServiceState(), LogService.FACTORY_LINK);
+
+        int segments = LogService.MAX_LOG_SIZE / LogService.SEGMENT_SIZE + 2;
+        LogServiceState append = new LogServiceState();
+        append.logs = segment;
+        for (int i = 0; i < segments; i++) {
+            doPatch((Object) append, logState.documentSelfLink);
+        }
+
+        logState = getDocument(LogServiceState.class, logState.documentSelfLink);
+        assertTrue(logState.logs.length <= LogService.MAX_LOG_SIZE);
+        assertEquals((long) segments * LogService.SEGMENT_SIZE, (long) logState.endOffset);
+        assertEquals(logState.endOffset - logState.logs.length, (long) logState.startOffset);
+    }
+
     @Test
     public void testMaxLogSize() {
         int maxLogSize = LogService.MAX_LOG_SIZE;
@@ -67,6 +195,20 @@ public class LogServiceTest extends ComputeBaseTest {
         assertNull(logServiceState);
     }
 
+    /**
+     * Returns the lines as stdout frames of multiplexed docker logs.
+     */
+    private static byte[] frames(String... lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String l : lines) {
+            byte[] line = l.getBytes();
+            out.write(1);
+            out.write(new byte[] { 0, 0, 0, 0, 0, 0, (byte) line.length }, 0, 7);
+            out.write(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+
     public static class LogServiceStub extends LogService {
 
         private static final long EXPIRATION_TIME = Long.MIN_VALUE;
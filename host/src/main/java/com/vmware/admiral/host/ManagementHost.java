@@ -44,6 +44,7 @@ import com.vmware.admiral.common.util.SecurityUtils;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
 import com.vmware.admiral.host.interceptor.AuthCredentialsInterceptor;
+import com.vmware.admiral.host.interceptor.ComputeReferenceIndex;
 import com.vmware.admiral.host.interceptor.InUsePlacementZoneInterceptor;
 import com.vmware.admiral.host.interceptor.OperationInterceptorRegistry;
 import com.vmware.admiral.host.interceptor.ProjectInterceptor;
@@ -170,6 +171,7 @@ public class ManagementHost extends PostgresServiceHost implements IExtensibilit
         AuthCredentialsInterceptor.register(interceptors);
         UnauthorizedDeleteInterceptor.register(interceptors);
         ProjectInterceptor.register(interceptors);
+        ComputeReferenceIndex.register(interceptors);
     }
 
     protected ManagementHost initializeHostAndServices(String[] args) throws Throwable {
@@ -338,6 +340,7 @@ public class ManagementHost extends PostgresServiceHost implements IExtensibilit
 
         HostInitComputeServicesConfig.startServices(this, false);
         HostInitComputeBackgroundServicesConfig.startServices(this);
+        ComputeReferenceIndex.start(this);
         HostInitRequestServicesConfig.startServices(this);
         HostInitImageServicesConfig.startServices(this);
         HostInitUiServicesConfig.startServices(this);
@@ -74,6 +74,15 @@ public class AuthCredentialsInterceptor {
     }
 
     public static DeferredResult<Void> handleDelete(Service service, Operation op) {
+        ComputeReferenceIndex index = ComputeReferenceIndex.getInstance(service.getHost());
+        if (index != null) {
+            if (index.getComputeCountByCredentials(service.getSelfLink()) != 0) {
+                return DeferredResult.failed(new LocalizableValidationException(
+                        CREDENTIALS_IN_USE_MESSAGE, CREDENTIALS_IN_USE_MESSAGE_CODE));
+            }
+            return null;
+        }
+
         DeferredResult<Void> dr = new DeferredResult<>();
         service.sendRequest(Operation.createPost(service, ServiceUriPaths.CORE_QUERY_TASKS)
                 .setBody(QueryUtil.addCountOption(QueryUtil.buildPropertyQuery(ComputeState.class,
@@ -85,6 +94,7 @@ public class AuthCredentialsInterceptor {
                     if (e != null) {
                         service.getHost().log(Level.WARNING, Utils.toString(e));
                         dr.fail(e);
+                        return;
                     }
                     ServiceDocumentQueryResult result = o.getBody(QueryTask.class).results;
                     if (result.documentCount != 0) {
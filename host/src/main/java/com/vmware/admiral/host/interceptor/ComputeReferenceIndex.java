@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host.interceptor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.util.CommonContinuousQueries;
+import com.vmware.admiral.compute.ComputeConstants;
+import com.vmware.photon.controller.model.query.QueryUtils.QueryByPages;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * Node local count of the {@link ComputeState}s referencing every placement zone and every
+ * credentials, so that the interceptors can check whether a placement zone or credentials are in
+ * use without querying all computes. The index is loaded once on start and then maintained from a
+ * continuous query over the computes. Changes made through this node are applied as soon as they
+ * complete, before the continuous query notification, so that a placement zone or credentials can
+ * be deleted right after the last compute using them is, and not right after a compute starts
+ * using them. On the other nodes the index is as consistent as their local document index is.
+ * <p>
+ * Deleted computes are kept as tombstones for a grace period, so that a late notification of an
+ * older version of a deleted compute is not counted again. The grace period is set with
+ * <code>com.vmware.admiral.host.compute.reference.index.tombstone.minutes</code>.
+ * <p>
+ * Until the index is loaded {@link #getInstance(ServiceHost)} returns <code>null</code> and the
+ * interceptors fall back to querying. The index can be disabled with
+ * <code>com.vmware.admiral.host.compute.reference.index.enabled</code>.
+ */
+public class ComputeReferenceIndex {
+
+    public static final String INDEX_ENABLED_PROPERTY =
+            "com.vmware.admiral.host.compute.reference.index.enabled";
+
+    private static final long LOAD_RETRY_SECONDS = Long.getLong(
+            "com.vmware.admiral.host.compute.reference.index.load.retry.seconds", 10);
+
+    // time deleted computes are kept, longer than any continuous query notification is delayed
+    private static final long TOMBSTONE_EXPIRATION_MICROS = TimeUnit.MINUTES.toMicros(
+            Long.getLong("com.vmware.admiral.host.compute.reference.index.tombstone.minutes",
+                    10));
+
+    private static final String CONTINUOUS_QUERY_NAME = "compute-reference-index";
+
+    private static final Map<String, ComputeReferenceIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled = Boolean.parseBoolean(
+            System.getProperty(INDEX_ENABLED_PROPERTY, Boolean.TRUE.toString()));
+
+    /**
+     * The links of a compute counted in the index, as of the given version of the compute.
+     */
+    private static class ComputeReferences {
+        final long documentVersion;
+        final String resourcePoolLink;
+        final String credentialsLink;
+        // set for the tombstones of deleted computes
+        final long deletedMicros;
+
+        ComputeReferences(long documentVersion, String resourcePoolLink,
+                String credentialsLink, long deletedMicros) {
+            this.documentVersion = documentVersion;
+            this.resourcePoolLink = resourcePoolLink;
+            this.credentialsLink = credentialsLink;
+            this.deletedMicros = deletedMicros;
+        }
+    }
+
+    private final ServiceHost host;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean loaded;
+
+    // compute link -> counted references, kept for deleted computes as well until the tombstone
+    // expires, so that a late notification of an older version is not counted again; guarded by
+    // this
+    private final Map<String, ComputeReferences> computes = new HashMap<>();
+    private long nextPruneMicros;
+    // resource pool link -> number of computes in it
+    private final Map<String, Integer> computeCountByResourcePool = new ConcurrentHashMap<>();
+    // credentials link -> number of computes using them
+    private final Map<String, Integer> computeCountByCredentials = new ConcurrentHashMap<>();
+
+    private ComputeReferenceIndex(ServiceHost host) {
+        this.host = host;
+    }
+
+    /**
+     * Registers the interceptors applying the compute changes made through this node to the index.
+     */
+    public static void register(OperationInterceptorRegistry registry) {
+        registry.addFactoryServiceInterceptor(ComputeService.class, Action.POST,
+                ComputeReferenceIndex::handleComputeWrite);
+        registry.addServiceInterceptor(ComputeService.class, Action.PUT,
+                ComputeReferenceIndex::handleComputeWrite);
+        registry.addServiceInterceptor(ComputeService.class, Action.PATCH,
+                ComputeReferenceIndex::handleComputeWrite);
+        registry.addServiceInterceptor(ComputeService.class, Action.DELETE,
+                ComputeReferenceIndex::handleComputeDelete);
+    }
+
+    public static DeferredResult<Void> handleComputeWrite(Service service, Operation op) {
+        ComputeReferenceIndex index = INDEXES.get(service.getHost().getId());
+        if (index == null) {
+            return null;
+        }
+        op.nestCompletion((o, e) -> {
+            if (e != null) {
+                op.fail(e);
+                return;
+            }
+            if (o.hasBody()) {
+                ComputeState compute = o.getBody(ComputeState.class);
+                if (compute.documentSelfLink != null) {
+                    index.update(compute, false);
+                }
+            }
+            op.complete();
+        });
+        return null;
+    }
+
+    public static DeferredResult<Void> handleComputeDelete(Service service, Operation op) {
+        ComputeReferenceIndex index = INDEXES.get(service.getHost().getId());
+        ComputeState currentState = index != null ? service.getState(op) : null;
+        if (currentState == null) {
+            return null;
+        }
+        op.nestCompletion((o, e) -> {
+            if (e != null) {
+                op.fail(e);
+                return;
+            }
+            ComputeState deleted = new ComputeState();
+            deleted.documentSelfLink = service.getSelfLink();
+            deleted.documentVersion = currentState.documentVersion + 1;
+            index.update(deleted, true);
+            op.complete();
+        });
+        return null;
+    }
+
+    /**
+     * Starts the index for the given host. Must be called with the system authorization context.
+     */
+    public static void start(ServiceHost host) {
+        if (!enabled) {
+            return;
+        }
+        INDEXES.computeIfAbsent(host.getId(), k -> new ComputeReferenceIndex(host)).subscribe();
+    }
+
+    /**
+     * Returns the index of the given host or <code>null</code> if it is disabled, not started or
+     * not loaded yet.
+     */
+    public static ComputeReferenceIndex getInstance(ServiceHost host) {
+        if (!enabled) {
+            return null;
+        }
+        ComputeReferenceIndex index = INDEXES.get(host.getId());
+        return index != null && index.loaded ? index : null;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ComputeReferenceIndex.enabled = enabled;
+    }
+
+    public int getComputeCountByResourcePool(String resourcePoolLink) {
+        return computeCountByResourcePool.getOrDefault(resourcePoolLink, 0);
+    }
+
+    public int getComputeCountByCredentials(String credentialsLink) {
+        return computeCountByCredentials.getOrDefault(credentialsLink, 0);
+    }
+
+    private void subscribe() {
+        if (started.getAndSet(true)) {
+            return;
+        }
+        host.log(Level.INFO, "Starting compute reference index");
+
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .build();
+
+        // load the existing computes once the changes are being tracked, so that no change
+        // made in the meantime is missed
+        CommonContinuousQueries.subscribeTo(host, CONTINUOUS_QUERY_NAME, query,
+                this::onComputeChange, this::load);
+    }
+
+    private void load() {
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .build();
+
+        new QueryByPages<>(host, query, ComputeState.class, null)
+                .queryDocuments(compute -> update(compute, false))
+                .whenComplete((ignore, e) -> {
+                    if (e != null) {
+                        host.log(Level.WARNING, "Failure loading compute reference index, "
+                                + "retrying in %d seconds: %s", LOAD_RETRY_SECONDS,
+                                Utils.toString(e));
+                        host.schedule(this::load, LOAD_RETRY_SECONDS, TimeUnit.SECONDS);
+                        return;
+                    }
+                    host.log(Level.INFO, "Compute reference index loaded");
+                    loaded = true;
+                });
+    }
+
+    private void onComputeChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        queryTask.results.documents.values().forEach(json -> {
+            ComputeState compute = Utils.fromJson(json, ComputeState.class);
+            update(compute, Action.DELETE.name().equals(compute.documentUpdateAction));
+        });
+    }
+
+    synchronized void update(ComputeState compute, boolean deleted) {
+        long now = Utils.getSystemNowMicrosUtc();
+        if (now >= nextPruneMicros) {
+            nextPruneMicros = now + TOMBSTONE_EXPIRATION_MICROS;
+            pruneTombstones(now - TOMBSTONE_EXPIRATION_MICROS);
+        }
+
+        ComputeReferences current = computes.get(compute.documentSelfLink);
+        if (current != null && current.documentVersion >= compute.documentVersion) {
+            return;
+        }
+
+        ComputeReferences references = deleted
+                ? new ComputeReferences(compute.documentVersion, null, null, now)
+                : new ComputeReferences(compute.documentVersion, compute.resourcePoolLink,
+                        compute.customProperties != null ? compute.customProperties.get(
+                                ComputeConstants.HOST_AUTH_CREDENTIALS_PROP_NAME) : null, 0);
+        computes.put(compute.documentSelfLink, references);
+
+        String currentResourcePoolLink = current != null ? current.resourcePoolLink : null;
+        if (!Objects.equals(currentResourcePoolLink, references.resourcePoolLink)) {
+            decrement(computeCountByResourcePool, currentResourcePoolLink);
+            increment(computeCountByResourcePool, references.resourcePoolLink);
+        }
+        String currentCredentialsLink = current != null ? current.credentialsLink : null;
+        if (!Objects.equals(currentCredentialsLink, references.credentialsLink)) {
+            decrement(computeCountByCredentials, currentCredentialsLink);
+            increment(computeCountByCredentials, references.credentialsLink);
+        }
+    }
+
+    /**
+     * Removes the tombstones of the computes deleted before the given time. Tombstones hold no
+     * references, so the counts are not affected.
+     */
+    synchronized void pruneTombstones(long deletedBeforeMicros) {
+        Iterator<ComputeReferences> it = computes.values().iterator();
+        while (it.hasNext()) {
+            ComputeReferences references = it.next();
+            if (references.deletedMicros > 0 && references.deletedMicros < deletedBeforeMicros) {
+                it.remove();
+            }
+        }
+    }
+
+    synchronized int getTrackedComputeCount() {
+        return computes.size();
+    }
+
+    private static void increment(Map<String, Integer> counts, String link) {
+        if (link != null) {
+            counts.merge(link, 1, Integer::sum);
+        }
+    }
+
+    private static void decrement(Map<String, Integer> counts, String link) {
+        if (link != null) {
+            counts.computeIfPresent(link, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+}
@@ -43,6 +43,14 @@ public class InUsePlacementZoneInterceptor {
         if (currentState.query != null) {
             queryTask = QueryTask.Builder.createDirectTask().setQuery(currentState.query).build();
         } else if (currentState.documentSelfLink != null) {
+            ComputeReferenceIndex index = ComputeReferenceIndex.getInstance(service.getHost());
+            if (index != null) {
+                if (index.getComputeCountByResourcePool(currentState.documentSelfLink) != 0) {
+                    return DeferredResult.failed(new LocalizableValidationException(
+                            PLACEMENT_ZONE_IN_USE_MESSAGE, PLACEMENT_ZONE_IN_USE_MESSAGE_CODE));
+                }
+                return null;
+            }
             queryTask = QueryUtil.buildPropertyQuery(ComputeState.class,
                     ComputeState.FIELD_NAME_RESOURCE_POOL_LINK, currentState.documentSelfLink);
         } else {
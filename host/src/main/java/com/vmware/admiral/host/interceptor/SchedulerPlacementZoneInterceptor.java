@@ -107,6 +107,15 @@ public class SchedulerPlacementZoneInterceptor {
                 });
     }
 
+    /**
+     * Returns whether the given placement zone is known to contain no hosts, in which case there
+     * is nothing to verify.
+     */
+    private static boolean isEmptyZone(String resourcePoolLink, Service service) {
+        ComputeReferenceIndex index = ComputeReferenceIndex.getInstance(service.getHost());
+        return index != null && index.getComputeCountByResourcePool(resourcePoolLink) == 0;
+    }
+
     private static DeferredResult<Void> verifyZoneContainsSingleSchedulerOrNoHost(
             String resourcePoolLink, Operation op, Service service) {
         if (resourcePoolLink == null) {
@@ -114,6 +123,10 @@ public class SchedulerPlacementZoneInterceptor {
             return null;
         }
 
+        if (isEmptyZone(resourcePoolLink, service)) {
+            return DeferredResult.completed(null);
+        }
+
         Query query = Query.Builder.create()
                 .addKindFieldClause(ComputeState.class)
                 .addFieldClause(ComputeState.FIELD_NAME_RESOURCE_POOL_LINK, resourcePoolLink)
@@ -146,6 +159,10 @@ public class SchedulerPlacementZoneInterceptor {
             return null;
         }
 
+        if (isEmptyZone(resourcePoolLink, service)) {
+            return DeferredResult.completed(null);
+        }
+
         Query query = Query.Builder.create()
                 .addKindFieldClause(ComputeState.class)
                 .addFieldClause(ComputeState.FIELD_NAME_RESOURCE_POOL_LINK, resourcePoolLink)
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.host.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.compute.ComputeConstants;
+import com.vmware.admiral.host.HostInitComputeServicesConfig;
+import com.vmware.admiral.host.HostInitPhotonModelServiceConfig;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.AuthCredentialsService;
+import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
+
+/**
+ * Tests for the {@link ComputeReferenceIndex} class.
+ */
+public class ComputeReferenceIndexTest extends BaseTestCase {
+
+    private ComputeReferenceIndex index;
+
+    @Before
+    public void setUp() throws Throwable {
+        HostInitPhotonModelServiceConfig.startServices(host);
+        HostInitComputeServicesConfig.startServices(host, true);
+
+        waitForServiceAvailability(ResourcePoolService.FACTORY_LINK);
+        waitForServiceAvailability(ComputeService.FACTORY_LINK);
+        waitForServiceAvailability(AuthCredentialsService.FACTORY_LINK);
+
+        ComputeReferenceIndex.start(host);
+        waitFor(() -> ComputeReferenceIndex.getInstance(host) != null);
+        index = ComputeReferenceIndex.getInstance(host);
+    }
+
+    @Override
+    protected void registerInterceptors(OperationInterceptorRegistry registry) {
+        InUsePlacementZoneInterceptor.register(registry);
+        AuthCredentialsInterceptor.register(registry);
+        ComputeReferenceIndex.register(registry);
+    }
+
+    @Test
+    public void testCountReferences() throws Throwable {
+        ResourcePoolState placementZone = createPlacementZone("zone1");
+        ResourcePoolState otherPlacementZone = createPlacementZone("zone2");
+        AuthCredentialsServiceState credentials = doPost(new AuthCredentialsServiceState(),
+                AuthCredentialsService.FACTORY_LINK);
+
+        ComputeState compute = createComputeState(placementZone, credentials);
+        createComputeState(placementZone, null);
+        assertEquals(2, index.getComputeCountByResourcePool(placementZone.documentSelfLink));
+        assertEquals(1, index.getComputeCountByCredentials(credentials.documentSelfLink));
+
+        // move the compute to another zone
+        ComputeState patch = new ComputeState();
+        patch.resourcePoolLink = otherPlacementZone.documentSelfLink;
+        doPatch(patch, compute.documentSelfLink);
+        assertEquals(1, index.getComputeCountByResourcePool(placementZone.documentSelfLink));
+        assertEquals(1, index.getComputeCountByResourcePool(otherPlacementZone.documentSelfLink));
+
+        // the zone and credentials are in use
+        doDelete(UriUtils.buildUri(host, otherPlacementZone.documentSelfLink), true);
+        doDelete(UriUtils.buildUri(host, credentials.documentSelfLink), true);
+
+        // and can be deleted right after the compute using them is deleted
+        doDelete(UriUtils.buildUri(host, compute.documentSelfLink), false);
+        assertEquals(0, index.getComputeCountByResourcePool(otherPlacementZone.documentSelfLink));
+        assertEquals(0, index.getComputeCountByCredentials(credentials.documentSelfLink));
+        doDelete(UriUtils.buildUri(host, otherPlacementZone.documentSelfLink), false);
+        doDelete(UriUtils.buildUri(host, credentials.documentSelfLink), false);
+    }
+
+    @Test
+    public void testIgnoreOutdatedChanges() {
+        ComputeState compute = new ComputeState();
+        compute.documentSelfLink = ComputeService.FACTORY_LINK + "/outdated";
+        compute.resourcePoolLink = "zone1";
+        compute.documentVersion = 2;
+        index.update(compute, false);
+
+        ComputeState outdated = new ComputeState();
+        outdated.documentSelfLink = compute.documentSelfLink;
+        outdated.resourcePoolLink = "zone2";
+        outdated.documentVersion = 1;
+        index.update(outdated, false);
+        assertEquals(1, index.getComputeCountByResourcePool("zone1"));
+        assertEquals(0, index.getComputeCountByResourcePool("zone2"));
+
+        ComputeState deleted = new ComputeState();
+        deleted.documentSelfLink = compute.documentSelfLink;
+        deleted.documentVersion = 3;
+        index.update(deleted, true);
+        // a late notification of the compute before it was deleted
+        index.update(compute, false);
+        assertEquals(0, index.getComputeCountByResourcePool("zone1"));
+    }
+
+    @Test
+    public void testTombstonesExpire() {
+        ComputeState compute = new ComputeState();
+        compute.documentSelfLink = ComputeService.FACTORY_LINK + "/tombstone";
+        compute.resourcePoolLink = "zone1";
+        compute.documentVersion = 1;
+        index.update(compute, false);
+        int trackedCount = index.getTrackedComputeCount();
+
+        ComputeState deleted = new ComputeState();
+        deleted.documentSelfLink = compute.documentSelfLink;
+        deleted.documentVersion = 2;
+        index.update(deleted, true);
+
+        // the tombstone is kept during the grace period
+        index.pruneTombstones(Utils.getSystemNowMicrosUtc() - TimeUnit.MINUTES.toMicros(1));
+        assertEquals(trackedCount, index.getTrackedComputeCount());
+
+        // and removed after it, without affecting the counts
+        index.pruneTombstones(Utils.getSystemNowMicrosUtc() + 1);
+        assertEquals(trackedCount - 1, index.getTrackedComputeCount());
+        assertEquals(0, index.getComputeCountByResourcePool("zone1"));
+    }
+
+    private ResourcePoolState createPlacementZone(String name) throws Throwable {
+        ResourcePoolState placementZone = new ResourcePoolState();
+        placementZone.id = name;
+        placementZone.name = name;
+        placementZone.documentSelfLink = ResourcePoolService.FACTORY_LINK + "/" + name;
+        placementZone = doPost(placementZone, ResourcePoolService.FACTORY_LINK);
+        assertNotNull(placementZone);
+        return placementZone;
+    }
+
+    private ComputeState createComputeState(ResourcePoolState placementZone,
+            AuthCredentialsServiceState credentials) throws Throwable {
+        ComputeState computeState = new ComputeState();
+        computeState.address = "no-address";
+        computeState.descriptionLink = "no-description-link";
+        computeState.resourcePoolLink = placementZone.documentSelfLink;
+        if (credentials != null) {
+            computeState.customProperties = new HashMap<>();
+            computeState.customProperties.put(ComputeConstants.HOST_AUTH_CREDENTIALS_PROP_NAME,
+                    credentials.documentSelfLink);
+        }
+        return doPost(computeState, ComputeService.FACTORY_LINK);
+    }
+}
@@ -12,10 +12,12 @@
 package com.vmware.photon.controller.model.tasks;
 
 import static com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata.factoryService;
+import static com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata.service;
 
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsAggregationTaskService;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService;
 import com.vmware.photon.controller.model.tasks.monitoring.StatsAggregationTaskService;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionPipelineService;
 import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionTaskService;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
 import com.vmware.xenon.common.Operation;
@@ -41,6 +43,7 @@ public class PhotonModelTaskServices {
             factoryService(ProvisionSecurityGroupTaskService.class),
             factoryService(StatsCollectionTaskService.class),
             factoryService(SingleResourceStatsCollectionTaskService.class),
+            service(StatsCollectionPipelineService.class),
             factoryService(StatsAggregationTaskService.class),
             factoryService(EndpointAllocationTaskService.class),
             factoryService(SingleResourceStatsAggregationTaskService.class),
@@ -62,6 +65,7 @@ public class PhotonModelTaskServices {
             ProvisionSecurityGroupTaskService.FACTORY_LINK,
             StatsCollectionTaskService.FACTORY_LINK,
             SingleResourceStatsCollectionTaskService.FACTORY_LINK,
+            StatsCollectionPipelineService.SELF_LINK,
             StatsAggregationTaskService.FACTORY_LINK,
             EndpointAllocationTaskService.FACTORY_LINK,
             SingleResourceStatsAggregationTaskService.FACTORY_LINK,
@@ -105,6 +109,8 @@ public class PhotonModelTaskServices {
                 () -> StatsAggregationTaskService.createFactory());
         host.startFactory(SingleResourceStatsCollectionTaskService.class,
                 () -> SingleResourceStatsCollectionTaskService.createFactory());
+        host.startService(Operation.createPost(host, StatsCollectionPipelineService.SELF_LINK),
+                new StatsCollectionPipelineService());
         host.startFactory(StatsCollectionTaskService.class,
                 () -> StatsCollectionTaskService.createFactory());
         host.startFactory(SubTaskService.class,
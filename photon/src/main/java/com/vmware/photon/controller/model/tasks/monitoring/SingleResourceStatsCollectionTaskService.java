@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
@@ -36,6 +37,7 @@ import com.vmware.photon.controller.model.tasks.TaskUtils;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
 import com.vmware.photon.controller.model.util.ClusterUtil;
 import com.vmware.photon.controller.model.util.ClusterUtil.ServiceTypeCluster;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationSequence;
@@ -43,6 +45,7 @@ import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
 import com.vmware.xenon.common.ServiceDocumentDescription.TypeName;
+import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.ServiceStats;
 import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
@@ -284,51 +287,30 @@ public class SingleResourceStatsCollectionTaskService
 
                             ComputeStateWithDescription computeStateWithDesc = getOp
                                     .getBody(ComputeStateWithDescription.class);
-                            ComputeStatsRequest statsRequest = new ComputeStatsRequest();
-                            URI patchUri = null;
-                            Object patchBody = null;
-
                             ComputeDescription description = computeStateWithDesc.description;
-                            URI statsAdapterReference = null;
-                            List<String> tenantLinks = new ArrayList<>();
-                            if (description != null) {
-                                tenantLinks = description.tenantLinks;
-                                // Only look in adapter references if statsAdapterReference is
-                                // provided
-                                if (currentState.statsAdapterReference == null) {
-                                    statsAdapterReference = description.statsAdapterReference;
-                                } else if (description.statsAdapterReferences != null) {
-                                    for (URI uri : description.statsAdapterReferences) {
-                                        if (uri.getPath().equals(currentState
-                                                .statsAdapterReference.getPath())) {
-                                            statsAdapterReference = currentState
-                                                    .statsAdapterReference;
-                                            break;
-                                        }
-                                    }
-                                }
-                            }
+                            URI statsAdapterReference = getStatsAdapterReference(description,
+                                    currentState.statsAdapterReference);
 
                             if (statsAdapterReference != null) {
-                                statsRequest.nextStage = SingleResourceTaskCollectionStage.UPDATE_STATS
-                                        .name();
-                                statsRequest.resourceReference = UriUtils
-                                        .extendUri(ClusterUtil.getClusterUri(getHost(),
-                                                ServiceTypeCluster.DISCOVERY_SERVICE),
-                                                computeStateWithDesc.documentSelfLink);
-                                statsRequest.taskReference = getUri();
-                                patchUri = statsAdapterReference;
-                                populateLastCollectionTimeForMetricsInStatsRequest(currentState,
-                                        statsRequest, patchUri, tenantLinks);
+                                ComputeStatsRequest statsRequest = createStatsRequest(getHost(),
+                                        computeStateWithDesc.documentSelfLink, getUri());
+                                List<String> tenantLinks = description != null
+                                        ? description.tenantLinks : new ArrayList<>();
+                                getLastCollectionTime(this, currentState.computeLink,
+                                        statsAdapterReference, tenantLinks)
+                                        .thenAccept(lastCollectionTimeMicrosUtc -> {
+                                            statsRequest.lastCollectionTimeMicrosUtc =
+                                                    lastCollectionTimeMicrosUtc;
+                                            sendStatsRequestToAdapter(currentState,
+                                                    statsAdapterReference, statsRequest);
+                                        });
                             } else {
                                 // no adapter associated with this resource, just patch completion
                                 SingleResourceStatsCollectionTaskState nextStageState = new SingleResourceStatsCollectionTaskState();
                                 nextStageState.taskInfo = new TaskState();
                                 nextStageState.taskInfo.stage = TaskStage.FINISHED;
-                                patchUri = getUri();
-                                patchBody = nextStageState;
                                 sendStatsRequestToAdapter(currentState,
-                                        patchUri, patchBody);
+                                        getUri(), nextStageState);
                             }
 
                         }));
@@ -350,65 +332,9 @@ public class SingleResourceStatsCollectionTaskService
             return;
         }
 
-        long expirationTime = Utils.getNowMicrosUtc() + TimeUnit.DAYS.toMicros(EXPIRATION_INTERVAL);
-        List<Operation> operations = new ArrayList<>();
-        List<ResourceMetrics> metricsList = new ArrayList<>();
-        List<InMemoryResourceMetric> inMemoryMetricsList = new ArrayList<>();
-
-        // Push the last collection metric to the in memory stats available at the
-        // compute-link/stats URI.
-        ServiceStats.ServiceStat minuteStats = new ServiceStats.ServiceStat();
-        String statsLink = getAdapterLinkFromURI(currentState.statsAdapterReference);
-        minuteStats.name = getLastCollectionMetricKeyForAdapterLink(statsLink, true);
-        minuteStats.latestValue = Utils.getNowMicrosUtc();
-        minuteStats.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
-        minuteStats.unit = PhotonModelConstants.UNIT_MICROSECONDS;
-        URI inMemoryStatsUri = UriUtils.buildStatsUri(UriUtils
-                .extendUri(UriUtils.buildUri(ClusterUtil.getClusterUri(getHost(),
-                        ServiceTypeCluster.DISCOVERY_SERVICE)), currentState.computeLink));
-        operations.add(Operation.createPost(inMemoryStatsUri).setBody(minuteStats));
-        populateResourceMetrics(metricsList,
-                getLastCollectionMetricKeyForAdapterLink(statsLink, false),
-                minuteStats, currentState.computeLink, expirationTime);
-
-        for (ComputeStats stats : currentState.statsList) {
-            // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-330
-
-            String computeId = UriUtils.getLastPathSegment(stats.computeLink);
-
-            InMemoryResourceMetric hourlyMemoryState = new InMemoryResourceMetric();
-            hourlyMemoryState.timeSeriesStats = new HashMap<>();
-            hourlyMemoryState.documentSelfLink = computeId + StatsConstants.HOUR_SUFFIX;
-
-            inMemoryMetricsList.add(hourlyMemoryState);
-
-            for (Entry<String, List<ServiceStat>> entries : stats.statValues.entrySet()) {
-                // sort stats by source time
-                entries.getValue().sort(Comparator.comparing(o -> o.sourceTimeMicrosUtc));
-
-                // Persist every data point
-                for (ServiceStat serviceStat : entries.getValue()) {
-                    String computeLink = stats.computeLink;
-                    if (computeLink == null) {
-                        computeLink = currentState.computeLink;
-                    }
-                    // update in-memory stats
-                    updateInMemoryStats(hourlyMemoryState, entries.getKey(), serviceStat,
-                            StatsConstants.BUCKET_SIZE_HOURS_IN_MILLIS);
-                    populateResourceMetrics(metricsList, entries.getKey(),
-                            serviceStat, computeLink, expirationTime);
-                }
-            }
-        }
-        for (ResourceMetrics metrics : metricsList) {
-            operations.add(Operation.createPost(UriUtils.buildUri(
-                    ClusterUtil.getClusterUri(getHost(), ServiceTypeCluster.METRIC_SERVICE),
-                    ResourceMetricsService.FACTORY_LINK)).setBodyNoCloning(metrics));
-        }
-        for (InMemoryResourceMetric metric : inMemoryMetricsList) {
-            operations.add(Operation.createPost(getHost(), InMemoryResourceMetricService.FACTORY_LINK)
-                            .setBodyNoCloning(metric));
-        }
+        List<Operation> operations = createPersistStatsOperations(getHost(),
+                currentState.computeLink, currentState.statsAdapterReference,
+                currentState.statsList);
         // Save each data point sequentially to create time based monotonically increasing sequence.
         batchPersistStats(operations, 0, currentState.isFinalBatch);
     }
@@ -459,8 +385,129 @@ public class SingleResourceStatsCollectionTaskService
         opSequence.sendWith(this);
     }
 
-    private void updateInMemoryStats(InMemoryResourceMetric inMemoryMetric, String metricKey,
-            ServiceStat serviceStat, int bucketSize) {
+    /**
+     * Sends the Stats request to the Stats adapter
+     */
+    private void sendStatsRequestToAdapter(SingleResourceStatsCollectionTaskState currentState,
+            URI patchUri, Object patchBody) {
+        sendRequest(Operation.createPatch(patchUri)
+                .setBody(patchBody)
+                .setCompletion((patchOp, patchEx) -> {
+                    if (patchEx != null) {
+                        TaskUtils.sendFailurePatch(this, currentState, patchEx);
+                    }
+                }));
+    }
+
+    /**
+     * Returns the stats adapter to collect the stats of a compute with the given description
+     * from, or <code>null</code> if there is none. If a stats adapter reference is requested,
+     * it is returned only if it is one of the stats adapters of the description.
+     */
+    static URI getStatsAdapterReference(ComputeDescription description,
+            URI requestedStatsAdapterReference) {
+        if (description == null) {
+            return null;
+        }
+        // Only look in adapter references if statsAdapterReference is provided
+        if (requestedStatsAdapterReference == null) {
+            return description.statsAdapterReference;
+        }
+        if (description.statsAdapterReferences != null) {
+            for (URI uri : description.statsAdapterReferences) {
+                if (uri.getPath().equals(requestedStatsAdapterReference.getPath())) {
+                    return requestedStatsAdapterReference;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the request to a stats adapter to collect the stats of a compute and to patch them
+     * back to the given task reference.
+     */
+    static ComputeStatsRequest createStatsRequest(ServiceHost host, String computeLink,
+            URI taskReference) {
+        ComputeStatsRequest statsRequest = new ComputeStatsRequest();
+        statsRequest.nextStage = SingleResourceTaskCollectionStage.UPDATE_STATS.name();
+        statsRequest.resourceReference = UriUtils.extendUri(ClusterUtil.getClusterUri(host,
+                ServiceTypeCluster.DISCOVERY_SERVICE), computeLink);
+        statsRequest.taskReference = taskReference;
+        return statsRequest;
+    }
+
+    /**
+     * Creates the operations persisting the stats reported by a stats adapter for a compute:
+     * the last collection time of the adapter in the in memory stats of the compute, followed by
+     * the resource metrics and the in memory metrics.
+     */
+    static List<Operation> createPersistStatsOperations(ServiceHost host, String computeLink,
+            URI statsAdapterReference, List<ComputeStats> statsList) {
+        long expirationTime = Utils.getNowMicrosUtc() + TimeUnit.DAYS.toMicros(EXPIRATION_INTERVAL);
+        List<Operation> operations = new ArrayList<>();
+        List<ResourceMetrics> metricsList = new ArrayList<>();
+        List<InMemoryResourceMetric> inMemoryMetricsList = new ArrayList<>();
+
+        // Push the last collection metric to the in memory stats available at the
+        // compute-link/stats URI.
+        ServiceStats.ServiceStat minuteStats = new ServiceStats.ServiceStat();
+        String statsLink = getAdapterLinkFromURI(statsAdapterReference);
+        minuteStats.name = getLastCollectionMetricKeyForAdapterLink(statsLink, true);
+        minuteStats.latestValue = Utils.getNowMicrosUtc();
+        minuteStats.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
+        minuteStats.unit = PhotonModelConstants.UNIT_MICROSECONDS;
+        URI inMemoryStatsUri = UriUtils.buildStatsUri(UriUtils
+                .extendUri(UriUtils.buildUri(ClusterUtil.getClusterUri(host,
+                        ServiceTypeCluster.DISCOVERY_SERVICE)), computeLink));
+        operations.add(Operation.createPost(inMemoryStatsUri).setBody(minuteStats));
+        populateResourceMetrics(metricsList,
+                getLastCollectionMetricKeyForAdapterLink(statsLink, false),
+                minuteStats, computeLink, expirationTime);
+
+        for (ComputeStats stats : statsList) {
+            // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-330
+
+            String computeId = UriUtils.getLastPathSegment(stats.computeLink);
+
+            InMemoryResourceMetric hourlyMemoryState = new InMemoryResourceMetric();
+            hourlyMemoryState.timeSeriesStats = new HashMap<>();
+            hourlyMemoryState.documentSelfLink = computeId + StatsConstants.HOUR_SUFFIX;
+
+            inMemoryMetricsList.add(hourlyMemoryState);
+
+            for (Entry<String, List<ServiceStat>> entries : stats.statValues.entrySet()) {
+                // sort stats by source time
+                entries.getValue().sort(Comparator.comparing(o -> o.sourceTimeMicrosUtc));
+
+                // Persist every data point
+                for (ServiceStat serviceStat : entries.getValue()) {
+                    String statsComputeLink = stats.computeLink;
+                    if (statsComputeLink == null) {
+                        statsComputeLink = computeLink;
+                    }
+                    // update in-memory stats
+                    updateInMemoryStats(hourlyMemoryState, entries.getKey(), serviceStat,
+                            StatsConstants.BUCKET_SIZE_HOURS_IN_MILLIS);
+                    populateResourceMetrics(metricsList, entries.getKey(),
+                            serviceStat, statsComputeLink, expirationTime);
+                }
+            }
+        }
+        for (ResourceMetrics metrics : metricsList) {
+            operations.add(Operation.createPost(UriUtils.buildUri(
+                    ClusterUtil.getClusterUri(host, ServiceTypeCluster.METRIC_SERVICE),
+                    ResourceMetricsService.FACTORY_LINK)).setBodyNoCloning(metrics));
+        }
+        for (InMemoryResourceMetric metric : inMemoryMetricsList) {
+            operations.add(Operation.createPost(host, InMemoryResourceMetricService.FACTORY_LINK)
+                            .setBodyNoCloning(metric));
+        }
+        return operations;
+    }
+
+    private static void updateInMemoryStats(InMemoryResourceMetric inMemoryMetric,
+            String metricKey, ServiceStat serviceStat, int bucketSize) {
         // update in-memory stats
         if (inMemoryMetric.timeSeriesStats.containsKey(metricKey)) {
             inMemoryMetric.timeSeriesStats.get(metricKey)
@@ -475,7 +522,7 @@ public class SingleResourceStatsCollectionTaskService
         }
     }
 
-    private void populateResourceMetrics(List<ResourceMetrics> metricsList,
+    private static void populateResourceMetrics(List<ResourceMetrics> metricsList,
             String metricName,
             ServiceStat serviceStat,
             String computeLink, long expirationTime) {
@@ -511,55 +558,58 @@ public class SingleResourceStatsCollectionTaskService
      *
      * Else, the ResoureMetric table is queried and the latest version of the metric is used
      * to determine the last collection time for the stats.
+     *
+     * The result is <code>null</code> if the last collection time is not known.
      */
-    private void populateLastCollectionTimeForMetricsInStatsRequest(
-            SingleResourceStatsCollectionTaskState currentState,
-            ComputeStatsRequest computeStatsRequest, URI patchUri, List<String> tenantLinks) {
+    static DeferredResult<Long> getLastCollectionTime(Service sender, String computeLink,
+            URI statsAdapterReference, List<String> tenantLinks) {
         URI computeStatsUri = UriUtils
-                .buildStatsUri(UriUtils.extendUri(ClusterUtil.getClusterUri(getHost(),
-                        ServiceTypeCluster.DISCOVERY_SERVICE), currentState.computeLink));
+                .buildStatsUri(UriUtils.extendUri(ClusterUtil.getClusterUri(sender.getHost(),
+                        ServiceTypeCluster.DISCOVERY_SERVICE), computeLink));
+        DeferredResult<Long> result = new DeferredResult<>();
         Operation.createGet(computeStatsUri)
                 .setCompletion((o, e) -> {
                     if (e != null) {
-                        logSevere(() -> String.format("Could not get the last collection time from"
-                                        + " in memory stats: %s", Utils.toString(e)));
+                        Utils.log(SingleResourceStatsCollectionTaskService.class,
+                                sender.getSelfLink(), Level.SEVERE,
+                                "Could not get the last collection time from in memory stats: %s",
+                                Utils.toString(e));
                         // get the value from the persisted store.
-                        populateLastCollectionTimeFromPersistenceStore(currentState,
-                                computeStatsRequest, patchUri, tenantLinks);
+                        getLastCollectionTimeFromPersistenceStore(sender, computeLink,
+                                statsAdapterReference, tenantLinks, result);
                         return;
                     }
                     ServiceStats serviceStats = o.getBody(ServiceStats.class);
-                    String statsAdapterLink = getAdapterLinkFromURI(patchUri);
+                    String statsAdapterLink = getAdapterLinkFromURI(statsAdapterReference);
                     String lastSuccessfulRunMetricKey = getLastCollectionMetricKeyForAdapterLink(
                             statsAdapterLink, true);
                     if (serviceStats.entries.containsKey(lastSuccessfulRunMetricKey)) {
                         ServiceStat lastRunStat = serviceStats.entries
                                 .get(lastSuccessfulRunMetricKey);
-                        computeStatsRequest.lastCollectionTimeMicrosUtc =
-                                lastRunStat.sourceTimeMicrosUtc;
-                        sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+                        result.complete(lastRunStat.sourceTimeMicrosUtc);
                     } else {
-                        populateLastCollectionTimeFromPersistenceStore(currentState,
-                                computeStatsRequest, patchUri, tenantLinks);
+                        getLastCollectionTimeFromPersistenceStore(sender, computeLink,
+                                statsAdapterReference, tenantLinks, result);
                     }
                 })
-                .sendWith(this);
+                .sendWith(sender);
+        return result;
     }
 
     /**
-     * Queries the metric for the last successful run and sets that value in the compute stats request.
+     * Queries the metric for the last successful run.
      * This value is used to determine the window size for which the stats collection happens from the provider.
      */
-    private void populateLastCollectionTimeFromPersistenceStore(
-            SingleResourceStatsCollectionTaskState currentState,
-            ComputeStatsRequest computeStatsRequest, URI patchUri, List<String> tenantLinks) {
-        String statsAdapterLink = getAdapterLinkFromURI(patchUri);
+    private static void getLastCollectionTimeFromPersistenceStore(Service sender,
+            String computeLink, URI statsAdapterReference, List<String> tenantLinks,
+            DeferredResult<Long> result) {
+        String statsAdapterLink = getAdapterLinkFromURI(statsAdapterReference);
         String lastSuccessfulRunMetricKey = getLastCollectionMetricKeyForAdapterLink(
                 statsAdapterLink, false);
         Query.Builder builder = Query.Builder.create();
         builder.addKindFieldClause(ResourceMetrics.class);
         builder.addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
-                UriUtils.buildUriPath(ResourceMetricsService.FACTORY_LINK, UriUtils.getLastPathSegment(currentState.computeLink)),
+                UriUtils.buildUriPath(ResourceMetricsService.FACTORY_LINK, UriUtils.getLastPathSegment(computeLink)),
                 MatchType.PREFIX);
         builder.addRangeClause( QuerySpecification.buildCompositeFieldName(ResourceMetrics.FIELD_NAME_ENTRIES, lastSuccessfulRunMetricKey),
                 NumericRange.createDoubleRange(Double.MIN_VALUE, Double.MAX_VALUE, true, true));
@@ -574,51 +624,37 @@ public class SingleResourceStatsCollectionTaskService
                 .addOption(QueryOption.EXPAND_CONTENT)
                 .setQuery(builder.build()).build();
         task.tenantLinks = tenantLinks;
-        QueryUtils.startQueryTask(this, task, ServiceTypeCluster.METRIC_SERVICE)
+        QueryUtils.startQueryTask(sender, task, ServiceTypeCluster.METRIC_SERVICE)
                 .whenComplete((responseTask, e) -> {
                     if (e != null) {
-                        logSevere(
+                        Utils.log(SingleResourceStatsCollectionTaskService.class,
+                                sender.getSelfLink(), Level.SEVERE,
                                 "Could not get the last collection time from persisted metrics: %s",
                                 Utils.toString(e));
                         // Still continue calling into the adapter if the last known time for
                         // successful collection is not known
-                        sendStatsRequestToAdapter(currentState,
-                                patchUri, computeStatsRequest);
+                        result.complete(null);
                         return;
                     }
                     // If the persisted metric can be found, use the value of the last successful
                     // collection time otherwise do not set any value for the last collection time
                     // while sending the request to the adapter.
+                    Long lastCollectionTimeMicrosUtc = null;
                     if (responseTask.results.documentCount > 0) {
                         Object rawMetricObj = responseTask.results.documents
                                 .get(responseTask.results.documentLinks.get(0));
                         ResourceMetrics rawMetrics = Utils.fromJson(rawMetricObj,
                                 ResourceMetrics.class);
-                        computeStatsRequest.lastCollectionTimeMicrosUtc =
-                                rawMetrics.timestampMicrosUtc;
+                        lastCollectionTimeMicrosUtc = rawMetrics.timestampMicrosUtc;
                     }
-                    sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+                    result.complete(lastCollectionTimeMicrosUtc);
                 });
     }
 
-    /**
-     * Sends the Stats request to the Stats adapter
-     */
-    private void sendStatsRequestToAdapter(SingleResourceStatsCollectionTaskState currentState,
-            URI patchUri, Object patchBody) {
-        sendRequest(Operation.createPatch(patchUri)
-                .setBody(patchBody)
-                .setCompletion((patchOp, patchEx) -> {
-                    if (patchEx != null) {
-                        TaskUtils.sendFailurePatch(this, currentState, patchEx);
-                    }
-                }));
-    }
-
     /**
      * Forms the key to be used for looking up the last collection time for a given stats adapter.
      */
-    public String getLastCollectionMetricKeyForAdapterLink(String statsAdapterLink,
+    public static String getLastCollectionMetricKeyForAdapterLink(String statsAdapterLink,
             boolean appendBucketSuffix) {
         String lastSuccessfulRunMetricKey = UriUtils.getLastPathSegment(statsAdapterLink) + StatsUtil.SEPARATOR
                 + PhotonModelConstants.LAST_SUCCESSFUL_STATS_COLLECTION_TIME;
@@ -631,7 +667,7 @@ public class SingleResourceStatsCollectionTaskService
     /**
      * Returns the path from the patchUri.
      */
-    private String getAdapterLinkFromURI(URI patchUri) {
+    private static String getAdapterLinkFromURI(URI patchUri) {
         return patchUri.getPath();
     }
 }
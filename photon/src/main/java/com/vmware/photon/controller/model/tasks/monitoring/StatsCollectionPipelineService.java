@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.tasks.monitoring;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateWithDescription;
+import com.vmware.photon.controller.model.tasks.ServiceTaskCallback;
+import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
+import com.vmware.photon.controller.model.util.ClusterUtil;
+import com.vmware.photon.controller.model.util.ClusterUtil.ServiceTypeCluster;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Collects the stats of computes without creating a task document per compute. Used by the
+ * {@link StatsCollectionTaskService} instead of the {@link SingleResourceStatsCollectionTaskService}
+ * when {@link StatsCollectionTaskService#STATS_COLLECTION_PIPELINE} is set.
+ *
+ * The computes of all requests are put in a single queue and collected by a bounded number of
+ * concurrent collections. The stats adapters are called in parallel and patch the stats back to
+ * this service, with the id of the collection in the query of the task reference, and the stats
+ * are persisted in parallel batches. A request is completed as soon as its computes are queued, so
+ * no request is held open while they are collected. The optional task callback of the request is
+ * notified once all of its computes are collected, whether successfully or not.
+ *
+ * The collection lag, i.e. the time from queueing a compute to persisting its stats, and the
+ * throughput of each stats adapter are available in the stats of this service.
+ */
+public class StatsCollectionPipelineService extends StatelessService {
+
+    public static final String SELF_LINK = UriPaths.MONITORING + "/stats-collection-pipeline";
+
+    public static final String QUERY_PARAM_COLLECTION_ID = "collectionId";
+
+    public static final String MAX_CONCURRENT_COLLECTIONS = UriPaths.PROPERTY_PREFIX
+            + "StatsCollectionPipelineService.maxConcurrentCollections";
+    private static final int DEFAULT_MAX_CONCURRENT_COLLECTIONS = 50;
+
+    public static final String PERSIST_BATCH_SIZE = UriPaths.PROPERTY_PREFIX
+            + "StatsCollectionPipelineService.persistBatchSize";
+    private static final int DEFAULT_PERSIST_BATCH_SIZE = 100;
+
+    public static final String COLLECTION_TIMEOUT_MINUTES = UriPaths.PROPERTY_PREFIX
+            + "StatsCollectionPipelineService.collection.timeoutMinutes";
+    private static final long DEFAULT_COLLECTION_TIMEOUT_MINUTES = 10;
+
+    public static final String STAT_NAME_QUEUE_DEPTH = "queueDepth";
+    public static final String STAT_NAME_ACTIVE_COLLECTIONS = "activeCollections";
+    public static final String STAT_NAME_COLLECTION_LAG_MICROS = "collectionLagMicros";
+    public static final String STAT_NAME_FAILED_COLLECTIONS = "failedCollections";
+    // prefixed with the last path segment of the stats adapter
+    public static final String STAT_NAME_SUFFIX_COLLECTED_RESOURCES = ".collectedResources";
+    public static final String STAT_NAME_SUFFIX_PERSISTED_METRICS = ".persistedMetrics";
+    public static final String STAT_NAME_SUFFIX_RESOURCES_PER_MINUTE = ".resourcesPerMinute";
+
+    private static final long THROUGHPUT_WINDOW_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final int maxConcurrentCollections = Integer.getInteger(MAX_CONCURRENT_COLLECTIONS,
+            DEFAULT_MAX_CONCURRENT_COLLECTIONS);
+    private final int persistBatchSize = Integer.getInteger(PERSIST_BATCH_SIZE,
+            DEFAULT_PERSIST_BATCH_SIZE);
+    private final long collectionTimeoutMinutes = Long.getLong(COLLECTION_TIMEOUT_MINUTES,
+            DEFAULT_COLLECTION_TIMEOUT_MINUTES);
+
+    // guarded by queue
+    private final Deque<ResourceCollection> queue = new ArrayDeque<>();
+    private int activeCollections;
+
+    private final Map<String, ResourceCollection> collectionsById = new ConcurrentHashMap<>();
+    private final Map<String, AdapterThroughput> throughputByAdapter = new ConcurrentHashMap<>();
+
+    /**
+     * Request to collect the stats of the given computes.
+     */
+    public static class StatsCollectionPipelineRequest {
+        public List<String> computeLinks;
+
+        /**
+         * Optional stats adapter to collect the stats from, see
+         * {@link StatsCollectionTaskService.StatsCollectionTaskState#statsAdapterReference}.
+         */
+        public URI statsAdapterReference;
+
+        /**
+         * Optional callback notified once all the computes of the request are collected.
+         */
+        public ServiceTaskCallback<?> serviceTaskCallback;
+    }
+
+    public static class StatsCollectionPipelineResponse {
+        /**
+         * Number of computes queued for collection by the request.
+         */
+        public int queuedCount;
+
+        /**
+         * Number of computes in the queue, including the ones of the request.
+         */
+        public int queueDepth;
+    }
+
+    /**
+     * The collection of the stats of a single compute.
+     */
+    private static class ResourceCollection {
+        final String id = UUID.randomUUID().toString();
+        final String computeLink;
+        final CollectionRequest request;
+        final long queuedTimeMicros = Utils.getNowMicrosUtc();
+
+        volatile URI statsAdapterReference;
+        // batches of stats patched back by the adapter and not persisted yet
+        final AtomicInteger pendingBatches = new AtomicInteger();
+        volatile boolean finalBatchReceived;
+        volatile boolean failed;
+
+        ResourceCollection(String computeLink, CollectionRequest request) {
+            this.computeLink = computeLink;
+            this.request = request;
+        }
+    }
+
+    /**
+     * A request in progress, completed when all of its collections are.
+     */
+    private static class CollectionRequest {
+        final ServiceTaskCallback<?> callback;
+        final URI statsAdapterReference;
+        final AtomicInteger remaining;
+        final AtomicInteger failed = new AtomicInteger();
+
+        CollectionRequest(ServiceTaskCallback<?> callback, URI statsAdapterReference, int size) {
+            this.callback = callback;
+            this.statsAdapterReference = statsAdapterReference;
+            this.remaining = new AtomicInteger(size);
+        }
+    }
+
+    /**
+     * Number of computes collected by a stats adapter in the current and in the last window.
+     */
+    private static class AdapterThroughput {
+        long windowStartMicros = Utils.getNowMicrosUtc();
+        long windowCount;
+
+        synchronized long add(long nowMicros) {
+            long lastWindowCount = -1;
+            if (nowMicros - windowStartMicros >= THROUGHPUT_WINDOW_MICROS) {
+                lastWindowCount = windowCount;
+                windowStartMicros = nowMicros;
+                windowCount = 0;
+            }
+            windowCount++;
+            return lastWindowCount;
+        }
+    }
+
+    public StatsCollectionPipelineService() {
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+    }
+
+    @Override
+    public void handlePost(Operation post) {
+        if (!post.hasBody()) {
+            post.fail(new IllegalArgumentException("body is required"));
+            return;
+        }
+        StatsCollectionPipelineRequest body = post.getBody(StatsCollectionPipelineRequest.class);
+        StatsCollectionPipelineResponse response = new StatsCollectionPipelineResponse();
+        if (body.computeLinks == null || body.computeLinks.isEmpty()) {
+            post.setBody(response).complete();
+            ServiceTaskCallback.sendResponse(body.serviceTaskCallback, this, (Throwable) null);
+            return;
+        }
+
+        CollectionRequest request = new CollectionRequest(body.serviceTaskCallback,
+                body.statsAdapterReference, body.computeLinks.size());
+        synchronized (queue) {
+            for (String computeLink : body.computeLinks) {
+                queue.add(new ResourceCollection(computeLink, request));
+            }
+            response.queuedCount = body.computeLinks.size();
+            response.queueDepth = queue.size();
+        }
+        post.setBody(response).complete();
+        startCollections();
+    }
+
+    /**
+     * Handles the stats, or the failure, patched back by a stats adapter.
+     */
+    @Override
+    public void handlePatch(Operation patch) {
+        String collectionId = UriUtils.parseUriQueryParams(patch.getUri())
+                .get(QUERY_PARAM_COLLECTION_ID);
+        ResourceCollection collection = collectionId != null
+                ? collectionsById.get(collectionId) : null;
+        if (collection == null) {
+            patch.fail(new IllegalArgumentException(
+                    String.format("Unknown stats collection: %s", collectionId)));
+            return;
+        }
+        SingleResourceStatsCollectionTaskState body = patch
+                .getBody(SingleResourceStatsCollectionTaskState.class);
+        patch.complete();
+
+        if (body.taskInfo != null && TaskState.isFailed(body.taskInfo)) {
+            logWarning(() -> String.format("Failed stats collection for %s: %s",
+                    collection.computeLink, body.taskInfo.failure != null
+                            ? body.taskInfo.failure.message : null));
+            collection.failed = true;
+            completeCollection(collection);
+            return;
+        }
+
+        collection.pendingBatches.incrementAndGet();
+        if (body.isFinalBatch) {
+            collection.finalBatchReceived = true;
+        }
+        persistStats(collection, body);
+    }
+
+    private void startCollections() {
+        List<ResourceCollection> started = new ArrayList<>();
+        synchronized (queue) {
+            while (activeCollections < maxConcurrentCollections && !queue.isEmpty()) {
+                started.add(queue.poll());
+                activeCollections++;
+            }
+            setStat(STAT_NAME_QUEUE_DEPTH, queue.size());
+            setStat(STAT_NAME_ACTIVE_COLLECTIONS, activeCollections);
+        }
+        started.forEach(this::startCollection);
+    }
+
+    private void startCollection(ResourceCollection collection) {
+        collectionsById.put(collection.id, collection);
+        getHost().schedule(() -> {
+            if (collectionsById.containsKey(collection.id)) {
+                logWarning(() -> String.format("Stats collection for %s timed out",
+                        collection.computeLink));
+                collection.failed = true;
+                completeCollection(collection);
+            }
+        }, collectionTimeoutMinutes, TimeUnit.MINUTES);
+
+        URI computeDescUri = ComputeStateWithDescription
+                .buildUri(UriUtils.extendUri(ClusterUtil.getClusterUri(getHost(),
+                        ServiceTypeCluster.DISCOVERY_SERVICE), collection.computeLink));
+        sendWithDeferredResult(Operation.createGet(computeDescUri),
+                ComputeStateWithDescription.class)
+                .thenCompose(computeStateWithDesc -> {
+                    ComputeDescription description = computeStateWithDesc.description;
+                    collection.statsAdapterReference = SingleResourceStatsCollectionTaskService
+                            .getStatsAdapterReference(description,
+                                    collection.request.statsAdapterReference);
+                    if (collection.statsAdapterReference == null) {
+                        // no adapter associated with this resource
+                        return DeferredResult.completed((Operation) null);
+                    }
+
+                    ComputeStatsRequest statsRequest = SingleResourceStatsCollectionTaskService
+                            .createStatsRequest(getHost(), computeStateWithDesc.documentSelfLink,
+                                    UriUtils.extendUriWithQuery(getUri(),
+                                            QUERY_PARAM_COLLECTION_ID, collection.id));
+                    return SingleResourceStatsCollectionTaskService
+                            .getLastCollectionTime(this, collection.computeLink,
+                                    collection.statsAdapterReference, description.tenantLinks)
+                            .thenCompose(lastCollectionTimeMicrosUtc -> {
+                                statsRequest.lastCollectionTimeMicrosUtc =
+                                        lastCollectionTimeMicrosUtc;
+                                return sendWithDeferredResult(Operation
+                                        .createPatch(collection.statsAdapterReference)
+                                        .setBody(statsRequest));
+                            });
+                })
+                .whenComplete((o, e) -> {
+                    if (e != null) {
+                        logWarning(() -> String.format("Failed stats collection for %s: %s",
+                                collection.computeLink, Utils.toString(e)));
+                        collection.failed = true;
+                        completeCollection(collection);
+                    } else if (collection.statsAdapterReference == null) {
+                        completeCollection(collection);
+                    }
+                    // otherwise completed once the adapter patches the stats back
+                });
+    }
+
+    private void persistStats(ResourceCollection collection,
+            SingleResourceStatsCollectionTaskState body) {
+        if (body.statsList == null || body.statsList.isEmpty()) {
+            completeBatch(collection);
+            return;
+        }
+
+        // the metric keys are time based and unique, so the metrics are persisted in parallel
+        List<Operation> operations = SingleResourceStatsCollectionTaskService
+                .createPersistStatsOperations(getHost(), collection.computeLink,
+                        collection.statsAdapterReference, body.statsList);
+        OperationJoin.create(operations)
+                .setCompletion((ops, exs) -> {
+                    if (exs != null) {
+                        logWarning(() -> String.format("Failed persisting stats of %s: %s",
+                                collection.computeLink,
+                                Utils.toString(exs.values().iterator().next())));
+                        collection.failed = true;
+                    } else {
+                        adjustStat(getAdapterStatPrefix(collection)
+                                + STAT_NAME_SUFFIX_PERSISTED_METRICS, operations.size());
+                    }
+                    completeBatch(collection);
+                })
+                .sendWith(this, persistBatchSize);
+    }
+
+    private void completeBatch(ResourceCollection collection) {
+        if (collection.pendingBatches.decrementAndGet() == 0 && collection.finalBatchReceived) {
+            completeCollection(collection);
+        }
+    }
+
+    private void completeCollection(ResourceCollection collection) {
+        if (collectionsById.remove(collection.id) == null) {
+            // already completed, e.g. timed out
+            return;
+        }
+
+        long nowMicros = Utils.getNowMicrosUtc();
+        if (collection.failed) {
+            adjustStat(STAT_NAME_FAILED_COLLECTIONS, 1);
+        } else {
+            setStat(STAT_NAME_COLLECTION_LAG_MICROS, nowMicros - collection.queuedTimeMicros);
+            if (collection.statsAdapterReference != null) {
+                String prefix = getAdapterStatPrefix(collection);
+                adjustStat(prefix + STAT_NAME_SUFFIX_COLLECTED_RESOURCES, 1);
+                long lastWindowCount = throughputByAdapter
+                        .computeIfAbsent(prefix, k -> new AdapterThroughput())
+                        .add(nowMicros);
+                if (lastWindowCount >= 0) {
+                    setStat(prefix + STAT_NAME_SUFFIX_RESOURCES_PER_MINUTE, lastWindowCount);
+                }
+            }
+        }
+
+        CollectionRequest request = collection.request;
+        if (collection.failed) {
+            request.failed.incrementAndGet();
+        }
+        if (request.remaining.decrementAndGet() == 0) {
+            // failed collections are counted in the stats and do not fail the caller
+            if (request.failed.get() > 0) {
+                logWarning(() -> String.format("Stats collection failed for %d computes",
+                        request.failed.get()));
+            }
+            ServiceTaskCallback.sendResponse(request.callback, this, (Throwable) null);
+        }
+
+        synchronized (queue) {
+            activeCollections--;
+        }
+        startCollections();
+    }
+
+    private static String getAdapterStatPrefix(ResourceCollection collection) {
+        return UriUtils.getLastPathSegment(collection.statsAdapterReference.getPath());
+    }
+}
@@ -27,6 +27,7 @@ import com.vmware.photon.controller.model.tasks.SubTaskService.SubTaskState;
 import com.vmware.photon.controller.model.tasks.TaskOption;
 import com.vmware.photon.controller.model.tasks.TaskUtils;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionPipelineService.StatsCollectionPipelineRequest;
 import com.vmware.photon.controller.model.util.ClusterUtil;
 import com.vmware.photon.controller.model.util.ClusterUtil.ServiceTypeCluster;
 import com.vmware.xenon.common.FactoryService;
@@ -73,6 +74,13 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
             "StatsCollectionTaskService.expiration.hours";
     private static final int DEFAULT_COLLECTION_EXPIRATION_HOURS = 12;
 
+    /**
+     * Collect the stats of the computes with the {@link StatsCollectionPipelineService} instead of
+     * a {@link SingleResourceStatsCollectionTaskService} per compute.
+     */
+    public static final String STATS_COLLECTION_PIPELINE = UriPaths.PROPERTY_PREFIX
+            + "StatsCollectionTaskService.pipeline";
+
     public enum StatsCollectionStage {
         INIT, GET_RESOURCES
     }
@@ -305,11 +313,45 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
                                 TaskUtils.sendPatch(this, patchBody);
                                 return;
                             }
-                            createSubTask(page.results.documentLinks, page.results.nextPageLink,
-                                    currentState);
+                            if (Boolean.getBoolean(STATS_COLLECTION_PIPELINE)) {
+                                collectWithPipeline(page.results.documentLinks,
+                                        page.results.nextPageLink, currentState);
+                            } else {
+                                createSubTask(page.results.documentLinks,
+                                        page.results.nextPageLink, currentState);
+                            }
                         }));
     }
 
+    /**
+     * Queues a page of computes in the {@link StatsCollectionPipelineService}, which calls back
+     * once they are collected to get the next page.
+     */
+    private void collectWithPipeline(List<String> computeResources, String nextPageLink,
+            StatsCollectionTaskState currentState) {
+        ServiceTaskCallback<StatsCollectionStage> callback = ServiceTaskCallback
+                .create(UriUtils.buildPublicUri(getHost(), getSelfLink()));
+        if (nextPageLink != null) {
+            callback.onSuccessTo(StatsCollectionStage.GET_RESOURCES)
+                    .addProperty(PROP_NEXT_PAGE_LINK, nextPageLink);
+        } else {
+            callback.onSuccessFinishTask();
+        }
+
+        StatsCollectionPipelineRequest request = new StatsCollectionPipelineRequest();
+        request.computeLinks = computeResources;
+        request.statsAdapterReference = currentState.statsAdapterReference;
+        request.serviceTaskCallback = callback;
+        sendRequest(Operation
+                .createPost(this, StatsCollectionPipelineService.SELF_LINK)
+                .setBody(request)
+                .setCompletion((postOp, postEx) -> {
+                    if (postEx != null) {
+                        TaskUtils.sendFailurePatch(this, new StatsCollectionTaskState(), postEx);
+                    }
+                }));
+    }
+
     private void createSubTask(List<String> computeResources, String nextPageLink,
             StatsCollectionTaskState currentState) {
         ServiceTaskCallback<StatsCollectionStage> callback = ServiceTaskCallback
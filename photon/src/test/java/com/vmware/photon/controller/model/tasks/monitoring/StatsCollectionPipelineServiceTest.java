@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.tasks.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.PhotonModelMetricServices;
+import com.vmware.photon.controller.model.PhotonModelServices;
+import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
+import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.ComputeStats;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.photon.controller.model.tasks.PhotonModelTaskServices;
+import com.vmware.photon.controller.model.tasks.ServiceTaskCallback;
+import com.vmware.photon.controller.model.tasks.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
+import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceTaskCollectionStage;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionPipelineService.StatsCollectionPipelineRequest;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionPipelineService.StatsCollectionPipelineResponse;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionTaskService.StatsCollectionTaskState;
+import com.vmware.xenon.common.BasicReusableHostTestCase;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.TestRequestSender;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class StatsCollectionPipelineServiceTest extends BasicReusableHostTestCase {
+
+    private static final int COMPUTES_COUNT = 3;
+    private static final String METRIC_NAME = "CPUUtilizationPercent";
+
+    private TestRequestSender sender;
+    private ResourcePoolState resourcePool;
+    private List<String> computeLinks;
+
+    @Before
+    public void setUp() throws Throwable {
+        if (this.host.getServiceStage(StatsCollectionPipelineService.SELF_LINK) == null) {
+            PhotonModelServices.startServices(this.host);
+            PhotonModelMetricServices.startServices(this.host);
+            PhotonModelTaskServices.startServices(this.host);
+            this.host.startServiceAndWait(MockStatsAdapter.class, MockStatsAdapter.SELF_LINK);
+            this.host.waitForServiceAvailable(PhotonModelServices.LINKS);
+            this.host.waitForServiceAvailable(PhotonModelMetricServices.LINKS);
+            this.host.waitForServiceAvailable(PhotonModelTaskServices.LINKS);
+        }
+        this.sender = this.host.getTestRequestSender();
+        MockStatsAdapter.heldRequests.clear();
+        MockStatsAdapter.hold = false;
+
+        this.resourcePool = new ResourcePoolState();
+        this.resourcePool.id = UUID.randomUUID().toString();
+        this.resourcePool.name = this.resourcePool.id;
+        this.resourcePool = this.sender.sendAndWait(Operation
+                .createPost(this.host, ResourcePoolService.FACTORY_LINK)
+                .setBody(this.resourcePool), ResourcePoolState.class);
+
+        ComputeDescription description = new ComputeDescription();
+        description.id = UUID.randomUUID().toString();
+        description.statsAdapterReference = UriUtils.buildUri(this.host,
+                MockStatsAdapter.SELF_LINK);
+        description = this.sender.sendAndWait(Operation
+                .createPost(this.host, ComputeDescriptionService.FACTORY_LINK)
+                .setBody(description), ComputeDescription.class);
+
+        this.computeLinks = new ArrayList<>();
+        for (int i = 0; i < COMPUTES_COUNT; i++) {
+            ComputeState compute = new ComputeState();
+            compute.id = UUID.randomUUID().toString();
+            compute.descriptionLink = description.documentSelfLink;
+            compute.resourcePoolLink = this.resourcePool.documentSelfLink;
+            compute = this.sender.sendAndWait(Operation
+                    .createPost(this.host, ComputeService.FACTORY_LINK)
+                    .setBody(compute), ComputeState.class);
+            this.computeLinks.add(compute.documentSelfLink);
+        }
+    }
+
+    @Test
+    public void testRequestCompletesOnceQueued() throws Throwable {
+        double collectedBefore = getCollectedResources();
+        MockStatsAdapter.hold = true;
+
+        AtomicReference<ServiceTaskCallbackResponse<?>> callbackResponse =
+                new AtomicReference<>();
+        TestContext ctx = this.host.testCreate(1);
+        String callbackLink = startCallbackService(callbackResponse, ctx);
+
+        StatsCollectionPipelineRequest request = new StatsCollectionPipelineRequest();
+        request.computeLinks = this.computeLinks;
+        request.serviceTaskCallback = ServiceTaskCallback
+                .create(UriUtils.buildUri(this.host, callbackLink))
+                .onSuccessFinishTask();
+        StatsCollectionPipelineResponse response = this.sender.sendAndWait(Operation
+                .createPost(this.host, StatsCollectionPipelineService.SELF_LINK)
+                .setBody(request), StatsCollectionPipelineResponse.class);
+
+        // the request is completed while the adapter still holds the collections
+        assertEquals(COMPUTES_COUNT, response.queuedCount);
+        this.host.waitFor("Stats adapter not called", () ->
+                MockStatsAdapter.heldRequests.size() == COMPUTES_COUNT);
+        assertNull(callbackResponse.get());
+
+        MockStatsAdapter.releaseHeldRequests(this.host);
+        ctx.await();
+
+        assertEquals(TaskStage.FINISHED, callbackResponse.get().taskInfo.stage);
+        assertEquals(collectedBefore + COMPUTES_COUNT, getCollectedResources(), 0);
+        assertTrue(getStat(MockStatsAdapter.NAME
+                + StatsCollectionPipelineService.STAT_NAME_SUFFIX_PERSISTED_METRICS) > 0);
+    }
+
+    @Test
+    public void testEmptyRequestNotifiesCallback() throws Throwable {
+        AtomicReference<ServiceTaskCallbackResponse<?>> callbackResponse =
+                new AtomicReference<>();
+        TestContext ctx = this.host.testCreate(1);
+        String callbackLink = startCallbackService(callbackResponse, ctx);
+
+        StatsCollectionPipelineRequest request = new StatsCollectionPipelineRequest();
+        request.computeLinks = Collections.emptyList();
+        request.serviceTaskCallback = ServiceTaskCallback
+                .create(UriUtils.buildUri(this.host, callbackLink))
+                .onSuccessFinishTask();
+        StatsCollectionPipelineResponse response = this.sender.sendAndWait(Operation
+                .createPost(this.host, StatsCollectionPipelineService.SELF_LINK)
+                .setBody(request), StatsCollectionPipelineResponse.class);
+        ctx.await();
+
+        assertEquals(0, response.queuedCount);
+        assertEquals(TaskStage.FINISHED, callbackResponse.get().taskInfo.stage);
+    }
+
+    @Test
+    public void testStatsCollectionTaskUsesPipeline() throws Throwable {
+        double collectedBefore = getCollectedResources();
+        System.setProperty(StatsCollectionTaskService.STATS_COLLECTION_PIPELINE,
+                Boolean.TRUE.toString());
+        try {
+            StatsCollectionTaskState task = new StatsCollectionTaskState();
+            task.resourcePoolLink = this.resourcePool.documentSelfLink;
+            String taskLink = this.sender.sendAndWait(Operation
+                    .createPost(this.host, StatsCollectionTaskService.FACTORY_LINK)
+                    .setBody(task), StatsCollectionTaskState.class).documentSelfLink;
+
+            this.host.waitFor("Stats collection task did not finish", () -> {
+                StatsCollectionTaskState state = this.sender.sendAndWait(
+                        Operation.createGet(this.host, taskLink),
+                        StatsCollectionTaskState.class);
+                return state.taskInfo.stage == TaskStage.FINISHED;
+            });
+        } finally {
+            System.clearProperty(StatsCollectionTaskService.STATS_COLLECTION_PIPELINE);
+        }
+
+        assertEquals(collectedBefore + COMPUTES_COUNT, getCollectedResources(), 0);
+        // no task document is created per compute
+        ServiceDocumentQueryResult singleResourceTasks = this.sender.sendAndWait(
+                Operation.createGet(this.host,
+                        SingleResourceStatsCollectionTaskService.FACTORY_LINK),
+                ServiceDocumentQueryResult.class);
+        assertTrue(singleResourceTasks.documentLinks.isEmpty());
+    }
+
+    private String startCallbackService(
+            AtomicReference<ServiceTaskCallbackResponse<?>> callbackResponse,
+            TestContext ctx) throws Throwable {
+        String callbackLink = UriUtils.buildUriPath("test", "callback",
+                UUID.randomUUID().toString());
+        this.host.startServiceAndWait(new StatelessService() {
+            @Override
+            public void handlePatch(Operation patch) {
+                callbackResponse.set(patch.getBody(ServiceTaskCallbackResponse.class));
+                patch.complete();
+                ctx.completeIteration();
+            }
+        }, callbackLink, null);
+        return callbackLink;
+    }
+
+    private double getCollectedResources() {
+        return getStat(MockStatsAdapter.NAME
+                + StatsCollectionPipelineService.STAT_NAME_SUFFIX_COLLECTED_RESOURCES);
+    }
+
+    private double getStat(String name) {
+        ServiceStats stats = this.sender.sendAndWait(Operation.createGet(
+                UriUtils.buildStatsUri(this.host, StatsCollectionPipelineService.SELF_LINK)),
+                ServiceStats.class);
+        ServiceStat stat = stats.entries.get(name);
+        return stat != null ? stat.latestValue : 0;
+    }
+
+    /**
+     * Stats adapter reporting a single metric for every compute. The requests can be held to
+     * keep the collections in progress.
+     */
+    public static class MockStatsAdapter extends StatelessService {
+        static final String NAME = "mock-stats-adapter";
+        static final String SELF_LINK = UriUtils.buildUriPath("test", NAME);
+
+        static final List<ComputeStatsRequest> heldRequests =
+                Collections.synchronizedList(new ArrayList<>());
+        static volatile boolean hold;
+
+        @Override
+        public void handlePatch(Operation patch) {
+            ComputeStatsRequest request = patch.getBody(ComputeStatsRequest.class);
+            patch.complete();
+            if (hold) {
+                heldRequests.add(request);
+                return;
+            }
+            sendRequest(createStatsPatch(request));
+        }
+
+        static void releaseHeldRequests(VerificationHost host) {
+            hold = false;
+            List<ComputeStatsRequest> requests;
+            synchronized (heldRequests) {
+                requests = new ArrayList<>(heldRequests);
+                heldRequests.clear();
+            }
+            for (ComputeStatsRequest request : requests) {
+                host.send(createStatsPatch(request).setReferer(host.getUri()));
+            }
+        }
+
+        static Operation createStatsPatch(ComputeStatsRequest request) {
+            ServiceStat stat = new ServiceStat();
+            stat.name = METRIC_NAME;
+            stat.latestValue = 10;
+            stat.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
+            stat.unit = "%";
+
+            ComputeStats stats = new ComputeStats();
+            stats.computeLink = request.resourceReference.getPath();
+            stats.statValues = new HashMap<>();
+            stats.statValues.put(METRIC_NAME, Collections.singletonList(stat));
+
+            SingleResourceStatsCollectionTaskState body =
+                    new SingleResourceStatsCollectionTaskState();
+            body.taskStage = SingleResourceTaskCollectionStage.valueOf(request.nextStage);
+            body.statsList = Collections.singletonList(stats);
+            body.computeLink = stats.computeLink;
+            body.isFinalBatch = true;
+            return Operation.createPatch(request.taskReference).setBody(body);
+        }
+    }
+}
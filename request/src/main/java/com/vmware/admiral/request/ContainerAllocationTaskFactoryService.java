@@ -64,6 +64,9 @@ public class ContainerAllocationTaskFactoryService extends AbstractSecuredFactor
         super(ContainerAllocationTaskState.class);
         super.toggleOption(ServiceOption.PERSISTENCE, true);
         super.toggleOption(ServiceOption.REPLICATION, true);
+        // keeps the allocation rate reported by the tasks, see
+        // ContainerAllocationTaskService.STAT_NAME_CONTAINERS_PER_SECOND
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
     }
 
     @Override
@@ -77,6 +77,9 @@ import com.vmware.photon.controller.model.resources.ResourceState;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
@@ -91,9 +94,23 @@ public class ContainerAllocationTaskService extends
     public static final String HEALTH_CHECK_TIMEOUT_PARAM_NAME = "provision.container.health.check.timeout.ms";
     public static final String HEALTH_CHECK_DELAY_PARAM_NAME = "provision.container.health.check.delay.ms";
 
+    // stat of the factory with the rate of the last bulk allocation handled by the node
+    public static final String STAT_NAME_CONTAINERS_PER_SECOND = "containersPerSecond";
+    private static final String STAT_UNIT_CONTAINERS_PER_SECOND = "containers/sec";
+
+    // requests for at least that many containers are allocated in bulk, 0 disables bulk mode
+    public static final long BULK_ALLOCATION_THRESHOLD = Long.getLong(
+            "dcp.management.container.allocation.bulk.threshold", 10);
+    // the count of container states created in parallel in bulk mode
+    private static final int BULK_ALLOCATION_BATCH_SIZE = Integer.getInteger(
+            "dcp.management.container.allocation.bulk.batch.size", 100);
+
     // cached container description
     private volatile ContainerDescription containerDescription;
 
+    // the start of a bulk allocation handled by this node, 0 if none
+    private volatile long bulkAllocationStartMicros;
+
     private long healthCheckDelay;
     private long healthCheckTimeout;
 
@@ -260,9 +277,11 @@ public class ContainerAllocationTaskService extends
         case PROVISIONING:
             break;
         case WAITING_FOR_HEALTH_CHECK:
+            reportAllocationRate(state);
             waitForHealthCheck(state);
             break;
         case COMPLETED:
+            reportAllocationRate(state);
             completeTask(state);
             break;
         case ERROR:
@@ -581,6 +600,12 @@ public class ContainerAllocationTaskService extends
     private void createContainerStates(ContainerAllocationTaskState state,
             ContainerDescription containerDesc,
             ServiceTaskCallback taskCallback) {
+        if (isBulkAllocation(state)) {
+            getContainerDescription(state,
+                    (contDesc) -> createContainerStatesInBulk(state, contDesc));
+            return;
+        }
+
         final boolean allocationRequest = isAllocationRequest(state);
         if (taskCallback == null) {
             // create a counter subtask link to move to ALLOCATE_PORTS state when finished
@@ -630,11 +655,97 @@ public class ContainerAllocationTaskService extends
         logInfo("Provision request for %s containers", state.resourceCount);
 
         for (String resourceLink : state.resourceLinks) {
-            createContainerInstanceRequests(state, taskCallback, resourceLink);
+            sendRequest(createContainerInstanceRequest(state, taskCallback, resourceLink));
         }
         proceedTo(SubStage.PROVISIONING);
     }
 
+    /**
+     * Creates all container states with a single lookup of the placement and with batches of
+     * parallel requests, instead of a lookup and a request tracked by a counter sub task for
+     * every container.
+     */
+    private void createContainerStatesInBulk(ContainerAllocationTaskState state,
+            ContainerDescription containerDesc) {
+        logInfo("Bulk allocate request for %s containers", state.resourceCount);
+        bulkAllocationStartMicros = Utils.getSystemNowMicrosUtc();
+
+        getResourcePlacementState(state, (placementState) -> {
+            if (isClusteringOperation(state)) {
+                getCompositeComponent(state,
+                        (isTemplate) -> createContainerStatesInBulk(state, containerDesc,
+                                isTemplate, placementState));
+            } else {
+                createContainerStatesInBulk(state, containerDesc, null, placementState);
+            }
+        });
+    }
+
+    private void createContainerStatesInBulk(ContainerAllocationTaskState state,
+            ContainerDescription containerDesc, Boolean isFromTemplate,
+            GroupResourcePlacementState groupResourcePlacementState) {
+        List<Operation> posts = new ArrayList<>(state.resourceNames.size());
+        try {
+            for (String resourceName : state.resourceNames) {
+                ContainerState containerState = buildContainerState(state, containerDesc,
+                        isFromTemplate, resourceName, groupResourcePlacementState,
+                        state.resourceNameToHostSelection.get(resourceName));
+                posts.add(OperationUtil
+                        .createForcedPost(this, ContainerFactoryService.SELF_LINK)
+                        .setBody(containerState));
+            }
+        } catch (Throwable e) {
+            failTask("System failure creating ContainerStates", e);
+            return;
+        }
+
+        OperationJoin.create(posts)
+                .setCompletion((ops, es) -> {
+                    if (es != null && !es.isEmpty()) {
+                        failTask("Failed to create container states",
+                                es.values().iterator().next());
+                        return;
+                    }
+                    logInfo("Created %d ContainerStates", posts.size());
+                    proceedTo(SubStage.ALLOCATE_PORTS);
+                }).sendWith(this, BULK_ALLOCATION_BATCH_SIZE);
+    }
+
+    private boolean isBulkAllocation(ContainerAllocationTaskState state) {
+        return !state.postAllocation && BULK_ALLOCATION_THRESHOLD > 0
+                && state.resourceCount != null
+                && state.resourceCount >= BULK_ALLOCATION_THRESHOLD;
+    }
+
+    private void reportAllocationRate(ContainerAllocationTaskState state) {
+        long startMicros = bulkAllocationStartMicros;
+        if (startMicros == 0) {
+            return;
+        }
+        bulkAllocationStartMicros = 0;
+        long elapsedMicros = Math.max(1, Utils.getSystemNowMicrosUtc() - startMicros);
+        double containersPerSecond = state.resourceCount * (double) TimeUnit.SECONDS.toMicros(1)
+                / elapsedMicros;
+        logInfo("Allocated %s containers at %.2f containers/sec", state.resourceCount,
+                containersPerSecond);
+
+        // the task is short lived, the rate of the last bulk allocation is kept by the factory
+        ServiceStat stat = new ServiceStat();
+        stat.name = STAT_NAME_CONTAINERS_PER_SECOND;
+        stat.unit = STAT_UNIT_CONTAINERS_PER_SECOND;
+        stat.latestValue = containersPerSecond;
+        sendRequest(Operation.createPost(this, UriUtils.buildUriPath(
+                ContainerAllocationTaskFactoryService.SELF_LINK,
+                ServiceHost.SERVICE_URI_SUFFIX_STATS))
+                .setBody(stat)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Failed to report the allocation rate: %s",
+                                Utils.toString(e));
+                    }
+                }));
+    }
+
     private boolean isAllocationRequest(ContainerAllocationTaskState state) {
         return !state.postAllocation && (state.customProperties != null
                 && Boolean.parseBoolean(state.customProperties.get(FIELD_NAME_ALLOCATION_REQUEST)));
@@ -727,82 +838,8 @@ public class ContainerAllocationTaskService extends
                 return;
             }
 
-            final ContainerState containerState = new ContainerState();
-            containerState.documentSelfLink = buildResourceId(resourceName);
-            containerState.names = new ArrayList<>();
-            containerState.names.add(resourceName);
-            containerState.tenantLinks = state.tenantLinks;
-            containerState.descriptionLink = state.resourceDescriptionLink;
-            containerState.groupResourcePlacementLink = state.groupResourcePlacementLink;
-            containerState.parentLink = hostSelection.hostLink;
-            containerState.powerState = PowerState.PROVISIONING;
-            containerState.status = ContainerState.CONTAINER_ALLOCATION_STATUS;
-            containerState.adapterManagementReference = state.instanceAdapterReference;
-            containerState.customProperties = state.customProperties;
-            containerState.image = containerDesc.image;
-            containerState.command = containerDesc.command;
-            containerState.volumesFrom = hostSelection.mapNames(containerDesc.volumesFrom);
-            containerState.volumeDriver = containerDesc.volumeDriver;
-            containerState.volumes = mapVolumes(containerDesc, hostSelection);
-            containerState.networks = mapNetworks(containerDesc, hostSelection);
-            if (containerDesc.portBindings != null) {
-                containerState.ports = new ArrayList<PortBinding>(
-                        Arrays.asList(containerDesc.portBindings));
-            }
-            if (containerDesc.ulimits != null) {
-                containerState.ulimits = new ArrayList<Ulimit>(
-                        Arrays.asList(containerDesc.ulimits));
-            }
-
-            if (containerState.networks != null && !containerState.networks.isEmpty()) {
-                // use links in user defined networks. No need to map to specific containers,
-                // but to network aliases same for all containers in the service/cluster
-                for (String snKey : containerState.networks.keySet()) {
-                    if (containerDesc.links != null) {
-                        ServiceNetwork sn = containerState.networks.get(snKey);
-                        if (sn == null) {
-                            sn = new ServiceNetwork();
-                            containerState.networks.put(snKey, sn);
-                        }
-
-                        if (sn.links == null) {
-                            sn.links = containerDesc.links;
-                        } else {
-                            sn.links = Stream
-                                    .concat(Arrays.stream(sn.links),
-                                            Arrays.stream(containerDesc.links))
-                                    .distinct()
-                                    .toArray(String[]::new);
-                        }
-                    }
-                }
-            } else {
-                // Fallback to legacy links mapped to specific containers
-                String[] mapLinks = mapLinks(containerDesc, hostSelection);
-                containerState.links = mapLinks;
-            }
-
-            containerState.documentExpirationTimeMicros = ServiceUtils
-                    .getDefaultTaskExpirationTimeInMicros();
-
-            containerState.memoryLimit = getMinParam(groupResourcePlacementState.memoryLimit,
-                    containerDesc.memoryLimit);
-
-            Long cpuShares = getMinParam(groupResourcePlacementState.cpuShares,
-                    containerDesc.cpuShares);
-            containerState.cpuShares = cpuShares != null ? cpuShares.intValue() : null;
-
-            containerState.extraHosts = containerDesc.extraHosts;
-            containerState.env = containerDesc.env;
-
-            // set the component link if container is created or scaled from a template
-            String contextId = state.getCustomProperty(FIELD_NAME_CONTEXT_ID_KEY);
-            if ((contextId != null && !isClusteringOperation(state)
-                    && !contextId.equals(getSelfId()))
-                    || (isClusteringOperation(state) && isFromTemplate)) {
-                containerState.compositeComponentLink = UriUtils
-                        .buildUriPath(CompositeComponentFactoryService.SELF_LINK, contextId);
-            }
+            final ContainerState containerState = buildContainerState(state, containerDesc,
+                    isFromTemplate, resourceName, groupResourcePlacementState, hostSelection);
 
             sendRequest(OperationUtil
                     .createForcedPost(this, ContainerFactoryService.SELF_LINK)
@@ -827,6 +864,90 @@ public class ContainerAllocationTaskService extends
         }
     }
 
+    private ContainerState buildContainerState(ContainerAllocationTaskState state,
+            ContainerDescription containerDesc, Boolean isFromTemplate, String resourceName,
+            GroupResourcePlacementState groupResourcePlacementState,
+            HostSelection hostSelection) {
+        final ContainerState containerState = new ContainerState();
+        containerState.documentSelfLink = buildResourceId(resourceName);
+        containerState.names = new ArrayList<>();
+        containerState.names.add(resourceName);
+        containerState.tenantLinks = state.tenantLinks;
+        containerState.descriptionLink = state.resourceDescriptionLink;
+        containerState.groupResourcePlacementLink = state.groupResourcePlacementLink;
+        containerState.parentLink = hostSelection.hostLink;
+        containerState.powerState = PowerState.PROVISIONING;
+        containerState.status = ContainerState.CONTAINER_ALLOCATION_STATUS;
+        containerState.adapterManagementReference = state.instanceAdapterReference;
+        containerState.customProperties = state.customProperties;
+        containerState.image = containerDesc.image;
+        containerState.command = containerDesc.command;
+        containerState.volumesFrom = hostSelection.mapNames(containerDesc.volumesFrom);
+        containerState.volumeDriver = containerDesc.volumeDriver;
+        containerState.volumes = mapVolumes(containerDesc, hostSelection);
+        containerState.networks = mapNetworks(containerDesc, hostSelection);
+        if (containerDesc.portBindings != null) {
+            containerState.ports = new ArrayList<PortBinding>(
+                    Arrays.asList(containerDesc.portBindings));
+        }
+        if (containerDesc.ulimits != null) {
+            containerState.ulimits = new ArrayList<Ulimit>(
+                    Arrays.asList(containerDesc.ulimits));
+        }
+
+        if (containerState.networks != null && !containerState.networks.isEmpty()) {
+            // use links in user defined networks. No need to map to specific containers,
+            // but to network aliases same for all containers in the service/cluster
+            for (String snKey : containerState.networks.keySet()) {
+                if (containerDesc.links != null) {
+                    ServiceNetwork sn = containerState.networks.get(snKey);
+                    if (sn == null) {
+                        sn = new ServiceNetwork();
+                        containerState.networks.put(snKey, sn);
+                    }
+
+                    if (sn.links == null) {
+                        sn.links = containerDesc.links;
+                    } else {
+                        sn.links = Stream
+                                .concat(Arrays.stream(sn.links),
+                                        Arrays.stream(containerDesc.links))
+                                .distinct()
+                                .toArray(String[]::new);
+                    }
+                }
+            }
+        } else {
+            // Fallback to legacy links mapped to specific containers
+            String[] mapLinks = mapLinks(containerDesc, hostSelection);
+            containerState.links = mapLinks;
+        }
+
+        containerState.documentExpirationTimeMicros = ServiceUtils
+                .getDefaultTaskExpirationTimeInMicros();
+
+        containerState.memoryLimit = getMinParam(groupResourcePlacementState.memoryLimit,
+                containerDesc.memoryLimit);
+
+        Long cpuShares = getMinParam(groupResourcePlacementState.cpuShares,
+                containerDesc.cpuShares);
+        containerState.cpuShares = cpuShares != null ? cpuShares.intValue() : null;
+
+        containerState.extraHosts = containerDesc.extraHosts;
+        containerState.env = containerDesc.env;
+
+        // set the component link if container is created or scaled from a template
+        String contextId = state.getCustomProperty(FIELD_NAME_CONTEXT_ID_KEY);
+        if ((contextId != null && !isClusteringOperation(state)
+                && !contextId.equals(getSelfId()))
+                || (isClusteringOperation(state) && isFromTemplate)) {
+            containerState.compositeComponentLink = UriUtils
+                    .buildUriPath(CompositeComponentFactoryService.SELF_LINK, contextId);
+        }
+
+        return containerState;
+    }
+
     private void allocatePorts(ContainerAllocationTaskState state) {
         final boolean allocationRequest = isAllocationRequest(state);
 
@@ -853,7 +974,7 @@ public class ContainerAllocationTaskService extends
                 }));
     }
 
-    private void createContainerInstanceRequests(ContainerAllocationTaskState state,
+    private Operation createContainerInstanceRequest(ContainerAllocationTaskState state,
             ServiceTaskCallback taskCallback, String containerSelfLink) {
         AdapterRequest adapterRequest = new AdapterRequest();
         adapterRequest.resourceReference = UriUtils.buildUri(getHost(), containerSelfLink);
@@ -861,7 +982,7 @@ public class ContainerAllocationTaskService extends
         adapterRequest.operationTypeId = ContainerOperationType.CREATE.id;
         adapterRequest.customProperties = state.customProperties;
 
-        sendRequest(Operation.createPatch(getHost(), state.instanceAdapterReference.toString())
+        return Operation.createPatch(getHost(), state.instanceAdapterReference.toString())
                 .setBody(adapterRequest)
                 .setContextId(getSelfId())
                 .setCompletion((o, e) -> {
@@ -870,7 +991,7 @@ public class ContainerAllocationTaskService extends
                         return;
                     }
                     logInfo("Container provisioning started for: %s", containerSelfLink);
-                }));
+                });
     }
 
     private void waitForHealthCheck(ContainerAllocationTaskState state) {
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.SystemContainerDescriptions;
+
+/**
+ * Desired versus actual state of the container descriptions with auto redeploy enabled, kept up
+ * to date with the changes of the descriptions and of their containers, so that the
+ * {@link ContainerControlLoopService} reconciles only the descriptions which have changed since
+ * they were last reconciled, i.e. the dirty descriptions.
+ */
+class ContainerControlLoopIndex {
+
+    /**
+     * A description and its containers, as of the time it is taken out of the index.
+     */
+    static class DescriptionEntry {
+        final ContainerDescription description;
+        final List<ContainerState> containers;
+        // when the description became dirty
+        final long dirtySinceMicros;
+
+        DescriptionEntry(ContainerDescription description, List<ContainerState> containers,
+                long dirtySinceMicros) {
+            this.description = description;
+            this.containers = containers;
+            this.dirtySinceMicros = dirtySinceMicros;
+        }
+    }
+
+    private static class IndexEntry {
+        ContainerDescription description;
+        final Map<String, ContainerState> containers = new HashMap<>();
+        // whether the containers created before the description was indexed are loaded
+        boolean containersLoaded;
+        // 0 if the description has not changed since it was last reconciled
+        long dirtySinceMicros;
+    }
+
+    // all fields are guarded by this
+    private final Map<String, IndexEntry> entries = new HashMap<>();
+    // container link -> last seen version, of the deleted containers as well, so that a late
+    // notification of an older version is ignored
+    private final Map<String, Long> containerVersions = new HashMap<>();
+    // container link -> link of the description it is indexed under
+    private final Map<String, String> containerDescriptionLinks = new HashMap<>();
+    private boolean loaded;
+
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    synchronized void setLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * Adds, updates or removes a description, depending on whether it is deleted and whether it
+     * still has auto redeploy enabled. Returns <code>true</code> if the description is new to the
+     * index, in which case its containers are yet to be loaded with
+     * {@link #loadContainers(String, Collection, boolean)}.
+     */
+    synchronized boolean updateDescription(ContainerDescription description, boolean deleted,
+            long nowMicros) {
+        if (deleted || !isAutoRedeploy(description)) {
+            IndexEntry removed = entries.remove(description.documentSelfLink);
+            if (removed != null) {
+                // loaded again from scratch if auto redeploy is enabled again
+                containerVersions.keySet().removeAll(removed.containers.keySet());
+                containerDescriptionLinks.keySet().removeAll(removed.containers.keySet());
+            }
+            return false;
+        }
+
+        IndexEntry entry = entries.get(description.documentSelfLink);
+        boolean added = entry == null;
+        if (added) {
+            entry = new IndexEntry();
+            entries.put(description.documentSelfLink, entry);
+        } else if (entry.description != null
+                && entry.description.documentVersion > description.documentVersion) {
+            return false;
+        }
+        entry.description = description;
+        markDirty(entry, nowMicros);
+        return added;
+    }
+
+    /**
+     * Adds, updates or removes a container of an indexed description. Containers of other
+     * descriptions are ignored.
+     */
+    synchronized void updateContainer(ContainerState container, boolean deleted, long nowMicros) {
+        Long version = containerVersions.get(container.documentSelfLink);
+        if (version != null && version >= container.documentVersion) {
+            return;
+        }
+        containerVersions.put(container.documentSelfLink, container.documentVersion);
+
+        String previousDescriptionLink = containerDescriptionLinks.remove(
+                container.documentSelfLink);
+        IndexEntry previous = previousDescriptionLink != null
+                ? entries.get(previousDescriptionLink) : null;
+        if (previous != null) {
+            previous.containers.remove(container.documentSelfLink);
+            markDirty(previous, nowMicros);
+        }
+
+        if (deleted) {
+            return;
+        }
+        IndexEntry entry = container.descriptionLink != null
+                ? entries.get(container.descriptionLink) : null;
+        if (entry == null) {
+            // not a container of an auto redeployed description
+            containerVersions.remove(container.documentSelfLink);
+            return;
+        }
+        entry.containers.put(container.documentSelfLink, container);
+        containerDescriptionLinks.put(container.documentSelfLink, container.descriptionLink);
+        markDirty(entry, nowMicros);
+    }
+
+    /**
+     * Merges the containers of a description as retrieved from the index with the changes
+     * received in the meantime. With <code>replace</code> the containers which are not in the
+     * given ones are removed, i.e. the index is resynchronized.
+     */
+    synchronized void loadContainers(String descriptionLink, Collection<ContainerState> containers,
+            boolean replace) {
+        IndexEntry entry = entries.get(descriptionLink);
+        if (entry == null) {
+            return;
+        }
+        if (replace) {
+            Set<String> links = new HashSet<>();
+            containers.forEach(c -> links.add(c.documentSelfLink));
+            entry.containers.keySet().retainAll(links);
+        }
+        for (ContainerState container : containers) {
+            Long version = containerVersions.get(container.documentSelfLink);
+            if (version == null || version < container.documentVersion) {
+                containerVersions.put(container.documentSelfLink, container.documentVersion);
+                containerDescriptionLinks.put(container.documentSelfLink, descriptionLink);
+                entry.containers.put(container.documentSelfLink, container);
+            }
+        }
+        entry.containersLoaded = true;
+    }
+
+    /**
+     * Removes the descriptions which are not in the given ones and forgets the deleted
+     * containers, after the index has been resynchronized.
+     */
+    synchronized void retainDescriptions(Set<String> descriptionLinks) {
+        entries.keySet().retainAll(descriptionLinks);
+
+        Set<String> containerLinks = new HashSet<>();
+        entries.values().forEach(e -> containerLinks.addAll(e.containers.keySet()));
+        containerVersions.keySet().retainAll(containerLinks);
+        containerDescriptionLinks.keySet().retainAll(containerLinks);
+    }
+
+    /**
+     * Takes the dirty descriptions which containers are loaded out of the index, marking them as
+     * reconciled.
+     */
+    synchronized List<DescriptionEntry> pollDirty() {
+        List<DescriptionEntry> dirty = new ArrayList<>();
+        for (IndexEntry entry : entries.values()) {
+            if (entry.dirtySinceMicros == 0 || !entry.containersLoaded) {
+                continue;
+            }
+            dirty.add(new DescriptionEntry(entry.description,
+                    new ArrayList<>(entry.containers.values()), entry.dirtySinceMicros));
+            entry.dirtySinceMicros = 0;
+        }
+        return dirty;
+    }
+
+    /**
+     * Puts a description taken out with {@link #pollDirty()} back, e.g. when its reconciliation
+     * has been postponed.
+     */
+    synchronized void markDirty(String descriptionLink, long dirtySinceMicros) {
+        IndexEntry entry = entries.get(descriptionLink);
+        if (entry != null) {
+            markDirty(entry, dirtySinceMicros);
+        }
+    }
+
+    synchronized int getDirtyCount() {
+        return (int) entries.values().stream()
+                .filter(e -> e.dirtySinceMicros != 0)
+                .count();
+    }
+
+    private static void markDirty(IndexEntry entry, long dirtySinceMicros) {
+        if (entry.dirtySinceMicros == 0 || entry.dirtySinceMicros > dirtySinceMicros) {
+            entry.dirtySinceMicros = dirtySinceMicros;
+        }
+    }
+
+    static boolean isAutoRedeploy(ContainerDescription description) {
+        return description.healthConfig != null
+                && Boolean.TRUE.equals(description.healthConfig.autoredeploy)
+                && !SystemContainerDescriptions.AGENT_CONTAINER_DESCRIPTION_LINK.equals(
+                        description.documentSelfLink);
+    }
+}
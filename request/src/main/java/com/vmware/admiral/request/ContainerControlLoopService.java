@@ -11,20 +11,24 @@
 
 package com.vmware.admiral.request;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import com.vmware.admiral.common.DeploymentProfileConfig;
 import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.CommonContinuousQueries;
 import com.vmware.admiral.common.util.PropertyUtils;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
 import com.vmware.admiral.compute.container.SystemContainerDescriptions;
+import com.vmware.admiral.request.ContainerControlLoopIndex.DescriptionEntry;
 import com.vmware.admiral.request.ContainerRecommendation.Recommendation;
 import com.vmware.admiral.request.ContainerRedeploymentTaskService.ContainerRedeploymentTaskState;
 import com.vmware.admiral.request.utils.RequestUtils;
@@ -36,11 +40,23 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Query.Builder;
 import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
 
 /**
  * Enforces the actual state as close as possible to desired state.
+ * <p>
+ * The container descriptions with auto redeploy enabled and their containers are kept in a
+ * {@link ContainerControlLoopIndex}, updated from continuous queries, and every maintenance
+ * reconciles only the descriptions which have changed since they were last reconciled. The index
+ * is resynchronized with a full query on start, on every PATCH and every
+ * <code>com.vmware.admiral.request.container.control.loop.full.reconcile.cycles</code>
+ * maintenance cycles. Redeployments are limited to
+ * <code>com.vmware.admiral.request.container.control.loop.max.redeployments.per.host</code>
+ * containers per host and cycle, the descriptions over the limit are postponed to the next cycle.
+ * The number of dirty descriptions and the reconciliation lag are reported as service stats.
  */
 public class ContainerControlLoopService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.CONTAINER_CONTROL_LOOP;
@@ -52,7 +68,23 @@ public class ContainerControlLoopService extends StatefulService {
     private static final long MAINTENANCE_INTERVAL_MICROS = Long
             .getLong("com.vmware.admiral.request.container.maintenance.interval.micros",
                     TimeUnit.MINUTES.toMicros(5));
-    protected volatile AtomicInteger containerDescriptionsToBeProcessed = new AtomicInteger(0);
+
+    private static final int FULL_RECONCILE_CYCLES = Integer.getInteger(
+            "com.vmware.admiral.request.container.control.loop.full.reconcile.cycles", 12);
+
+    private static final int MAX_REDEPLOYMENTS_PER_HOST = Integer.getInteger(
+            "com.vmware.admiral.request.container.control.loop.max.redeployments.per.host", 10);
+
+    public static final String STAT_NAME_WORK_QUEUE_DEPTH = "workQueueDepth";
+    public static final String STAT_NAME_RECONCILIATION_LAG_MICROS = "reconciliationLagMicros";
+    public static final String STAT_NAME_POSTPONED_DESCRIPTIONS = "postponedDescriptions";
+
+    private static final String DESCRIPTIONS_QUERY_NAME = "container-control-loop-descriptions";
+    private static final String CONTAINERS_QUERY_NAME = "container-control-loop-containers";
+
+    private final ContainerControlLoopIndex index = new ContainerControlLoopIndex();
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+    private int cyclesSinceFullReconcile;
 
     public static class ContainerControlLoopState extends com.vmware.xenon.common.ServiceDocument {
     }
@@ -63,9 +95,25 @@ public class ContainerControlLoopService extends StatefulService {
         super.toggleOption(ServiceOption.REPLICATION, true);
         super.toggleOption(ServiceOption.OWNER_SELECTION, true);
         super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
         super.setMaintenanceIntervalMicros(MAINTENANCE_INTERVAL_MICROS);
     }
 
+    @Override
+    public void handleStart(Operation startPost) {
+        startPost.complete();
+
+        Builder descriptionsQuery = Builder.create()
+                .addKindFieldClause(ContainerDescription.class);
+        Builder containersQuery = Builder.create()
+                .addKindFieldClause(ContainerState.class);
+
+        CommonContinuousQueries.subscribeTo(getHost(), DESCRIPTIONS_QUERY_NAME,
+                descriptionsQuery.build(), this::onDescriptionChange);
+        CommonContinuousQueries.subscribeTo(getHost(), CONTAINERS_QUERY_NAME,
+                containersQuery.build(), this::onContainerChange);
+    }
+
     public static ServiceDocument buildDefaultStateInstance() {
         ContainerControlLoopState state = new ContainerControlLoopState();
         state.documentSelfLink = CONTROL_LOOP_INFO_LINK;
@@ -106,11 +154,8 @@ public class ContainerControlLoopService extends StatefulService {
             return;
         }
 
-        if (containerDescriptionsToBeProcessed.get() == 0) {
-            logFine("Performing maintenance for: %s", getUri());
-
-            performMaintenance();
-        } else {
+        boolean full = !index.isLoaded() || ++cyclesSinceFullReconcile >= FULL_RECONCILE_CYCLES;
+        if (!performMaintenance(full)) {
             logFine("Skipping maintenance since there is already running maintenance");
         }
 
@@ -125,11 +170,7 @@ public class ContainerControlLoopService extends StatefulService {
 
         ContainerControlLoopState body = patch.getBody(ContainerControlLoopState.class);
 
-        if (containerDescriptionsToBeProcessed.get() == 0) {
-            logFine("Performing maintenance for: %s", getUri());
-
-            performMaintenance();
-        } else {
+        if (!performMaintenance(true)) {
             logFine("Previous maintenance not finished for: %s", getUri());
         }
 
@@ -145,55 +186,172 @@ public class ContainerControlLoopService extends StatefulService {
         return template;
     }
 
-    private void performMaintenance() {
-        retrieveContainerDescriptions().whenComplete((containerDescriptions, e) -> {
-            if (e != null) {
-                logSevere("Failed to retrieve container descriptions");
-                return;
+    /**
+     * Reconciles the dirty descriptions, after resynchronizing the index when <code>full</code>.
+     * Returns <code>false</code> if a reconciliation is already running.
+     */
+    private boolean performMaintenance(boolean full) {
+        if (!reconciling.compareAndSet(false, true)) {
+            return false;
+        }
+        logFine("Performing maintenance for: %s", getUri());
+
+        DeferredResult<Void> loaded = full ? loadIndex() : DeferredResult.completed(null);
+        loaded.thenAccept(ignore -> reconcileDirtyDescriptions())
+                .whenComplete((ignore, e) -> {
+                    reconciling.set(false);
+                    if (e != null) {
+                        logSevere("Failed to reconcile container descriptions: %s",
+                                Utils.toString(e));
+                    }
+                });
+        return true;
+    }
+
+    private DeferredResult<Void> loadIndex() {
+        return retrieveContainerDescriptions().thenCompose(containerDescriptions -> {
+            long nowMicros = Utils.getSystemNowMicrosUtc();
+            Set<String> descriptionLinks = new HashSet<>();
+            List<DeferredResult<Void>> loads = containerDescriptions.stream()
+                    .map(containerDescription -> {
+                        descriptionLinks.add(containerDescription.documentSelfLink);
+                        index.updateDescription(containerDescription, false, nowMicros);
+                        index.markDirty(containerDescription.documentSelfLink, nowMicros);
+                        return retrieveContainerStates(containerDescription)
+                                .thenAccept(containers -> index.loadContainers(
+                                        containerDescription.documentSelfLink, containers, true));
+                    })
+                    .collect(Collectors.toList());
+
+            return DeferredResult.allOf(loads).thenAccept(ignore -> {
+                index.retainDescriptions(descriptionLinks);
+                index.setLoaded();
+                cyclesSinceFullReconcile = 0;
+            });
+        });
+    }
+
+    private void reconcileDirtyDescriptions() {
+        List<DescriptionEntry> dirty = index.pollDirty();
+        setStat(STAT_NAME_WORK_QUEUE_DEPTH, dirty.size());
+        if (dirty.isEmpty()) {
+            logFine("No container descriptions for processing.");
+            setStat(STAT_NAME_RECONCILIATION_LAG_MICROS, 0);
+            return;
+        }
+
+        long nowMicros = Utils.getSystemNowMicrosUtc();
+        long maxLagMicros = 0;
+        int postponed = 0;
+        Map<String, Integer> redeploymentsPerHost = new HashMap<>();
+
+        for (DescriptionEntry entry : dirty) {
+            ContainerDescription containerDescription = entry.description;
+            List<ContainerState> containers = filterContainersWithContextId(entry.containers);
+            if (containers.isEmpty()) {
+                logFine("No containers from description: %s",
+                        containerDescription.documentSelfLink);
+                continue;
+            }
+
+            List<ContainerState> containersToBeRemoved = ContainerDiff
+                    .inspect(containerDescription, containers)
+                    .stream()
+                    .filter(diff -> Recommendation.REDEPLOY == ContainerRecommendation
+                            .recommend(diff))
+                    .map(container -> container.currentState)
+                    .collect(Collectors.toList());
+            if (containersToBeRemoved.isEmpty()) {
+                continue;
+            }
+
+            if (!reserveRedeployments(redeploymentsPerHost, containersToBeRemoved)) {
+                // too many redeployments on some host already, try again with the next cycle
+                index.markDirty(containerDescription.documentSelfLink, entry.dirtySinceMicros);
+                postponed++;
+                continue;
             }
 
-            if (containerDescriptions.size() == 0) {
-                logFine("No container descriptions for processing.");
-                return;
+            maxLagMicros = Math.max(maxLagMicros, nowMicros - entry.dirtySinceMicros);
+            redeployContainers(containerDescription, containersToBeRemoved);
+        }
+
+        setStat(STAT_NAME_RECONCILIATION_LAG_MICROS, maxLagMicros);
+        setStat(STAT_NAME_POSTPONED_DESCRIPTIONS, postponed);
+        if (postponed > 0) {
+            logInfo("Postponed redeployment of %d container descriptions, more than %d"
+                    + " containers per host to redeploy", postponed, MAX_REDEPLOYMENTS_PER_HOST);
+        }
+    }
+
+    /**
+     * Counts the given containers to the redeployments of their hosts, unless a host would go over
+     * the limit. A host without redeployments yet accepts any number of containers, so that a big
+     * cluster is redeployed eventually.
+     */
+    private static boolean reserveRedeployments(Map<String, Integer> redeploymentsPerHost,
+            List<ContainerState> containers) {
+        Map<String, Integer> containersPerHost = containers.stream()
+                .filter(c -> c.parentLink != null)
+                .collect(Collectors.groupingBy(c -> c.parentLink,
+                        Collectors.summingInt(c -> 1)));
+
+        for (Map.Entry<String, Integer> hostEntry : containersPerHost.entrySet()) {
+            int current = redeploymentsPerHost.getOrDefault(hostEntry.getKey(), 0);
+            if (current > 0 && current + hostEntry.getValue() > MAX_REDEPLOYMENTS_PER_HOST) {
+                return false;
             }
+        }
+        containersPerHost.forEach((hostLink, count) ->
+                redeploymentsPerHost.merge(hostLink, count, Integer::sum));
+        return true;
+    }
 
-            containerDescriptionsToBeProcessed.set(containerDescriptions.size());
-
-            for (ContainerDescription containerDescription : containerDescriptions) {
-                containerDescriptionsToBeProcessed.decrementAndGet();
-
-                retrieveContainerStates(containerDescription).thenApply
-                        (containers -> filterContainersWithContextId(containers)).whenComplete(
-                            (containers, ex) -> {
-
-                                if (ex != null) {
-                                    logSevere("Failed to retrieve containers");
-                                    return;
-                                }
-
-                                if (containers.isEmpty()) {
-                                    logFine("No containers from description: %s",
-                                            containerDescription.documentSelfLink);
-                                    return;
-                                }
-
-                                List<ContainerState> containersToBeRemoved = ContainerDiff
-                                        .inspect(containerDescription, containers)
-                                        .stream()
-                                        .filter(diff ->
-                                                Recommendation.REDEPLOY == ContainerRecommendation
-                                                        .recommend(diff))
-                                        .map(container -> container.currentState)
-                                        .collect(Collectors.toList());
-                                redeployContainers(containerDescription, containersToBeRemoved);
-                            });
+    private void onDescriptionChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        long nowMicros = Utils.getSystemNowMicrosUtc();
+        queryTask.results.documents.values().forEach(json -> {
+            ContainerDescription containerDescription = Utils.fromJson(json,
+                    ContainerDescription.class);
+            boolean added = index.updateDescription(containerDescription,
+                    Action.DELETE.name().equals(containerDescription.documentUpdateAction),
+                    nowMicros);
+            if (added) {
+                // auto redeploy just enabled, the description may already have containers
+                retrieveContainerStates(containerDescription)
+                        .thenAccept(containers -> index.loadContainers(
+                                containerDescription.documentSelfLink, containers, false))
+                        .exceptionally(e -> {
+                            logWarning("Failed to retrieve containers of %s: %s",
+                                    containerDescription.documentSelfLink, Utils.toString(e));
+                            return null;
+                        });
             }
         });
     }
 
+    private void onContainerChange(Operation op) {
+        op.complete();
+        QueryTask queryTask = op.getBody(QueryTask.class);
+        if (queryTask.results == null || queryTask.results.documents == null) {
+            return;
+        }
+        long nowMicros = Utils.getSystemNowMicrosUtc();
+        queryTask.results.documents.values().forEach(json -> {
+            ContainerState container = Utils.fromJson(json, ContainerState.class);
+            index.updateContainer(container,
+                    Action.DELETE.name().equals(container.documentUpdateAction), nowMicros);
+        });
+    }
+
     private List<ContainerState> filterContainersWithContextId(List<ContainerState> containers) {
-        return containers.stream().filter(state -> state.customProperties.get(RequestUtils
-                .FIELD_NAME_CONTEXT_ID_KEY) != null).collect(Collectors.toList());
+        return containers.stream().filter(state -> state.customProperties != null
+                && state.customProperties.get(RequestUtils.FIELD_NAME_CONTEXT_ID_KEY) != null)
+                .collect(Collectors.toList());
     }
 
     private DeferredResult<List<ContainerDescription>> retrieveContainerDescriptions() {
@@ -17,9 +17,11 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOp
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.function.Consumer;
@@ -31,7 +33,6 @@ import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.compute.container.ContainerService;
 import com.vmware.admiral.compute.container.HostPortProfileService;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
-import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.ServiceDocument;
@@ -49,6 +50,10 @@ public class ContainerPortsAllocationTaskService
     public static final String DISPLAY_NAME = "Container Ports Allocation";
     public static final String CONTAINER_PORT_ALLOCATION_ENABLED = "dcp.management.container.port.allocation.enabled";
 
+    // the count of container states updated in parallel
+    private static final int UPDATE_BATCH_SIZE = Integer.getInteger(
+            "dcp.management.container.port.allocation.update.batch.size", 100);
+
     // cached container state
     private volatile Set<ContainerService.ContainerState> containerStates;
     // cached host port profile
@@ -92,12 +97,12 @@ public class ContainerPortsAllocationTaskService
             prepareContext(state, null);
             break;
         case CONTEXT_PREPARED:
-            allocatePorts(state, null);
+            allocatePorts(state);
             break;
         case ALLOCATING_PORTS:
             break;
         case PORTS_ALLOCATED:
-            updateContainerPorts(state, null);
+            updateContainerPorts(state);
             break;
         case COMPLETED:
             complete();
@@ -138,41 +143,53 @@ public class ContainerPortsAllocationTaskService
         }
     }
 
-    private void allocatePorts(ContainerPortsAllocationTaskState state,
-            ServiceTaskCallback taskCallback) {
-        if (taskCallback == null) {
-            createCounterSubTaskCallback(state, state.containerStateLinks.size(), false,
-                    ContainerPortsAllocationTaskState.SubStage.PORTS_ALLOCATED,
-                    (serviceTask) -> allocatePorts(state, serviceTask));
-            return;
-        }
-
+    /**
+     * Reserves the ports of all the containers placed on a host with a single request to the
+     * host port profile.
+     */
+    private void allocatePorts(ContainerPortsAllocationTaskState state) {
+        Map<HostPortProfileService.HostPortProfileState,
+                List<HostPortProfileService.HostPortProfileReservationRequest>> requestsByProfile =
+                        new HashMap<>();
         for (ContainerService.ContainerState containerState : containerStates) {
-            HostPortProfileService.HostPortProfileState profile = hostPortProfileStates
-                    .stream()
-                    .filter(p -> p.hostLink.equals(containerState.parentLink))
-                    .findFirst()
-                    .orElse(null);
+            HostPortProfileService.HostPortProfileState profile = getHostPortProfile(
+                    containerState);
             if (profile == null) {
-                completeSubTasksCounter(taskCallback, null);
                 continue;
             }
             // create port allocation request based on container PortBindings
             HostPortProfileService.HostPortProfileReservationRequest hostPortProfileRequest =
                     createHostPortProfileRequest(containerState);
             if (hostPortProfileRequest == null) {
-                completeSubTasksCounter(taskCallback, null);
                 continue;
             }
+            requestsByProfile.computeIfAbsent(profile, p -> new ArrayList<>())
+                    .add(hostPortProfileRequest);
+        }
+
+        if (requestsByProfile.isEmpty()) {
+            proceedTo(ContainerPortsAllocationTaskState.SubStage.PORTS_ALLOCATED);
+            return;
+        }
+
+        List<Operation> operations = new ArrayList<>(requestsByProfile.size());
+        requestsByProfile.forEach((profile, requests) -> {
+            HostPortProfileService.HostPortProfileReservationRequest hostPortProfileRequest;
+            if (requests.size() == 1) {
+                hostPortProfileRequest = requests.get(0);
+            } else {
+                hostPortProfileRequest =
+                        new HostPortProfileService.HostPortProfileReservationRequest();
+                hostPortProfileRequest.containerRequests = requests;
+            }
 
             // allocate ports
-            sendRequest(Operation
+            operations.add(Operation
                     .createPatch(getHost(), profile.documentSelfLink)
                     .setBody(hostPortProfileRequest)
                     .setCompletion(
                             (op, ex) -> {
                                 if (ex != null) {
-                                    completeSubTasksCounter(taskCallback, ex);
                                     return;
                                 }
                                 // update cached host port profile state
@@ -180,10 +197,27 @@ public class ContainerPortsAllocationTaskService
                                         op.getBody(
                                                 HostPortProfileService.HostPortProfileState.class);
                                 profile.reservedPorts.putAll(result.reservedPorts);
-                                completeSubTasksCounter(taskCallback, null);
                             }));
-            proceedTo(ContainerPortsAllocationTaskState.SubStage.ALLOCATING_PORTS);
-        }
+        });
+
+        proceedTo(ContainerPortsAllocationTaskState.SubStage.ALLOCATING_PORTS);
+        OperationJoin.create(operations)
+                .setCompletion((ops, es) -> {
+                    if (es != null && !es.isEmpty()) {
+                        failTask("Failed allocating host ports", es.values().iterator().next());
+                        return;
+                    }
+                    proceedTo(ContainerPortsAllocationTaskState.SubStage.PORTS_ALLOCATED);
+                }).sendWith(this);
+    }
+
+    private HostPortProfileService.HostPortProfileState getHostPortProfile(
+            ContainerService.ContainerState containerState) {
+        return hostPortProfileStates
+                .stream()
+                .filter(p -> p.hostLink.equals(containerState.parentLink))
+                .findFirst()
+                .orElse(null);
     }
 
     private HostPortProfileService.HostPortProfileReservationRequest createHostPortProfileRequest(
@@ -220,23 +254,12 @@ public class ContainerPortsAllocationTaskService
         return request;
     }
 
-    private void updateContainerPorts(ContainerPortsAllocationTaskState state,
-            ServiceTaskCallback taskCallback) {
-        if (taskCallback == null) {
-            createCounterSubTaskCallback(state, state.containerStateLinks.size(), false,
-                    ContainerPortsAllocationTaskState.SubStage.COMPLETED,
-                    (serviceTask) -> updateContainerPorts(state, serviceTask));
-            return;
-        }
-
+    private void updateContainerPorts(ContainerPortsAllocationTaskState state) {
+        List<Operation> operations = new ArrayList<>();
         for (ContainerService.ContainerState containerState : containerStates) {
-            HostPortProfileService.HostPortProfileState profile = hostPortProfileStates
-                    .stream()
-                    .filter(p -> p.hostLink.equals(containerState.parentLink))
-                    .findFirst()
-                    .orElse(null);
+            HostPortProfileService.HostPortProfileState profile = getHostPortProfile(
+                    containerState);
             if (profile == null || containerState.ports == null) {
-                completeSubTasksCounter(taskCallback, null);
                 continue;
             }
 
@@ -251,6 +274,7 @@ public class ContainerPortsAllocationTaskService
                                     && p.intValue() == (Integer.parseInt(c.hostPort))));
             // assign allocated ports to container port bindings
             Iterator<Long> hostPortStatesIterator = allocatedPorts.iterator();
+            boolean[] enoughPorts = new boolean[] { true };
             containerState.ports
                     .stream()
                     .filter(p -> StringUtil.isNullOrEmpty(p.hostPort)
@@ -259,19 +283,22 @@ public class ContainerPortsAllocationTaskService
                         if (hostPortStatesIterator.hasNext()) {
                             p.hostPort = hostPortStatesIterator.next().toString();
                         } else {
-                            completeSubTasksCounter(taskCallback,
-                                    new IllegalStateException("Not enough ports allocated"));
+                            enoughPorts[0] = false;
                         }
                     });
+            if (!enoughPorts[0]) {
+                failTask("Not enough ports allocated for " + containerState.documentSelfLink,
+                        new IllegalStateException("Not enough ports allocated"));
+                return;
+            }
 
             // update container state
-            sendRequest(Operation
+            operations.add(Operation
                     .createPatch(getHost(), containerState.documentSelfLink)
                     .setBody(containerState)
                     .setCompletion(
                             (o, e) -> {
                                 if (e != null) {
-                                    completeSubTasksCounter(taskCallback, e);
                                     return;
                                 }
                                 ContainerService.ContainerState body = null;
@@ -281,10 +308,23 @@ public class ContainerPortsAllocationTaskService
                                     body = o.getBody(ContainerService.ContainerState.class);
                                 }
                                 logInfo("Updated ContainerState: %s", body.documentSelfLink);
-                                completeSubTasksCounter(taskCallback, null);
                             }));
+        }
 
+        if (operations.isEmpty()) {
+            proceedTo(ContainerPortsAllocationTaskState.SubStage.COMPLETED);
+            return;
         }
+
+        OperationJoin.create(operations)
+                .setCompletion((ops, es) -> {
+                    if (es != null && !es.isEmpty()) {
+                        failTask("Failed updating ContainerState ports",
+                                es.values().iterator().next());
+                        return;
+                    }
+                    proceedTo(ContainerPortsAllocationTaskState.SubStage.COMPLETED);
+                }).sendWith(this, UPDATE_BATCH_SIZE);
     }
 
     private void getHostPortProfile(Set<ContainerService.ContainerState> containerStates,
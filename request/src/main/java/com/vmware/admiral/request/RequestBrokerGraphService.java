@@ -17,6 +17,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,6 +33,8 @@ import com.google.gson.JsonParseException;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.request.RequestBrokerService.RequestBrokerState;
+import com.vmware.admiral.request.composition.CompositionSubTaskFactoryService;
+import com.vmware.admiral.request.composition.CompositionSubTaskService.CompositionSubTaskState;
 import com.vmware.admiral.request.graph.ComponentRequestVisitor;
 import com.vmware.admiral.request.graph.ContainerRequestVisitor;
 import com.vmware.admiral.request.graph.NetworkRequestVisitor;
@@ -64,6 +67,22 @@ public class RequestBrokerGraphService extends StatelessService {
         List<TaskServiceDocumentHistory> tasks;
         RequestBrokerState request;
         List<Object> componentInfos;
+        List<ComponentTimeline> compositionTimeline;
+    }
+
+    /**
+     * The progress of a component of a composite request, in the order the components were
+     * started.
+     */
+    public static class ComponentTimeline {
+        public String documentSelfLink;
+        public String name;
+        public String resourceType;
+        public int criticalPathLength;
+        /** The sub-stage the component is currently in. */
+        public Object taskSubStage;
+        /** Sub-stage -> time the component entered the sub-stage for the first time. */
+        public Map<String, Long> subStageTimesMicros;
     }
 
     public static class TaskServiceDocumentHistory {
@@ -127,6 +146,7 @@ public class RequestBrokerGraphService extends StatelessService {
                 RequestBrokerGraphResponse r = new RequestBrokerGraphResponse();
                 r.tasks = convert(foundTasks);
                 populateRequestInfos(r, r.tasks, requestId);
+                r.compositionTimeline = getCompositionTimeline(r.tasks);
                 get.setBody(r);
                 get.complete();
             }
@@ -455,6 +475,39 @@ public class RequestBrokerGraphService extends StatelessService {
         response.componentInfos = getRequestInfos(sortedStages, allStages);
     }
 
+    private static List<ComponentTimeline> getCompositionTimeline(
+            List<TaskServiceDocumentHistory> tasks) {
+        String subTaskPrefix = CompositionSubTaskFactoryService.SELF_LINK + UriUtils.URI_PATH_CHAR;
+
+        List<ComponentTimeline> result = new ArrayList<>();
+        // tasks are sorted by creation time
+        for (TaskServiceDocumentHistory task : tasks) {
+            if (!task.documentSelfLink.startsWith(subTaskPrefix) || task.stages.isEmpty()) {
+                continue;
+            }
+
+            ComponentTimeline timeline = new ComponentTimeline();
+            timeline.documentSelfLink = task.documentSelfLink;
+            timeline.subStageTimesMicros = new LinkedHashMap<>();
+            for (TaskServiceStageWithLink stage : task.stages) {
+                timeline.subStageTimesMicros.putIfAbsent(String.valueOf(stage.taskSubStage),
+                        stage.documentUpdateTimeMicros);
+            }
+
+            TaskServiceStageWithLink lastStage = task.stages.get(task.stages.size() - 1);
+            timeline.taskSubStage = lastStage.taskSubStage;
+            if (lastStage.properties != null) {
+                CompositionSubTaskState state = Utils.fromJson(lastStage.properties,
+                        CompositionSubTaskState.class);
+                timeline.name = state.name;
+                timeline.resourceType = state.resourceType;
+                timeline.criticalPathLength = state.criticalPathLength;
+            }
+            result.add(timeline);
+        }
+        return result;
+    }
+
     private static List<Object> getRequestInfos(List<TaskServiceStageWithLink> sortedStages,
             Map<String, TaskServiceStageWithLink> allStages) {
 
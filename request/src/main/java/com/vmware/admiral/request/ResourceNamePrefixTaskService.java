@@ -28,7 +28,8 @@ import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
 import com.vmware.admiral.service.common.DefaultSubStage;
-import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixRequest;
+import com.vmware.admiral.service.common.ResourceNamePrefixLeaseService;
+import com.vmware.admiral.service.common.ResourceNamePrefixLeaseService.NamePrefixLeaseRequest;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.NamePrefixResponse;
 import com.vmware.admiral.service.common.ResourceNamePrefixService.ResourceNamePrefixState;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
@@ -134,11 +135,13 @@ public class ResourceNamePrefixTaskService
     private void requestResourceNamePrefix(ResourceNamePrefixTaskState state,
             String resourceNamePrefixLink, Iterator<String> iterator, boolean globalSearch) {
 
-        NamePrefixRequest namePrefixRequest = new NamePrefixRequest();
+        NamePrefixLeaseRequest namePrefixRequest = new NamePrefixLeaseRequest();
+        namePrefixRequest.resourceNamePrefixLink = resourceNamePrefixLink;
         namePrefixRequest.resourceCount = state.resourceCount;
 
+        // the prefixes are generated from the blocks leased by the local node
         sendRequest(Operation
-                .createPatch(this, resourceNamePrefixLink)
+                .createPost(this, ResourceNamePrefixLeaseService.SELF_LINK)
                 .setBody(namePrefixRequest)
                 .setCompletion((o, e) -> {
                     if (e != null) {
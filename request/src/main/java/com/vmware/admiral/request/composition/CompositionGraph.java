@@ -14,6 +14,7 @@ package com.vmware.admiral.request.composition;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -34,6 +35,11 @@ import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.ServiceHost;
 
 public class CompositionGraph {
+    /** Orders nodes by the length of their critical path, longest first, then by name. */
+    public static final Comparator<ResourceNode> CRITICAL_PATH_ORDER = Comparator
+            .comparingInt((ResourceNode r) -> r.criticalPathLength).reversed()
+            .thenComparing(r -> r.name, Comparator.nullsFirst(Comparator.naturalOrder()));
+
     private final Map<String, ResourceNode> resourceNodesByName;
 
     public CompositionGraph() {
@@ -85,6 +91,8 @@ public class CompositionGraph {
                     "request.composition.cyclic.dependency.processing");
         }
 
+        calculateCriticalPathLengths(processed);
+
         return processed;
     }
 
@@ -145,6 +153,34 @@ public class CompositionGraph {
         return this;
     }
 
+    /*
+     * Calculate the length of the longest chain of dependents of every node, processing the nodes
+     * in reverse topological order so that all dependents of a node are calculated before it.
+     */
+    private void calculateCriticalPathLengths(final List<ResourceNode> processed) {
+        for (int i = processed.size() - 1; i >= 0; i--) {
+            final ResourceNode node = processed.get(i);
+            int longestDependentPath = 0;
+            if (node.dependents != null) {
+                for (final String dependentName : node.dependents) {
+                    longestDependentPath = Math.max(longestDependentPath,
+                            resourceNodesByName().get(dependentName).criticalPathLength);
+                }
+            }
+            node.criticalPathLength = longestDependentPath + 1;
+        }
+    }
+
+    /**
+     * Returns the nodes ordered by the length of their critical path, longest first. Starting the
+     * nodes in this order gets the longest chains of dependent nodes going first.
+     */
+    public List<ResourceNode> getNodesByCriticalPath() {
+        return resourceNodesByName().values().stream()
+                .sorted(CRITICAL_PATH_ORDER)
+                .collect(Collectors.toList());
+    }
+
     public Collection<ResourceNode> getNodesPerExecutionLevel(int level) {
         return resourceNodesByName()
                 .values().stream()
@@ -200,6 +236,8 @@ public class CompositionGraph {
         public String name;
         public String resourceDescLink;
         public int level;
+        /** Number of nodes in the longest chain of dependents, including this node. */
+        public int criticalPathLength;
         public Set<String> dependsOn;
         public Set<String> dependents;
         public String resourceType;
@@ -245,7 +283,8 @@ public class CompositionGraph {
 
         @Override
         public String toString() {
-            return "ResourceNode [name=" + name + ", level=" + level + "]";
+            return "ResourceNode [name=" + name + ", level=" + level + ", criticalPathLength="
+                    + criticalPathLength + "]";
         }
     }
 
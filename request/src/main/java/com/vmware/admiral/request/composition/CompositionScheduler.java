@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.composition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.compute.ResourceType;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Limits the number of composition components that are allocated or provisioned at the same time
+ * through the same adapter on a host, so that a large composition does not flood a single
+ * adapter. Components waiting for a slot are started in the order of their critical path length,
+ * so that the longest chains of dependent components are not delayed by components nothing
+ * depends on.
+ * <p>
+ * The limit is set with <code>com.vmware.admiral.request.composition.max.concurrent</code> and
+ * per adapter with the last segment of the adapter link, e.g.
+ * <code>com.vmware.admiral.request.composition.max.concurrent.docker-service</code>. Resource types
+ * without a known adapter are limited per resource type, e.g.
+ * <code>com.vmware.admiral.request.composition.max.concurrent.COMPUTE</code>. A limit of 0 starts
+ * the components right away.
+ * <p>
+ * The scheduler of a host is removed when the host stops, together with the
+ * {@link CompositionSchedulerService} started with it.
+ */
+class CompositionScheduler {
+
+    static final String MAX_CONCURRENT_PROPERTY =
+            "com.vmware.admiral.request.composition.max.concurrent";
+
+    static final int DEFAULT_MAX_CONCURRENT = 16;
+
+    // resource type -> link of the adapter which provisions it
+    private static final Map<String, String> ADAPTER_LINKS = new HashMap<>();
+
+    static {
+        ADAPTER_LINKS.put(ResourceType.CONTAINER_TYPE.getName(),
+                ManagementUriParts.ADAPTER_DOCKER);
+        ADAPTER_LINKS.put(ResourceType.NETWORK_TYPE.getName(),
+                ManagementUriParts.ADAPTER_DOCKER_NETWORK);
+        ADAPTER_LINKS.put(ResourceType.VOLUME_TYPE.getName(),
+                ManagementUriParts.ADAPTER_DOCKER_VOLUME);
+        for (ResourceType type : new ResourceType[] { ResourceType.KUBERNETES_GENERIC_TYPE,
+                ResourceType.KUBERNETES_POD_TYPE, ResourceType.KUBERNETES_DEPLOYMENT_TYPE,
+                ResourceType.KUBERNETES_SERVICE_TYPE,
+                ResourceType.KUBERNETES_REPLICATION_CONTROLLER_TYPE,
+                ResourceType.KUBERNETES_REPLICA_SET_TYPE }) {
+            ADAPTER_LINKS.put(type.getName(), ManagementUriParts.ADAPTER_KUBERNETES_APPLICATION);
+        }
+    }
+
+    // host id -> scheduler of the host, removed when the host stops
+    private static final Map<String, CompositionScheduler> SCHEDULERS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Removes the scheduler of the host it is started on when the host stops.
+     */
+    public static class CompositionSchedulerService extends StatelessService {
+        public static final String SELF_LINK = ManagementUriParts.COMPOSITION_SCHEDULER;
+
+        private final CompositionScheduler scheduler;
+
+        CompositionSchedulerService(CompositionScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void handleStop(Operation delete) {
+            SCHEDULERS.remove(getHost().getId(), scheduler);
+            super.handleStop(delete);
+        }
+    }
+
+    private static class PendingStart implements Comparable<PendingStart> {
+        final String taskLink;
+        final int criticalPathLength;
+        final long sequence;
+        final Runnable start;
+
+        PendingStart(String taskLink, int criticalPathLength, long sequence, Runnable start) {
+            this.taskLink = taskLink;
+            this.criticalPathLength = criticalPathLength;
+            this.sequence = sequence;
+            this.start = start;
+        }
+
+        @Override
+        public int compareTo(PendingStart o) {
+            if (criticalPathLength != o.criticalPathLength) {
+                return Integer.compare(o.criticalPathLength, criticalPathLength);
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    private static class Slots {
+        final int maxConcurrent;
+        final Set<String> running = new HashSet<>();
+        final PriorityQueue<PendingStart> pending = new PriorityQueue<>();
+
+        Slots(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+    }
+
+    private final int defaultMaxConcurrent;
+    private final Map<String, Slots> slotsByAdapter = new HashMap<>();
+    private long sequence;
+
+    CompositionScheduler(int defaultMaxConcurrent) {
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+    }
+
+    /**
+     * Returns the scheduler of the given host, which is created on first use.
+     */
+    static CompositionScheduler getInstance(ServiceHost host) {
+        CompositionScheduler scheduler = SCHEDULERS.get(host.getId());
+        if (scheduler != null) {
+            return scheduler;
+        }
+        scheduler = new CompositionScheduler(
+                Integer.getInteger(MAX_CONCURRENT_PROPERTY, DEFAULT_MAX_CONCURRENT));
+        CompositionScheduler existing = SCHEDULERS.putIfAbsent(host.getId(), scheduler);
+        if (existing != null) {
+            return existing;
+        }
+        host.startService(Operation.createPost(
+                UriUtils.buildUri(host, CompositionSchedulerService.SELF_LINK)),
+                new CompositionSchedulerService(scheduler));
+        return scheduler;
+    }
+
+    /**
+     * Returns the scheduler of the given host, <code>null</code> if none was created. Used while
+     * the host stops, when no scheduler must be created.
+     */
+    static CompositionScheduler findInstance(ServiceHost host) {
+        return SCHEDULERS.get(host.getId());
+    }
+
+    /**
+     * Runs the given start of a composition sub-task as soon as there is a free slot for the
+     * adapter of its resource type. The slot is held until {@link #release(String, String)} is called for the
+     * task, or until the task is deleted or stopped.
+     */
+    void schedule(String resourceType, String taskLink, int criticalPathLength,
+            Runnable start) {
+        synchronized (this) {
+            Slots slots = getSlots(resourceType);
+            if (slots != null && !slots.running.contains(taskLink)) {
+                if (slots.running.size() >= slots.maxConcurrent) {
+                    slots.pending.removeIf(p -> p.taskLink.equals(taskLink));
+                    slots.pending.add(new PendingStart(taskLink, criticalPathLength,
+                            sequence++, start));
+                    return;
+                }
+                slots.running.add(taskLink);
+            }
+        }
+        run(start);
+    }
+
+    /**
+     * Frees the slot held by the given task, if any, and starts the next waiting task.
+     */
+    void release(String resourceType, String taskLink) {
+        List<Runnable> starts = new ArrayList<>();
+        synchronized (this) {
+            Slots slots = getSlots(resourceType);
+            if (slots != null) {
+                release(slots, taskLink, starts);
+            }
+        }
+        starts.forEach(CompositionScheduler::run);
+    }
+
+    /**
+     * Frees the slot held by the given task for any resource type. Used when the task is deleted,
+     * expires or stops on this node and its state is not available.
+     */
+    void release(String taskLink) {
+        List<Runnable> starts = new ArrayList<>();
+        synchronized (this) {
+            for (Slots slots : slotsByAdapter.values()) {
+                if (slots.maxConcurrent > 0) {
+                    release(slots, taskLink, starts);
+                }
+            }
+        }
+        starts.forEach(CompositionScheduler::run);
+    }
+
+    private void release(Slots slots, String taskLink, List<Runnable> starts) {
+        slots.pending.removeIf(p -> p.taskLink.equals(taskLink));
+        if (!slots.running.remove(taskLink)) {
+            return;
+        }
+        while (slots.running.size() < slots.maxConcurrent && !slots.pending.isEmpty()) {
+            PendingStart next = slots.pending.poll();
+            slots.running.add(next.taskLink);
+            starts.add(next.start);
+        }
+    }
+
+    synchronized int getRunningCount(String resourceType) {
+        Slots slots = getSlots(resourceType);
+        return slots != null ? slots.running.size() : 0;
+    }
+
+    synchronized int getPendingCount(String resourceType) {
+        Slots slots = getSlots(resourceType);
+        return slots != null ? slots.pending.size() : 0;
+    }
+
+    /**
+     * Returns the slots of the adapter of the given resource type, <code>null</code> if it is not
+     * limited.
+     */
+    private Slots getSlots(String resourceType) {
+        String adapterLink = ADAPTER_LINKS.get(resourceType);
+        String key = adapterLink != null ? UriUtils.getLastPathSegment(adapterLink)
+                : resourceType;
+        Slots slots = slotsByAdapter.get(key);
+        if (slots == null) {
+            slots = new Slots(Integer.getInteger(MAX_CONCURRENT_PROPERTY + "." + key,
+                    defaultMaxConcurrent));
+            slotsByAdapter.put(key, slots);
+        }
+        return slots.maxConcurrent > 0 ? slots : null;
+    }
+
+    private static void run(Runnable start) {
+        try {
+            start.run();
+        } catch (Throwable e) {
+            Utils.log(CompositionScheduler.class, CompositionScheduler.class.getSimpleName(),
+                    Level.WARNING, "Failure starting composition component: %s",
+                    Utils.toString(e));
+        }
+    }
+}
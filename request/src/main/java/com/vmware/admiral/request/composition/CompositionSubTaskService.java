@@ -40,6 +40,7 @@ import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.BindingEvaluator;
 import com.vmware.admiral.compute.BindingUtils;
 import com.vmware.admiral.compute.ComponentDescription;
+import com.vmware.admiral.compute.CompiledBindings;
 import com.vmware.admiral.compute.ResourceType;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry.ComponentMeta;
@@ -159,6 +160,14 @@ public class CompositionSubTaskService
         /** Set by Task. Indicating that it is in the second phase after allocation */
         public boolean postAllocation;
 
+        /**
+         * Number of components in the longest chain of components depending on this one,
+         * including it. Components with longer chains are started first when the number of
+         * components started at the same time is limited.
+         */
+        @PropertyOptions(indexing = STORE_ONLY)
+        public int criticalPathLength;
+
         /**
          * (Internal) the groupResourcePlacementState that links to ResourcePool
          */
@@ -200,6 +209,7 @@ public class CompositionSubTaskService
         case ALLOCATING:
             break;
         case ALLOCATED:
+            releaseSchedulerSlot(state);
             notifyDependentTasks(state, SubStage.CREATED, () -> {
                 if (state.allocationRequest) {
                     proceedTo(SubStage.NOTIFY);
@@ -219,6 +229,7 @@ public class CompositionSubTaskService
         case EXECUTING:
             break;
         case COMPLETED:
+            releaseSchedulerSlot(state);
             notifyDependentTasks(state, SubStage.EXECUTE, () -> {
                 complete(s -> {
                     s.addCustomProperty(REFERER, getSelfLink());
@@ -226,6 +237,7 @@ public class CompositionSubTaskService
             });
             break;
         case ERROR:
+            releaseSchedulerSlot(state);
             if (!hasDependencies(state)) {
                 notifyDependentTasks(state, SubStage.ERROR, () -> {
                     completeWithError(s -> {
@@ -239,6 +251,29 @@ public class CompositionSubTaskService
         }
     }
 
+    @Override
+    protected void handleFailedStagePatch(CompositionSubTaskState state) {
+        releaseSchedulerSlot(state);
+        super.handleFailedStagePatch(state);
+    }
+
+    @Override
+    public void handleDelete(Operation delete) {
+        // a deleted or cancelled task never reaches a final sub-stage
+        CompositionScheduler.getInstance(getHost()).release(getSelfLink());
+        super.handleDelete(delete);
+    }
+
+    @Override
+    public void handleStop(Operation delete) {
+        // expired tasks are stopped without a DELETE request, the host may be stopping as well
+        CompositionScheduler scheduler = CompositionScheduler.findInstance(getHost());
+        if (scheduler != null) {
+            scheduler.release(getSelfLink());
+        }
+        super.handleStop(delete);
+    }
+
     private void notifyCaller(CompositionSubTaskState state) {
         ServiceTaskCallbackResponse callbackResponse = getFinishedCallbackResponse(state);
         callbackResponse.customProperties = mergeCustomProperties(
@@ -577,15 +612,31 @@ public class CompositionSubTaskService
             } else {
                 if (SubStage.ALLOCATING.ordinal() > state.taskSubStage.ordinal()
                         && isProvisionOperation(state)) {
-                    allocate(state);
+                    schedule(state, () -> allocate(state));
                 } else {
-                    executeTask(state);
+                    schedule(state, () -> executeTask(state));
                 }
             }
 
         }
     }
 
+    private void schedule(CompositionSubTaskState state, Runnable start) {
+        CompositionScheduler.getInstance(getHost()).schedule(state.resourceType, getSelfLink(),
+                state.criticalPathLength, () -> {
+                    try {
+                        start.run();
+                    } catch (Throwable e) {
+                        failTask("Failure starting composition component", e);
+                    }
+                });
+    }
+
+    private void releaseSchedulerSlot(CompositionSubTaskState state) {
+        CompositionScheduler.getInstance(getHost()).release(state.resourceType,
+                getSelfLink());
+    }
+
     private void evaluateBindings(String compositeDescriptionLink,
             String resourceDescriptionLink, Runnable callback) {
 
@@ -636,8 +687,12 @@ public class CompositionSubTaskService
                         .add(sourceDescription.getServiceDocument().documentSelfLink);
             }
 
+            CompiledBindings compiledBindings = CompiledBindings.forComponent(
+                    compositeDescription.documentSelfLink,
+                    description.getServiceDocument().documentSelfLink, provisioningTimeBindings);
+
             getDependsOnProvisionedResources(compositeDescription, dependsOnDescriptionLinks,
-                    description.getServiceDocument().documentSelfLink, provisioningTimeBindings,
+                    description.getServiceDocument().documentSelfLink, compiledBindings,
                     callback);
 
         }).sendWith(this);
@@ -646,7 +701,7 @@ public class CompositionSubTaskService
     private void getDependsOnProvisionedResources(
             CompositeDescriptionExpanded compositeDescription,
             Set<String> dependsOnDescriptionLinks, String descLink,
-            List<Binding> provisioningTimeBindings, Runnable callback) {
+            CompiledBindings provisioningTimeBindings, Runnable callback) {
         QueryTask componentDescriptionQueryTask = new QueryTask();
         componentDescriptionQueryTask.querySpec = new QueryTask.QuerySpecification();
         componentDescriptionQueryTask.taskInfo.isDirect = true;
@@ -409,7 +409,7 @@ public class CompositionTaskService
         }
 
         final AtomicBoolean error = new AtomicBoolean();
-        for (final Map.Entry<String, ResourceNode> entry : state.resourceNodes.entrySet()) {
+        for (final Map.Entry<String, ResourceNode> entry : byCriticalPath(state.resourceNodes)) {
             final ResourceNode resourceNode = entry.getValue();
             final String subTaskSelfLink = entry.getKey();
             createCompositionSubTask(state, resourceNode, subTaskSelfLink, (o, e) -> {
@@ -449,6 +449,7 @@ public class CompositionTaskService
         compositionSubTask.operation = RequestBrokerState.PROVISION_RESOURCE_OPERATION;
         compositionSubTask.compositeDescriptionLink = state.resourceDescriptionLink;
         compositionSubTask.groupResourcePlacementLink = state.groupResourcePlacementLink;
+        compositionSubTask.criticalPathLength = resourceNode.criticalPathLength;
 
         if (resourceNode.dependsOn != null && !resourceNode.dependsOn.isEmpty()) {
             compositionSubTask.dependsOnLinks = resourceNode.dependsOn
@@ -527,8 +528,9 @@ public class CompositionTaskService
 
     private void patchSubTaskToExecute(CompositionTaskState state) {
         final AtomicBoolean error = new AtomicBoolean();
-        // patch each subtask to EXECUTE
-        for (final String subTaskSelfLink : state.resourceNodes.keySet()) {
+        // patch each subtask to EXECUTE, the ones with the longest chains of dependents first
+        for (final Map.Entry<String, ResourceNode> entry : byCriticalPath(state.resourceNodes)) {
+            final String subTaskSelfLink = entry.getKey();
             patchCompositionSubTaskToExecute(subTaskSelfLink, (o, e) -> {
                 if (e != null) {
                     if (error.compareAndSet(false, true)) {
@@ -565,6 +567,13 @@ public class CompositionTaskService
                 .setCompletion(completionHandler));
     }
 
+    private static List<Map.Entry<String, ResourceNode>> byCriticalPath(
+            Map<String, ResourceNode> resourceNodes) {
+        return resourceNodes.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(CompositionGraph.CRITICAL_PATH_ORDER))
+                .collect(Collectors.toList());
+    }
+
     private String buildCompositionSubTaskLink(String name) {
         final String compositionSubTaskId = getSelfId() + "-"
                 + UriUtilsExtended.getValueEncoded(name);
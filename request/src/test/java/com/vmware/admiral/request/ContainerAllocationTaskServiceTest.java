@@ -62,6 +62,9 @@ import com.vmware.photon.controller.model.resources.ComputeDescriptionService.Co
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription.ComputeType;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.test.TestContext;
 
@@ -125,6 +128,56 @@ public class ContainerAllocationTaskServiceTest extends RequestBaseTest {
 
     }
 
+    @Test
+    public void testBulkAllocation() throws Throwable {
+        ContainerAllocationTaskState allocationTask = createContainerAllocationTask(
+                containerDesc.documentSelfLink,
+                ContainerAllocationTaskService.BULK_ALLOCATION_THRESHOLD);
+        allocationTask = allocate(allocationTask);
+
+        for (String resourceLink : allocationTask.resourceLinks) {
+            ContainerState containerState = getDocument(ContainerState.class, resourceLink);
+            assertEquals(containerDesc.documentSelfLink, containerState.descriptionLink);
+            assertEquals(groupPlacementState.documentSelfLink,
+                    containerState.groupResourcePlacementLink);
+            validatePorts(containerDesc, containerState);
+            waitForContainerPowerState(PowerState.RUNNING, containerState.documentSelfLink);
+        }
+
+        // the allocation rate is kept by the factory, the task is short lived
+        waitFor(() -> {
+            ServiceStats stats = getDocument(ServiceStats.class, UriUtils.buildUriPath(
+                    ContainerAllocationTaskFactoryService.SELF_LINK,
+                    ServiceHost.SERVICE_URI_SUFFIX_STATS));
+            ServiceStat stat = stats.entries.get(
+                    ContainerAllocationTaskService.STAT_NAME_CONTAINERS_PER_SECOND);
+            return stat != null && stat.latestValue > 0;
+        });
+    }
+
+    @Test
+    public void testBulkProvisioningAfterAllocation() throws Throwable {
+        ContainerAllocationTaskState allocationTask = createContainerAllocationTask(
+                containerDesc.documentSelfLink,
+                ContainerAllocationTaskService.BULK_ALLOCATION_THRESHOLD);
+        allocationTask.customProperties.put(RequestUtils.FIELD_NAME_ALLOCATION_REQUEST,
+                Boolean.TRUE.toString());
+        allocationTask = allocate(allocationTask);
+
+        // the containers allocated in bulk are provisioned by a separate request
+        RequestBrokerState provisioningRequest = new RequestBrokerState();
+        provisioningRequest.resourceType = allocationTask.resourceType;
+        provisioningRequest.resourceLinks = allocationTask.resourceLinks;
+        provisioningRequest.resourceDescriptionLink = containerDesc.documentSelfLink;
+        provisioningRequest.operation = ContainerOperationType.CREATE.id;
+        provisioningRequest = startRequest(provisioningRequest);
+        waitForRequestToComplete(provisioningRequest);
+
+        for (String resourceLink : allocationTask.resourceLinks) {
+            waitForContainerPowerState(PowerState.RUNNING, resourceLink);
+        }
+    }
+
     @Test
     public void testAllocationTaskServiceLifeCycleFailed() throws Throwable {
         // create allocation task:
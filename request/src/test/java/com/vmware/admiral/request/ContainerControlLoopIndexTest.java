@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
+import com.vmware.admiral.request.ContainerControlLoopIndex.DescriptionEntry;
+
+/**
+ * Tests for the {@link ContainerControlLoopIndex} class.
+ */
+public class ContainerControlLoopIndexTest {
+
+    private static final String DESCRIPTION_LINK = "/resources/container-descriptions/cd1";
+
+    private ContainerControlLoopIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ContainerControlLoopIndex();
+        assertTrue(index.updateDescription(createDescription(DESCRIPTION_LINK, true), false, 1));
+        index.loadContainers(DESCRIPTION_LINK, Arrays.asList(
+                createContainer("c1", DESCRIPTION_LINK, 1),
+                createContainer("c2", DESCRIPTION_LINK, 1)), true);
+    }
+
+    @Test
+    public void testOnlyChangedDescriptionsAreDirty() {
+        List<DescriptionEntry> dirty = index.pollDirty();
+        assertEquals(1, dirty.size());
+        assertEquals(2, dirty.get(0).containers.size());
+        assertEquals(0, index.getDirtyCount());
+        assertTrue(index.pollDirty().isEmpty());
+
+        // a container of a description without auto redeploy
+        index.updateContainer(createContainer("c3", "/other", 1), false, 2);
+        assertEquals(0, index.getDirtyCount());
+
+        index.updateContainer(createContainer("c1", DESCRIPTION_LINK, 2), false, 3);
+        index.updateContainer(createContainer("c2", DESCRIPTION_LINK, 2), true, 4);
+        dirty = index.pollDirty();
+        assertEquals(1, dirty.size());
+        assertEquals(1, dirty.get(0).containers.size());
+        // the lag is counted from the first change
+        assertEquals(3, dirty.get(0).dirtySinceMicros);
+    }
+
+    @Test
+    public void testIgnoreOutdatedChanges() {
+        index.pollDirty();
+
+        index.updateContainer(createContainer("c1", DESCRIPTION_LINK, 3), true, 2);
+        // a late notification of the container before it was deleted
+        index.updateContainer(createContainer("c1", DESCRIPTION_LINK, 2), false, 3);
+
+        List<DescriptionEntry> dirty = index.pollDirty();
+        assertEquals(1, dirty.size());
+        assertEquals(1, dirty.get(0).containers.size());
+        assertEquals("c2", dirty.get(0).containers.get(0).documentSelfLink);
+    }
+
+    @Test
+    public void testAutoRedeployDisabled() {
+        assertFalse(index.updateDescription(createDescription(DESCRIPTION_LINK, false), false, 2));
+        assertTrue(index.pollDirty().isEmpty());
+
+        // enabled again, the containers are to be loaded before it is reconciled
+        assertTrue(index.updateDescription(createDescription(DESCRIPTION_LINK, true), false, 3));
+        assertTrue(index.pollDirty().isEmpty());
+        index.loadContainers(DESCRIPTION_LINK, Collections.emptyList(), false);
+        assertEquals(1, index.pollDirty().size());
+    }
+
+    @Test
+    public void testPostponedDescriptionKeepsLag() {
+        DescriptionEntry entry = index.pollDirty().get(0);
+        index.markDirty(DESCRIPTION_LINK, entry.dirtySinceMicros);
+        index.updateContainer(createContainer("c1", DESCRIPTION_LINK, 2), false, 5);
+
+        assertEquals(entry.dirtySinceMicros, index.pollDirty().get(0).dirtySinceMicros);
+    }
+
+    private static ContainerDescription createDescription(String link, boolean autoredeploy) {
+        ContainerDescription description = new ContainerDescription();
+        description.documentSelfLink = link;
+        description.healthConfig = new HealthConfig();
+        description.healthConfig.autoredeploy = autoredeploy;
+        return description;
+    }
+
+    private static ContainerState createContainer(String link, String descriptionLink,
+            long version) {
+        ContainerState container = new ContainerState();
+        container.documentSelfLink = link;
+        container.descriptionLink = descriptionLink;
+        container.documentVersion = version;
+        return container;
+    }
+}
@@ -397,6 +397,23 @@ public class CompositionGraphTest {
                 node1
         ), calculatedGraph);
 
+        // Critical path: the longest chain of dependents
+        assertEquals(1, node0.criticalPathLength);
+        assertEquals(1, node1.criticalPathLength);
+        assertEquals(2, node3.criticalPathLength);
+        assertEquals(2, node4.criticalPathLength);
+        assertEquals(3, node6.criticalPathLength);
+        assertEquals(4, node8.criticalPathLength);
+        assertEquals(4, node9.criticalPathLength);
+        assertEquals(3, node7.criticalPathLength);
+        assertEquals(4, node10.criticalPathLength);
+        assertEquals(5, node12.criticalPathLength);
+        assertEquals(5, node13.criticalPathLength);
+        assertEquals(5, node14.criticalPathLength);
+
+        List<ResourceNode> byCriticalPath = graph.getNodesByCriticalPath();
+        assertEquals(Arrays.asList(node12, node13, node14), byCriticalPath.subList(0, 3));
+        assertEquals(node0, byCriticalPath.get(byCriticalPath.size() - 3));
     }
 
     @Test
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.composition;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vmware.admiral.compute.ResourceType;
+
+public class CompositionSchedulerTest {
+    private static final String TYPE = "DOCKER_CONTAINER";
+    private static final String OTHER_TYPE = "COMPUTE";
+
+    @Test
+    public void testUnlimited() {
+        CompositionScheduler scheduler = new CompositionScheduler(0);
+        List<String> started = new ArrayList<>();
+
+        scheduler.schedule(TYPE, "task1", 1, () -> started.add("task1"));
+        scheduler.schedule(TYPE, "task2", 1, () -> started.add("task2"));
+
+        assertEquals(Arrays.asList("task1", "task2"), started);
+        assertEquals(0, scheduler.getRunningCount(TYPE));
+        assertEquals(0, scheduler.getPendingCount(TYPE));
+    }
+
+    @Test
+    public void testStartByCriticalPathWhenReleased() {
+        CompositionScheduler scheduler = new CompositionScheduler(1);
+        List<String> started = new ArrayList<>();
+
+        scheduler.schedule(TYPE, "task1", 1, () -> started.add("task1"));
+        scheduler.schedule(TYPE, "task2", 1, () -> started.add("task2"));
+        scheduler.schedule(TYPE, "task3", 3, () -> started.add("task3"));
+        scheduler.schedule(TYPE, "task4", 3, () -> started.add("task4"));
+
+        assertEquals(Arrays.asList("task1"), started);
+        assertEquals(1, scheduler.getRunningCount(TYPE));
+        assertEquals(3, scheduler.getPendingCount(TYPE));
+
+        // the longest critical path first, then in the order of scheduling
+        scheduler.release(TYPE, "task1");
+        assertEquals(Arrays.asList("task1", "task3"), started);
+        scheduler.release(TYPE, "task3");
+        assertEquals(Arrays.asList("task1", "task3", "task4"), started);
+        scheduler.release(TYPE, "task4");
+        assertEquals(Arrays.asList("task1", "task3", "task4", "task2"), started);
+        scheduler.release(TYPE, "task2");
+
+        assertEquals(0, scheduler.getRunningCount(TYPE));
+        assertEquals(0, scheduler.getPendingCount(TYPE));
+    }
+
+    @Test
+    public void testReleaseIsIdempotent() {
+        CompositionScheduler scheduler = new CompositionScheduler(1);
+        List<String> started = new ArrayList<>();
+
+        scheduler.schedule(TYPE, "task1", 1, () -> started.add("task1"));
+        scheduler.schedule(TYPE, "task2", 1, () -> started.add("task2"));
+        scheduler.schedule(TYPE, "task3", 1, () -> started.add("task3"));
+
+        scheduler.release(TYPE, "task1");
+        scheduler.release(TYPE, "task1");
+        assertEquals(Arrays.asList("task1", "task2"), started);
+        assertEquals(1, scheduler.getRunningCount(TYPE));
+        assertEquals(1, scheduler.getPendingCount(TYPE));
+
+        // a failed task which never got a slot is dropped from the pending ones
+        scheduler.release(TYPE, "task3");
+        assertEquals(0, scheduler.getPendingCount(TYPE));
+        scheduler.release(TYPE, "task2");
+        assertEquals(Arrays.asList("task1", "task2"), started);
+        assertEquals(0, scheduler.getRunningCount(TYPE));
+    }
+
+    @Test
+    public void testReleaseOfDeletedTask() {
+        CompositionScheduler scheduler = new CompositionScheduler(1);
+        List<String> started = new ArrayList<>();
+
+        scheduler.schedule(TYPE, "task1", 1, () -> started.add("task1"));
+        scheduler.schedule(TYPE, "task2", 1, () -> started.add("task2"));
+        scheduler.schedule(TYPE, "task3", 1, () -> started.add("task3"));
+
+        // the resource type is not known when a task is deleted or expires
+        scheduler.release("task1");
+        assertEquals(Arrays.asList("task1", "task2"), started);
+        scheduler.release("task3");
+        assertEquals(1, scheduler.getRunningCount(TYPE));
+        assertEquals(0, scheduler.getPendingCount(TYPE));
+
+        scheduler.release("task2");
+        assertEquals(0, scheduler.getRunningCount(TYPE));
+    }
+
+    @Test
+    public void testRunningTaskIsStartedAgain() {
+        CompositionScheduler scheduler = new CompositionScheduler(1);
+        List<String> started = new ArrayList<>();
+
+        // allocation and provisioning of the same task hold a single slot
+        scheduler.schedule(TYPE, "task1", 1, () -> started.add("allocate"));
+        scheduler.schedule(TYPE, "task1", 1, () -> started.add("provision"));
+
+        assertEquals(Arrays.asList("allocate", "provision"), started);
+        assertEquals(1, scheduler.getRunningCount(TYPE));
+    }
+
+    @Test
+    public void testLimitPerAdapter() {
+        CompositionScheduler scheduler = new CompositionScheduler(1);
+        List<String> started = new ArrayList<>();
+
+        scheduler.schedule(TYPE, "task1", 1, () -> started.add("task1"));
+        scheduler.schedule(OTHER_TYPE, "task2", 1, () -> started.add("task2"));
+        scheduler.schedule(TYPE, "task3", 1, () -> started.add("task3"));
+
+        assertEquals(Arrays.asList("task1", "task2"), started);
+        assertEquals(1, scheduler.getPendingCount(TYPE));
+        assertEquals(0, scheduler.getPendingCount(OTHER_TYPE));
+    }
+
+    @Test
+    public void testResourceTypesOfAnAdapterShareTheLimit() {
+        CompositionScheduler scheduler = new CompositionScheduler(1);
+        List<String> started = new ArrayList<>();
+
+        scheduler.schedule(ResourceType.KUBERNETES_POD_TYPE.getName(), "task1", 1,
+                () -> started.add("task1"));
+        scheduler.schedule(ResourceType.KUBERNETES_SERVICE_TYPE.getName(), "task2", 1,
+                () -> started.add("task2"));
+
+        assertEquals(Arrays.asList("task1"), started);
+        assertEquals(1, scheduler.getPendingCount(ResourceType.KUBERNETES_POD_TYPE.getName()));
+
+        scheduler.release(ResourceType.KUBERNETES_POD_TYPE.getName(), "task1");
+        assertEquals(Arrays.asList("task1", "task2"), started);
+    }
+
+    @Test
+    public void testFailingStartKeepsScheduling() {
+        CompositionScheduler scheduler = new CompositionScheduler(1);
+        List<String> started = new ArrayList<>();
+
+        scheduler.schedule(TYPE, "task1", 1, () -> {
+            throw new IllegalStateException("expected");
+        });
+        scheduler.schedule(TYPE, "task2", 1, () -> started.add("task2"));
+        scheduler.release(TYPE, "task1");
+
+        assertEquals(Arrays.asList("task2"), started);
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.simulator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import com.vmware.admiral.adapter.common.ContainerOperationType;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.ResourceType;
+import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
+import com.vmware.admiral.compute.container.ContainerHostDataCollectionService.ContainerHostDataCollectionState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.request.RequestBrokerFactoryService;
+import com.vmware.admiral.request.RequestBrokerService.RequestBrokerState;
+import com.vmware.admiral.request.util.TestRequestStateFactory;
+import com.vmware.admiral.service.common.ServiceTaskCallback;
+import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
+import com.vmware.admiral.service.test.MockAdapterSimulation;
+import com.vmware.admiral.service.test.MockDockerContainerToHostService.MockDockerContainerToHostState;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.NumericRange;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Drives the request and data collection services of a single host against a fleet of simulated
+ * Docker hosts backed by the mock adapters. Every workload runs as a phase which reports the
+ * throughput and the p50/p99 latency of its tasks, the rate of index writes and the peak heap
+ * usage. Latency and failures of the simulated hosts are configured with
+ * {@link MockAdapterSimulation}.
+ */
+public class FleetSimulator {
+
+    public static final String CALLBACK_LINK = "/simulator/callbacks";
+
+    public static final String TASK_TYPE_PROVISIONING = "provisioning";
+    public static final String TASK_TYPE_CONTAINER_EVENT = "container-event";
+    public static final String TASK_TYPE_DATA_COLLECTION = "data-collection";
+    public static final String TASK_TYPE_REMOVAL = "removal";
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    // pending hosts are collected again, as the periodic data collection would do
+    private static final long DATA_COLLECTION_RETRIGGER_MILLIS = 1000;
+
+    private final VerificationHost host;
+    private final long timeoutMillis;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final AtomicLong keySequence = new AtomicLong();
+    private final List<PhaseResult> results = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile Phase currentPhase;
+
+    public static class PhaseResult {
+        public String taskType;
+        public int completed;
+        public int failed;
+        public int timedOut;
+        public long durationMillis;
+        public double throughputPerSecond;
+        public double p50LatencyMillis;
+        public double p99LatencyMillis;
+        public long indexWrites;
+        public double indexWritesPerSecond;
+        public long maxHeapUsedBytes;
+
+        @Override
+        public String toString() {
+            return String.format("%s: completed=%d failed=%d timedOut=%d duration=%dms "
+                    + "throughput=%.1f/s p50=%.1fms p99=%.1fms indexWrites=%d (%.1f/s) "
+                    + "maxHeapUsed=%dMB", taskType, completed, failed, timedOut, durationMillis,
+                    throughputPerSecond, p50LatencyMillis, p99LatencyMillis, indexWrites,
+                    indexWritesPerSecond, maxHeapUsedBytes / (1024 * 1024));
+        }
+    }
+
+    private static class Phase {
+        private final String taskType;
+        private final CountDownLatch remaining;
+        private final Map<String, Long> startNanosByKey = new ConcurrentHashMap<>();
+        private final List<Long> latenciesMicros = Collections.synchronizedList(
+                new ArrayList<>());
+        private final AtomicInteger failures = new AtomicInteger();
+        private final long startMicros = Utils.getSystemNowMicrosUtc();
+        private final long startNanos = System.nanoTime();
+        private volatile long maxHeapUsedBytes;
+
+        private Phase(String taskType, int tasks) {
+            this.taskType = taskType;
+            this.remaining = new CountDownLatch(tasks);
+        }
+
+        private void started(String key) {
+            startNanosByKey.put(key, System.nanoTime());
+        }
+
+        private void completed(String key, boolean success) {
+            Long start = startNanosByKey.remove(key);
+            if (start == null) {
+                // already completed, e.g. a duplicate notification
+                return;
+            }
+            latenciesMicros.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (!success) {
+                failures.incrementAndGet();
+            }
+            remaining.countDown();
+        }
+    }
+
+    /**
+     * Receives the completion callbacks of the requests, each request is given its own path.
+     */
+    private class CallbackService extends StatelessService {
+        private CallbackService() {
+            super.toggleOption(ServiceOption.URI_NAMESPACE_OWNER, true);
+        }
+
+        @Override
+        public void handlePatch(Operation patch) {
+            ServiceTaskCallbackResponse body = patch.getBody(ServiceTaskCallbackResponse.class);
+            Phase phase = currentPhase;
+            if (phase != null && body.taskInfo != null) {
+                phase.completed(patch.getUri().getPath(),
+                        body.taskInfo.stage == TaskStage.FINISHED);
+            }
+            patch.complete();
+        }
+    }
+
+    public FleetSimulator(VerificationHost host, long timeoutMillis) {
+        this.host = host;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void start() throws Throwable {
+        host.startServiceAndWait(new CallbackService(), CALLBACK_LINK, null);
+    }
+
+    public List<PhaseResult> getResults() {
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Submits all provisioning requests at once and returns the provisioned containers.
+     */
+    public List<ContainerState> provisionBurst(String containerDescriptionLink, int requests,
+            int containersPerRequest) throws Throwable {
+        Phase phase = startPhase(TASK_TYPE_PROVISIONING, requests);
+        for (int i = 0; i < requests; i++) {
+            RequestBrokerState request = TestRequestStateFactory.createRequestState(
+                    ResourceType.CONTAINER_TYPE.getName(), containerDescriptionLink);
+            request.resourceCount = containersPerRequest;
+            submitRequest(phase, request);
+        }
+        awaitPhase(phase, null);
+
+        return queryContainers(containerDescriptionLink);
+    }
+
+    /**
+     * Restarts every container, delivering a die and a start event for it the same way the
+     * Docker adapter processes the event stream of a host: the container is looked up by id and
+     * its power state is patched.
+     */
+    public void emitContainerEvents(List<ContainerState> containers) throws Throwable {
+        Phase phase = startPhase(TASK_TYPE_CONTAINER_EVENT, containers.size() * 2);
+        for (ContainerState container : containers) {
+            deliverEvent(phase, container.id, PowerState.STOPPED,
+                    () -> deliverEvent(phase, container.id, PowerState.RUNNING, null));
+        }
+        awaitPhase(phase, null);
+    }
+
+    /**
+     * Stops one container on every host without delivering an event, as if the event was lost,
+     * and runs a data collection of the hosts. The latency of a host is the time until its
+     * stopped container is reconciled, measured with the resolution of the poll interval.
+     */
+    public void collectWithDrift(List<ContainerState> containers) throws Throwable {
+        Map<String, ContainerState> driftedByHostLink = new LinkedHashMap<>();
+        for (ContainerState container : containers) {
+            driftedByHostLink.putIfAbsent(container.parentLink, container);
+        }
+        stopInMockHosts(driftedByHostLink.values());
+
+        Phase phase = startPhase(TASK_TYPE_DATA_COLLECTION, driftedByHostLink.size());
+        driftedByHostLink.keySet().forEach(phase::started);
+        triggerDataCollection(driftedByHostLink.keySet());
+
+        long retriggerEveryPolls = DATA_COLLECTION_RETRIGGER_MILLIS / POLL_INTERVAL_MILLIS;
+        AtomicLong polls = new AtomicLong();
+        awaitPhase(phase, p -> {
+            List<String> pendingHostLinks = new ArrayList<>(p.startNanosByKey.keySet());
+            if (polls.incrementAndGet() % retriggerEveryPolls == 0) {
+                triggerDataCollection(pendingHostLinks);
+            }
+            for (String hostLink : pendingHostLinks) {
+                String containerLink = driftedByHostLink.get(hostLink).documentSelfLink;
+                host.sendRequest(Operation.createGet(UriUtils.buildUri(host, containerLink))
+                        .setReferer(host.getUri())
+                        .setCompletion((o, e) -> {
+                            if (e == null && o.getBody(ContainerState.class).powerState
+                                    == PowerState.STOPPED) {
+                                p.completed(hostLink, true);
+                            }
+                        }));
+            }
+        });
+    }
+
+    /**
+     * Removes the containers with removal requests of the given size, all submitted at once.
+     */
+    public void removeAll(List<ContainerState> containers, int containersPerRequest)
+            throws Throwable {
+        int requests = (containers.size() + containersPerRequest - 1) / containersPerRequest;
+        Phase phase = startPhase(TASK_TYPE_REMOVAL, requests);
+        for (int i = 0; i < containers.size(); i += containersPerRequest) {
+            RequestBrokerState request = TestRequestStateFactory.createRequestState();
+            request.operation = ContainerOperationType.DELETE.id;
+            request.resourceLinks = containers
+                    .subList(i, Math.min(i + containersPerRequest, containers.size()))
+                    .stream()
+                    .map(c -> c.documentSelfLink)
+                    .collect(Collectors.toCollection(HashSet::new));
+            submitRequest(phase, request);
+        }
+        awaitPhase(phase, null);
+    }
+
+    private void submitRequest(Phase phase, RequestBrokerState request) {
+        String callbackLink = UriUtils.buildUriPath(CALLBACK_LINK,
+                String.valueOf(keySequence.incrementAndGet()));
+        request.serviceTaskCallback = ServiceTaskCallback.create(callbackLink);
+
+        phase.started(callbackLink);
+        host.sendRequest(Operation
+                .createPost(UriUtils.buildUri(host, RequestBrokerFactoryService.SELF_LINK))
+                .setReferer(host.getUri())
+                .setBody(request)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.log(Level.WARNING, "Failed to submit request: %s",
+                                Utils.toString(e));
+                        phase.completed(callbackLink, false);
+                    }
+                }));
+    }
+
+    private void deliverEvent(Phase phase, String containerId, PowerState powerState,
+            Runnable next) {
+        String key = String.valueOf(keySequence.incrementAndGet());
+        phase.started(key);
+
+        ContainerState patch = new ContainerState();
+        patch.powerState = powerState;
+        if (powerState == PowerState.RUNNING) {
+            patch.started = System.currentTimeMillis();
+        }
+
+        Consumer<Boolean> completion = success -> {
+            phase.completed(key, success);
+            if (next != null) {
+                next.run();
+            }
+        };
+
+        AtomicBoolean found = new AtomicBoolean();
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_ID, containerId);
+        new ServiceDocumentQuery<>(host, ContainerState.class).query(queryTask, (r) -> {
+            if (r.hasException()) {
+                completion.accept(false);
+            } else if (r.hasResult()) {
+                found.set(true);
+                host.sendRequest(Operation
+                        .createPatch(UriUtils.buildUri(host, r.getDocumentSelfLink()))
+                        .setReferer(host.getUri())
+                        .setBody(patch)
+                        .setCompletion((o, e) -> completion.accept(e == null)));
+            } else if (!found.get()) {
+                completion.accept(false);
+            }
+        });
+    }
+
+    private void triggerDataCollection(Collection<String> hostLinks) {
+        if (hostLinks.isEmpty()) {
+            return;
+        }
+        ContainerHostDataCollectionState body = new ContainerHostDataCollectionState();
+        body.computeContainerHostLinks = new ArrayList<>(hostLinks);
+        host.sendRequest(Operation
+                .createPatch(UriUtils.buildUri(host,
+                        ContainerHostDataCollectionService.HOST_INFO_DATA_COLLECTION_LINK))
+                .setReferer(host.getUri())
+                .setBody(body)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.log(Level.WARNING, "Failed to trigger data collection: %s",
+                                Utils.toString(e));
+                    }
+                }));
+    }
+
+    private void stopInMockHosts(Collection<ContainerState> containers) {
+        TestContext ctx = host.testCreate(containers.size());
+        MockDockerContainerToHostState patch = new MockDockerContainerToHostState();
+        patch.powerState = PowerState.STOPPED;
+        for (ContainerState container : containers) {
+            AtomicBoolean found = new AtomicBoolean();
+            QueryTask queryTask = QueryUtil.buildPropertyQuery(
+                    MockDockerContainerToHostState.class,
+                    MockDockerContainerToHostState.FIELD_NAME_ID, container.id);
+            new ServiceDocumentQuery<>(host, MockDockerContainerToHostState.class)
+                    .query(queryTask, (r) -> {
+                        if (r.hasException()) {
+                            ctx.failIteration(r.getException());
+                        } else if (r.hasResult()) {
+                            found.set(true);
+                            host.sendRequest(Operation
+                                    .createPatch(UriUtils.buildUri(host,
+                                            r.getDocumentSelfLink()))
+                                    .setReferer(host.getUri())
+                                    .setBody(patch)
+                                    .setCompletion(ctx.getCompletion()));
+                        } else if (!found.get()) {
+                            ctx.failIteration(new IllegalStateException(
+                                    "Container not found in the mock host: " + container.id));
+                        }
+                    });
+        }
+        host.testWait(ctx);
+    }
+
+    private List<ContainerState> queryContainers(String containerDescriptionLink) {
+        List<ContainerState> containers = Collections.synchronizedList(new ArrayList<>());
+        TestContext ctx = host.testCreate(1);
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_DESCRIPTION_LINK, containerDescriptionLink);
+        QueryUtil.addExpandOption(queryTask);
+        new ServiceDocumentQuery<>(host, ContainerState.class).query(queryTask, (r) -> {
+            if (r.hasException()) {
+                ctx.failIteration(r.getException());
+            } else if (r.hasResult()) {
+                containers.add(r.getResult());
+            } else {
+                ctx.completeIteration();
+            }
+        });
+        host.testWait(ctx);
+        return new ArrayList<>(containers);
+    }
+
+    private Phase startPhase(String taskType, int tasks) {
+        Phase phase = new Phase(taskType, tasks);
+        currentPhase = phase;
+        host.log(Level.INFO, "Starting phase %s with %d tasks", taskType, tasks);
+        return phase;
+    }
+
+    private PhaseResult awaitPhase(Phase phase, Consumer<Phase> poll)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        do {
+            phase.maxHeapUsedBytes = Math.max(phase.maxHeapUsedBytes,
+                    memory.getHeapMemoryUsage().getUsed());
+            if (poll != null) {
+                poll.accept(phase);
+            }
+        } while (!phase.remaining.await(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+                && System.nanoTime() < deadline);
+
+        long durationNanos = System.nanoTime() - phase.startNanos;
+        currentPhase = null;
+
+        List<Long> latencies;
+        synchronized (phase.latenciesMicros) {
+            latencies = new ArrayList<>(phase.latenciesMicros);
+        }
+        Collections.sort(latencies);
+
+        PhaseResult result = new PhaseResult();
+        result.taskType = phase.taskType;
+        result.completed = latencies.size();
+        result.failed = phase.failures.get();
+        result.timedOut = phase.startNanosByKey.size();
+        result.durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        double durationSeconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        result.throughputPerSecond = result.completed / durationSeconds;
+        result.p50LatencyMillis = percentileMillis(latencies, 50);
+        result.p99LatencyMillis = percentileMillis(latencies, 99);
+        result.indexWrites = countIndexWrites(phase.startMicros, Utils.getSystemNowMicrosUtc());
+        result.indexWritesPerSecond = result.indexWrites / durationSeconds;
+        result.maxHeapUsedBytes = Math.max(phase.maxHeapUsedBytes,
+                memory.getHeapMemoryUsage().getUsed());
+
+        host.log(Level.INFO, "Finished phase %s", result);
+        results.add(result);
+        return result;
+    }
+
+    private static double percentileMillis(List<Long> sortedLatenciesMicros, int percentile) {
+        if (sortedLatenciesMicros.isEmpty()) {
+            return 0;
+        }
+        // nearest rank
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedLatenciesMicros.size());
+        return sortedLatenciesMicros.get(Math.max(rank, 1) - 1) / 1000.0;
+    }
+
+    /**
+     * Counts the document versions indexed in the given time range. Versions trimmed by the
+     * version retention limit in the meantime are not counted.
+     */
+    private long countIndexWrites(long fromMicros, long toMicros) {
+        QueryTask queryTask = QueryTask.Builder.createDirectTask()
+                .addOption(QueryOption.COUNT)
+                .addOption(QueryOption.INCLUDE_ALL_VERSIONS)
+                .setQuery(Query.Builder.create()
+                        .addRangeClause(ServiceDocument.FIELD_NAME_UPDATE_TIME_MICROS,
+                                NumericRange.createLongRange(fromMicros, toMicros, true, true))
+                        .build())
+                .build();
+        QueryTask result = host.getTestRequestSender().sendAndWait(Operation
+                .createPost(UriUtils.buildUri(host, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS))
+                .setBody(queryTask), QueryTask.class);
+        return result.results.documentCount;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ContainerDescriptionService;
+import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.request.RequestBaseTest;
+import com.vmware.admiral.request.simulator.FleetSimulator.PhaseResult;
+import com.vmware.admiral.request.util.TestRequestStateFactory;
+import com.vmware.admiral.service.test.MockAdapterSimulation;
+import com.vmware.admiral.service.test.MockAdapterSimulation.LatencyDistribution;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+
+/**
+ * Runs the fleet simulator at a small scale. Larger fleets are simulated with e.g.
+ * <code>-Dtest.simulator.hosts=1000 -Dtest.simulator.requests=500</code>, the latency and failures
+ * of the simulated hosts are set with the {@link MockAdapterSimulation} properties.
+ */
+public class FleetSimulatorTest extends RequestBaseTest {
+
+    private static final int HOSTS = Integer.getInteger("test.simulator.hosts", 3);
+    private static final int REQUESTS = Integer.getInteger("test.simulator.requests", 6);
+    private static final int CONTAINERS_PER_REQUEST = Integer.getInteger(
+            "test.simulator.containers.per.request", 2);
+    private static final long TIMEOUT_MILLIS = Long.getLong("test.simulator.timeout.millis",
+            TimeUnit.MINUTES.toMillis(2));
+
+    @Before
+    public void setUpSimulation() {
+        if (System.getProperty(MockAdapterSimulation.LATENCY_MILLIS_PROPERTY) == null) {
+            // the hosts are never that fast, delay them a bit unless told otherwise
+            MockAdapterSimulation.configure(5, 20, LatencyDistribution.EXPONENTIAL,
+                    MockAdapterSimulation.getFailureRate());
+        }
+    }
+
+    @After
+    public void tearDownSimulation() {
+        MockAdapterSimulation.reset();
+    }
+
+    @Override
+    protected GroupResourcePlacementState createGroupResourcePlacement(
+            ResourcePoolState resourcePool) throws Throwable {
+        return createGroupResourcePlacement(resourcePool, REQUESTS * CONTAINERS_PER_REQUEST);
+    }
+
+    @Test
+    public void testFleetWorkloads() throws Throwable {
+        // one host is created by the base test
+        for (int i = 1; i < HOSTS; i++) {
+            createDockerHost(dockerHostDesc, resourcePool, true);
+        }
+
+        ContainerDescription desc = TestRequestStateFactory.createContainerDescription("fleet");
+        desc.documentSelfLink = UUID.randomUUID().toString();
+        desc.portBindings = null;
+        desc = doPost(desc, ContainerDescriptionService.FACTORY_LINK);
+        assertNotNull(desc);
+        addForDeletion(desc);
+
+        FleetSimulator simulator = new FleetSimulator(host, TIMEOUT_MILLIS);
+        simulator.start();
+
+        List<ContainerState> containers = simulator.provisionBurst(desc.documentSelfLink,
+                REQUESTS, CONTAINERS_PER_REQUEST);
+        simulator.emitContainerEvents(containers);
+        simulator.collectWithDrift(containers);
+        simulator.removeAll(containers, CONTAINERS_PER_REQUEST);
+
+        List<PhaseResult> results = simulator.getResults();
+        assertEquals(4, results.size());
+        if (MockAdapterSimulation.getFailureRate() > 0) {
+            // failures are expected, only the report is of interest
+            return;
+        }
+        assertEquals(REQUESTS * CONTAINERS_PER_REQUEST, containers.size());
+        for (PhaseResult result : results) {
+            assertEquals(result.toString(), 0, result.timedOut);
+            assertEquals(result.toString(), 0, result.failed);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.tiller.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pool of long-lived {@link TillerClient}s. Clients are pooled per cluster, so the connection to
+ * the Tiller instance (and the port forwarding through the K8s API) is established once and then
+ * reused. A single client multiplexes concurrent calls over its channel, so callers share clients
+ * instead of owning them: the clients returned by {@link #acquire(String, TillerConfig)} must be
+ * closed after use, which releases them back to the pool. The pool shared by all callers is
+ * returned by {@link TillerClientProviderUtil#getTillerClientPool()}.
+ * <p>
+ * Clients which have not been checked for a while are health checked before being handed out and
+ * are replaced on failure. Concurrent callers of the same client share a single health check, so
+ * an unhealthy client is replaced only once. Clients which have not been used for longer than the
+ * idle timeout are evicted and closed.
+ * <p>
+ * The pool tracks the latency of the calls made through the leased clients separately from the
+ * latency of its own health checks.
+ */
+public class TillerClientPool {
+
+    public static final int DEFAULT_CLIENTS_PER_CLUSTER = Integer.getInteger(
+            "com.vmware.admiral.tiller.client.pool.clients.per.cluster", 1);
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong(
+            "com.vmware.admiral.tiller.client.pool.idle.timeout.seconds", 300));
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(
+            Long.getLong("com.vmware.admiral.tiller.client.pool.health.check.interval.seconds",
+                    30));
+
+    private final TillerClientProvider provider;
+    private final int clientsPerCluster;
+    private final long idleTimeoutMillis;
+    private final long healthCheckIntervalMillis;
+
+    private final Map<String, List<PooledClient>> clients = new ConcurrentHashMap<>();
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong healthCheckFailureCount = new AtomicLong();
+    private final AtomicLong healthCheckCount = new AtomicLong();
+    private final AtomicLong healthCheckLatencyMicros = new AtomicLong();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong callLatencyMicros = new AtomicLong();
+
+    public TillerClientPool() {
+        this(TillerClientProviderUtil.getTillerClientProvider(), DEFAULT_CLIENTS_PER_CLUSTER,
+                DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_HEALTH_CHECK_INTERVAL_MILLIS);
+    }
+
+    public TillerClientPool(TillerClientProvider provider, int clientsPerCluster,
+            long idleTimeoutMillis, long healthCheckIntervalMillis) {
+        if (clientsPerCluster < 1) {
+            throw new IllegalArgumentException("clientsPerCluster must be positive");
+        }
+        this.provider = provider;
+        this.clientsPerCluster = clientsPerCluster;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    }
+
+    /**
+     * Returns a client connected to the Tiller of the given cluster. The returned client is shared
+     * with other callers and must be closed once the caller is done with it, which releases it
+     * back to the pool without closing the underlying connection.
+     *
+     * @param clusterKey
+     *            identifies the Tiller instance, e.g. the link of the K8s cluster
+     * @param tillerConfig
+     *            used to create a client if none is pooled for the cluster
+     * @return a {@link CompletableFuture} with a healthy client, failed if a client could not be
+     *         created
+     */
+    public CompletableFuture<TillerClient> acquire(String clusterKey, TillerConfig tillerConfig) {
+        evictIdle();
+
+        PooledClient client;
+        try {
+            client = selectClient(clusterKey, tillerConfig);
+        } catch (Exception e) {
+            return failed(e);
+        }
+        if (!client.needsHealthCheck()) {
+            return CompletableFuture.completedFuture(client.lease());
+        }
+        return client.checkHealth(clusterKey, tillerConfig).handle((healthy, ex) -> {
+            if (healthy == client) {
+                return client.lease();
+            }
+            // the selected client was replaced or could not be replaced, move the reservation
+            client.release();
+            if (ex != null) {
+                throw ex instanceof CompletionException ? (CompletionException) ex
+                        : new CompletionException(ex);
+            }
+            healthy.reserve();
+            return healthy.lease();
+        });
+    }
+
+    /**
+     * Closes all pooled clients which have no active leases and have not been used for longer than
+     * the idle timeout.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, List<PooledClient>> entry : clients.entrySet()) {
+            List<PooledClient> idle = new ArrayList<>();
+            synchronized (entry.getValue()) {
+                Iterator<PooledClient> it = entry.getValue().iterator();
+                while (it.hasNext()) {
+                    PooledClient client = it.next();
+                    if (client.leases.get() == 0
+                            && now - client.lastUsedMillis > idleTimeoutMillis) {
+                        it.remove();
+                        idle.add(client);
+                    }
+                }
+            }
+            idle.forEach(this::closeQuietly);
+            evictedCount.addAndGet(idle.size());
+        }
+    }
+
+    /**
+     * Closes all pooled clients.
+     */
+    public void close() {
+        for (String clusterKey : new ArrayList<>(clients.keySet())) {
+            List<PooledClient> removed = clients.remove(clusterKey);
+            if (removed != null) {
+                synchronized (removed) {
+                    removed.forEach(this::closeQuietly);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return clients.values().stream().mapToInt(List::size).sum();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getReusedCount() {
+        return reusedCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getHealthCheckFailureCount() {
+        return healthCheckFailureCount.get();
+    }
+
+    /**
+     * @return the average latency of the health check calls, in microseconds
+     */
+    public long getAverageHealthCheckLatencyMicros() {
+        long count = healthCheckCount.get();
+        return count == 0 ? 0 : healthCheckLatencyMicros.get() / count;
+    }
+
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * @return the average latency of the calls made through the leased clients, in microseconds
+     */
+    public long getAverageCallLatencyMicros() {
+        long count = callCount.get();
+        return count == 0 ? 0 : callLatencyMicros.get() / count;
+    }
+
+    private <V> CompletableFuture<V> timeCall(Supplier<CompletableFuture<V>> call) {
+        long startNanos = System.nanoTime();
+        return call.get().whenComplete((ignore, ex) -> {
+            callCount.incrementAndGet();
+            callLatencyMicros.addAndGet(
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        });
+    }
+
+    private static <V> CompletableFuture<V> failed(Throwable e) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        result.completeExceptionally(e);
+        return result;
+    }
+
+    /**
+     * Selects a client for the cluster and reserves it under the lock of the cluster clients, so
+     * that it cannot be evicted while it is handed out or health checked.
+     */
+    private PooledClient selectClient(String clusterKey, TillerConfig tillerConfig) {
+        List<PooledClient> clusterClients = clients.computeIfAbsent(clusterKey,
+                k -> new ArrayList<>());
+        synchronized (clusterClients) {
+            PooledClient leastUsed = null;
+            for (PooledClient client : clusterClients) {
+                if (leastUsed == null || client.leases.get() < leastUsed.leases.get()) {
+                    leastUsed = client;
+                }
+            }
+            // calls are multiplexed, so a new client is created only until the limit is reached
+            if (leastUsed != null && (leastUsed.leases.get() == 0
+                    || clusterClients.size() >= clientsPerCluster)) {
+                reusedCount.incrementAndGet();
+                leastUsed.reserve();
+                return leastUsed;
+            }
+            PooledClient client = new PooledClient(provider.createTillerClient(tillerConfig));
+            client.reserve();
+            clusterClients.add(client);
+            createdCount.incrementAndGet();
+            return client;
+        }
+    }
+
+    private PooledClient createClient(String clusterKey, TillerConfig tillerConfig) {
+        PooledClient client = new PooledClient(provider.createTillerClient(tillerConfig));
+        client.lastHealthCheckMillis = System.currentTimeMillis();
+        List<PooledClient> clusterClients = clients.computeIfAbsent(clusterKey,
+                k -> new ArrayList<>());
+        synchronized (clusterClients) {
+            clusterClients.add(client);
+        }
+        createdCount.incrementAndGet();
+        return client;
+    }
+
+    private void remove(String clusterKey, PooledClient client) {
+        List<PooledClient> clusterClients = clients.get(clusterKey);
+        if (clusterClients != null) {
+            synchronized (clusterClients) {
+                clusterClients.remove(client);
+            }
+        }
+        closeQuietly(client);
+    }
+
+    private void closeQuietly(PooledClient client) {
+        try {
+            if (!client.delegate.isClosed()) {
+                client.delegate.close();
+            }
+        } catch (Exception e) {
+            // the client is discarded anyway
+        }
+    }
+
+    private class PooledClient {
+        private final TillerClient delegate;
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+        private volatile long lastHealthCheckMillis;
+
+        // the health check in progress, shared by the concurrent acquirers of this client
+        private CompletableFuture<PooledClient> healthCheck;
+
+        PooledClient(TillerClient delegate) {
+            this.delegate = delegate;
+        }
+
+        boolean needsHealthCheck() {
+            return System.currentTimeMillis() - lastHealthCheckMillis > healthCheckIntervalMillis;
+        }
+
+        /**
+         * Returns this client once it passes the health check, or the client which replaced it.
+         */
+        synchronized CompletableFuture<PooledClient> checkHealth(String clusterKey,
+                TillerConfig tillerConfig) {
+            if (healthCheck != null) {
+                return healthCheck;
+            }
+
+            long startNanos = System.nanoTime();
+            CompletableFuture<Void> check;
+            try {
+                check = delegate.healthCheck();
+            } catch (Exception e) {
+                check = failed(e);
+            }
+            CompletableFuture<PooledClient> result = check.handle((ignore, ex) -> {
+                healthCheckCount.incrementAndGet();
+                healthCheckLatencyMicros.addAndGet(
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+                if (ex == null) {
+                    lastHealthCheckMillis = System.currentTimeMillis();
+                    return CompletableFuture.completedFuture(this);
+                }
+                // the connection is broken, replace the client with a fresh one
+                healthCheckFailureCount.incrementAndGet();
+                remove(clusterKey, this);
+                try {
+                    return CompletableFuture.completedFuture(
+                            createClient(clusterKey, tillerConfig));
+                } catch (Exception e) {
+                    return TillerClientPool.<PooledClient> failed(e);
+                }
+            }).thenCompose(f -> f);
+            healthCheck = result;
+            // a completed check is not shared with later acquirers
+            result.whenComplete((ignore, ex) -> clearHealthCheck(result));
+            return result;
+        }
+
+        private synchronized void clearHealthCheck(CompletableFuture<PooledClient> check) {
+            if (healthCheck == check) {
+                healthCheck = null;
+            }
+        }
+
+        void reserve() {
+            leases.incrementAndGet();
+        }
+
+        /**
+         * Returns a lease of this client, which must be reserved.
+         */
+        TillerClient lease() {
+            lastUsedMillis = System.currentTimeMillis();
+            return new Lease(this);
+        }
+
+        void release() {
+            lastUsedMillis = System.currentTimeMillis();
+            leases.decrementAndGet();
+        }
+    }
+
+    /**
+     * The client handed out to callers. Closing it releases the pooled client.
+     */
+    private class Lease implements TillerClient {
+        private final PooledClient client;
+        private boolean closed;
+
+        Lease(PooledClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public CompletableFuture<Void> healthCheck() {
+            if (closed) {
+                throw new TillerClientException("Client is closed");
+            }
+            return timeCall(client.delegate::healthCheck);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                client.release();
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed || client.delegate.isClosed();
+        }
+    }
+}
@@ -12,7 +12,9 @@
 package com.vmware.admiral.tiller.client;
 
 import java.util.Iterator;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
@@ -20,6 +22,13 @@ import java.util.stream.Stream;
  */
 public class TillerClientProviderUtil {
 
+    private static final String NO_PREFERENCE = "";
+
+    // the ServiceLoader scan is expensive, so providers are resolved once per preference
+    private static final Map<String, TillerClientProvider> PROVIDERS = new ConcurrentHashMap<>();
+
+    private static TillerClientPool pool;
+
     /**
      * @return a {@link TillerClientProvider} instance
      * @throws TillerClientException
@@ -40,6 +49,26 @@ public class TillerClientProviderUtil {
      *             if no {@link TillerClientProvider}s could be loaded
      */
     public static TillerClientProvider getTillerClientProvider(String preferredProviderClassName) {
+        String key = preferredProviderClassName == null ? NO_PREFERENCE
+                : preferredProviderClassName;
+        return PROVIDERS.computeIfAbsent(key, TillerClientProviderUtil::loadTillerClientProvider);
+    }
+
+    /**
+     * @return the {@link TillerClientPool} of the clients created by the default
+     *         {@link TillerClientProvider}, shared by all callers
+     * @throws TillerClientException
+     *             if no {@link TillerClientProvider}s could be loaded
+     */
+    public static synchronized TillerClientPool getTillerClientPool() {
+        if (pool == null) {
+            pool = new TillerClientPool();
+        }
+        return pool;
+    }
+
+    private static TillerClientProvider loadTillerClientProvider(
+            String preferredProviderClassName) {
         ServiceLoader<TillerClientProvider> loader = ServiceLoader.load(TillerClientProvider.class);
         Iterator<TillerClientProvider> iterator = loader.iterator();
 
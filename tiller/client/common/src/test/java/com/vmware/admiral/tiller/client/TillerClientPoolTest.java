@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.tiller.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TillerClientPoolTest {
+
+    private static final String CLUSTER_KEY = "test-cluster";
+
+    private final List<TillerClient> createdClients = new ArrayList<>();
+
+    private TillerClientPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testClientIsReusedAcrossCalls() throws Exception {
+        pool = createPool(1, TimeUnit.MINUTES.toMillis(5));
+
+        TillerClient first = pool.acquire(CLUSTER_KEY, null).get();
+        first.healthCheck().get();
+        first.close();
+        assertTrue(first.isClosed());
+
+        TillerClient second = pool.acquire(CLUSTER_KEY, null).get();
+        second.healthCheck().get();
+        second.close();
+
+        assertEquals(1, createdClients.size());
+        assertFalse(createdClients.get(0).isClosed());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+        // only the calls made through the leases are counted, not the pool health checks
+        assertEquals(2, pool.getCallCount());
+    }
+
+    @Test
+    public void testConcurrentCallsAreMultiplexed() throws Exception {
+        pool = createPool(2, TimeUnit.MINUTES.toMillis(5));
+
+        List<TillerClient> leases = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            leases.add(pool.acquire(CLUSTER_KEY, null).get());
+        }
+
+        assertEquals(2, createdClients.size());
+        assertEquals(2, pool.size());
+        for (TillerClient lease : leases) {
+            lease.close();
+        }
+    }
+
+    @Test
+    public void testIdleClientsAreEvicted() throws Exception {
+        pool = createPool(1, 0);
+
+        TillerClient lease = pool.acquire(CLUSTER_KEY, null).get();
+        pool.evictIdle();
+        // leased clients are never evicted
+        assertEquals(1, pool.size());
+
+        lease.close();
+        Thread.sleep(5);
+        pool.evictIdle();
+
+        assertEquals(0, pool.size());
+        assertEquals(1, pool.getEvictedCount());
+        assertTrue(createdClients.get(0).isClosed());
+    }
+
+    @Test
+    public void testClientUnderHealthCheckIsNotEvicted() throws Exception {
+        CompletableFuture<Void> healthCheck = new CompletableFuture<>();
+        List<TillerClient> clients = new ArrayList<>();
+        pool = new TillerClientPool(config -> {
+            TillerClient client = new MockTillerClient() {
+                @Override
+                public CompletableFuture<Void> healthCheck() {
+                    return healthCheck;
+                }
+            };
+            clients.add(client);
+            return client;
+        }, 1, 0, 0);
+
+        CompletableFuture<TillerClient> lease = pool.acquire(CLUSTER_KEY, null);
+        Thread.sleep(5);
+        pool.evictIdle();
+        assertEquals(1, pool.size());
+        assertFalse(clients.get(0).isClosed());
+
+        healthCheck.complete(null);
+        lease.get().close();
+        Thread.sleep(5);
+        pool.evictIdle();
+        assertEquals(0, pool.size());
+        assertTrue(clients.get(0).isClosed());
+    }
+
+    @Test
+    public void testUnhealthyClientIsReplaced() throws Exception {
+        List<TillerClient> clients = new ArrayList<>();
+        pool = new TillerClientPool(config -> {
+            TillerClient client = clients.isEmpty() ? new UnhealthyTillerClient()
+                    : new MockTillerClient();
+            clients.add(client);
+            return client;
+        }, 1, TimeUnit.MINUTES.toMillis(5), 0);
+
+        TillerClient lease = pool.acquire(CLUSTER_KEY, null).get();
+        lease.healthCheck().get();
+        lease.close();
+
+        assertEquals(2, clients.size());
+        assertTrue(clients.get(0).isClosed());
+        assertEquals(1, pool.getHealthCheckFailureCount());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testConcurrentAcquirersShareReplacement() throws Exception {
+        CompletableFuture<Void> healthCheck = new CompletableFuture<>();
+        AtomicInteger healthChecks = new AtomicInteger();
+        List<TillerClient> clients = new ArrayList<>();
+        pool = new TillerClientPool(config -> {
+            TillerClient client = clients.isEmpty() ? new MockTillerClient() {
+                @Override
+                public CompletableFuture<Void> healthCheck() {
+                    healthChecks.incrementAndGet();
+                    return healthCheck;
+                }
+            } : new MockTillerClient();
+            clients.add(client);
+            return client;
+        }, 1, TimeUnit.MINUTES.toMillis(5), 0);
+
+        CompletableFuture<TillerClient> first = pool.acquire(CLUSTER_KEY, null);
+        CompletableFuture<TillerClient> second = pool.acquire(CLUSTER_KEY, null);
+        assertEquals(1, healthChecks.get());
+
+        healthCheck.completeExceptionally(new TillerClientException("Tiller is not serving"));
+        first.get().close();
+        second.get().close();
+
+        // a single replacement is created and pooled
+        assertEquals(2, clients.size());
+        assertTrue(clients.get(0).isClosed());
+        assertFalse(clients.get(1).isClosed());
+        assertEquals(1, pool.size());
+        assertEquals(1, pool.getHealthCheckFailureCount());
+    }
+
+    @Test
+    public void testFailedClientCreationFailsAcquire() throws Exception {
+        TillerClientException failure = new TillerClientException("Cannot connect to Tiller");
+        pool = new TillerClientPool(config -> {
+            throw failure;
+        }, 1, TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(5));
+
+        CompletableFuture<TillerClient> lease = pool.acquire(CLUSTER_KEY, null);
+        try {
+            lease.get();
+            throw new AssertionError("acquire should have failed");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(0, pool.size());
+    }
+
+    private TillerClientPool createPool(int clientsPerCluster, long idleTimeoutMillis) {
+        return new TillerClientPool(config -> {
+            TillerClient client = new MockTillerClient();
+            createdClients.add(client);
+            return client;
+        }, clientsPerCluster, idleTimeoutMillis, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    private static class UnhealthyTillerClient extends MockTillerClient {
+        @Override
+        public CompletableFuture<Void> healthCheck() {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(new TillerClientException("Tiller is not serving"));
+            return result;
+        }
+    }
+}
@@ -13,6 +13,7 @@ package com.vmware.admiral.tiller.client;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -43,4 +44,11 @@ public class TillerClientProviderUtilTest {
         assertNotNull(provider);
         assertEquals(MockTillerClientProvider.class.getName(), provider.getClass().getName());
     }
+
+    @Test
+    public void testGetTillerClientPool() {
+        TillerClientPool pool = TillerClientProviderUtil.getTillerClientPool();
+        assertNotNull(pool);
+        assertSame(pool, TillerClientProviderUtil.getTillerClientPool());
+    }
 }
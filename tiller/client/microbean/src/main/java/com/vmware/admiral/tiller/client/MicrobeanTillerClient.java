@@ -35,7 +35,7 @@ public class MicrobeanTillerClient implements TillerClient {
     protected static final String HEALTH_CHECK_STATUS_MESSAGE_FORMAT = "Health check status is %s";
 
     private Tiller tiller;
-    private boolean closed = false;
+    private volatile boolean closed = false;
 
     public MicrobeanTillerClient(TillerConfig tillerConfig) {
         this.tiller = getTillerInstance(tillerConfig);
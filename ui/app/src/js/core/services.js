@@ -1204,29 +1204,75 @@ services.loadKubernetesEntities = function(queryOptions) {
   return get(url);
 };
 
+// the logs loaded per container, to request only the logs appended since the last load
+var containerLogsCache = {};
+
+var trimContainerLogs = function(logs, logsSettings, sinceSeconds) {
+  var lines = logs.split('\n');
+  var trailingNewLine = lines.length > 0 && lines[lines.length - 1] === '';
+  if (trailingNewLine) {
+    lines.pop();
+  }
+  if (sinceSeconds) {
+    lines = lines.filter(function(line) {
+      var time = Date.parse(line.substring(0, line.indexOf(' ')));
+      return isNaN(time) || time / 1000 >= sinceSeconds;
+    });
+  } else if (logsSettings.tailLines && lines.length > logsSettings.tailLines) {
+    lines = lines.slice(lines.length - logsSettings.tailLines);
+  }
+  return lines.join('\n') + (trailingNewLine && lines.length > 0 ? '\n' : '');
+};
+
 services.loadContainerLogs = function(containerId, logsSettings) {
   return new Promise(function(resolve, reject) {
     var logRequestUriPath = links.CONTAINER_LOGS + '?id=' + containerId;
+    var sinceSeconds;
+    var tail = false;
     if (logsSettings && logsSettings.option === constants.CONTAINERS.LOGS.OPTION.SINCE) {
       let sinceMs = logsSettings.sinceDuration;
       if (sinceMs) {
-        var sinceSeconds = sinceMs / 1000;
+        sinceSeconds = Math.floor((Date.now() - sinceMs) / 1000);
         logRequestUriPath += '&timestamps=true&since=' + sinceSeconds;
       }
     } else if (logsSettings && logsSettings.option === constants.CONTAINERS.LOGS.OPTION.TAIL) {
         let tailLines = logsSettings.tailLines;
         if (tailLines) {
+          tail = true;
           logRequestUriPath += '&tail=' + tailLines;
         }
     }
 
+    var settingsKey = JSON.stringify(logsSettings || {});
+    var cached = containerLogsCache[containerId];
+    if (cached && cached.settingsKey === settingsKey) {
+      logRequestUriPath += '&offset=' + cached.endOffset;
+    } else {
+      cached = null;
+    }
+
     get(logRequestUriPath).then(function(logServiceState) {
-      if (logServiceState && logServiceState.logs) {
-        var decodedLogs = atob(logServiceState.logs);
-        resolve(decodedLogs);
-      } else {
+      if (!logServiceState) {
         resolve('');
+        return;
+      }
+      var decodedLogs = logServiceState.logs ? atob(logServiceState.logs) : '';
+      // the logs from the requested offset on are appended, otherwise they replace the cached
+      if (cached && logServiceState.startOffset <= cached.endOffset
+          && cached.endOffset <= logServiceState.endOffset) {
+        decodedLogs = cached.logs + decodedLogs;
+      }
+      if (sinceSeconds || tail) {
+        decodedLogs = trimContainerLogs(decodedLogs, logsSettings, sinceSeconds);
+      }
+      if (logServiceState.endOffset !== undefined) {
+        containerLogsCache[containerId] = {
+          settingsKey: settingsKey,
+          endOffset: logServiceState.endOffset,
+          logs: decodedLogs
+        };
       }
+      resolve(decodedLogs);
     }).catch(reject);
   });
 };
@@ -11,23 +11,19 @@
 
 package com.vmware.admiral.upgrade.transformation;
 
-import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.Set;
 
 import com.vmware.admiral.common.ManagementUriParts;
-import com.vmware.admiral.common.util.QueryUtil;
-import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.container.network.ContainerNetworkService.ContainerNetworkState;
-import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.admiral.upgrade.transformation.util.PagedTransformation;
+import com.vmware.admiral.upgrade.transformation.util.TenantLinksTransformationUtil;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.StatelessService;
-import com.vmware.xenon.common.UriUtils;
-import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Query;
-import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
-import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
 
 /**
  * The service is executed during the upgrade from VIC 1.1 to 1.2 and vRA 7.3 to 7.4. The service
@@ -37,104 +33,50 @@ public class ContainerNetworksTransformationService extends StatelessService {
 
     public static final String SELF_LINK = ManagementUriParts.CONTAINER_NETWORKS_UPGRADE_TRANSFORM_PATH;
 
-    AtomicInteger hostsCount;
-
     @Override
     public void handlePost(Operation post) {
-        QueryTask queryTask = QueryUtil.buildQuery(ComputeState.class, true);
-        QueryUtil.addExpandOption(queryTask);
-        List<ComputeState> hosts = new ArrayList<ComputeState>();
-        new ServiceDocumentQuery<ComputeState>(getHost(), ComputeState.class)
-                .query(queryTask, (r) -> {
-                    if (r.hasException()) {
-                        post.fail(r.getException());
-                        logSevere("Failed to get compute states");
-                    } else if (r.hasResult()) {
-                        hosts.add(r.getResult());
-                    } else {
-                        if (hosts.isEmpty()) {
-                            post.complete();
-                        }
-                        logInfo("Number of hosts found: %d", hosts.size());
-                        processHosts(hosts, post);
+        boolean dryRun = PagedTransformation.isDryRun(post);
+        TenantLinksTransformationUtil.getHostTenantLinks(getHost())
+                .thenCompose(hostTenantLinks -> {
+                    logInfo("Number of hosts found: %d", hostTenantLinks.size());
+                    Query query = Query.Builder.create()
+                            .addKindFieldClause(ContainerNetworkState.class)
+                            .build();
+                    return new PagedTransformation<>(this, "networks", ContainerNetworkState.class,
+                            query)
+                            .setDryRun(dryRun)
+                            .run(network -> transform(network, hostTenantLinks));
+                })
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        logSevere("Networks transformation failed: %s", ex.getMessage());
+                        post.fail(ex);
+                        return;
                     }
+                    logInfo("Networks tranformation completed successfully, %d of %d "
+                            + "networks updated", result.updatedCount, result.processedCount);
+                    post.setBody(result).complete();
                 });
     }
 
-    private void processHosts(List<ComputeState> hosts, Operation post) {
-        hostsCount = new AtomicInteger(hosts.size());
-        for (ComputeState state : hosts) {
-            QueryTask queryTask = QueryUtil.buildQuery(ContainerNetworkState.class, true);
-
-            String parentLinksItemField = QueryTask.QuerySpecification
-                    .buildCollectionItemName(ContainerNetworkState.FIELD_NAME_PARENT_LINKS);
-            Query parentsClause = new Query()
-                    .setTermPropertyName(parentLinksItemField)
-                    .setTermMatchValue(state.documentSelfLink)
-                    .setTermMatchType(MatchType.TERM)
-                    .setOccurance(Occurance.MUST_OCCUR);
-
-            queryTask.querySpec.query.addBooleanClause(parentsClause);
-            QueryUtil.addExpandOption(queryTask);
-
-            List<ContainerNetworkState> networks = new ArrayList<ContainerNetworkState>();
-            new ServiceDocumentQuery<ContainerNetworkState>(getHost(),
-                    ContainerNetworkState.class)
-                            .query(queryTask, (r) -> {
-                                if (r.hasException()) {
-                                    post.fail(r.getException());
-                                    logSevere("Failed to get networks containing parentLink %s",
-                                            state.documentSelfLink);
-                                } else if (r.hasResult()) {
-                                    networks.add(r.getResult());
-                                } else {
-                                    processNetworks(state, networks, post);
-                                    logInfo("Number of networks found with containing parent link %s %d",
-                                            state.documentSelfLink, networks.size());
-                                }
-                            });
+    private DeferredResult<ContainerNetworkState> transform(ContainerNetworkState network,
+            Map<String, List<String>> hostTenantLinks) {
+        if (network.parentLinks == null || network.parentLinks.isEmpty()) {
+            return DeferredResult.completed(null);
         }
-    }
-
-    private void processNetworks(ComputeState state, List<ContainerNetworkState> networks,
-            Operation post) {
-        if (networks.size() == 0) {
-            logInfo("No networks found for host %s",
-                    state.documentSelfLink);
-            if (hostsCount.decrementAndGet() == 0) {
-                logInfo("Networks tranformation completed successfully");
-                post.complete();
-                return;
+        Set<String> parentTenantLinks = new LinkedHashSet<>();
+        for (String parentLink : network.parentLinks) {
+            List<String> links = hostTenantLinks.get(parentLink);
+            if (links != null) {
+                parentTenantLinks.addAll(links);
             }
         }
-        AtomicInteger networksCount = new AtomicInteger(networks.size());
-        for (ContainerNetworkState network : networks) {
-            if (network.tenantLinks == null) {
-                network.tenantLinks = state.tenantLinks;
-            } else {
-                network.tenantLinks.addAll(state.tenantLinks);
-                network.tenantLinks = new ArrayList<String>(
-                        new LinkedHashSet<String>(network.tenantLinks));
-            }
-            Operation.createPatch(this, network.documentSelfLink)
-                    .setBody(network)
-                    .setReferer(UriUtils.buildUri(getHost(), SELF_LINK))
-                    .setCompletion((o, ex) -> {
-                        if (ex != null) {
-                            logSevere("Failed to update tenantLinks for network %s",
-                                    network.documentSelfLink);
-                            post.fail(ex);
-                        } else {
-                            logInfo("Network state %s updated with tenantLinks",
-                                    network.documentSelfLink);
-                            if (networksCount.decrementAndGet() == 0) {
-                                if (hostsCount.decrementAndGet() == 0) {
-                                    logInfo("Networks tranformation completed successfully");
-                                    post.complete();
-                                }
-                            }
-                        }
-                    }).sendWith(getHost());
+        List<String> tenantLinks = TenantLinksTransformationUtil.mergeTenantLinks(
+                network.tenantLinks, parentTenantLinks);
+        if (tenantLinks == null) {
+            return DeferredResult.completed(null);
         }
+        network.tenantLinks = tenantLinks;
+        return DeferredResult.completed(network);
     }
 }
@@ -11,194 +11,187 @@
 
 package com.vmware.admiral.upgrade.transformation;
 
-import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
+import com.vmware.admiral.compute.ElasticPlacementZoneService;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.upgrade.transformation.util.PagedTransformation;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
-import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
 
 /**
  * The service is executed during the upgrade from VIC 1.1 to 1.2 and vRA 7.3 to 7.4. The service
  * checks if there is more that 1 resource pool for placement and if there is a new the service
  * creates a new pool and changes the placement to point to the new pool
- *
+ * <p>
+ * The pools are processed page by page with {@link PagedTransformation}. A pool used by a single
+ * placement which already has the tenant links of the placement is skipped. The self link of a
+ * cloned pool and of its placement zone is derived from the original pool and the placement, so
+ * running an interrupted transformation again updates the clones it already created instead of
+ * cloning the pool again.
  */
 public class ResourcePoolTransformationService extends StatelessService {
 
     public static final String SELF_LINK = ManagementUriParts.RESOURCE_POOL_UPGRADE_TRANSFORM_PATH;
 
-    AtomicInteger poolsCount;
-
     @Override
     public void handlePost(Operation post) {
-        URI serviceUri = UriUtils.buildUri(ElasticPlacementZoneConfigurationService.SELF_LINK);
-        Operation.createGet(this, UriUtils.buildExpandLinksQueryUri(serviceUri).toString())
-                .setReferer(UriUtils.buildUri(getHost(), SELF_LINK))
-                .setCompletion((op, ex) -> {
+        boolean dryRun = PagedTransformation.isDryRun(post);
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ResourcePoolState.class)
+                .build();
+        new PagedTransformation<>(this, "pools", ResourcePoolState.class, query)
+                .setDryRun(dryRun)
+                .runUpdates(pool -> processPool(pool, dryRun))
+                .whenComplete((result, ex) -> {
                     if (ex != null) {
-                        logSevere("Failed to get resource pool states");
+                        logSevere("Resource pool transformation failed: %s", ex.getMessage());
                         post.fail(ex);
+                        return;
+                    }
+                    logInfo("Resource pool tranformation completed successfully, %d of %d "
+                            + "pools updated", result.updatedCount, result.processedCount);
+                    post.setBody(result).complete();
+                });
+    }
+
+    private DeferredResult<Boolean> processPool(ResourcePoolState pool, boolean dryRun) {
+        return getPlacements(pool.documentSelfLink).thenCompose(placements -> {
+            logInfo("Resource pool placements found %d for resource pool %s",
+                    placements.size(), pool.documentSelfLink);
+            if (placements.isEmpty() || (placements.size() == 1
+                    && hasTenantLinks(pool, placements.get(0)))) {
+                return DeferredResult.completed(false);
+            }
+            if (dryRun) {
+                return DeferredResult.completed(true);
+            }
+            return getConfiguration(pool.documentSelfLink)
+                    .thenCompose(state -> processPlacements(state, placements))
+                    .thenApply(ignore -> true);
+        });
+    }
+
+    private DeferredResult<List<GroupResourcePlacementState>> getPlacements(
+            String resourcePoolLink) {
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(GroupResourcePlacementState.class,
+                GroupResourcePlacementState.FIELD_NAME_RESOURCE_POOL_LINK, resourcePoolLink);
+        QueryUtil.addExpandOption(queryTask);
+        QueryUtil.addBroadcastOption(queryTask);
+
+        DeferredResult<List<GroupResourcePlacementState>> result = new DeferredResult<>();
+        List<GroupResourcePlacementState> placements = new ArrayList<>();
+        new ServiceDocumentQuery<>(getHost(), GroupResourcePlacementState.class)
+                .query(queryTask, (r) -> {
+                    if (r.hasException()) {
+                        logSevere("Failed to query placements with resource pool link %s",
+                                resourcePoolLink);
+                        result.fail(r.getException());
+                    } else if (r.hasResult()) {
+                        placements.add(r.getResult());
                     } else {
-                        ServiceDocumentQueryResult queryResult = op
-                                .getBody(ServiceDocumentQueryResult.class);
-                        Map<String, ElasticPlacementZoneConfigurationState> states = QueryUtil
-                                .extractQueryResult(
-                                        queryResult, ElasticPlacementZoneConfigurationState.class);
-                        logInfo("Number of resource pool states found %d", states.size());
-                        if (states.isEmpty()) {
-                            logInfo("No resource pools found. Tranformation completed successfully");
-                            post.complete();
-                            return;
-                        }
-                        poolsCount = new AtomicInteger(states.size());
-                        processPools(states.values(), post);
+                        result.complete(placements);
                     }
-                }).sendWith(getHost());
+                });
+        return result;
     }
 
-    private void processPools(Collection<ElasticPlacementZoneConfigurationState> collection,
-            Operation post) {
-        // Get the placements for every pool. If there is more that one placement, clone the pool
-        // and point one of the placements to it.
-        for (ElasticPlacementZoneConfigurationState state : collection) {
-            QueryTask queryTask = QueryUtil.buildPropertyQuery(GroupResourcePlacementState.class,
-                    GroupResourcePlacementState.FIELD_NAME_RESOURCE_POOL_LINK,
-                    state.resourcePoolState.documentSelfLink);
-            QueryUtil.addExpandOption(queryTask);
+    private DeferredResult<ElasticPlacementZoneConfigurationState> getConfiguration(
+            String resourcePoolLink) {
+        Operation get = Operation.createGet(this, UriUtils.buildUriPath(
+                ElasticPlacementZoneConfigurationService.SELF_LINK, resourcePoolLink))
+                .setReferer(UriUtils.buildUri(getHost(), SELF_LINK));
+        return sendWithDeferredResult(get, ElasticPlacementZoneConfigurationState.class);
+    }
 
-            QueryUtil.addBroadcastOption(queryTask);
-            List<GroupResourcePlacementState> placements = new ArrayList<GroupResourcePlacementState>();
-            new ServiceDocumentQuery<GroupResourcePlacementState>(getHost(),
-                    GroupResourcePlacementState.class)
-                            .query(queryTask, (r) -> {
-                                if (r.hasException()) {
-                                    logSevere(
-                                            "Failed to query resource pool placement states eith resource pool link %s",
-                                            state.documentSelfLink);
-                                    post.fail(r.getException());
-                                } else if (r.hasResult()) {
-                                    placements.add(r.getResult());
-                                } else {
-                                    logInfo("Resource pool placements found %d for resource pool %s",
-                                            placements.size(), state.documentSelfLink);
-                                    processPlacement(state, placements, post);
-                                }
-                            });
+    private DeferredResult<Void> processPlacements(ElasticPlacementZoneConfigurationState state,
+            List<GroupResourcePlacementState> placements) {
+        List<DeferredResult<Void>> updates = new ArrayList<>();
+        // Update only tenant links for the pool of the first placement
+        updates.add(updatePoolTenantLinks(Utils.clone(state), placements.get(0)));
+        // skip the first placement. Only the duplicates should be updated and a new pool should
+        // be created
+        for (int i = 1; i < placements.size(); i++) {
+            updates.add(clonePool(Utils.clone(state), placements.get(i)));
         }
+        return DeferredResult.allOf(updates).thenApply(ignore -> null);
     }
 
-    private void processPlacement(ElasticPlacementZoneConfigurationState state,
-            List<GroupResourcePlacementState> placements, Operation post) {
-        if (placements.size() > 1) {
-            // Update only tenant links for the pool of the first placement
-            updatePoolTenantLinks(state, post, placements.get(0), false);
-            // skip the first placement. Only the duplicates should be updated and a new pool should
-            // be created
-            AtomicInteger processedCount = new AtomicInteger();
-            String poolName = state.resourcePoolState.name;
-            for (int i = 1; i < placements.size(); i++) {
-                GroupResourcePlacementState placement = placements.get(i);
-                state.resourcePoolState.id = null;
-                state.resourcePoolState.documentSelfLink = null;
-                state.resourcePoolState.name = poolName + "-" + placement.name;
-                if (state.epzState != null) {
-                    state.epzState.documentSelfLink = null;
-                }
-                state.resourcePoolState.tenantLinks = new ArrayList<>();
-                if (placement.tenantLinks != null) {
-                    state.resourcePoolState.tenantLinks.addAll(placement.tenantLinks);
-                }
-                state.documentSelfLink = null;
-                Operation.createPost(this, ElasticPlacementZoneConfigurationService.SELF_LINK)
-                        .setBody(state)
-                        .setReferer(UriUtils.buildUri(getHost(), SELF_LINK))
-                        .setCompletion((o, ex) -> {
-                            if (ex != null) {
-                                logSevere("Cloning placement zone failed");
-                                post.fail(ex);
-                            } else {
-                                logInfo("Resource pool created: %s",
-                                        o.getBody(
-                                                ElasticPlacementZoneConfigurationState.class).documentSelfLink);
-                                placement.resourcePoolLink = o
-                                        .getBody(
-                                                ElasticPlacementZoneConfigurationState.class).resourcePoolState.documentSelfLink;
-                                sendRequest(Operation
-                                        .createPut(this, placement.documentSelfLink)
-                                        .setBody(placement)
-                                        .setReferer(UriUtils.buildUri(getHost(), SELF_LINK))
-                                        .setCompletion((operation, e) -> {
-                                            if (e != null) {
-                                                logSevere(
-                                                        "Failed to update placement %s with resource pool %s",
-                                                        placement.documentSelfLink,
-                                                        placement.resourcePoolLink);
-                                                post.fail(e);
-                                            }
-                                            logInfo("placement [%s] updated with resource pool [%s].",
-                                                    placement.documentSelfLink,
-                                                    placement.resourcePoolLink);
-                                            if (processedCount.incrementAndGet() + 1 == placements
-                                                    .size()) {
-                                                if (poolsCount.decrementAndGet() == 0) {
-                                                    logInfo("Resource pool tranformation completed successfully");
-                                                    post.complete();
-                                                }
-                                            }
-                                        }));
-                            }
-                        }).sendWith(getHost());
-            }
-        } else if (!placements.isEmpty()) {
-            GroupResourcePlacementState placement = placements.get(0);
-            updatePoolTenantLinks(state, post, placement, true);
-        } else {
-            if (poolsCount.decrementAndGet() == 0) {
-                logInfo("Resource pool tranformation completed successfully");
-                post.complete();
-            }
+    private DeferredResult<Void> clonePool(ElasticPlacementZoneConfigurationState state,
+            GroupResourcePlacementState placement) {
+        String cloneId = UriUtils.getLastPathSegment(state.resourcePoolState.documentSelfLink)
+                + "-" + UriUtils.getLastPathSegment(placement.documentSelfLink);
+        state.resourcePoolState.id = cloneId;
+        state.resourcePoolState.documentSelfLink = UriUtils.buildUriPath(
+                ResourcePoolService.FACTORY_LINK, cloneId);
+        state.resourcePoolState.name = state.resourcePoolState.name + "-" + placement.name;
+        if (state.epzState != null) {
+            state.epzState.documentSelfLink = UriUtils.buildUriPath(
+                    ElasticPlacementZoneService.FACTORY_LINK, cloneId);
         }
+        state.resourcePoolState.tenantLinks = new ArrayList<>();
+        if (placement.tenantLinks != null) {
+            state.resourcePoolState.tenantLinks.addAll(placement.tenantLinks);
+        }
+        state.documentSelfLink = null;
 
+        // the pool and placement zone services convert the POST of an existing clone to a PUT,
+        // and the forced index update also recreates a clone which was deleted in between
+        Operation post = Operation.createPost(this,
+                ElasticPlacementZoneConfigurationService.SELF_LINK)
+                .setBody(state)
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
+                .setReferer(UriUtils.buildUri(getHost(), SELF_LINK));
+        return sendWithDeferredResult(post, ElasticPlacementZoneConfigurationState.class)
+                .thenCompose(created -> {
+                    logInfo("Resource pool created: %s", created.documentSelfLink);
+                    placement.resourcePoolLink = created.resourcePoolState.documentSelfLink;
+                    Operation put = Operation.createPut(this, placement.documentSelfLink)
+                            .setBody(placement)
+                            .setReferer(UriUtils.buildUri(getHost(), SELF_LINK));
+                    return sendWithDeferredResult(put);
+                })
+                .thenAccept(ignore -> logInfo("placement [%s] updated with resource pool [%s].",
+                        placement.documentSelfLink, placement.resourcePoolLink));
     }
 
-    private void updatePoolTenantLinks(ElasticPlacementZoneConfigurationState state, Operation post,
-            GroupResourcePlacementState placement, boolean decrementCount) {
+    private DeferredResult<Void> updatePoolTenantLinks(
+            ElasticPlacementZoneConfigurationState state,
+            GroupResourcePlacementState placement) {
         state.resourcePoolState.tenantLinks = new ArrayList<>();
         state.tenantLinks = null;
         if (placement.tenantLinks != null) {
             state.resourcePoolState.tenantLinks.addAll(placement.tenantLinks);
         }
-        Operation.createPost(this, ElasticPlacementZoneConfigurationService.SELF_LINK)
+        Operation post = Operation.createPost(this,
+                ElasticPlacementZoneConfigurationService.SELF_LINK)
                 .setBody(state)
-                .setReferer(UriUtils.buildUri(getHost(), SELF_LINK))
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        logSevere("Failed to update resource pool with tenant links");
-                        post.fail(ex);
-                    } else {
-                        logInfo("Resource pool %s updated with tenant links",
-                                state.documentSelfLink);
-                        if (decrementCount) {
-                            if (poolsCount.decrementAndGet() == 0) {
-                                // add tenant links to the pool
-                                logInfo("Resource pool tranformation completed successfully");
-                                post.complete();
-                            }
-                        }
-                    }
-                }).sendWith(getHost());
+                .setReferer(UriUtils.buildUri(getHost(), SELF_LINK));
+        return sendWithDeferredResult(post)
+                .thenAccept(ignore -> logInfo("Resource pool %s updated with tenant links",
+                        state.documentSelfLink));
+    }
+
+    private static boolean hasTenantLinks(ResourcePoolState pool,
+            GroupResourcePlacementState placement) {
+        if (placement.tenantLinks == null || placement.tenantLinks.isEmpty()) {
+            return pool.tenantLinks == null || pool.tenantLinks.isEmpty();
+        }
+        return pool.tenantLinks != null
+                && new HashSet<>(pool.tenantLinks).equals(new HashSet<>(placement.tenantLinks));
     }
 }
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.upgrade.transformation.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription.TypeName;
+import com.vmware.xenon.common.ServiceHost.ServiceNotFoundException;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Applies an upgrade transformation to all documents matching a query. The documents are streamed
+ * page by page and the updates of each page are sent with bounded parallelism, so the memory used
+ * does not depend on the number of documents. The transformation function must return
+ * <code>null</code> for documents which are already transformed, which makes runs idempotent. The
+ * documents are sorted by self link and the progress is checkpointed as a configuration property
+ * after every page. Running an interrupted transformation again starts the query at the offset of
+ * the documents it already processed, so they are not read again. The checkpoint is deleted once
+ * the transformation completes.
+ * <p>
+ * In dry-run mode nothing is updated and the result contains the number of documents which would
+ * be updated and an estimation of the time the update would take.
+ */
+public class PagedTransformation<T extends ServiceDocument> {
+
+    public static final String DRY_RUN_QUERY_PARAM = "dryRun";
+
+    private static final String CHECKPOINT_KEY_PREFIX = "upgrade.transformation.";
+    private static final String CHECKPOINT_KEY_SUFFIX = ".checkpoint";
+
+    private static final int DEFAULT_PAGE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.upgrade.transformation.page.size", 200);
+    private static final int DEFAULT_PARALLELISM = Integer.getInteger(
+            "com.vmware.admiral.upgrade.transformation.parallelism", 16);
+    // average update latency used to estimate the duration of a dry run
+    private static final long ESTIMATED_UPDATE_MICROS = TimeUnit.MILLISECONDS.toMicros(
+            Long.getLong("com.vmware.admiral.upgrade.transformation.estimated.update.millis", 5));
+
+    public static class TransformationResult {
+        public String name;
+        public boolean dryRun;
+        public long processedCount;
+        public long updatedCount;
+        public long skippedCount;
+        public long elapsedMicros;
+        public Long estimatedUpdateMicros;
+        public String lastDocumentSelfLink;
+    }
+
+    private final Service service;
+    private final String name;
+    private final Class<T> type;
+    private final Query query;
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean dryRun;
+
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong updatedCount = new AtomicLong();
+    private long startTimeMicros;
+    // documents up to this self link were processed by an interrupted run
+    private String resumeAfterLink;
+    // whether the first page of a query resumed at an offset has to be verified
+    private boolean verifyOffset;
+    private String lastDocumentSelfLink;
+
+    public PagedTransformation(Service service, String name, Class<T> type, Query query) {
+        this.service = service;
+        this.name = name;
+        this.type = type;
+        this.query = query;
+    }
+
+    public PagedTransformation<T> setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public PagedTransformation<T> setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public PagedTransformation<T> setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+
+    /**
+     * Returns whether the given request asks for a dry run.
+     */
+    public static boolean isDryRun(Operation op) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(op.getUri());
+        return Boolean.parseBoolean(params.get(DRY_RUN_QUERY_PARAM));
+    }
+
+    /**
+     * Runs the transformation. The transformer returns the document to PATCH or
+     * <code>null</code> when the document does not need to be updated.
+     */
+    public DeferredResult<TransformationResult> run(Function<T, DeferredResult<T>> transformer) {
+        return runUpdates(document -> transformer.apply(document).thenCompose(updated -> {
+            if (updated == null) {
+                return DeferredResult.completed(false);
+            }
+            if (dryRun) {
+                return DeferredResult.completed(true);
+            }
+            Operation patch = Operation.createPatch(service, updated.documentSelfLink)
+                    .setBody(updated);
+            return service.sendWithDeferredResult(patch).thenApply(ignore -> true);
+        }));
+    }
+
+    /**
+     * Runs a transformation which sends its own updates, e.g. when a document is transformed by
+     * creating or updating other documents. The updater returns whether the document needed an
+     * update and must not update anything in dry-run mode.
+     */
+    public DeferredResult<TransformationResult> runUpdates(
+            Function<T, DeferredResult<Boolean>> updater) {
+        startTimeMicros = Utils.getSystemNowMicrosUtc();
+
+        return loadCheckpoint()
+                .thenCompose(ignore -> query(resumeAfterLink != null, updater))
+                .thenCompose(ignore -> deleteCheckpoint())
+                .thenApply(ignore -> buildResult());
+    }
+
+    private DeferredResult<Void> query(boolean resume,
+            Function<T, DeferredResult<Boolean>> updater) {
+        return service.sendWithDeferredResult(
+                Operation.createPost(service, ServiceUriPaths.CORE_QUERY_TASKS)
+                        .setBody(buildQueryTask(resume)), QueryTask.class)
+                .thenCompose(qt -> {
+                    if (resume && qt.results.nextPageLink == null) {
+                        return restartQuery(updater);
+                    }
+                    return processPage(qt.results.nextPageLink, updater);
+                });
+    }
+
+    private DeferredResult<Void> restartQuery(Function<T, DeferredResult<Boolean>> updater) {
+        // documents before the checkpoint were deleted since the interruption, the offset may
+        // skip some which are not processed
+        service.getHost().log(Level.WARNING,
+                "Offset of transformation %s after %s does not match, restarting its query",
+                name, resumeAfterLink);
+        verifyOffset = false;
+        return query(false, updater);
+    }
+
+    private QueryTask buildQueryTask(boolean resume) {
+        QueryTask queryTask = QueryTask.Builder.createDirectTask()
+                .setQuery(query)
+                .addOption(QueryOption.EXPAND_CONTENT)
+                .orderAscending(ServiceDocument.FIELD_NAME_SELF_LINK, TypeName.STRING)
+                .setResultLimit(pageSize)
+                .build();
+        queryTask.documentExpirationTimeMicros = Utils.fromNowMicrosUtc(
+                TimeUnit.MINUTES.toMicros(10));
+        if (resume) {
+            // the query terms have no string ranges, so the documents up to the checkpoint are
+            // skipped by their position in the self link order instead. The query starts at the
+            // last processed document to verify that the position still matches.
+            queryTask.querySpec.offset = (int) Math.min(Math.max(processedCount.get() - 1, 0),
+                    Integer.MAX_VALUE);
+            verifyOffset = true;
+        }
+        return queryTask;
+    }
+
+    private DeferredResult<Void> processPage(String pageLink,
+            Function<T, DeferredResult<Boolean>> updater) {
+        if (pageLink == null) {
+            return DeferredResult.completed(null);
+        }
+
+        return service.sendWithDeferredResult(Operation.createGet(service, pageLink),
+                QueryTask.class)
+                .thenCompose(page -> {
+                    if (verifyOffset) {
+                        verifyOffset = false;
+                        List<String> links = page.results.documentLinks;
+                        if (links == null || links.isEmpty()
+                                || links.get(0).compareTo(resumeAfterLink) > 0) {
+                            return restartQuery(updater);
+                        }
+                    }
+                    List<T> documents = new ArrayList<>();
+                    if (page.results.documentLinks != null) {
+                        for (String link : page.results.documentLinks) {
+                            // skip the documents processed before the transformation was
+                            // interrupted
+                            if (resumeAfterLink != null && link.compareTo(resumeAfterLink) <= 0) {
+                                continue;
+                            }
+                            documents.add(Utils.fromJson(page.results.documents.get(link),
+                                    type));
+                        }
+                    }
+                    if (documents.isEmpty()) {
+                        return processPage(page.results.nextPageLink, updater);
+                    }
+                    return processDocuments(documents, updater)
+                            .thenCompose(ignore -> {
+                                lastDocumentSelfLink = documents.get(documents.size() - 1)
+                                        .documentSelfLink;
+                                return checkpoint();
+                            })
+                            .thenCompose(ignore -> processPage(page.results.nextPageLink,
+                                    updater));
+                });
+    }
+
+    private DeferredResult<Void> processDocuments(List<T> documents,
+            Function<T, DeferredResult<Boolean>> updater) {
+        AtomicInteger next = new AtomicInteger();
+        List<DeferredResult<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, documents.size()); i++) {
+            workers.add(processNext(documents, next, updater));
+        }
+        return DeferredResult.allOf(workers).thenApply(ignore -> null);
+    }
+
+    private DeferredResult<Void> processNext(List<T> documents, AtomicInteger next,
+            Function<T, DeferredResult<Boolean>> updater) {
+        int index = next.getAndIncrement();
+        if (index >= documents.size()) {
+            return DeferredResult.completed(null);
+        }
+        return updater.apply(documents.get(index))
+                .thenCompose(updated -> {
+                    processedCount.incrementAndGet();
+                    if (Boolean.TRUE.equals(updated)) {
+                        updatedCount.incrementAndGet();
+                    }
+                    return processNext(documents, next, updater);
+                });
+    }
+
+    private String getCheckpointLink() {
+        return UriUtils.buildUriPath(ConfigurationFactoryService.SELF_LINK,
+                CHECKPOINT_KEY_PREFIX + name + CHECKPOINT_KEY_SUFFIX);
+    }
+
+    private DeferredResult<Void> loadCheckpoint() {
+        if (dryRun) {
+            return DeferredResult.completed(null);
+        }
+
+        DeferredResult<Void> result = new DeferredResult<>();
+        service.sendRequest(Operation.createGet(service, getCheckpointLink())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        if (!(e instanceof ServiceNotFoundException)) {
+                            service.getHost().log(Level.WARNING,
+                                    "Failed to load checkpoint of transformation %s: %s",
+                                    name, Utils.toString(e));
+                        }
+                        result.complete(null);
+                        return;
+                    }
+                    ConfigurationState checkpoint = o.getBody(ConfigurationState.class);
+                    TransformationResult progress = checkpoint.value != null
+                            ? Utils.fromJson(checkpoint.value, TransformationResult.class)
+                            : null;
+                    if (progress != null && progress.lastDocumentSelfLink != null) {
+                        service.getHost().log(Level.INFO,
+                                "Resuming transformation %s after %s, processed %d, updated %d",
+                                name, progress.lastDocumentSelfLink, progress.processedCount,
+                                progress.updatedCount);
+                        resumeAfterLink = progress.lastDocumentSelfLink;
+                        lastDocumentSelfLink = progress.lastDocumentSelfLink;
+                        processedCount.set(progress.processedCount);
+                        updatedCount.set(progress.updatedCount);
+                    }
+                    result.complete(null);
+                }));
+        return result;
+    }
+
+    private DeferredResult<Void> deleteCheckpoint() {
+        if (dryRun) {
+            return DeferredResult.completed(null);
+        }
+
+        DeferredResult<Void> result = new DeferredResult<>();
+        service.sendRequest(Operation.createDelete(service, getCheckpointLink())
+                .setCompletion((o, e) -> {
+                    // a leftover checkpoint only makes the next run skip the processed documents
+                    if (e != null && !(e instanceof ServiceNotFoundException)) {
+                        service.getHost().log(Level.WARNING,
+                                "Failed to delete checkpoint of transformation %s: %s",
+                                name, Utils.toString(e));
+                    }
+                    result.complete(null);
+                }));
+        return result;
+    }
+
+    private DeferredResult<Void> checkpoint() {
+        TransformationResult progress = buildResult();
+        service.getHost().log(Level.INFO, "Transformation %s: processed %d, updated %d",
+                name, progress.processedCount, progress.updatedCount);
+        if (dryRun) {
+            return DeferredResult.completed(null);
+        }
+
+        ConfigurationState body = new ConfigurationState();
+        body.key = CHECKPOINT_KEY_PREFIX + name + CHECKPOINT_KEY_SUFFIX;
+        body.documentSelfLink = getCheckpointLink();
+        body.value = Utils.toJson(progress);
+
+        DeferredResult<Void> result = new DeferredResult<>();
+        service.sendRequest(Operation.createPut(service, body.documentSelfLink)
+                .setBody(body)
+                .setCompletion((o, e) -> {
+                    if (e instanceof ServiceNotFoundException) {
+                        service.sendRequest(Operation
+                                .createPost(service, ConfigurationFactoryService.SELF_LINK)
+                                .setBody(body)
+                                .setCompletion((oo, ee) -> {
+                                    logCheckpointFailure(ee);
+                                    result.complete(null);
+                                }));
+                        return;
+                    }
+                    logCheckpointFailure(e);
+                    result.complete(null);
+                }));
+        return result;
+    }
+
+    private void logCheckpointFailure(Throwable e) {
+        // a missing checkpoint does not affect the transformation itself
+        if (e != null) {
+            service.getHost().log(Level.WARNING, "Failed to checkpoint transformation %s: %s",
+                    name, Utils.toString(e));
+        }
+    }
+
+    private TransformationResult buildResult() {
+        TransformationResult result = new TransformationResult();
+        result.name = name;
+        result.dryRun = dryRun;
+        result.processedCount = processedCount.get();
+        result.updatedCount = updatedCount.get();
+        result.skippedCount = result.processedCount - result.updatedCount;
+        result.lastDocumentSelfLink = lastDocumentSelfLink;
+        result.elapsedMicros = Utils.getSystemNowMicrosUtc() - startTimeMicros;
+        if (dryRun) {
+            result.estimatedUpdateMicros = result.elapsedMicros
+                    + result.updatedCount * ESTIMATED_UPDATE_MICROS / Math.max(1, parallelism);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.upgrade.transformation.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.vmware.photon.controller.model.query.QueryUtils.QueryByPages;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+public class TenantLinksTransformationUtil {
+
+    /**
+     * Returns the tenant links of all hosts mapped by host self link.
+     */
+    public static DeferredResult<Map<String, List<String>>> getHostTenantLinks(
+            ServiceHost host) {
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .build();
+
+        return new QueryByPages<>(host, query, ComputeState.class, null)
+                .collectDocuments(Collectors.toMap(h -> h.documentSelfLink,
+                        h -> h.tenantLinks != null ? h.tenantLinks
+                                : Collections.<String> emptyList()));
+    }
+
+    /**
+     * Returns the given links extended with the additional links or <code>null</code> if all of
+     * the additional links are already present.
+     */
+    public static List<String> mergeTenantLinks(List<String> links,
+            Collection<String> additionalLinks) {
+        if (additionalLinks == null || additionalLinks.isEmpty()
+                || (links != null && links.containsAll(additionalLinks))) {
+            return null;
+        }
+        LinkedHashSet<String> merged = links != null ? new LinkedHashSet<>(links)
+                : new LinkedHashSet<>();
+        merged.addAll(additionalLinks);
+        return new ArrayList<>(merged);
+    }
+}
@@ -118,6 +118,40 @@ public class ResourcePoolTransformationServiceTest extends UpgradeBaseTest {
         Assert.assertFalse(placement2.resourcePoolLink.equals(placement3.resourcePoolLink));
     }
 
+    @Test
+    public void testInterruptedCloneIsNotDuplicated() throws Throwable {
+        ResourcePoolState pool1 = createResourcePool();
+        GroupResourcePlacementState placement1 = new GroupResourcePlacementState();
+        placement1.name = "placement";
+        placement1.resourcePoolLink = pool1.documentSelfLink;
+        placement1.tenantLinks = new ArrayList<>();
+        placement1.tenantLinks.add("tenant1");
+        placement1 = doPost(placement1, GroupResourcePlacementService.FACTORY_LINK);
+
+        GroupResourcePlacementState placement2 = new GroupResourcePlacementState();
+        placement2.name = "placement2";
+        placement2.resourcePoolLink = pool1.documentSelfLink;
+        placement2.tenantLinks = new ArrayList<>();
+        placement2.tenantLinks.add("tenant2");
+        placement2 = doPost(placement2, GroupResourcePlacementService.FACTORY_LINK);
+
+        doPost(placement2, ResourcePoolTransformationService.SELF_LINK);
+        String clonedPoolLink = getDocument(GroupResourcePlacementState.class,
+                placement2.documentSelfLink).resourcePoolLink;
+        int poolCount = getDocumentLinksOfType(ResourcePoolState.class).size();
+
+        // the previous run was interrupted after the pool was cloned, before the placement was
+        // updated
+        placement2 = getDocument(GroupResourcePlacementState.class, placement2.documentSelfLink);
+        placement2.resourcePoolLink = pool1.documentSelfLink;
+        doPut(placement2);
+
+        doPost(placement2, ResourcePoolTransformationService.SELF_LINK);
+        Assert.assertEquals(clonedPoolLink, getDocument(GroupResourcePlacementState.class,
+                placement2.documentSelfLink).resourcePoolLink);
+        Assert.assertEquals(poolCount, getDocumentLinksOfType(ResourcePoolState.class).size());
+    }
+
     @Test
     public void testNoPlacementsForPool() throws Throwable {
         ResourcePoolState pool1 = createResourcePool();
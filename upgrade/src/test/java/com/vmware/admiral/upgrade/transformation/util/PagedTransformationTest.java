@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2018 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.upgrade.transformation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
+import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
+import com.vmware.admiral.upgrade.UpgradeBaseTest;
+import com.vmware.admiral.upgrade.transformation.util.PagedTransformation.TransformationResult;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost.ServiceNotFoundException;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+public class PagedTransformationTest extends UpgradeBaseTest {
+
+    private static final String TRANSFORMATION_NAME = "test-containers";
+    private static final String TRANSFORMED_PROPERTY = "transformed";
+    private static final int CONTAINERS_COUNT = 5;
+
+    private static final String CHECKPOINT_LINK = UriUtils.buildUriPath(
+            ConfigurationFactoryService.SELF_LINK,
+            "upgrade.transformation." + TRANSFORMATION_NAME + ".checkpoint");
+
+    private StatelessService service;
+    private List<String> containerLinks;
+    private AtomicInteger transformedCount;
+
+    @Before
+    public void setUp() throws Throwable {
+        waitForServiceAvailability(ContainerFactoryService.SELF_LINK);
+        waitForServiceAvailability(ConfigurationFactoryService.SELF_LINK);
+
+        service = new StatelessService();
+        host.startServiceAndWait(service, "/test/paged-transformation", null);
+
+        containerLinks = new ArrayList<>();
+        for (int i = 0; i < CONTAINERS_COUNT; i++) {
+            ContainerState container = new ContainerState();
+            container.names = Collections.singletonList("container-" + i);
+            containerLinks.add(doPost(container, ContainerFactoryService.SELF_LINK)
+                    .documentSelfLink);
+        }
+        Collections.sort(containerLinks);
+        transformedCount = new AtomicInteger();
+    }
+
+    @Test
+    public void testAllPagesAreTransformed() throws Throwable {
+        TransformationResult result = run(false);
+
+        assertEquals(CONTAINERS_COUNT, result.processedCount);
+        assertEquals(CONTAINERS_COUNT, result.updatedCount);
+        assertEquals(0, result.skippedCount);
+        assertNull(result.estimatedUpdateMicros);
+        for (String link : containerLinks) {
+            assertTrue(isTransformed(link));
+        }
+        // the checkpoint is deleted once the transformation completes
+        assertFalse(isCheckpointPresent());
+    }
+
+    @Test
+    public void testDryRunDoesNotUpdate() throws Throwable {
+        TransformationResult result = run(true);
+
+        assertTrue(result.dryRun);
+        assertEquals(CONTAINERS_COUNT, result.processedCount);
+        assertEquals(CONTAINERS_COUNT, result.updatedCount);
+        assertNotNull(result.estimatedUpdateMicros);
+        for (String link : containerLinks) {
+            assertFalse(isTransformed(link));
+        }
+        assertFalse(isCheckpointPresent());
+    }
+
+    @Test
+    public void testRerunIsIdempotent() throws Throwable {
+        run(false);
+        TransformationResult result = run(false);
+
+        assertEquals(CONTAINERS_COUNT, result.processedCount);
+        assertEquals(0, result.updatedCount);
+        assertEquals(CONTAINERS_COUNT, result.skippedCount);
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Throwable {
+        // a previous run was interrupted after the first page
+        TransformationResult progress = new TransformationResult();
+        progress.name = TRANSFORMATION_NAME;
+        progress.processedCount = 2;
+        progress.updatedCount = 2;
+        progress.lastDocumentSelfLink = containerLinks.get(1);
+
+        ConfigurationState checkpoint = new ConfigurationState();
+        checkpoint.key = "upgrade.transformation." + TRANSFORMATION_NAME + ".checkpoint";
+        checkpoint.documentSelfLink = CHECKPOINT_LINK;
+        checkpoint.value = Utils.toJson(progress);
+        doPost(checkpoint, ConfigurationFactoryService.SELF_LINK);
+
+        TransformationResult result = run(false);
+
+        assertEquals(CONTAINERS_COUNT - 2, transformedCount.get());
+        assertEquals(CONTAINERS_COUNT, result.processedCount);
+        assertEquals(CONTAINERS_COUNT, result.updatedCount);
+        assertFalse(isTransformed(containerLinks.get(0)));
+        assertFalse(isTransformed(containerLinks.get(1)));
+        for (String link : containerLinks.subList(2, CONTAINERS_COUNT)) {
+            assertTrue(isTransformed(link));
+        }
+        assertFalse(isCheckpointPresent());
+    }
+
+    @Test
+    public void testResumeAfterDocumentsAreDeleted() throws Throwable {
+        TransformationResult progress = new TransformationResult();
+        progress.name = TRANSFORMATION_NAME;
+        progress.processedCount = 2;
+        progress.updatedCount = 2;
+        progress.lastDocumentSelfLink = containerLinks.get(1);
+
+        ConfigurationState checkpoint = new ConfigurationState();
+        checkpoint.key = "upgrade.transformation." + TRANSFORMATION_NAME + ".checkpoint";
+        checkpoint.documentSelfLink = CHECKPOINT_LINK;
+        checkpoint.value = Utils.toJson(progress);
+        doPost(checkpoint, ConfigurationFactoryService.SELF_LINK);
+
+        // the offset of the checkpoint now points past the first unprocessed document
+        doDelete(UriUtils.buildUri(host, containerLinks.get(0)), false);
+
+        TransformationResult result = run(false);
+
+        assertEquals(CONTAINERS_COUNT - 2, transformedCount.get());
+        assertEquals(CONTAINERS_COUNT, result.processedCount);
+        for (String link : containerLinks.subList(2, CONTAINERS_COUNT)) {
+            assertTrue(isTransformed(link));
+        }
+        assertFalse(isCheckpointPresent());
+    }
+
+    private TransformationResult run(boolean dryRun) {
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ContainerState.class)
+                .build();
+        AtomicReference<TransformationResult> result = new AtomicReference<>();
+        TestContext ctx = testCreate(1);
+        new PagedTransformation<>(service, TRANSFORMATION_NAME, ContainerState.class, query)
+                .setPageSize(2)
+                .setParallelism(2)
+                .setDryRun(dryRun)
+                .run(this::transform)
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        ctx.failIteration(e);
+                        return;
+                    }
+                    result.set(r);
+                    ctx.completeIteration();
+                });
+        ctx.await();
+        return result.get();
+    }
+
+    private DeferredResult<ContainerState> transform(ContainerState container) {
+        transformedCount.incrementAndGet();
+        if (container.customProperties != null
+                && container.customProperties.containsKey(TRANSFORMED_PROPERTY)) {
+            return DeferredResult.completed(null);
+        }
+        container.customProperties = new HashMap<>();
+        container.customProperties.put(TRANSFORMED_PROPERTY, Boolean.TRUE.toString());
+        return DeferredResult.completed(container);
+    }
+
+    private boolean isTransformed(String containerLink) throws Throwable {
+        ContainerState container = getDocument(ContainerState.class, containerLink);
+        return container.customProperties != null
+                && container.customProperties.containsKey(TRANSFORMED_PROPERTY);
+    }
+
+    private boolean isCheckpointPresent() {
+        AtomicReference<Boolean> present = new AtomicReference<>();
+        TestContext ctx = testCreate(1);
+        host.send(Operation.createGet(host, CHECKPOINT_LINK)
+                .setCompletion((o, e) -> {
+                    if (e != null && !(e instanceof ServiceNotFoundException)) {
+                        ctx.failIteration(e);
+                        return;
+                    }
+                    present.set(e == null);
+                    ctx.completeIteration();
+                }));
+        ctx.await();
+        return present.get();
+    }
+}